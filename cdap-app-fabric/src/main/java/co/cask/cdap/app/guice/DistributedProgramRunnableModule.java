@@ -77,7 +77,10 @@ public class DistributedProgramRunnableModule {
   private final Configuration hConf;
 
   public DistributedProgramRunnableModule(CConfiguration cConf, Configuration hConf) {
-    this.cConf = cConf;
+    // programs look up the datasets they use repeatedly, but don't manage them, so they can cache the metadata
+    this.cConf = CConfiguration.copy(cConf);
+    this.cConf.setLong(Constants.Dataset.META_CACHE_EXPIRATION_SECS,
+                       cConf.getLong(Constants.Dataset.PROGRAM_META_CACHE_EXPIRATION_SECS));
     this.hConf = hConf;
   }
 
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.flow;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+
+/**
+ * A batch size {@link Supplier} for batch process methods that adjusts the dequeue batch size based on the time
+ * taken to dequeue, process and commit a batch. The batch size is halved whenever a batch takes longer than the
+ * target time, and is grown gradually when a full batch was dequeued and completed in less than half of the
+ * target time. It is always bounded by {@code 1} and the maximum batch size given by the {@code @Batch} annotation.
+ * <p/>
+ * This class is not thread safe. It is expected to be used only by the thread that calls the process method.
+ */
+final class AdaptiveBatchSize implements Supplier<Integer> {
+
+  private final int maxBatchSize;
+  private final long targetNanos;
+  private int batchSize;
+
+  AdaptiveBatchSize(int maxBatchSize, long targetNanos) {
+    Preconditions.checkArgument(maxBatchSize > 0, "Maximum batch size should be > 0: %s", maxBatchSize);
+    Preconditions.checkArgument(targetNanos > 0, "Target time should be > 0: %s", targetNanos);
+    this.maxBatchSize = maxBatchSize;
+    this.targetNanos = targetNanos;
+    this.batchSize = maxBatchSize;
+  }
+
+  @Override
+  public Integer get() {
+    return batchSize;
+  }
+
+  /**
+   * Updates the batch size based on the result of one process call.
+   *
+   * @param dequeued number of entries dequeued for the call
+   * @param elapsedNanos time in nanoseconds spent in dequeue, process and transaction commit
+   */
+  void update(int dequeued, long elapsedNanos) {
+    if (elapsedNanos > targetNanos) {
+      batchSize = Math.max(1, batchSize / 2);
+    } else if (dequeued >= batchSize && elapsedNanos <= targetNanos / 2) {
+      // A full batch is the only signal of backlog available on the consumer side
+      batchSize = Math.min(maxBatchSize, batchSize + Math.max(1, batchSize / 4));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+      .add("batchSize", batchSize)
+      .add("maxBatchSize", maxBatchSize)
+      .add("targetNanos", targetNanos)
+      .toString();
+  }
+}
@@ -16,6 +16,8 @@
 
 package co.cask.cdap.internal.app.runtime.flow;
 
+import co.cask.cdap.api.dataset.metrics.MeteredDataset;
+import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.queue.QueueName;
 import co.cask.cdap.data2.queue.ConsumerConfig;
 import co.cask.cdap.data2.queue.QueueConsumer;
@@ -30,6 +32,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
@@ -47,6 +50,7 @@ final class ConsumerSupplier<T> implements Supplier<T>, Closeable {
   private final int numGroups;
   private final RuntimeUsageRegistry runtimeUsageRegistry;
   private final Iterable<? extends Id> owners;
+  private final MetricsContext metricsContext;
   private ConsumerConfig consumerConfig;
   private Closeable consumer;
 
@@ -61,14 +65,28 @@ final class ConsumerSupplier<T> implements Supplier<T>, Closeable {
                                         RuntimeUsageRegistry runtimeUsageRegistry,
                                         DataFabricFacade dataFabricFacade, QueueName queueName,
                                         ConsumerConfig consumerConfig, int numGroups) {
+    return create(owners, runtimeUsageRegistry, dataFabricFacade, queueName, consumerConfig, numGroups, null);
+  }
+
+  /**
+   * Creates a {@link ConsumerSupplier} that reports queue consumer metrics, such as read-ahead cache hits,
+   * to the given {@link MetricsContext}.
+   */
+  static <T> ConsumerSupplier<T> create(Iterable<? extends Id> owners,
+                                        RuntimeUsageRegistry runtimeUsageRegistry,
+                                        DataFabricFacade dataFabricFacade, QueueName queueName,
+                                        ConsumerConfig consumerConfig, int numGroups,
+                                        @Nullable MetricsContext metricsContext) {
     return new ConsumerSupplier<>(owners, runtimeUsageRegistry, dataFabricFacade,
-                                   queueName, consumerConfig, numGroups);
+                                   queueName, consumerConfig, numGroups, metricsContext);
   }
 
   private ConsumerSupplier(Iterable<? extends Id> owners, RuntimeUsageRegistry runtimeUsageRegistry,
                            DataFabricFacade dataFabricFacade, QueueName queueName,
-                           ConsumerConfig consumerConfig, int numGroups) {
+                           ConsumerConfig consumerConfig, int numGroups,
+                           @Nullable MetricsContext metricsContext) {
     this.owners = owners;
+    this.metricsContext = metricsContext;
     this.runtimeUsageRegistry = runtimeUsageRegistry;
     this.dataFabricFacade = dataFabricFacade;
     this.queueName = queueName;
@@ -96,6 +114,9 @@ final class ConsumerSupplier<T> implements Supplier<T>, Closeable {
       }
       if (queueName.isQueue()) {
         QueueConsumer queueConsumer = dataFabricFacade.createConsumer(queueName, config, numGroups);
+        if (metricsContext != null && queueConsumer instanceof MeteredDataset) {
+          ((MeteredDataset) queueConsumer).setMetricsCollector(metricsContext);
+        }
         consumerConfig = queueConsumer.getConfig();
         consumer = queueConsumer;
       } else {
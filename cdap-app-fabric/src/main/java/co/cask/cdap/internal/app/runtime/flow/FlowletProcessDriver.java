@@ -52,9 +52,16 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
 
 /**
  * This class responsible invoking process methods of a {@link Flowlet}.
+ * <p/>
+ * Besides the processing metrics, it emits the time spent in processing inputs as the {@code process.busy.ms}
+ * metric for each input queue, and the time spent in waiting or in dequeuing nothing as the
+ * {@code process.idle.ms} metric, which can be used for sizing the number of flowlet instances. For process
+ * methods with an {@link AdaptiveBatchSize}, the current dequeue batch size is emitted as the
+ * {@code process.batch.size} gauge.
  */
 final class FlowletProcessDriver extends AbstractExecutionThreadService {
 
@@ -65,6 +72,8 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
   private final Callback txCallback;
   private final LoggingContext loggingContext;
   private final PriorityQueue<FlowletProcessEntry<?>> processQueue;
+  private final LoadingCache<String, MetricsContext> queueMetricsCollectors;
+  private final ProcessTimeMetrics processTimeMetrics;
 
   private Thread runThread;
   private ExecutorService processExecutor;
@@ -82,6 +91,8 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     for (ProcessSpecification<?> spec : processSpecifications) {
       processQueue.offer(FlowletProcessEntry.create(spec));
     }
+    this.queueMetricsCollectors = createQueueMetricsCollectors(flowletContext);
+    this.processTimeMetrics = new ProcessTimeMetrics(flowletContext.getProgramMetrics(), queueMetricsCollectors);
   }
 
   /**
@@ -97,6 +108,8 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     this.loggingContext = other.loggingContext;
     this.processQueue = new PriorityQueue<>(other.processQueue.size());
     Iterables.addAll(processQueue, other.processQueue);
+    this.queueMetricsCollectors = other.queueMetricsCollectors;
+    this.processTimeMetrics = other.processTimeMetrics;
   }
 
   @Override
@@ -130,6 +143,7 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     Runnable processRunner = createProcessRunner(processQueue, processList,
                                                  flowletContext.getProgram().getClassLoader());
     while (isRunning()) {
+      long waitStartTime = System.nanoTime();
       try {
         // If the queue head need to wait, we had to wait.
         processQueue.peek().await();
@@ -137,6 +151,7 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
         // Triggered by shutdown, simply continue and let the isRunning() check to deal with that.
         continue;
       }
+      processTimeMetrics.addIdleTime(System.nanoTime() - waitStartTime);
 
       processList.clear();
       // Drain the process queue so that all entries in the queue will be inspected to see if it's time to process
@@ -212,6 +227,7 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
       return false;
     }
 
+    long startTime = System.nanoTime();
     ProcessMethod<T> processMethod = entry.getProcessSpec().getProcessMethod();
     if (processMethod.needsInput()) {
       flowletContext.getProgramMetrics().increment("process.tuples.attempt.read", 1);
@@ -225,9 +241,15 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
       try {
         InputDatum<T> input = entry.getProcessSpec().getQueueReader().dequeue(0, TimeUnit.MILLISECONDS);
         if (!input.needProcess()) {
-          entry.backOff();
+          // Back off at least for the time taken by the empty dequeue, so that polling an idle queue
+          // does not dominate the flowlet time when dequeue is slow.
+          entry.backOff(System.nanoTime() - startTime);
           // End the transaction if nothing in the queue
-          txContext.finish();
+          try {
+            txContext.finish();
+          } finally {
+            processTimeMetrics.addIdleTime(System.nanoTime() - startTime);
+          }
           return false;
         }
         // Resetting back-off time to minimum back-off time,
@@ -236,9 +258,16 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
 
         // Call the process method and commit the transaction. The current process entry will put
         // back to queue in the postProcess method (either a retry copy or itself).
-        ProcessMethod.ProcessResult<?> result = processMethod.invoke(input);
-        postProcess(processMethodCallback(processQueue, entry, input), txContext, input, result);
-        return true;
+        try {
+          ProcessMethod.ProcessResult<?> result = processMethod.invoke(input);
+          postProcess(processMethodCallback(processQueue, entry, input), txContext, input, result);
+          updateBatchSize(entry.getProcessSpec().getAdaptiveBatchSize(), input, result.isSuccess(),
+                          System.nanoTime() - startTime);
+          return true;
+        } finally {
+          // Time spent on an input that failed with a system failure is busy time as well
+          processTimeMetrics.addBusyTime(input.getQueueName(), System.nanoTime() - startTime);
+        }
 
       } catch (Throwable t) {
         LOG.error("System failure: {}", flowletContext, t);
@@ -322,15 +351,6 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
     final int processedCount = processEntry.getProcessSpec().getProcessMethod().needsInput() ? input.size() : 1;
 
     return new ProcessMethodCallback() {
-      private final LoadingCache<String, MetricsContext> queueMetricsCollectors = CacheBuilder.newBuilder()
-        .expireAfterAccess(1, TimeUnit.HOURS)
-        .build(new CacheLoader<String, MetricsContext>() {
-          @Override
-          public MetricsContext load(String key) throws Exception {
-            return flowletContext.getProgramMetrics().childContext(Constants.Metrics.Tag.FLOWLET_QUEUE, key);
-          }
-        });
-
       @Override
       public void onSuccess(Object object, InputContext inputContext) {
         try {
@@ -403,4 +423,36 @@ final class FlowletProcessDriver extends AbstractExecutionThreadService {
       }
     };
   }
+
+  /**
+   * Adjusts the dequeue batch size based on the time spent in dequeue, process and commit, and emits the
+   * resulting batch size as the {@code process.batch.size} gauge.
+   */
+  private void updateBatchSize(@Nullable AdaptiveBatchSize adaptiveBatchSize, InputDatum<?> input,
+                               boolean success, long elapsedNanos) {
+    if (adaptiveBatchSize == null) {
+      return;
+    }
+    // Only adjust on successful process, as a failed batch doesn't reflect the normal processing time
+    if (success) {
+      adaptiveBatchSize.update(input.size(), elapsedNanos);
+    }
+    QueueName inputQueueName = input.getQueueName();
+    MetricsContext metricsContext = inputQueueName == null
+      ? flowletContext.getProgramMetrics()
+      : queueMetricsCollectors.getUnchecked(inputQueueName.getSimpleName());
+    metricsContext.gauge("process.batch.size", adaptiveBatchSize.get());
+  }
+
+  private static LoadingCache<String, MetricsContext> createQueueMetricsCollectors(
+    final BasicFlowletContext flowletContext) {
+    return CacheBuilder.newBuilder()
+      .expireAfterAccess(1, TimeUnit.HOURS)
+      .build(new CacheLoader<String, MetricsContext>() {
+        @Override
+        public MetricsContext load(String key) throws Exception {
+          return flowletContext.getProgramMetrics().childContext(Constants.Metrics.Tag.FLOWLET_QUEUE, key);
+        }
+      });
+  }
 }
@@ -102,8 +102,14 @@ final class FlowletProcessEntry<T> implements Comparable<FlowletProcessEntry> {
     currentBackOff = BACKOFF_MIN;
   }
 
-  public void backOff() {
-    nextDeque = System.nanoTime() + currentBackOff;
+  /**
+   * Backs off the next dequeue after an empty dequeue. The back-off time is at least the time taken by the empty
+   * dequeue, bounded by the maximum back-off time.
+   *
+   * @param dequeueNanos time in nanoseconds taken by the empty dequeue
+   */
+  public void backOff(long dequeueNanos) {
+    nextDeque = System.nanoTime() + Math.max(currentBackOff, Math.min(dequeueNanos, BACKOFF_MAX));
     if (currentBackOff < BACKOFF_EXP_START) {
       currentBackOff += BACKOFF_CONSTANT_INCREMENT;
     } else {
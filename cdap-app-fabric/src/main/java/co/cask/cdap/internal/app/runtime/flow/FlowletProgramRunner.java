@@ -87,6 +87,8 @@ import co.cask.tephra.TransactionSystemClient;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -115,6 +117,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -127,6 +130,10 @@ public final class FlowletProgramRunner implements ProgramRunner {
 
   private static final Logger LOG = LoggerFactory.getLogger(FlowletProgramRunner.class);
 
+  // Runtime argument for the target time in milliseconds of processing a batch. When set, the dequeue batch size of
+  // @Batch process methods is adjusted within [1, batch size] to meet the target.
+  private static final String ADAPTIVE_BATCH_TARGET_MS = "flowlet.batch.adaptive.target.ms";
+
   private final SchemaGenerator schemaGenerator;
   private final DatumWriterFactory datumWriterFactory;
   private final DataFabricFacadeFactory dataFabricFacadeFactory;
@@ -533,6 +540,9 @@ public final class FlowletProgramRunner implements ProgramRunner {
                                              ProcessMethod<T> method, ConsumerConfig consumerConfig, int batchSize,
                                              Tick tickAnnotation) {
         List<QueueReader<T>> queueReaders = Lists.newLinkedList();
+        AdaptiveBatchSize adaptiveBatchSize = createAdaptiveBatchSize(flowletContext, batchSize);
+        Supplier<Integer> batchSizeSupplier = adaptiveBatchSize == null
+          ? Suppliers.ofInstance(batchSize) : adaptiveBatchSize;
 
         for (Map.Entry<Node, Set<QueueSpecification>> entry : queueSpecs.column(flowletName).entrySet()) {
           for (QueueSpecification queueSpec : entry.getValue()) {
@@ -559,7 +569,7 @@ public final class FlowletProgramRunner implements ProgramRunner {
                   }
                 });
 
-                queueReaders.add(queueReaderFactory.createStreamReader(consumerSupplier, batchSize, decoder));
+                queueReaders.add(queueReaderFactory.createStreamReader(consumerSupplier, batchSizeSupplier, decoder));
 
               } else {
                 int numGroups = getNumGroups(Iterables.concat(queueSpecs.row(entry.getKey()).values()), queueName);
@@ -567,12 +577,14 @@ public final class FlowletProgramRunner implements ProgramRunner {
                   wrapInputDecoder(flowletContext, entry.getKey().getName(), // the producer flowlet,
                                    queueName, createInputDatumDecoder(dataType, schema, schemaCache));
 
+                MetricsContext queueMetrics = flowletContext.getQueueMetrics(queueName.getSimpleName());
                 ConsumerSupplier<QueueConsumer> consumerSupplier = ConsumerSupplier.create(flowletContext.getOwners(),
                                                                                            runtimeUsageRegistry,
                                                                                            dataFabricFacade, queueName,
-                                                                                           consumerConfig, numGroups);
+                                                                                           consumerConfig, numGroups,
+                                                                                           queueMetrics);
                 queueConsumerSupplierBuilder.add(consumerSupplier);
-                queueReaders.add(queueReaderFactory.createQueueReader(consumerSupplier, batchSize, decoder));
+                queueReaders.add(queueReaderFactory.createQueueReader(consumerSupplier, batchSizeSupplier, decoder));
               }
             }
           }
@@ -582,11 +594,37 @@ public final class FlowletProgramRunner implements ProgramRunner {
         if (!inputNames.isEmpty() && queueReaders.isEmpty()) {
           return null;
         }
-        return new ProcessSpecification<>(new RoundRobinQueueReader<>(queueReaders), method, tickAnnotation);
+        return new ProcessSpecification<>(new RoundRobinQueueReader<>(queueReaders), method, tickAnnotation,
+                                          adaptiveBatchSize);
       }
     };
   }
 
+  /**
+   * Creates an {@link AdaptiveBatchSize} for a batch process method if it is enabled through the runtime arguments.
+   *
+   * @return an {@link AdaptiveBatchSize} or {@code null} if the batch size should not be adjusted
+   */
+  @Nullable
+  private AdaptiveBatchSize createAdaptiveBatchSize(BasicFlowletContext flowletContext, int batchSize) {
+    String targetMillis = flowletContext.getRuntimeArguments().get(ADAPTIVE_BATCH_TARGET_MS);
+    if (batchSize <= 1 || targetMillis == null) {
+      return null;
+    }
+    long target;
+    try {
+      target = Long.parseLong(targetMillis);
+    } catch (NumberFormatException e) {
+      LOG.warn("Ignoring invalid value '{}' of runtime argument {} for flowlet {}. Using fixed batch size {}.",
+               targetMillis, ADAPTIVE_BATCH_TARGET_MS, flowletContext.getFlowletId(), batchSize);
+      return null;
+    }
+    if (target <= 0) {
+      return null;
+    }
+    return new AdaptiveBatchSize(batchSize, TimeUnit.MILLISECONDS.toNanos(target));
+  }
+
   private <T> Function<ByteBuffer, T> createInputDatumDecoder(final TypeToken<T> dataType, final Schema schema,
                                                               final SchemaCache schemaCache) {
     final ReflectionDatumReader<T> datumReader = new ReflectionDatumReader<>(schema, dataType);
@@ -21,6 +21,7 @@ import co.cask.cdap.app.queue.QueueReader;
 import com.google.common.base.Objects;
 
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  *
@@ -31,12 +32,19 @@ final class ProcessSpecification<T> {
   private final ProcessMethod<T> processMethod;
   private final Tick tickAnnotation;
   private final boolean isTick;
+  private final AdaptiveBatchSize adaptiveBatchSize;
 
   ProcessSpecification(QueueReader<T> queueReader, ProcessMethod<T> processMethod, Tick tickAnnotation) {
+    this(queueReader, processMethod, tickAnnotation, null);
+  }
+
+  ProcessSpecification(QueueReader<T> queueReader, ProcessMethod<T> processMethod, Tick tickAnnotation,
+                       @Nullable AdaptiveBatchSize adaptiveBatchSize) {
     this.queueReader = queueReader;
     this.processMethod = processMethod;
     this.tickAnnotation = tickAnnotation;
     this.isTick = tickAnnotation != null;
+    this.adaptiveBatchSize = adaptiveBatchSize;
   }
 
   QueueReader<T> getQueueReader() {
@@ -63,6 +71,14 @@ final class ProcessSpecification<T> {
     return isTick;
   }
 
+  /**
+   * Returns the {@link AdaptiveBatchSize} used by the queue reader, or {@code null} if the batch size is fixed.
+   */
+  @Nullable
+  AdaptiveBatchSize getAdaptiveBatchSize() {
+    return adaptiveBatchSize;
+  }
+
   private long convertToNano(long time, TimeUnit unit) {
     return TimeUnit.NANOSECONDS.convert(time, unit);
   }
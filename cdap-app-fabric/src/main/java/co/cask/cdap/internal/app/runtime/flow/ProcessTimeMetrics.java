@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.flow;
+
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.common.queue.QueueName;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Accounts the time a flowlet instance spends in processing inputs as the {@code process.busy.ms} metric of each
+ * input queue, and the time spent in waiting or in dequeuing nothing as the {@code process.idle.ms} metric.
+ * Time is accumulated in nanoseconds and emitted in whole milliseconds, with the sub-millisecond remainder carried
+ * over to the next emission, so that short process calls are still accounted for. This class is not thread-safe.
+ */
+final class ProcessTimeMetrics {
+
+  private final MetricsContext programMetrics;
+  private final LoadingCache<String, MetricsContext> queueMetrics;
+  private final Map<QueueName, ElapsedTimeMetric> busyTimeMetrics;
+  private final ElapsedTimeMetric idleTimeMetric;
+
+  /**
+   * Creates an instance.
+   *
+   * @param programMetrics the metrics context of the flowlet, used for inputs without a queue
+   * @param queueMetrics the metrics contexts of the input queues, by the simple queue name
+   */
+  ProcessTimeMetrics(MetricsContext programMetrics, LoadingCache<String, MetricsContext> queueMetrics) {
+    this.programMetrics = programMetrics;
+    this.queueMetrics = queueMetrics;
+    this.busyTimeMetrics = Maps.newHashMap();
+    this.idleTimeMetric = new ElapsedTimeMetric(programMetrics, "process.idle.ms");
+  }
+
+  /**
+   * Adds time spent in dequeuing, processing and committing an input from the given queue.
+   *
+   * @param inputQueueName name of the input queue, or {@code null} for a tick or generator method
+   */
+  void addBusyTime(@Nullable QueueName inputQueueName, long elapsedNanos) {
+    ElapsedTimeMetric metric = busyTimeMetrics.get(inputQueueName);
+    if (metric == null) {
+      MetricsContext metricsContext = inputQueueName == null
+        ? programMetrics
+        : queueMetrics.getUnchecked(inputQueueName.getSimpleName());
+      metric = new ElapsedTimeMetric(metricsContext, "process.busy.ms");
+      busyTimeMetrics.put(inputQueueName, metric);
+    }
+    metric.add(elapsedNanos);
+  }
+
+  /**
+   * Adds time spent in waiting for the next process entry or in dequeuing nothing.
+   */
+  void addIdleTime(long elapsedNanos) {
+    idleTimeMetric.add(elapsedNanos);
+  }
+
+  /**
+   * Accumulates elapsed time and emits it as a metric in milliseconds.
+   */
+  private static final class ElapsedTimeMetric {
+
+    private final MetricsContext metricsContext;
+    private final String metricName;
+    private long nanos;
+
+    ElapsedTimeMetric(MetricsContext metricsContext, String metricName) {
+      this.metricsContext = metricsContext;
+      this.metricName = metricName;
+    }
+
+    void add(long elapsedNanos) {
+      nanos += elapsedNanos;
+      long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+      if (millis > 0) {
+        metricsContext.increment(metricName, millis);
+        nanos -= TimeUnit.MILLISECONDS.toNanos(millis);
+      }
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.flow;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test for {@link AdaptiveBatchSize}.
+ */
+public class AdaptiveBatchSizeTest {
+
+  private static final long TARGET = TimeUnit.MILLISECONDS.toNanos(100);
+
+  @Test
+  public void testShrink() {
+    AdaptiveBatchSize batchSize = new AdaptiveBatchSize(100, TARGET);
+    Assert.assertEquals(100, batchSize.get().intValue());
+
+    // Slow batches halve the batch size, down to 1
+    batchSize.update(100, TARGET + 1);
+    Assert.assertEquals(50, batchSize.get().intValue());
+    for (int i = 0; i < 10; i++) {
+      batchSize.update(batchSize.get(), TARGET * 2);
+    }
+    Assert.assertEquals(1, batchSize.get().intValue());
+  }
+
+  @Test
+  public void testGrow() {
+    AdaptiveBatchSize batchSize = new AdaptiveBatchSize(100, TARGET);
+    batchSize.update(100, TARGET * 2);
+    batchSize.update(50, TARGET * 2);
+    Assert.assertEquals(25, batchSize.get().intValue());
+
+    // Partial batch doesn't grow the batch size, since there is no backlog
+    batchSize.update(10, 0L);
+    Assert.assertEquals(25, batchSize.get().intValue());
+
+    // Batch that is full but not fast enough doesn't grow the batch size either
+    batchSize.update(25, TARGET / 2 + 1);
+    Assert.assertEquals(25, batchSize.get().intValue());
+
+    // Fast full batches grow the batch size, up to the maximum
+    batchSize.update(25, TARGET / 2);
+    Assert.assertEquals(31, batchSize.get().intValue());
+    for (int i = 0; i < 20; i++) {
+      batchSize.update(batchSize.get(), 0L);
+    }
+    Assert.assertEquals(100, batchSize.get().intValue());
+  }
+}
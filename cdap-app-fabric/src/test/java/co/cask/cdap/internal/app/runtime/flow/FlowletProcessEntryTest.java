@@ -43,6 +43,21 @@ public class FlowletProcessEntryTest {
     Assert.assertEquals(Long.MAX_VALUE, entry.getNextDeque());
   }
 
+  @Test
+  public void testBackOffDequeueTime() {
+    FlowletProcessEntry entry = FlowletProcessEntry.create(
+      new ProcessSpecification<>(null, null, new TickObject(0)));
+
+    // Back-off is at least the dequeue time
+    long nanoTimeStart = System.nanoTime();
+    entry.backOff(TimeUnit.MILLISECONDS.toNanos(50));
+    Assert.assertTrue(entry.getNextDeque() - nanoTimeStart >= TimeUnit.MILLISECONDS.toNanos(50));
+
+    // But never longer than the maximum back-off time
+    entry.backOff(TimeUnit.SECONDS.toNanos(10));
+    Assert.assertTrue(entry.getNextDeque() - System.nanoTime() <= TimeUnit.MILLISECONDS.toNanos(100));
+  }
+
   private long floorNanosToSec(long nanoseconds) {
     return TimeUnit.SECONDS.toNanos(TimeUnit.NANOSECONDS.toSeconds(nanoseconds));
   }
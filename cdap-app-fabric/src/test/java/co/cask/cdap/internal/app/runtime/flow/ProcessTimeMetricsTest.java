@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.internal.app.runtime.flow;
+
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.queue.QueueName;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test for {@link ProcessTimeMetrics}.
+ */
+public class ProcessTimeMetricsTest {
+
+  private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void testIdleTime() {
+    RecordingMetricsContext programMetrics = new RecordingMetricsContext(Collections.<String, String>emptyMap());
+    ProcessTimeMetrics metrics = new ProcessTimeMetrics(programMetrics, createQueueMetrics(programMetrics));
+
+    // Less than a millisecond is not emitted, but carried over
+    metrics.addIdleTime(MILLI / 2);
+    Assert.assertEquals(0L, programMetrics.get("process.idle.ms"));
+    metrics.addIdleTime(MILLI / 2);
+    Assert.assertEquals(1L, programMetrics.get("process.idle.ms"));
+
+    // Only whole milliseconds are emitted, the remainder is added to the next time
+    metrics.addIdleTime(MILLI * 5 / 2);
+    Assert.assertEquals(3L, programMetrics.get("process.idle.ms"));
+    metrics.addIdleTime(MILLI / 2);
+    Assert.assertEquals(4L, programMetrics.get("process.idle.ms"));
+
+    // Many short calls add up
+    for (int i = 0; i < 1000; i++) {
+      metrics.addIdleTime(MILLI / 100);
+    }
+    Assert.assertEquals(14L, programMetrics.get("process.idle.ms"));
+    Assert.assertEquals(0L, programMetrics.get("process.busy.ms"));
+  }
+
+  @Test
+  public void testBusyTime() {
+    RecordingMetricsContext programMetrics = new RecordingMetricsContext(Collections.<String, String>emptyMap());
+    ProcessTimeMetrics metrics = new ProcessTimeMetrics(programMetrics, createQueueMetrics(programMetrics));
+
+    QueueName queue1 = QueueName.fromFlowlet("ns", "app", "flow", "flowlet1", "out");
+    QueueName queue2 = QueueName.fromFlowlet("ns", "app", "flow", "flowlet2", "out");
+    RecordingMetricsContext queue1Metrics = programMetrics.getChild(Constants.Metrics.Tag.FLOWLET_QUEUE,
+                                                                    queue1.getSimpleName());
+    RecordingMetricsContext queue2Metrics = programMetrics.getChild(Constants.Metrics.Tag.FLOWLET_QUEUE,
+                                                                    queue2.getSimpleName());
+
+    // Busy time is accounted for each input queue separately, with a separate remainder
+    metrics.addBusyTime(queue1, MILLI * 3 / 2);
+    metrics.addBusyTime(queue2, MILLI / 2);
+    Assert.assertEquals(1L, queue1Metrics.get("process.busy.ms"));
+    Assert.assertEquals(0L, queue2Metrics.get("process.busy.ms"));
+    metrics.addBusyTime(queue2, MILLI / 2);
+    Assert.assertEquals(1L, queue1Metrics.get("process.busy.ms"));
+    Assert.assertEquals(1L, queue2Metrics.get("process.busy.ms"));
+    metrics.addBusyTime(queue1, MILLI / 2);
+    Assert.assertEquals(2L, queue1Metrics.get("process.busy.ms"));
+
+    // Ticks and generators have no input queue, their busy time goes to the flowlet metrics
+    metrics.addBusyTime(null, MILLI * 2);
+    Assert.assertEquals(2L, programMetrics.get("process.busy.ms"));
+
+    // Idle time is separate from busy time
+    metrics.addIdleTime(MILLI);
+    Assert.assertEquals(1L, programMetrics.get("process.idle.ms"));
+    Assert.assertEquals(2L, programMetrics.get("process.busy.ms"));
+    Assert.assertEquals(0L, queue1Metrics.get("process.idle.ms"));
+  }
+
+  private LoadingCache<String, MetricsContext> createQueueMetrics(final MetricsContext programMetrics) {
+    return CacheBuilder.newBuilder().build(new CacheLoader<String, MetricsContext>() {
+      @Override
+      public MetricsContext load(String key) throws Exception {
+        return programMetrics.childContext(Constants.Metrics.Tag.FLOWLET_QUEUE, key);
+      }
+    });
+  }
+
+  /**
+   * A {@link MetricsContext} that sums up the counters incremented in it, and keeps one child context per tags.
+   */
+  private static final class RecordingMetricsContext implements MetricsContext {
+
+    private final Map<String, String> tags;
+    private final Map<String, Long> counters = Maps.newHashMap();
+    private final Map<Map<String, String>, RecordingMetricsContext> children = Maps.newHashMap();
+
+    RecordingMetricsContext(Map<String, String> tags) {
+      this.tags = tags;
+    }
+
+    long get(String metricName) {
+      Long value = counters.get(metricName);
+      return value == null ? 0L : value;
+    }
+
+    RecordingMetricsContext getChild(String tagName, String tagValue) {
+      return (RecordingMetricsContext) childContext(tagName, tagValue);
+    }
+
+    @Override
+    public MetricsContext childContext(Map<String, String> tags) {
+      Map<String, String> childTags = ImmutableMap.<String, String>builder().putAll(this.tags).putAll(tags).build();
+      RecordingMetricsContext child = children.get(childTags);
+      if (child == null) {
+        child = new RecordingMetricsContext(childTags);
+        children.put(childTags, child);
+      }
+      return child;
+    }
+
+    @Override
+    public MetricsContext childContext(String tagName, String tagValue) {
+      return childContext(ImmutableMap.of(tagName, tagValue));
+    }
+
+    @Override
+    public Map<String, String> getTags() {
+      return tags;
+    }
+
+    @Override
+    public void increment(String metricName, long value) {
+      counters.put(metricName, get(metricName) + value);
+    }
+
+    @Override
+    public void gauge(String metricName, long value) {
+      counters.put(metricName, value);
+    }
+  }
+}
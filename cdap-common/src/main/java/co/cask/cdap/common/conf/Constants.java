@@ -242,11 +242,24 @@ public final class Constants {
     // tables. Constant could be moved to Table after that is changed. See CDAP-1193 for more info
     public static final String TABLE_TX_DISABLED = "dataset.table.tx.disabled";
 
+    // Table dataset property that selects the implementation of the in-memory buffer for transaction changes.
+    // Either "default" or "arena", see TableProperties.
+    public static final String TABLE_WRITE_BUFFER = "dataset.table.write.buffer";
+    // Table dataset properties for spilling transaction changes to local disk when the in-memory buffer
+    // grows beyond the threshold in bytes. Spilling is disabled if the threshold is not set.
+    public static final String TABLE_WRITE_BUFFER_SPILL_THRESHOLD = "dataset.table.write.buffer.spill.threshold";
+    public static final String TABLE_WRITE_BUFFER_SPILL_DIR = "dataset.table.write.buffer.spill.dir";
+
     public static final String DATA_DIR = "dataset.data.dir";
     public static final String DEFAULT_DATA_DIR = "data";
 
     public static final String DATASET_UNCHECKED_UPGRADE = "dataset.unchecked.upgrade";
 
+    // Time in seconds that RemoteDatasetFramework caches dataset instance and type metadata
+    public static final String META_CACHE_EXPIRATION_SECS = "dataset.meta.cache.expiration.secs";
+    // Value of META_CACHE_EXPIRATION_SECS in program containers
+    public static final String PROGRAM_META_CACHE_EXPIRATION_SECS = "dataset.program.meta.cache.expiration.secs";
+
     /**
      * Constants for PartitionedFileSet's DynamicPartitioner
      */
@@ -324,12 +337,16 @@ public final class Constants {
     public static final String TTL = "stream.event.ttl";
     public static final String PARTITION_DURATION = "stream.partition.duration";
     public static final String INDEX_INTERVAL = "stream.index.interval";
+    public static final String INDEX_SIZE_INTERVAL = "stream.index.size.interval";
+    public static final String FILE_BLOCK_CODEC = "stream.file.block.codec";
     public static final String FILE_PREFIX = "stream.file.prefix";
     public static final String INSTANCE_FILE_PREFIX = "stream.instance.file.prefix";
     public static final String CONSUMER_TABLE_PRESPLITS = "stream.consumer.table.presplits";
     public static final String FILE_CLEANUP_PERIOD = "stream.file.cleanup.period";
     public static final String BATCH_BUFFER_THRESHOLD = "stream.batch.buffer.threshold";
     public static final String NOTIFICATION_THRESHOLD = "stream.notification.threshold";
+    public static final String CONSUMER_ZERO_COPY = "stream.consumer.zero.copy";
+    public static final String CONSUMER_READ_AHEAD_SIZE = "stream.consumer.read.ahead.size";
 
     // Stream http service configurations.
     public static final String STREAM_HANDLER = "stream.handler";
@@ -337,6 +354,10 @@ public final class Constants {
     public static final String WORKER_THREADS = "stream.worker.threads";
     public static final String ASYNC_WORKER_THREADS = "stream.async.worker.threads";
     public static final String ASYNC_QUEUE_SIZE = "stream.async.queue.size";
+    public static final String GROUP_COMMIT_ENABLED = "stream.group.commit.enabled";
+    public static final String GROUP_COMMIT_BUFFER_SIZE = "stream.group.commit.buffer.size";
+    public static final String GROUP_COMMIT_MAX_BATCH = "stream.group.commit.max.batch";
+    public static final String GROUP_COMMIT_MAX_LATENCY_MS = "stream.group.commit.max.latency.ms";
 
     // YARN container configurations.
     public static final String CONTAINER_VIRTUAL_CORES = "stream.container.num.cores";
@@ -416,6 +437,7 @@ public final class Constants {
     public static final String CLIENT_BOSS_THREADS = "router.client.boss.threads";
     public static final String CLIENT_WORKER_THREADS = "router.client.worker.threads";
     public static final String CONNECTION_TIMEOUT_SECS = "router.connection.idle.timeout.secs";
+    public static final String UPSTREAM_MAX_CONNECTIONS = "router.upstream.max.connections";
 
     /**
      * Defaults.
@@ -459,11 +481,15 @@ public final class Constants {
 
     public static final String SERVER_ADDRESS = "metrics.query.bind.address";
     public static final String SERVER_PORT = "metrics.query.bind.port";
+    public static final String QUERY_PARALLELISM = "metrics.query.parallelism";
 
     public static final String KAFKA_TOPIC_PREFIX = "metrics.kafka.topic.prefix";
     public static final String KAFKA_PARTITION_SIZE = "metrics.kafka.partition.size";
     public static final String KAFKA_CONSUMER_PERSIST_THRESHOLD = "metrics.kafka.consumer.persist.threshold";
     public static final String KAFKA_META_TABLE = "metrics.kafka.meta.table";
+    public static final String KAFKA_BATCH_ENCODING_ENABLED = "metrics.kafka.batch.encoding.enabled";
+    public static final String PROCESSOR_DECODE_THREADS = "metrics.processor.decode.threads";
+    public static final String PROCESSOR_QUEUE_SIZE = "metrics.processor.queue.size";
 
     public static final String DEFAULT_KAFKA_META_TABLE = "metrics.kafka.meta";
     public static final String DEFAULT_KAFKA_TOPIC_PREFIX = "metrics";
@@ -473,9 +499,13 @@ public final class Constants {
     public static final String DEFAULT_METRIC_TABLE_PREFIX = "metrics.v2.table";
     public static final int DEFAULT_TIME_SERIES_TABLE_ROLL_TIME = 3600;
     public static final long DEFAULT_RETENTION_HOURS = 2;
+    public static final int DEFAULT_QUERY_PARALLELISM = 1;
 
     public static final int DEFAULT_KAFKA_CONSUMER_PERSIST_THRESHOLD = 100;
     public static final int DEFAULT_KAFKA_PARTITION_SIZE = 1;
+    public static final boolean DEFAULT_KAFKA_BATCH_ENCODING_ENABLED = false;
+    public static final int DEFAULT_PROCESSOR_DECODE_THREADS = 2;
+    public static final int DEFAULT_PROCESSOR_QUEUE_SIZE = 16;
 
     /**
      * Metric's dataset related constants.
@@ -660,6 +690,10 @@ public final class Constants {
     public static final String TOKEN_DIGEST_KEY_EXPIRATION = "security.token.digest.key.expiration.ms";
     /** Parent znode used for secret key distribution in ZooKeeper. */
     public static final String DIST_KEY_PARENT_ZNODE = "security.token.distributed.parent.znode";
+    /** Maximum number of validated access tokens to cache. A value of zero or less disables the cache. */
+    public static final String TOKEN_VALIDATION_CACHE_SIZE = "security.token.validation.cache.size";
+    /** Time duration in milliseconds that a validated access token is cached. */
+    public static final String TOKEN_VALIDATION_CACHE_EXPIRATION = "security.token.validation.cache.expiration.ms";
     /** Deprecated. Use AUTH_SERVER_BIND_ADDRESS instead. **/
     @Deprecated
     public static final String AUTH_SERVER_ADDRESS = "security.auth.server.address";
@@ -874,6 +908,7 @@ public final class Constants {
   public static final String CFG_DATA_LEVELDB_BLOCKSIZE = "data.local.storage.blocksize";
   public static final String CFG_DATA_LEVELDB_CACHESIZE = "data.local.storage.cachesize";
   public static final String CFG_DATA_LEVELDB_FSYNC = "data.local.storage.fsync";
+  public static final String CFG_DATA_LEVELDB_ROW_LOCK_STRIPES = "data.local.storage.row.lock.stripes";
 
   /**
    * Defaults for Data Fabric.
@@ -882,6 +917,7 @@ public final class Constants {
   public static final int DEFAULT_DATA_LEVELDB_BLOCKSIZE = 1024;
   public static final long DEFAULT_DATA_LEVELDB_CACHESIZE = 1024 * 1024 * 100;
   public static final boolean DEFAULT_DATA_LEVELDB_FSYNC = true;
+  public static final int DEFAULT_DATA_LEVELDB_ROW_LOCK_STRIPES = 256;
 
   /**
    * Config for Log Collection.
@@ -111,13 +111,25 @@ public final class StreamEventDataCodec {
   public static StreamEventData decode(Decoder decoder, Map<String, String> defaultHeaders) throws IOException {
     // Reads the body
     ByteBuffer body = decoder.readBytes();
+    return new StreamEventData(decodeHeaders(decoder, defaultHeaders), body);
+  }
 
-    // Reads the headers
+  /**
+   * Decodes the headers of an encoded {@link StreamEventData}, which come right after the body.
+   *
+   * @param decoder the decoder to read data from
+   * @param defaultHeaders A map of headers available by default.
+   * @return the given default headers if the event doesn't have headers; otherwise a new map containing
+   *         the default headers and the event headers
+   * @throws IOException If there is any IO error during decoding.
+   */
+  public static Map<String, String> decodeHeaders(Decoder decoder,
+                                                  Map<String, String> defaultHeaders) throws IOException {
     int len = decoder.readInt();
 
     // A special optimization for the case where there is no event header.
     if (len == 0) {
-      return new StreamEventData(defaultHeaders, body);
+      return defaultHeaders;
     }
 
     Map<String, String> headers = defaultHeaders.isEmpty() ? Maps.<String, String>newHashMap()
@@ -130,8 +142,7 @@ public final class StreamEventDataCodec {
       }
       len = decoder.readInt();
     } while (len != 0);
-    return new StreamEventData(headers, body);
-
+    return headers;
   }
 
   /**
@@ -143,8 +154,16 @@ public final class StreamEventDataCodec {
   public static void skip(Decoder decoder) throws IOException {
     // Skips the body
     decoder.skipBytes();
+    skipHeaders(decoder);
+  }
 
-    // Skips the headers
+  /**
+   * Skips the headers of an encoded {@link co.cask.cdap.api.stream.StreamEventData}.
+   *
+   * @param decoder Decoder to skip data from.
+   * @throws IOException If there is any IO error during decoding.
+   */
+  public static void skipHeaders(Decoder decoder) throws IOException {
     int len = decoder.readInt();
     while (len != 0) {
       for (int i = 0; i < len; i++) {
@@ -16,8 +16,11 @@
 package co.cask.cdap.data.stream;
 
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
+import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data.file.FileWriter;
+import co.cask.cdap.data.file.ReadFilter;
 import co.cask.cdap.data2.security.Impersonator;
 import co.cask.cdap.data2.security.UnsupportedUGIProvider;
 import co.cask.cdap.data2.transaction.stream.StreamConfig;
@@ -25,8 +28,12 @@ import co.cask.cdap.proto.Id;
 import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.apache.twill.filesystem.Location;
 import org.apache.twill.filesystem.LocationFactory;
 import org.junit.Assert;
@@ -37,6 +44,8 @@ import org.junit.rules.TemporaryFolder;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -260,9 +269,183 @@ public abstract class MultiLiveStreamFileReaderTestBase {
     reader.close();
   }
 
+  @Test
+  public void testReadAhead() throws Exception {
+    String streamName = "readAhead";
+    Id.Stream streamId = Id.Stream.from(Id.Namespace.DEFAULT, streamName);
+    Location location = getLocationFactory().create(streamName);
+    location.mkdirs();
+
+    // Create a stream with 1 partition.
+    StreamConfig config = new StreamConfig(streamId, Long.MAX_VALUE, 10000, Long.MAX_VALUE, location, null, 1000);
+
+    // Write out 200 events in 5 files, with interleaving timestamps
+    for (int i = 0; i < 5; i++) {
+      FileWriter<StreamEvent> writer = createWriter(config, "bucket" + i);
+      for (int j = 0; j < 200; j++) {
+        long timestamp = j * 5 + i;
+        writer.append(StreamFileTestUtils.createEvent(timestamp, "Testing " + timestamp));
+      }
+      writer.close();
+    }
+
+    List<StreamFileOffset> sources = Lists.newArrayList();
+    Location partitionLocation = StreamUtils.createPartitionLocation(config.getLocation(), 0, Long.MAX_VALUE);
+    for (int i = 0; i < 5; i++) {
+      Location eventFile = StreamUtils.createStreamLocation(partitionLocation, "bucket" + i, 0, StreamFileType.EVENT);
+      sources.add(new StreamFileOffset(eventFile, 0L, 0));
+    }
+
+    // Read 250 events with a read-ahead buffer that is smaller than the batch size. Events should be in order.
+    MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(config, sources, false, 4);
+    reader.initialize();
+    List<StreamEvent> events = Lists.newArrayList();
+    long expectedTimestamp = 0L;
+    for (int i = 0; i < 25; i++) {
+      Assert.assertEquals(10, reader.read(events, 10, 0, TimeUnit.SECONDS));
+      for (StreamEvent event : events) {
+        Assert.assertEquals(expectedTimestamp, event.getTimestamp());
+        Assert.assertEquals("Testing " + expectedTimestamp, Charsets.UTF_8.decode(event.getBody()).toString());
+        expectedTimestamp++;
+      }
+      events.clear();
+    }
+    Assert.assertEquals(5, reader.getSourceLags().size());
+
+    // Offsets should only cover events returned, not the one buffered by read-ahead
+    List<StreamFileOffset> offsets = ImmutableList.copyOf(
+      Iterables.transform(reader.getPosition(), new Function<StreamFileOffset, StreamFileOffset>() {
+      @Override
+      public StreamFileOffset apply(StreamFileOffset input) {
+        return new StreamFileOffset(input);
+      }
+    }));
+    reader.close();
+
+    // Resume from the offsets and read the remaining 750 events.
+    reader = new MultiLiveStreamFileReader(config, offsets, false, 4);
+    reader.initialize();
+    for (int i = 0; i < 75; i++) {
+      Assert.assertEquals(10, reader.read(events, 10, 0, TimeUnit.SECONDS));
+      for (StreamEvent event : events) {
+        Assert.assertEquals(expectedTimestamp, event.getTimestamp());
+        expectedTimestamp++;
+      }
+      events.clear();
+    }
+
+    Assert.assertEquals(0, reader.read(events, 10, 200, TimeUnit.MILLISECONDS));
+    reader.close();
+  }
+
+  @Test
+  public void testReadAheadFilterAndLag() throws Exception {
+    String streamName = "readAheadFilter";
+    Id.Stream streamId = Id.Stream.from(Id.Namespace.DEFAULT, streamName);
+    Location location = getLocationFactory().create(streamName);
+    location.mkdirs();
+
+    // Create a stream with 1 partition.
+    StreamConfig config = new StreamConfig(streamId, Long.MAX_VALUE, 10000, Long.MAX_VALUE, location, null, 1000);
+
+    // Write out 100 events in 5 files, with interleaving timestamps
+    List<StreamFileOffset> sources = Lists.newArrayList();
+    Location partitionLocation = StreamUtils.createPartitionLocation(config.getLocation(), 0, Long.MAX_VALUE);
+    for (int i = 0; i < 5; i++) {
+      try (FileWriter<StreamEvent> writer = createWriter(config, "bucket" + i)) {
+        for (int j = 0; j < 100; j++) {
+          long timestamp = j * 5 + i;
+          writer.append(StreamFileTestUtils.createEvent(timestamp, "Testing " + timestamp));
+        }
+      }
+      Location eventFile = StreamUtils.createStreamLocation(partitionLocation, "bucket" + i, 0, StreamFileType.EVENT);
+      sources.add(new StreamFileOffset(eventFile, 0L, 0));
+    }
+
+    // Only accept events with even timestamps, and memorize the threads that apply the filter
+    final Set<Thread> filterThreads = Sets.newSetFromMap(Maps.<Thread, Boolean>newConcurrentMap());
+    ReadFilter filter = new ReadFilter() {
+      @Override
+      public boolean acceptTimestamp(long timestamp) {
+        filterThreads.add(Thread.currentThread());
+        return timestamp % 2 == 0;
+      }
+    };
+    Map<String, Long> lags = Maps.newConcurrentMap();
+
+    MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(config, sources, false, 4,
+                                                                     new LagRecordingMetricsContext(lags));
+    reader.initialize();
+    List<StreamEvent> events = Lists.newArrayList();
+    long expectedTimestamp = 0L;
+    for (int i = 0; i < 25; i++) {
+      Assert.assertEquals(10, reader.read(events, 10, 0, TimeUnit.SECONDS, filter));
+      for (StreamEvent event : events) {
+        Assert.assertEquals(expectedTimestamp, event.getTimestamp());
+        expectedTimestamp += 2;
+      }
+      events.clear();
+    }
+    Assert.assertEquals(0, reader.read(events, 10, 200, TimeUnit.MILLISECONDS, filter));
+    reader.close();
+
+    // The filter should be applied by the read-ahead threads as well
+    filterThreads.remove(Thread.currentThread());
+    Assert.assertFalse(filterThreads.isEmpty());
+
+    // The read lag should be reported for each stream file
+    Assert.assertEquals(ImmutableSet.of("bucket0", "bucket1", "bucket2", "bucket3", "bucket4"), lags.keySet());
+  }
+
   private FileWriter<StreamEvent> createWriter(StreamConfig config, String prefix) {
     return new TimePartitionedStreamFileWriter(config.getLocation(), config.getPartitionDuration(),
                                                prefix, config.getIndexInterval(), config.getStreamId().toEntityId(),
                                                impersonator);
   }
+
+  /**
+   * A {@link MetricsContext} that records the latest read lag gauge, keyed by the producer tag.
+   */
+  private static final class LagRecordingMetricsContext implements MetricsContext {
+
+    private final Map<String, Long> lags;
+    private final Map<String, String> tags;
+
+    LagRecordingMetricsContext(Map<String, Long> lags) {
+      this(lags, ImmutableMap.<String, String>of());
+    }
+
+    private LagRecordingMetricsContext(Map<String, Long> lags, Map<String, String> tags) {
+      this.lags = lags;
+      this.tags = tags;
+    }
+
+    @Override
+    public MetricsContext childContext(Map<String, String> tags) {
+      return new LagRecordingMetricsContext(lags, ImmutableMap.<String, String>builder()
+        .putAll(this.tags).putAll(tags).build());
+    }
+
+    @Override
+    public MetricsContext childContext(String tagName, String tagValue) {
+      return childContext(ImmutableMap.of(tagName, tagValue));
+    }
+
+    @Override
+    public Map<String, String> getTags() {
+      return tags;
+    }
+
+    @Override
+    public void increment(String metricName, long value) {
+      // no-op
+    }
+
+    @Override
+    public void gauge(String metricName, long value) {
+      if ("stream.read.lag.ms".equals(metricName)) {
+        lags.put(tags.get(Constants.Metrics.Tag.PRODUCER), value);
+      }
+    }
+  }
 }
@@ -53,6 +53,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
@@ -313,6 +314,113 @@ public abstract class StreamDataFileTestBase {
     }
   }
 
+  @Test
+  public void testIndexSizeInterval() throws Exception {
+    Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
+    Location eventFile = dir.getTempFile(".dat");
+    Location indexFile = dir.getTempFile(".idx");
+
+    // Write 3 data blocks for each timestamp, with an index entry emitted for every data block by size.
+    StreamDataFileWriter writer = new StreamDataFileWriter(Locations.newOutputSupplier(eventFile),
+                                                           Locations.newOutputSupplier(indexFile),
+                                                           1000000L, 1L, ImmutableMap.<String, String>of());
+    for (int i = 0; i < 10; i++) {
+      for (int j = 0; j < 3; j++) {
+        for (int k = 0; k < 5; k++) {
+          writer.append(StreamFileTestUtils.createEvent(1000 + i, "Testing " + i + " " + j + " " + k));
+        }
+        writer.flush();
+      }
+    }
+    writer.close();
+
+    try (InputStream indexInput = Locations.newInputSupplier(indexFile).getInput()) {
+      Assert.assertEquals(30, StreamDataFileIndex.load(indexInput).size());
+    }
+
+    // Reading by time must start from the first data block with the given timestamp.
+    for (int i = 0; i < 10; i++) {
+      long ts = 1000 + i;
+      try (StreamDataFileReader reader =
+             StreamDataFileReader.createByStartTime(Locations.newInputSupplier(eventFile),
+                                                    Locations.newInputSupplier(indexFile), ts)) {
+        List<StreamEvent> events = Lists.newArrayList();
+        Assert.assertEquals((10 - i) * 15, reader.read(events, Integer.MAX_VALUE, 0, TimeUnit.SECONDS));
+        Assert.assertEquals(ts, events.get(0).getTimestamp());
+        Assert.assertEquals("Testing " + i + " 0 0", Charsets.UTF_8.decode(events.get(0).getBody()).toString());
+      }
+    }
+  }
+
+  @Test
+  public void testCompressedBlocks() throws Exception {
+    Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
+    Location eventFile = dir.getTempFile(".dat");
+    Location indexFile = dir.getTempFile(".idx");
+    Location rawEventFile = dir.getTempFile(".dat");
+    Location rawIndexFile = dir.getTempFile(".idx");
+
+    // Write the same events to a file with compressed data blocks and a file without compression
+    StreamDataFileWriter writer = new StreamDataFileWriter(
+      Locations.newOutputSupplier(eventFile), Locations.newOutputSupplier(indexFile), 5L, 0L,
+      ImmutableMap.of(StreamDataFileConstants.Property.Key.BLOCK_CODEC,
+                      StreamDataFileConstants.Property.Value.DEFLATE_CODEC));
+    StreamDataFileWriter rawWriter = new StreamDataFileWriter(Locations.newOutputSupplier(rawEventFile),
+                                                              Locations.newOutputSupplier(rawIndexFile), 5L);
+    for (int i = 0; i < 10; i++) {
+      for (int j = 0; j < 20; j++) {
+        StreamEvent event = StreamFileTestUtils.createEvent(1000 + i, "Testing compressed block " + i + " " + j);
+        writer.append(event);
+        rawWriter.append(event);
+      }
+    }
+    writer.close();
+    rawWriter.close();
+
+    Assert.assertTrue(eventFile.length() < rawEventFile.length());
+
+    // Read all events. Positions must be strictly increasing.
+    List<PositionStreamEvent> events = Lists.newArrayList();
+    try (StreamDataFileReader reader = StreamDataFileReader.create(Locations.newInputSupplier(eventFile))) {
+      Assert.assertEquals(200, reader.read(events, Integer.MAX_VALUE, 0, TimeUnit.SECONDS));
+    }
+    long lastPosition = -1L;
+    for (int i = 0; i < 200; i++) {
+      PositionStreamEvent event = events.get(i);
+      Assert.assertEquals(1000 + i / 20, event.getTimestamp());
+      Assert.assertEquals("Testing compressed block " + (i / 20) + " " + (i % 20),
+                          Charsets.UTF_8.decode(event.getBody()).toString());
+      Assert.assertTrue(event.getStart() > lastPosition);
+      lastPosition = event.getStart();
+    }
+
+    // Reading from the position of any event must start from that event.
+    for (int i = 0; i < 200; i += 7) {
+      try (StreamDataFileReader reader = StreamDataFileReader.createWithOffset(
+        Locations.newInputSupplier(eventFile), Locations.newInputSupplier(indexFile), events.get(i).getStart())) {
+        List<PositionStreamEvent> result = Lists.newArrayList();
+        Assert.assertEquals(200 - i, reader.read(result, Integer.MAX_VALUE, 0, TimeUnit.SECONDS));
+        Assert.assertEquals(events.get(i).getStart(), result.get(0).getStart());
+      }
+    }
+
+    // Read with zero-copy decoding, then read by time.
+    try (StreamDataFileReader reader = StreamDataFileReader.createWithOffset(
+      Locations.newInputSupplier(eventFile), Locations.newInputSupplier(indexFile), 0L, true)) {
+      List<PositionStreamEvent> result = Lists.newArrayList();
+      Assert.assertEquals(200, reader.read(result, Integer.MAX_VALUE, 0, TimeUnit.SECONDS));
+      Assert.assertEquals("Testing compressed block 9 19",
+                          Charsets.UTF_8.decode(result.get(199).getBody()).toString());
+    }
+    try (StreamDataFileReader reader =
+           StreamDataFileReader.createByStartTime(Locations.newInputSupplier(eventFile),
+                                                  Locations.newInputSupplier(indexFile), 1007L)) {
+      List<StreamEvent> result = Lists.newArrayList();
+      Assert.assertEquals(60, reader.read(result, Integer.MAX_VALUE, 0, TimeUnit.SECONDS));
+      Assert.assertEquals(1007L, result.get(0).getTimestamp());
+    }
+  }
+
   @Test
   public void testPosition() throws Exception {
     Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
@@ -928,6 +1036,60 @@ public abstract class StreamDataFileTestBase {
     }
   }
 
+  @Test
+  public void testZeroCopyRead() throws IOException, InterruptedException {
+    Location dir = StreamFileTestUtils.createTempDir(getLocationFactory());
+    Location eventFile = dir.getTempFile(".dat");
+    Location indexFile = dir.getTempFile(".idx");
+
+    // Writes events with and without headers, with multiple events in each data block
+    List<StreamEvent> expected = Lists.newArrayList();
+    try (StreamDataFileWriter writer = new StreamDataFileWriter(Locations.newOutputSupplier(eventFile),
+                                                                Locations.newOutputSupplier(indexFile),
+                                                                10000L)) {
+      for (int i = 0; i < 10; i++) {
+        List<StreamEvent> block = Lists.newArrayList();
+        for (int j = 0; j < 10; j++) {
+          Map<String, String> headers = j % 2 == 0 ? ImmutableMap.<String, String>of()
+                                                   : ImmutableMap.of("key" + j, "value" + i);
+          block.add(new StreamEvent(headers, Charsets.UTF_8.encode("Event " + i + " " + j), i));
+        }
+        writer.appendAll(block.iterator());
+        expected.addAll(block);
+      }
+    }
+
+    // Read with zero-copy mode. Events read earlier must stay valid while later blocks are read.
+    List<PositionStreamEvent> events = Lists.newArrayList();
+    try (StreamDataFileReader reader = StreamDataFileReader.createWithOffset(Locations.newInputSupplier(eventFile),
+                                                                             Locations.newInputSupplier(indexFile),
+                                                                             0L, true)) {
+      while (reader.read(events, 7, 0, TimeUnit.SECONDS) >= 0) {
+        // Keep reading until the end of file
+      }
+    }
+
+    Assert.assertEquals(expected.size(), events.size());
+    for (int i = 0; i < expected.size(); i++) {
+      StreamEvent expectedEvent = expected.get(i);
+      PositionStreamEvent event = events.get(i);
+      Assert.assertEquals(expectedEvent.getTimestamp(), event.getTimestamp());
+      Assert.assertEquals(Charsets.UTF_8.decode(expectedEvent.getBody().duplicate()).toString(),
+                          Charsets.UTF_8.decode(event.getBody()).toString());
+      Assert.assertTrue(event.getBody().isReadOnly());
+      Assert.assertEquals(expectedEvent.getHeaders(), event.getHeaders());
+    }
+
+    // Positions must be the same as reading without zero-copy
+    try (StreamDataFileReader reader = StreamDataFileReader.create(Locations.newInputSupplier(eventFile))) {
+      List<PositionStreamEvent> copiedEvents = Lists.newArrayList();
+      Assert.assertEquals(expected.size(), reader.read(copiedEvents, expected.size() + 1, 0, TimeUnit.SECONDS));
+      for (int i = 0; i < expected.size(); i++) {
+        Assert.assertEquals(copiedEvents.get(i).getStart(), events.get(i).getStart());
+      }
+    }
+  }
+
   /**
    * This unit test is to test the v2 file format that supports
    * defaulting values in stream event (timestamp and headers).
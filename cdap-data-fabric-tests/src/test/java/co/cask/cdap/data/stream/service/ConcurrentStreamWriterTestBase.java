@@ -62,6 +62,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
 /**
  * Unit tests for the {@link ConcurrentStreamWriter}.
@@ -91,14 +92,25 @@ public abstract class ConcurrentStreamWriterTestBase {
 
   @Test
   public void testConcurrentWrite() throws Exception {
-    final String streamName = "testConcurrentWrite";
+    testConcurrentWrite("testConcurrentWrite", null);
+  }
+
+  @Test
+  public void testConcurrentGroupCommitWrite() throws Exception {
+    testConcurrentWrite("testConcurrentGroupCommitWrite", new ConcurrentStreamWriter.GroupCommitConfig(1024, 100, 2));
+  }
+
+  private void testConcurrentWrite(String streamName,
+                                   @Nullable ConcurrentStreamWriter.GroupCommitConfig groupCommitConfig)
+    throws Exception {
     String namespace = "namespace";
     Id.Stream streamId = Id.Stream.from(namespace, streamName);
     StreamAdmin streamAdmin = new TestStreamAdmin(getNamespacedLocationFactory(), Long.MAX_VALUE, 1000);
     int threads = Runtime.getRuntime().availableProcessors() * 4;
 
     StreamFileWriterFactory fileWriterFactory = createStreamFileWriterFactory();
-    final ConcurrentStreamWriter streamWriter = createStreamWriter(streamId, streamAdmin, threads, fileWriterFactory);
+    final ConcurrentStreamWriter streamWriter = createStreamWriter(streamId, streamAdmin, threads,
+                                                                   fileWriterFactory, groupCommitConfig);
 
     // Starts n threads to write events through stream writer, each thread write 1000 events
     final int msgPerThread = 1000;
@@ -207,11 +219,18 @@ public abstract class ConcurrentStreamWriterTestBase {
   private ConcurrentStreamWriter createStreamWriter(Id.Stream streamId, StreamAdmin streamAdmin,
                                                     int threads, StreamFileWriterFactory writerFactory)
     throws Exception {
+    return createStreamWriter(streamId, streamAdmin, threads, writerFactory, null);
+  }
+
+  private ConcurrentStreamWriter createStreamWriter(Id.Stream streamId, StreamAdmin streamAdmin,
+                                                    int threads, StreamFileWriterFactory writerFactory,
+                                                    @Nullable ConcurrentStreamWriter.GroupCommitConfig groupCommit)
+    throws Exception {
     StreamConfig streamConfig = streamAdmin.getConfig(streamId);
     streamConfig.getLocation().mkdirs();
 
-    return new ConcurrentStreamWriter(COORDINATOR_CLIENT, streamAdmin,
-                                      writerFactory, threads, new TestMetricsCollectorFactory(), impersonator);
+    return new ConcurrentStreamWriter(COORDINATOR_CLIENT, streamAdmin, writerFactory, threads,
+                                      new TestMetricsCollectorFactory(), impersonator, groupCommit);
   }
 
   private Runnable createWriterTask(final Id.Stream streamId,
@@ -20,6 +20,7 @@ import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.data.file.FileWriter;
+import co.cask.cdap.data.stream.StreamDataFileConstants;
 import co.cask.cdap.data.stream.StreamFileWriterFactory;
 import co.cask.cdap.data.stream.StreamUtils;
 import co.cask.cdap.data.stream.TimePartitionedStreamFileWriter;
@@ -27,11 +28,14 @@ import co.cask.cdap.data2.security.Impersonator;
 import co.cask.cdap.data2.transaction.stream.StreamConfig;
 import co.cask.cdap.proto.id.NamespaceId;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
 import com.google.inject.Inject;
 import org.apache.twill.filesystem.Location;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 /**
@@ -41,11 +45,19 @@ import java.util.concurrent.Callable;
 public final class LocationStreamFileWriterFactory implements StreamFileWriterFactory {
 
   private final String filePrefix;
+  private final long indexSizeInterval;
+  private final Map<String, String> fileProperties;
   private final Impersonator impersonator;
 
   @Inject
   public LocationStreamFileWriterFactory(CConfiguration cConf, Impersonator impersonator) {
     this.filePrefix = cConf.get(Constants.Stream.INSTANCE_FILE_PREFIX);
+    this.indexSizeInterval = cConf.getLong(Constants.Stream.INDEX_SIZE_INTERVAL, 0L);
+
+    String blockCodec = cConf.get(Constants.Stream.FILE_BLOCK_CODEC);
+    this.fileProperties = Strings.isNullOrEmpty(blockCodec)
+      ? ImmutableMap.<String, String>of()
+      : ImmutableMap.of(StreamDataFileConstants.Property.Key.BLOCK_CODEC, blockCodec);
     this.impersonator = impersonator;
   }
 
@@ -70,8 +82,8 @@ public final class LocationStreamFileWriterFactory implements StreamFileWriterFa
       });
 
       return new TimePartitionedStreamFileWriter(baseLocation, config.getPartitionDuration(),
-                                                 filePrefix, config.getIndexInterval(),
-                                                 config.getStreamId().toEntityId(), impersonator);
+                                                 filePrefix, config.getIndexInterval(), indexSizeInterval,
+                                                 fileProperties, config.getStreamId().toEntityId(), impersonator);
     } catch (Exception e) {
       Throwables.propagateIfPossible(e, IOException.class);
       throw new IOException(e);
@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream;
+
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.stream.StreamEventDataCodec;
+import co.cask.common.io.ByteBufferInputStream;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ForwardingMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Stream event headers that are decoded from the encoded headers on first access.
+ * It is used by {@link StreamEventBuffer} in zero-copy mode, so that events which only need the body
+ * don't pay for decoding the headers.
+ */
+@NotThreadSafe
+final class LazyStreamEventHeaders extends ForwardingMap<String, String> {
+
+  private final Map<String, String> defaultHeaders;
+  private ByteBuffer encoded;
+  private Map<String, String> headers;
+
+  /**
+   * Creates an instance with the given encoded headers.
+   *
+   * @param encoded buffer containing the encoded headers, as written by {@link StreamEventDataCodec}
+   * @param defaultHeaders the set of headers that will used as the default
+   */
+  LazyStreamEventHeaders(ByteBuffer encoded, Map<String, String> defaultHeaders) {
+    this.encoded = encoded;
+    this.defaultHeaders = defaultHeaders;
+  }
+
+  @Override
+  protected Map<String, String> delegate() {
+    if (headers == null) {
+      try {
+        headers = StreamEventDataCodec.decodeHeaders(new BinaryDecoder(new ByteBufferInputStream(encoded)),
+                                                     defaultHeaders);
+        // Release the reference to the encoded buffer
+        encoded = null;
+      } catch (IOException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+    return headers;
+  }
+}
@@ -21,6 +21,7 @@ import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.LiveFileReader;
 import co.cask.cdap.data.file.ReadFilter;
 import co.cask.cdap.data2.transaction.stream.StreamConfig;
+import com.google.common.io.InputSupplier;
 import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +42,7 @@ public final class LiveStreamFileReader extends LiveFileReader<PositionStreamEve
   private final StreamFileOffset beginOffset;
   private final StreamConfig streamConfig;
   private final long maxFileCheckInterval;
+  private final boolean zeroCopy;
   private StreamPositionTransformFileReader reader;
   private int retries;
   private long nextCheckTime = 0;
@@ -67,6 +69,21 @@ public final class LiveStreamFileReader extends LiveFileReader<PositionStreamEve
    * @param maxFileCheckInterval maximum interval in milliseconds for checking for new stream file.
    */
   public LiveStreamFileReader(StreamConfig streamConfig, StreamFileOffset beginOffset, long maxFileCheckInterval) {
+    this(streamConfig, beginOffset, maxFileCheckInterval, false);
+  }
+
+  /**
+   * Creates a new file reader.
+   *
+   * @param streamConfig the stream configuration.
+   * @param beginOffset the offset information to begin with.
+   * @param maxFileCheckInterval maximum interval in milliseconds for checking for new stream file.
+   * @param zeroCopy {@code true} to decode events as views of the data blocks.
+   *                 See {@link StreamDataFileReader#createWithOffset(InputSupplier, InputSupplier, long, boolean)}.
+   */
+  public LiveStreamFileReader(StreamConfig streamConfig, StreamFileOffset beginOffset,
+                              long maxFileCheckInterval, boolean zeroCopy) {
+    this.zeroCopy = zeroCopy;
     this.streamConfig = streamConfig;
     this.beginOffset = beginOffset;
     this.maxFileCheckInterval = (maxFileCheckInterval <= 0) ? Constants.Stream.NEW_FILE_CHECK_INTERVAL
@@ -78,7 +95,7 @@ public final class LiveStreamFileReader extends LiveFileReader<PositionStreamEve
   protected FileReader<PositionStreamEvent, StreamFileOffset> renewReader() throws IOException {
     // If no reader has yet opened, start with the beginning offset.
     if (reader == null) {
-      reader = new StreamPositionTransformFileReader(beginOffset);
+      reader = new StreamPositionTransformFileReader(beginOffset, zeroCopy);
       reader.initialize();
       return reader;
     }
@@ -141,7 +158,7 @@ public final class LiveStreamFileReader extends LiveFileReader<PositionStreamEve
     }
 
     StreamPositionTransformFileReader reader =
-      new StreamPositionTransformFileReader(new StreamFileOffset(eventLocation, 0L, generation));
+      new StreamPositionTransformFileReader(new StreamFileOffset(eventLocation, 0L, generation), zeroCopy);
     reader.initialize();
     return reader;
   }
@@ -154,10 +171,10 @@ public final class LiveStreamFileReader extends LiveFileReader<PositionStreamEve
     private final Location partitionLocation;
     private StreamFileOffset offset;
 
-    private StreamPositionTransformFileReader(StreamFileOffset offset) throws IOException {
+    private StreamPositionTransformFileReader(StreamFileOffset offset, boolean zeroCopy) throws IOException {
       this.reader = StreamDataFileReader.createWithOffset(Locations.newInputSupplier(offset.getEventLocation()),
-                                                          Locations.newInputSupplier(offset.getIndexLocation()),
-                                                          offset.getOffset());
+                                                          StreamDataFileIndexCache.supplier(offset.getIndexLocation()),
+                                                          offset.getOffset(), zeroCopy);
       this.offset = new StreamFileOffset(offset);
       this.partitionLocation = Locations.getParent(offset.getEventLocation());
 
@@ -15,6 +15,8 @@
  */
 package co.cask.cdap.data.stream;
 
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.PositionReporter;
@@ -22,41 +24,130 @@ import co.cask.cdap.data.file.ReadFilter;
 import co.cask.cdap.data2.transaction.stream.StreamConfig;
 import com.google.common.base.Function;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.primitives.Longs;
 import it.unimi.dsi.fastutil.PriorityQueue;
 import it.unimi.dsi.fastutil.objects.ObjectHeapPriorityQueue;
+import org.apache.twill.common.Threads;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
  * A {@link FileReader} that combines multiple event stream into single event stream.
+ * <p/>
+ * When read-ahead is enabled, each underlying stream file is read on its own background thread into a bounded
+ * buffer, while the merging of events by timestamp still happens on the thread calling the read methods.
+ * The read-ahead threads use the {@link ReadFilter} given to the read methods, hence events rejected by a filter
+ * won't be seen by a later read with a different filter.
  */
 @NotThreadSafe
 public final class MultiLiveStreamFileReader implements FileReader<StreamEventOffset, Iterable<StreamFileOffset>> {
 
+  private static final Logger LOG = LoggerFactory.getLogger(MultiLiveStreamFileReader.class);
+
+  // Time to wait before polling a stream file again after it has no new event to read ahead
+  private static final long READ_AHEAD_POLL_MILLIS = 20L;
+
+  // Minimum time between two reports of the read lag of the stream files
+  private static final long LAG_REPORT_INTERVAL_MILLIS = 1000L;
+
   private final PriorityQueue<StreamEventSource> eventSources;
   private final Set<StreamEventSource> emptySources;
   private final Set<StreamEventSource> allSources;
   private final Iterable<StreamFileOffset> offsetsView;
+  @Nullable
+  private final ExecutorService readAheadExecutor;
+  private final Semaphore readAheadSignal;
+  private final AtomicReference<ReadFilter> readAheadFilter;
+  @Nullable
+  private final MetricsContext metricsContext;
+  private boolean initialized;
+  private long lastLagReportTime;
 
   public MultiLiveStreamFileReader(StreamConfig streamConfig, Iterable<? extends StreamFileOffset> offsets) {
+    this(streamConfig, offsets, false);
+  }
+
+  /**
+   * Creates a reader that reads from all the given file offsets.
+   *
+   * @param streamConfig the stream configuration
+   * @param offsets the file offsets to begin with
+   * @param zeroCopy {@code true} to decode events as views of the stream data blocks instead of copies.
+   *                 See {@link LiveStreamFileReader}.
+   */
+  public MultiLiveStreamFileReader(StreamConfig streamConfig, Iterable<? extends StreamFileOffset> offsets,
+                                   boolean zeroCopy) {
+    this(streamConfig, offsets, zeroCopy, 0);
+  }
+
+  /**
+   * Creates a reader that reads from all the given file offsets.
+   *
+   * @param streamConfig the stream configuration
+   * @param offsets the file offsets to begin with
+   * @param zeroCopy {@code true} to decode events as views of the stream data blocks instead of copies.
+   *                 See {@link LiveStreamFileReader}.
+   * @param readAheadSize maximum number of events to read ahead for each file offset on a background thread.
+   *                      If it is {@code <= 0}, files are read on the calling thread only.
+   */
+  public MultiLiveStreamFileReader(StreamConfig streamConfig, Iterable<? extends StreamFileOffset> offsets,
+                                   boolean zeroCopy, int readAheadSize) {
+    this(streamConfig, offsets, zeroCopy, readAheadSize, null);
+  }
+
+  /**
+   * Creates a reader that reads from all the given file offsets.
+   *
+   * @param streamConfig the stream configuration
+   * @param offsets the file offsets to begin with
+   * @param zeroCopy {@code true} to decode events as views of the stream data blocks instead of copies.
+   *                 See {@link LiveStreamFileReader}.
+   * @param readAheadSize maximum number of events to read ahead for each file offset on a background thread.
+   *                      If it is {@code <= 0}, files are read on the calling thread only.
+   * @param metricsContext if not {@code null}, the read lag of each file is reported periodically as
+   *                       the {@code stream.read.lag.ms} gauge, tagged with the file name prefix as the producer
+   */
+  public MultiLiveStreamFileReader(StreamConfig streamConfig, Iterable<? extends StreamFileOffset> offsets,
+                                   boolean zeroCopy, int readAheadSize, @Nullable MetricsContext metricsContext) {
     this.allSources = Sets.newTreeSet();
+    this.readAheadSignal = new Semaphore(0);
+    this.readAheadFilter = new AtomicReference<>();
+    this.metricsContext = metricsContext;
 
     for (StreamFileOffset source : offsets) {
-      StreamEventSource eventSource = new StreamEventSource(streamConfig, source);
+      StreamEventSource eventSource = new StreamEventSource(streamConfig, source, zeroCopy,
+                                                            readAheadSize, readAheadSignal, readAheadFilter,
+                                                            metricsContext);
       allSources.add(eventSource);
     }
 
+    this.readAheadExecutor = readAheadSize > 0
+      ? Executors.newCachedThreadPool(Threads.createDaemonThreadFactory("stream-read-ahead-%d"))
+      : null;
+
     this.eventSources = new ObjectHeapPriorityQueue<>(allSources.size());
     this.emptySources = Sets.newHashSet(allSources);
     this.offsetsView = Iterables.transform(allSources, new Function<StreamEventSource, StreamFileOffset>() {
@@ -71,7 +162,11 @@ public final class MultiLiveStreamFileReader implements FileReader<StreamEventOf
   public void initialize() throws IOException {
     for (StreamEventSource source : allSources) {
       source.initialize();
+      if (readAheadExecutor != null) {
+        readAheadExecutor.execute(source.createReadAheadTask());
+      }
     }
+    initialized = true;
   }
 
   @Override
@@ -83,22 +178,41 @@ public final class MultiLiveStreamFileReader implements FileReader<StreamEventOf
   @Override
   public int read(Collection<? super StreamEventOffset> events, int maxEvents,
                   long timeout, TimeUnit unit, ReadFilter readFilter) throws IOException, InterruptedException {
+    if (readAheadExecutor != null) {
+      if (!initialized) {
+        // The read-ahead threads are only started by initialize()
+        initialize();
+      }
+      readAheadFilter.set(readFilter);
+    }
     int eventsRead = 0;
 
     Stopwatch stopwatch = new Stopwatch();
     stopwatch.start();
 
     while (eventsRead < maxEvents && !(emptySources.isEmpty() && eventSources.isEmpty())) {
+      if (readAheadExecutor != null) {
+        // Clear the signal before checking the buffers, so that a wait below won't miss any newly buffered event
+        readAheadSignal.drainPermits();
+      }
       if (!emptySources.isEmpty()) {
         prepareEmptySources(readFilter);
       }
       eventsRead += read(events, readFilter);
 
-      if (eventSources.isEmpty() && stopwatch.elapsedTime(unit) >= timeout) {
-        break;
+      if (eventSources.isEmpty()) {
+        long remaining = timeout - stopwatch.elapsedTime(unit);
+        if (remaining <= 0) {
+          break;
+        }
+        if (readAheadExecutor != null) {
+          // Wait for the read-ahead threads to buffer more events instead of polling the buffers in a tight loop
+          readAheadSignal.tryAcquire(remaining, unit);
+        }
       }
     }
 
+    reportLags();
     return (eventsRead == 0 && emptySources.isEmpty() && eventSources.isEmpty()) ? -1 : eventsRead;
   }
 
@@ -107,6 +221,38 @@ public final class MultiLiveStreamFileReader implements FileReader<StreamEventOf
     return offsetsView;
   }
 
+  /**
+   * Returns the read lag of each of the stream files being read, keyed by the current location of the file.
+   * The lag of a file is the time in milliseconds between now and the timestamp of the oldest event read from
+   * the file but not yet returned by this reader, or {@code 0} if there is no such event.
+   */
+  public Map<Location, Long> getSourceLags() {
+    long now = System.currentTimeMillis();
+    ImmutableMap.Builder<Location, Long> lags = ImmutableMap.builder();
+    for (StreamEventSource source : allSources) {
+      lags.put(source.getPosition().getEventLocation(), source.getLag(now));
+    }
+    return lags.build();
+  }
+
+  /**
+   * Reports the read lag of each of the stream files to the metrics context, at most once every
+   * {@link #LAG_REPORT_INTERVAL_MILLIS}.
+   */
+  private void reportLags() {
+    if (metricsContext == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (now - lastLagReportTime < LAG_REPORT_INTERVAL_MILLIS) {
+      return;
+    }
+    for (StreamEventSource source : allSources) {
+      source.reportLag(now);
+    }
+    lastLagReportTime = now;
+  }
+
   /**
    * For all sources that doesn't have any event buffered, try to read an event and put it in the priority queue
    * if event is available.
@@ -149,6 +295,22 @@ public final class MultiLiveStreamFileReader implements FileReader<StreamEventOf
 
   @Override
   public void close() throws IOException {
+    if (readAheadExecutor != null) {
+      for (StreamEventSource source : allSources) {
+        source.stopReadAhead();
+      }
+      readAheadExecutor.shutdown();
+      try {
+        if (!readAheadExecutor.awaitTermination(READ_AHEAD_POLL_MILLIS * 100, TimeUnit.MILLISECONDS)) {
+          LOG.warn("Timeout in stopping stream read-ahead threads");
+          readAheadExecutor.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        readAheadExecutor.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+
     for (StreamEventSource source : allSources) {
       source.close();
     }
@@ -162,12 +324,31 @@ public final class MultiLiveStreamFileReader implements FileReader<StreamEventOf
 
     private final FileReader<PositionStreamEvent, StreamFileOffset> reader;
     private final List<PositionStreamEvent> events;
+    @Nullable
+    private final BlockingQueue<ReadAheadEvent> readAheadEvents;
+    private final Semaphore readAheadSignal;
+    private final AtomicReference<ReadFilter> readAheadFilter;
+    @Nullable
+    private final MetricsContext lagMetrics;
     private StreamFileOffset currentOffset;
     private StreamFileOffset nextOffset;
 
-    private StreamEventSource(StreamConfig streamConfig, StreamFileOffset beginOffset) {
-      this.reader = new LiveStreamFileReader(streamConfig, beginOffset);
+    // States shared with the read-ahead thread
+    private volatile boolean caughtUp;
+    private volatile boolean stopped;
+    private volatile Throwable readAheadFailure;
+
+    private StreamEventSource(StreamConfig streamConfig, StreamFileOffset beginOffset, boolean zeroCopy,
+                              int readAheadSize, Semaphore readAheadSignal,
+                              AtomicReference<ReadFilter> readAheadFilter, @Nullable MetricsContext metricsContext) {
+      this.reader = new LiveStreamFileReader(streamConfig, beginOffset,
+                                             Constants.Stream.NEW_FILE_CHECK_INTERVAL, zeroCopy);
       this.events = Lists.newArrayListWithCapacity(1);
+      this.readAheadEvents = readAheadSize > 0 ? new ArrayBlockingQueue<ReadAheadEvent>(readAheadSize) : null;
+      this.readAheadSignal = readAheadSignal;
+      this.readAheadFilter = readAheadFilter;
+      this.lagMetrics = metricsContext == null
+        ? null : metricsContext.childContext(Constants.Metrics.Tag.PRODUCER, beginOffset.getNamePrefix());
       this.currentOffset = new StreamFileOffset(beginOffset);
       this.nextOffset = beginOffset;
     }
@@ -203,12 +384,137 @@ public final class MultiLiveStreamFileReader implements FileReader<StreamEventOf
      * @throws InterruptedException
      */
     int prepare(ReadFilter readFilter) throws IOException, InterruptedException {
-      if (events.isEmpty()) {
+      if (!events.isEmpty()) {
+        return 1;
+      }
+      if (readAheadEvents == null) {
         int res = reader.read(events, 1, 0L, TimeUnit.MILLISECONDS, readFilter);
         nextOffset = reader.getPosition();
         return res;
       }
-      return 1;
+
+      // Events are read ahead with the filter already. It is applied again here, with the same calling sequence
+      // as the one used by the file reader, since the filter could have changed or be time dependent (e.g. TTL).
+      // The filter is locked as it is stateful and shared with the read-ahead threads.
+      while (true) {
+        ReadAheadEvent readAheadEvent = pollReadAheadEvent();
+        if (readAheadEvent == null) {
+          return 0;
+        }
+        nextOffset = readAheadEvent.getNextOffset();
+
+        PositionStreamEvent event = readAheadEvent.getEvent();
+        synchronized (readFilter) {
+          readFilter.reset();
+          if (readFilter.acceptTimestamp(event.getTimestamp()) && readFilter.acceptOffset(event.getStart())) {
+            events.add(event);
+            return 1;
+          }
+        }
+      }
+    }
+
+    /**
+     * Returns the next event read ahead by the read-ahead thread. If nothing is buffered and the read-ahead thread
+     * hasn't caught up with the end of the file yet, it blocks until an event is available, so that the ordering
+     * of the merge is the same as reading the file synchronously.
+     *
+     * @return the next event or {@code null} if no event is available
+     */
+    @Nullable
+    private ReadAheadEvent pollReadAheadEvent() throws IOException, InterruptedException {
+      ReadAheadEvent event = readAheadEvents.poll();
+      while (event == null && !caughtUp && readAheadFailure == null) {
+        event = readAheadEvents.poll(READ_AHEAD_POLL_MILLIS, TimeUnit.MILLISECONDS);
+      }
+      if (event == null && readAheadFailure != null) {
+        Throwables.propagateIfPossible(readAheadFailure, IOException.class);
+        throw new IOException(readAheadFailure);
+      }
+      return event;
+    }
+
+    /**
+     * Creates a {@link Runnable} that keeps reading events from the underlying file into the read-ahead buffer
+     * until {@link #stopReadAhead()} is called. It must only be called after {@link #initialize()}.
+     */
+    Runnable createReadAheadTask() {
+      return new Runnable() {
+        @Override
+        public void run() {
+          List<PositionStreamEvent> buffer = Lists.newArrayListWithCapacity(1);
+          try {
+            while (!stopped) {
+              buffer.clear();
+              // Nothing is read until the first read call provides the filter to use
+              ReadFilter filter = readAheadFilter.get();
+              if (filter == null) {
+                TimeUnit.MILLISECONDS.sleep(READ_AHEAD_POLL_MILLIS);
+                continue;
+              }
+              // Read one event at a time to get the exact file position after each event.
+              int res;
+              synchronized (filter) {
+                res = reader.read(buffer, 1, 0L, TimeUnit.MILLISECONDS, filter);
+              }
+              if (res <= 0) {
+                if (!caughtUp) {
+                  caughtUp = true;
+                  readAheadSignal.release();
+                }
+                TimeUnit.MILLISECONDS.sleep(READ_AHEAD_POLL_MILLIS);
+                continue;
+              }
+
+              // Mark it as not caught up before buffering the event, so that the merge waits for it.
+              caughtUp = false;
+              ReadAheadEvent event = new ReadAheadEvent(buffer.get(0), reader.getPosition());
+              boolean buffered = false;
+              while (!stopped && !buffered) {
+                buffered = readAheadEvents.offer(event, READ_AHEAD_POLL_MILLIS, TimeUnit.MILLISECONDS);
+              }
+              readAheadSignal.release();
+            }
+          } catch (InterruptedException e) {
+            LOG.debug("Stream read-ahead interrupted for {}", currentOffset);
+          } catch (Throwable t) {
+            LOG.warn("Failed to read ahead stream events for {}", currentOffset, t);
+            readAheadFailure = t;
+            readAheadSignal.release();
+          }
+        }
+      };
+    }
+
+    void stopReadAhead() {
+      stopped = true;
+    }
+
+    /**
+     * Returns the timestamp of the oldest event read from the underlying file that is not yet returned,
+     * or {@code -1} if there is no such event.
+     */
+    long getPendingTimestamp() {
+      if (!events.isEmpty()) {
+        return events.get(0).getTimestamp();
+      }
+      ReadAheadEvent event = readAheadEvents == null ? null : readAheadEvents.peek();
+      return event == null ? -1L : event.getEvent().getTimestamp();
+    }
+
+    /**
+     * Returns the time in milliseconds between the given time and the timestamp of the oldest pending event,
+     * or {@code 0} if there is no pending event.
+     */
+    long getLag(long now) {
+      long timestamp = getPendingTimestamp();
+      return timestamp < 0 ? 0L : Math.max(0L, now - timestamp);
+    }
+
+    void reportLag(long now) {
+      if (lagMetrics != null) {
+        lagMetrics.gauge("stream.read.lag.ms", getLag(now));
+      }
     }
 
     @Override
@@ -242,4 +548,26 @@ public final class MultiLiveStreamFileReader implements FileReader<StreamEventOf
       return currentOffset;
     }
   }
+
+  /**
+   * An event read ahead from a stream file, together with the file position right after the event.
+   */
+  private static final class ReadAheadEvent {
+
+    private final PositionStreamEvent event;
+    private final StreamFileOffset nextOffset;
+
+    private ReadAheadEvent(PositionStreamEvent event, StreamFileOffset nextOffset) {
+      this.event = event;
+      this.nextOffset = nextOffset;
+    }
+
+    PositionStreamEvent getEvent() {
+      return event;
+    }
+
+    StreamFileOffset getNextOffset() {
+      return nextOffset;
+    }
+  }
 }
@@ -73,9 +73,34 @@ final class StreamDataFileIndex {
     this.positions = positions;
   }
 
+  private StreamDataFileIndex(LongList timestamps, LongList positions) {
+    this.timestamps = LongLists.unmodifiable(timestamps);
+    this.positions = LongLists.unmodifiable(positions);
+  }
+
+  /**
+   * Loads the index from the given input.
+   *
+   * @param indexInput the {@link InputStream} for reading the index. It will not be closed by this method.
+   * @return a new {@link StreamDataFileIndex}
+   * @throws IOException if failed to read the index
+   */
+  static StreamDataFileIndex load(InputStream indexInput) throws IOException {
+    Map.Entry<LongList, LongList> index = loadIndex(indexInput);
+    return new StreamDataFileIndex(index.getKey(), index.getValue());
+  }
+
+  /**
+   * Returns the number of entries in this index.
+   */
+  int size() {
+    return timestamps.size();
+  }
+
   /**
-   * Finds the largest event file position recorded in the index that has timestamp smaller than or equal to the given
-   * timestamp.
+   * Finds an event file position recorded in the index such that all events with timestamp larger than or equal to
+   * the given timestamp are at or after that position. It is the largest position that has timestamp smaller than
+   * the given timestamp, or the first position if it has the given timestamp.
    *
    * @param timestamp Stream event timestamp to search for.
    * @return The file position or {@code -1} if no record satisfied the requirement can be found.
@@ -85,15 +110,15 @@ final class StreamDataFileIndex {
       return -1;
     }
 
-    // Binary search for a timestamp that is larger than or equals to the given timestamp.
-    int idx = binarySearch(timestamps, timestamp);
-    if (idx >= 0) {
-      return positions.getLong(idx);
+    // Binary search for the first timestamp that is larger than or equals to the given timestamp.
+    // Multiple index entries can have the same timestamp if the index is also emitted by size, and data blocks
+    // before an entry can have the same timestamp as the entry, hence the previous entry is used.
+    int idx = lowerBound(timestamps, timestamp);
+    if (idx == 0) {
+      // If every timestamp in the index is larger than the given one, return -1.
+      return timestamps.getLong(0) == timestamp ? positions.getLong(0) : -1;
     }
-
-    // Return the position that has smaller timestamp than the one to search for.
-    // If every timestamp in the index is larger than the given one, return -1.
-    return idx == -1 ? -1 : positions.getLong(-idx - 2);
+    return positions.getLong(idx - 1);
   }
 
   /**
@@ -175,7 +200,26 @@ final class StreamDataFileIndex {
     return -(low + 1);
   }
 
-  private Map.Entry<LongList, LongList> loadIndex(InputStream input) throws IOException {
+  /**
+   * Returns the index of the first element in the list that is larger than or equal to the given target, or the
+   * list size if there is no such element.
+   */
+  private int lowerBound(LongList list, long target) {
+    int low = 0;
+    int high = list.size();
+
+    while (low < high) {
+      int mid = ((high - low) >> 1) + low;
+      if (list.getLong(mid) < target) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private static Map.Entry<LongList, LongList> loadIndex(InputStream input) throws IOException {
     byte[] magic = new byte[INDEX_MAGIC_HEADER.length];
     ByteStreams.readFully(input, magic);
 
@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data.stream;
+
+import co.cask.cdap.common.io.Locations;
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Maps;
+import com.google.common.io.InputSupplier;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.twill.filesystem.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A process-wide LRU cache of {@link StreamDataFileIndex}, so that readers opened on the same stream file share
+ * the loaded index instead of reading the whole index file again. Since index files are only appended to,
+ * the cache is keyed by the index file URI together with the file size, so that a grown index is reloaded.
+ */
+final class StreamDataFileIndexCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StreamDataFileIndexCache.class);
+
+  // Maximum number of index entries in the cache. Each entry takes 16 bytes.
+  private static final long MAX_INDEX_ENTRIES = 1024 * 1024;
+
+  private static final Cache<Map.Entry<URI, Long>, StreamDataFileIndex> CACHE = CacheBuilder.newBuilder()
+    .maximumWeight(MAX_INDEX_ENTRIES)
+    .weigher(new Weigher<Map.Entry<URI, Long>, StreamDataFileIndex>() {
+      @Override
+      public int weigh(Map.Entry<URI, Long> key, StreamDataFileIndex index) {
+        return Math.max(1, index.size());
+      }
+    })
+    .build();
+
+  /**
+   * Returns a {@link Supplier} of the {@link StreamDataFileIndex} stored in the given {@link Location}.
+   */
+  static Supplier<StreamDataFileIndex> supplier(final Location indexLocation) {
+    return new Supplier<StreamDataFileIndex>() {
+      @Override
+      public StreamDataFileIndex get() {
+        InputSupplier<? extends InputStream> input = Locations.newInputSupplier(indexLocation);
+        try {
+          return getIndex(indexLocation.toURI(), indexLocation.length(), input);
+        } catch (IOException e) {
+          LOG.debug("Failed to get size of stream index {}. Loading without cache.", indexLocation, e);
+          return new StreamDataFileIndex(input);
+        }
+      }
+    };
+  }
+
+  /**
+   * Returns a {@link Supplier} of the {@link StreamDataFileIndex} stored in the given {@link Path}.
+   */
+  static Supplier<StreamDataFileIndex> supplier(final FileSystem fs, final Path indexPath) {
+    return new Supplier<StreamDataFileIndex>() {
+      @Override
+      public StreamDataFileIndex get() {
+        InputSupplier<? extends InputStream> input = Locations.newInputSupplier(fs, indexPath);
+        try {
+          return getIndex(fs.makeQualified(indexPath).toUri(), fs.getFileStatus(indexPath).getLen(), input);
+        } catch (IOException e) {
+          LOG.debug("Failed to get size of stream index {}. Loading without cache.", indexPath, e);
+          return new StreamDataFileIndex(input);
+        }
+      }
+    };
+  }
+
+  private static StreamDataFileIndex getIndex(URI uri, long size,
+                                              final InputSupplier<? extends InputStream> input) {
+    try {
+      return CACHE.get(Maps.immutableEntry(uri, size), new Callable<StreamDataFileIndex>() {
+        @Override
+        public StreamDataFileIndex call() throws Exception {
+          try (InputStream indexInput = input.getInput()) {
+            return StreamDataFileIndex.load(indexInput);
+          }
+        }
+      });
+    } catch (ExecutionException e) {
+      LOG.debug("Failed to load stream index {} into cache. Loading without cache.", uri, e.getCause());
+      return new StreamDataFileIndex(input);
+    }
+  }
+
+  private StreamDataFileIndexCache() {
+  }
+}
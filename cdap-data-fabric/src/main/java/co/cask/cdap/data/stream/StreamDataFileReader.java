@@ -27,6 +27,7 @@ import co.cask.cdap.data.file.FileReader;
 import co.cask.cdap.data.file.ReadFilter;
 import co.cask.cdap.internal.io.SchemaTypeAdapter;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.InputSupplier;
@@ -54,7 +55,7 @@ import javax.annotation.concurrent.NotThreadSafe;
 public final class StreamDataFileReader implements FileReader<PositionStreamEvent, Long> {
 
   private final InputSupplier<? extends SeekableInputStream> eventInputSupplier;
-  private final InputSupplier<? extends InputStream> indexInputSupplier;
+  private final Supplier<StreamDataFileIndex> indexSupplier;
   private final long startTime;
   private final long offset;
   private final byte[] timestampBuffer;
@@ -75,7 +76,7 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
    * @return A new instance of {@link StreamDataFileReader}.
    */
   public static StreamDataFileReader create(InputSupplier<? extends SeekableInputStream> eventInputSupplier) {
-    return new StreamDataFileReader(eventInputSupplier, null, 0L, 0L);
+    return new StreamDataFileReader(eventInputSupplier, null, 0L, 0L, false);
   }
 
   /**
@@ -90,7 +91,7 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
   public static StreamDataFileReader createByStartTime(
     InputSupplier<? extends SeekableInputStream> eventInputSupplier,
     @Nullable InputSupplier<? extends InputStream> indexInputSupplier, long startTime) {
-    return new StreamDataFileReader(eventInputSupplier, indexInputSupplier, startTime, 0L);
+    return new StreamDataFileReader(eventInputSupplier, createIndexSupplier(indexInputSupplier), startTime, 0L, false);
   }
 
   /**
@@ -105,15 +106,46 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
   public static StreamDataFileReader createWithOffset(InputSupplier<? extends SeekableInputStream> eventInputSupplier,
                                                       @Nullable InputSupplier<? extends InputStream> indexInputSupplier,
                                                       long offset) {
-    return new StreamDataFileReader(eventInputSupplier, indexInputSupplier, 0L, offset);
+    return createWithOffset(eventInputSupplier, indexInputSupplier, offset, false);
+  }
+
+  /**
+   * Opens a new {@link StreamDataFileReader} with the given inputs, which starts reading events at a the smallest
+   * event position that is larger than or equal to the given offset.
+   * <p>
+   * In zero-copy mode, the body of each event read is a read-only view of the data block that contains the event
+   * and the headers are decoded on first access. It saves the copying and decoding cost per event, at the expense
+   * of keeping the whole data block in memory as long as any event from that block is referenced.
+   * </p>
+   *
+   * @param eventInputSupplier An {@link InputSupplier} for providing the stream to read events.
+   * @param indexInputSupplier An {@link InputSupplier} for providing the stream to read event index.
+   * @param offset An arbitrary event file offset.
+   * @param zeroCopy {@code true} to decode events as views of the data blocks
+   * @return A new instance of {@link StreamDataFileReader}.
+   */
+  public static StreamDataFileReader createWithOffset(InputSupplier<? extends SeekableInputStream> eventInputSupplier,
+                                                      @Nullable InputSupplier<? extends InputStream> indexInputSupplier,
+                                                      long offset, boolean zeroCopy) {
+    return createWithOffset(eventInputSupplier, createIndexSupplier(indexInputSupplier), offset, zeroCopy);
+  }
+
+  /**
+   * Same as {@link #createWithOffset(InputSupplier, InputSupplier, long, boolean)}, with the index provided by
+   * the given {@link Supplier}, such as the one from {@link StreamDataFileIndexCache}.
+   */
+  static StreamDataFileReader createWithOffset(InputSupplier<? extends SeekableInputStream> eventInputSupplier,
+                                               @Nullable Supplier<StreamDataFileIndex> indexSupplier,
+                                               long offset, boolean zeroCopy) {
+    return new StreamDataFileReader(eventInputSupplier, indexSupplier, 0L, offset, zeroCopy);
   }
 
   private StreamDataFileReader(InputSupplier<? extends SeekableInputStream> eventInputSupplier,
-                               @Nullable InputSupplier<? extends InputStream> indexInputSupplier,
-                               long startTime, long offset) {
+                               @Nullable Supplier<StreamDataFileIndex> indexSupplier,
+                               long startTime, long offset, boolean zeroCopy) {
     this.eventInputSupplier = eventInputSupplier;
-    this.indexInputSupplier = indexInputSupplier;
-    this.streamEventBuffer = new StreamEventBuffer();
+    this.indexSupplier = indexSupplier;
+    this.streamEventBuffer = new StreamEventBuffer(zeroCopy);
     this.startTime = startTime;
     this.offset = offset;
     this.timestampBuffer = new byte[8];
@@ -157,6 +189,7 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
       }
     } finally {
       closed = true;
+      streamEventBuffer.close();
     }
   }
 
@@ -233,12 +266,26 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
    * Returns the index for the stream data or {@code null} if index is absent.
    */
   private StreamDataFileIndex getIndex() {
-    if (index == null && indexInputSupplier != null) {
-      index = new StreamDataFileIndex(indexInputSupplier);
+    if (index == null && indexSupplier != null) {
+      index = indexSupplier.get();
     }
     return index;
   }
 
+  @Nullable
+  private static Supplier<StreamDataFileIndex> createIndexSupplier(
+    @Nullable final InputSupplier<? extends InputStream> indexInputSupplier) {
+    if (indexInputSupplier == null) {
+      return null;
+    }
+    return new Supplier<StreamDataFileIndex>() {
+      @Override
+      public StreamDataFileIndex get() {
+        return new StreamDataFileIndex(indexInputSupplier);
+      }
+    };
+  }
+
   /**
    * Opens and initialize this reader.
    */
@@ -299,6 +346,7 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     Map<String, String> properties = StreamUtils.decodeMap(new BinaryDecoder(eventInput));
 
     verifySchema(properties);
+    streamEventBuffer.setCompressed(isCompressed(properties));
 
     // Create event template
     if (fileVersion >= 2) {
@@ -379,9 +427,10 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
   private void initByTime(final long time) throws IOException {
     // If index is provided, lookup the index find the offset closest to start time.
     // If no offset is found, starts from the beginning of the events
+    // Only seek forward, as events before the current position can't have timestamp later than the given time.
     StreamDataFileIndex index = getIndex();
     long offset = index == null ? 0 : index.floorPositionByTime(time);
-    if (offset > 0) {
+    if (offset > eventInput.getPos()) {
       eventInput.seek(offset);
     }
 
@@ -464,6 +513,22 @@ public final class StreamDataFileReader implements FileReader<PositionStreamEven
     }
   }
 
+  /**
+   * Returns {@code true} if data blocks are compressed based on the file properties.
+   *
+   * @throws IOException if the data blocks are compressed with an unsupported codec
+   */
+  private boolean isCompressed(Map<String, String> properties) throws IOException {
+    String codec = properties.get(StreamDataFileConstants.Property.Key.BLOCK_CODEC);
+    if (codec == null) {
+      return false;
+    }
+    if (!StreamDataFileConstants.Property.Value.DEFLATE_CODEC.equals(codec)) {
+      throw new IOException("Unsupported stream block codec " + codec);
+    }
+    return true;
+  }
+
   private long readTimestamp() throws IOException {
     ByteStreams.readFully(eventInput, timestampBuffer);
     return Bytes.toLong(timestampBuffer);
@@ -32,11 +32,15 @@ import com.google.common.io.OutputSupplier;
 import com.google.common.primitives.Longs;
 import org.apache.hadoop.fs.Syncable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
@@ -59,6 +63,24 @@ import javax.annotation.concurrent.NotThreadSafe;
  * }
  * </pre>
  *
+ * If the "stream.block.codec" property is set to "deflate", each data block is compressed:
+ *
+ * <pre>
+ * {@code
+ *
+ * data = <timestamp> <length> <raw_length> <compressed_events> <padding>
+ * length = Avro encoded int32 for size in bytes of <raw_length>, <compressed_events> and <padding>
+ * raw_length = 4 bytes int32 for size in bytes for all <stream_event>s before compression
+ * compressed_events = <stream_event>+ compressed with deflate
+ * padding = zero bytes to make <length> not smaller than the number of <stream_event>s
+ *
+ * }
+ * </pre>
+ *
+ * Since the position of an event in a compressed data block is not a file offset, events in a compressed block
+ * are positioned at the block data offset plus the ordinal of the event in the block. The padding guarantees
+ * that the positions are still smaller than the start of the next data block.
+ *
  * Stream index file:
  *
  * <pre>
@@ -82,13 +104,20 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
   private final OutputStream eventOutput;
   private final OutputStream indexOutput;
   private final long indexInterval;
+  private final long indexSizeInterval;
   private final BufferedEncoder encoder;
   private final BufferedEncoder lengthEncoder;
+  @Nullable
+  private final Deflater deflater;
+  @Nullable
+  private final ByteArrayOutputStream compressedOutput;
 
   // Timestamp for the current block
   private long currentTimestamp;
   private long position;
+  private int blockEvents;
   private long nextIndexTime;
+  private long nextIndexPosition;
   private boolean synced;
   private boolean closed;
   private long closeTimestamp;
@@ -116,6 +145,29 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
   public StreamDataFileWriter(OutputSupplier<? extends OutputStream> eventOutputSupplier,
                               OutputSupplier<? extends OutputStream> indexOutputSupplier,
                               long indexInterval, Map<String, String> properties) throws IOException {
+    this(eventOutputSupplier, indexOutputSupplier, indexInterval, 0L, properties);
+  }
+
+  /**
+   * Constructs a new instance that writes to given outputs.
+   *
+   * @param eventOutputSupplier the provider of the {@link OutputStream} for writing events
+   * @param indexOutputSupplier the provider of the {@link OutputStream} for writing the index
+   * @param indexInterval the time interval in milliseconds for emitting a new index entry
+   * @param indexSizeInterval the number of bytes written to the event file for emitting a new index entry,
+   *                          even if the time interval hasn't passed; {@code 0} to only use the time interval
+   * @param properties the property set that will be stored as file properties. The data blocks are compressed
+   *                   if the {@link StreamDataFileConstants.Property.Key#BLOCK_CODEC} property is set
+   * @throws IOException if there is an error in preparing the output streams
+   * @throws IllegalArgumentException if the block codec is not supported
+   */
+  public StreamDataFileWriter(OutputSupplier<? extends OutputStream> eventOutputSupplier,
+                              OutputSupplier<? extends OutputStream> indexOutputSupplier,
+                              long indexInterval, long indexSizeInterval,
+                              Map<String, String> properties) throws IOException {
+    String codec = properties.get(StreamDataFileConstants.Property.Key.BLOCK_CODEC);
+    Preconditions.checkArgument(codec == null || StreamDataFileConstants.Property.Value.DEFLATE_CODEC.equals(codec),
+                                "Unsupported stream block codec %s", codec);
     this.eventOutput = eventOutputSupplier.getOutput();
     try {
       this.indexOutput = indexOutputSupplier.getOutput();
@@ -124,16 +176,20 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
       throw e;
     }
     this.indexInterval = indexInterval;
+    this.indexSizeInterval = indexSizeInterval;
     this.currentTimestamp = -1L;
     this.closeTimestamp = -1L;
 
     Function<OutputStream, Encoder> encoderFactory = createEncoderFactory();
     this.encoder = new BufferedEncoder(BUFFER_SIZE, encoderFactory);
     this.lengthEncoder = new BufferedEncoder(5, encoderFactory);
+    this.deflater = codec == null ? null : new Deflater();
+    this.compressedOutput = codec == null ? null : new ByteArrayOutputStream(BUFFER_SIZE);
 
     try {
       init(properties);
     } catch (IOException e) {
+      releaseDeflater();
       Closeables.closeQuietly(eventOutput);
       Closeables.closeQuietly(indexOutput);
       throw e;
@@ -175,6 +231,7 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
       eventOutput.write(Longs.toByteArray(-closeTimestamp));
     } finally {
       closed = true;
+      releaseDeflater();
       try {
         eventOutput.close();
       } finally {
@@ -222,6 +279,7 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
       // Encodes the event data into buffer.
       StreamEventDataCodec.encode(event, encoder);
+      blockEvents++;
 
       // Optionally flush if already filled up the buffer.
       if (encoder.size() >= flushLimit) {
@@ -273,21 +331,35 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
 
     // Record the current event output position if needs to update index
     long indexOffset = -1L;
-    if (currentTimestamp >= nextIndexTime) {
+    long blockStart = position - Bytes.SIZEOF_LONG;
+    if (currentTimestamp >= nextIndexTime || (indexSizeInterval > 0 && blockStart >= nextIndexPosition)) {
       // Index offset is the current block start, hence is current position - 8 bytes timestamp already written.
-      indexOffset = position - Bytes.SIZEOF_LONG;
+      indexOffset = blockStart;
     }
 
-    // Writes the size of the encoded event
-    lengthEncoder.writeInt(encoder.size());
-    int size = lengthEncoder.size();
-    lengthEncoder.writeTo(eventOutput);
-    position += size;
+    if (deflater == null) {
+      // Writes the size of the encoded event
+      lengthEncoder.writeInt(encoder.size());
+      int size = lengthEncoder.size();
+      lengthEncoder.writeTo(eventOutput);
+      position += size;
+
+      // Writes all encoded data from the buffer to the output.
+      size = encoder.size();
+      encoder.writeTo(eventOutput);
+      position += size;
+    } else {
+      compressBlock();
 
-    // Writes all encoded data from the buffer to the output.
-    size = encoder.size();
-    encoder.writeTo(eventOutput);
-    position += size;
+      lengthEncoder.writeInt(compressedOutput.size());
+      int size = lengthEncoder.size();
+      lengthEncoder.writeTo(eventOutput);
+      position += size;
+
+      compressedOutput.writeTo(eventOutput);
+      position += compressedOutput.size();
+    }
+    blockEvents = 0;
     if (sync) {
       sync(eventOutput);
     }
@@ -301,6 +373,7 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
       }
 
       nextIndexTime = currentTimestamp + indexInterval;
+      nextIndexPosition = indexOffset + indexSizeInterval;
     } else if (sync) {
       sync(indexOutput);
     }
@@ -310,6 +383,31 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
     synced = sync;
   }
 
+  /**
+   * Compresses the encoded events in the buffer into the compressed output.
+   * See the class description for the format of a compressed data block.
+   */
+  private void compressBlock() throws IOException {
+    compressedOutput.reset();
+    compressedOutput.write(Bytes.toBytes(encoder.size()));
+
+    deflater.reset();
+    DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(compressedOutput, deflater);
+    encoder.writeTo(deflaterOutput);
+    deflaterOutput.finish();
+
+    // Pads the block so that position of every event in the block is within the block
+    while (compressedOutput.size() < blockEvents) {
+      compressedOutput.write(0);
+    }
+  }
+
+  private void releaseDeflater() {
+    if (deflater != null) {
+      deflater.end();
+    }
+  }
+
   private void sync(OutputStream output) throws IOException {
     if (output instanceof Syncable) {
       ((Syncable) output).hsync();
@@ -324,6 +422,7 @@ public final class StreamDataFileWriter implements TimestampCloseable, Flushable
    */
   private IOException closeWithException(IOException ex) throws IOException {
     closed = true;
+    releaseDeflater();
     Closeables.closeQuietly(eventOutput);
     Closeables.closeQuietly(indexOutput);
     throw ex;
@@ -16,6 +16,8 @@
 
 package co.cask.cdap.data.stream;
 
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.stream.StreamEventData;
 import co.cask.cdap.common.io.BinaryDecoder;
 import co.cask.cdap.common.io.ByteBuffers;
 import co.cask.cdap.common.io.Decoder;
@@ -23,27 +25,51 @@ import co.cask.cdap.common.io.SeekableInputStream;
 import co.cask.cdap.common.stream.StreamEventDataCodec;
 import co.cask.cdap.data.file.ReadFilter;
 import co.cask.common.io.ByteBufferInputStream;
+import com.google.common.io.ByteStreams;
 
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
  * A buffer for holding encoded stream events. It is used by {@link StreamDataFileReader} for holding
  * encoded stream events in each data block.
+ * <p>
+ * In zero-copy mode, the body of each decoded event is a read-only view of the buffer and the headers
+ * are only decoded when they are accessed. A new buffer is used for each data block, so that the events
+ * decoded from previous blocks stay valid.
+ * </p>
+ * <p>
+ * For compressed data blocks, the block is decompressed into the buffer and event positions are the block
+ * position plus the ordinal of the event in the block. See {@link StreamDataFileWriter} for the format.
+ * </p>
  */
 @NotThreadSafe
 final class StreamEventBuffer {
 
   private final ByteBufferInputStream bufferInput;
   private final Decoder decoder;
+  private final boolean zeroCopy;
 
   private ByteBuffer buffer;
   private long basePosition;
 
+  // States for reading compressed data blocks
+  private Inflater inflater;
+  private byte[] compressedBuffer;
+  private int blockLength;
+  private int eventOrdinal;
+
   StreamEventBuffer() {
+    this(false);
+  }
+
+  StreamEventBuffer(boolean zeroCopy) {
+    this.zeroCopy = zeroCopy;
     this.buffer = ByteBuffers.EMPTY_BUFFER;
     this.bufferInput = new ByteBufferInputStream(buffer);
     this.decoder = new BinaryDecoder(bufferInput);
@@ -59,8 +85,18 @@ final class StreamEventBuffer {
    * @throws EOFException if failed to read the given number of bytes from the input
    */
   void fillBuffer(SeekableInputStream input, int size) throws IOException {
-    buffer.clear();
-    buffer = ensureCapacity(buffer, size);
+    if (inflater != null) {
+      fillCompressedBuffer(input, size);
+      return;
+    }
+
+    if (zeroCopy) {
+      // Events decoded from the current buffer are views of it, hence it cannot be reused
+      buffer = ByteBuffer.allocate(size);
+    } else {
+      buffer.clear();
+      buffer = ensureCapacity(buffer, size);
+    }
 
     try {
       basePosition = input.getPos();
@@ -82,6 +118,27 @@ final class StreamEventBuffer {
     }
   }
 
+  /**
+   * Sets whether the data blocks are compressed with deflate.
+   */
+  void setCompressed(boolean compressed) {
+    if (compressed && inflater == null) {
+      inflater = new Inflater();
+      compressedBuffer = new byte[0];
+    } else if (!compressed && inflater != null) {
+      inflater.end();
+      inflater = null;
+      compressedBuffer = null;
+    }
+  }
+
+  /**
+   * Releases resources held by this buffer.
+   */
+  void close() {
+    setCompressed(false);
+  }
+
   /**
    * Returns {@code true} if there are events in the buffer, {@code false} otherwise.
    */
@@ -94,7 +151,13 @@ final class StreamEventBuffer {
    * read from the stream.
    */
   long getPosition() {
-    return basePosition >= 0 ? basePosition + buffer.position() : -1L;
+    if (basePosition < 0) {
+      return -1L;
+    }
+    if (inflater == null) {
+      return basePosition + buffer.position();
+    }
+    return hasEvent() ? basePosition + eventOrdinal : basePosition + blockLength;
   }
 
   /**
@@ -102,7 +165,10 @@ final class StreamEventBuffer {
    * been read from the stream.
    */
   long getEndPosition() {
-    return basePosition >= 0 ? basePosition + buffer.limit() : -1L;
+    if (basePosition < 0) {
+      return -1L;
+    }
+    return basePosition + (inflater == null ? buffer.limit() : blockLength);
   }
 
   /**
@@ -120,14 +186,96 @@ final class StreamEventBuffer {
       throw new IOException("No more event in the buffer");
     }
 
-    long eventPos = basePosition + buffer.position();
+    long eventPos = getPosition();
+    eventOrdinal++;
     if (filter.acceptOffset(eventPos)) {
-      return new PositionStreamEvent(StreamEventDataCodec.decode(decoder, defaultHeaders), timestamp, eventPos);
+      StreamEventData data = zeroCopy ? decodeView(defaultHeaders) : StreamEventDataCodec.decode(decoder,
+                                                                                                  defaultHeaders);
+      return new PositionStreamEvent(data, timestamp, eventPos);
     }
     StreamEventDataCodec.skip(decoder);
     return null;
   }
 
+  /**
+   * Reads a compressed data block from the given input stream and decompresses it into the internal buffer.
+   */
+  private void fillCompressedBuffer(SeekableInputStream input, int size) throws IOException {
+    try {
+      basePosition = input.getPos();
+      if (compressedBuffer.length < size) {
+        compressedBuffer = new byte[size];
+      }
+      ByteStreams.readFully(input, compressedBuffer, 0, size);
+      if (size < Bytes.SIZEOF_INT) {
+        throw new IOException("Invalid compressed data block of size " + size);
+      }
+
+      int rawSize = Bytes.toInt(compressedBuffer, 0);
+      if (zeroCopy) {
+        buffer = ByteBuffer.allocate(rawSize);
+      } else {
+        buffer.clear();
+        buffer = ensureCapacity(buffer, rawSize);
+      }
+
+      inflater.reset();
+      inflater.setInput(compressedBuffer, Bytes.SIZEOF_INT, size - Bytes.SIZEOF_INT);
+      int bytesInflated = 0;
+      while (bytesInflated < rawSize) {
+        int len = inflater.inflate(buffer.array(), bytesInflated, rawSize - bytesInflated);
+        if (len == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IOException("Expected to decompress " + rawSize + ", but only " + bytesInflated + " was found");
+        }
+        bytesInflated += len;
+      }
+      buffer.position(0).limit(rawSize);
+      bufferInput.reset(buffer);
+      blockLength = size;
+      eventOrdinal = 0;
+    } catch (DataFormatException e) {
+      buffer.position(buffer.limit());
+      basePosition = -1L;
+      throw new IOException("Corrupted compressed data block", e);
+    } catch (IOException e) {
+      // Make the buffer has nothing to read
+      buffer.position(buffer.limit());
+      basePosition = -1L;
+      throw e;
+    }
+  }
+
+  /**
+   * Decodes a {@link StreamEventData} without copying the body and headers out of the buffer.
+   */
+  private StreamEventData decodeView(Map<String, String> defaultHeaders) throws IOException {
+    ByteBuffer body = slice(decoder.readInt());
+
+    int headersStart = buffer.position();
+    StreamEventDataCodec.skipHeaders(decoder);
+    if (buffer.position() - headersStart == 1) {
+      // Headers is encoded as a single zero byte if there is no event header
+      return new StreamEventData(defaultHeaders, body);
+    }
+    ByteBuffer headers = buffer.duplicate();
+    headers.position(headersStart).limit(buffer.position());
+    return new StreamEventData(new LazyStreamEventHeaders(headers.slice(), defaultHeaders), body);
+  }
+
+  /**
+   * Returns a read-only view of the given number of bytes at the current buffer position and advances the
+   * buffer position past those bytes.
+   */
+  private ByteBuffer slice(int size) throws IOException {
+    if (size < 0 || size > buffer.remaining()) {
+      throw new EOFException("Expected " + size + " bytes in the buffer, but only " + buffer.remaining() + " left");
+    }
+    ByteBuffer view = buffer.asReadOnlyBuffer();
+    view.limit(view.position() + size);
+    buffer.position(buffer.position() + size);
+    return view.slice();
+  }
+
   /**
    * Ensures that the given {@link ByteBuffer} is of sufficient size.
    *
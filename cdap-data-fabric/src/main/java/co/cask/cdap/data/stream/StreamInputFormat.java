@@ -103,6 +103,7 @@ public class StreamInputFormat<K, V> extends InputFormat<K, V> {
   private static final String MIN_SPLIT_SIZE = "input.streaminputformat.min.splits.size";
   private static final String DECODER_TYPE = "input.streaminputformat.decoder.type";
   private static final String BODY_FORMAT = "input.streaminputformat.stream.body.format";
+  private static final String ZERO_COPY = "input.streaminputformat.zero.copy";
 
   /**
    * Sets the TTL for the stream events.
@@ -170,6 +171,18 @@ public class StreamInputFormat<K, V> extends InputFormat<K, V> {
     conf.set(DECODER_TYPE, decoderClassName);
   }
 
+  /**
+   * Sets whether to decode stream events as read-only views of the stream file data blocks. It avoids copying
+   * the body and decoding the headers of each event, which is useful if the {@link StreamEventDecoder}
+   * doesn't need a copy of the body.
+   *
+   * @param conf The conf to modify.
+   * @param zeroCopy {@code true} to enable zero-copy decoding
+   */
+  public static void setZeroCopy(Configuration conf, boolean zeroCopy) {
+    conf.setBoolean(ZERO_COPY, zeroCopy);
+  }
+
   /**
    * Returns the {@link StreamEventDecoder} class as specified in the job configuration.
    *
@@ -240,7 +253,8 @@ public class StreamInputFormat<K, V> extends InputFormat<K, V> {
   @Override
   public RecordReader<K, V> createRecordReader(InputSplit split,
                                                TaskAttemptContext context) throws IOException, InterruptedException {
-    return new StreamRecordReader<>(createStreamEventDecoder(context.getConfiguration()));
+    Configuration conf = context.getConfiguration();
+    return new StreamRecordReader<>(createStreamEventDecoder(conf), conf.getBoolean(ZERO_COPY, false));
   }
 
   protected long getCurrentTime() {
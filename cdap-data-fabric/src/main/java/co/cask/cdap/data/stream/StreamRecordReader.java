@@ -38,6 +38,7 @@ final class StreamRecordReader<K, V> extends RecordReader<K, V> {
 
   private final StreamEventDecoder<K, V> decoder;
   private final List<PositionStreamEvent> events;
+  private final boolean zeroCopy;
 
   private StreamDataFileReader reader;
   private StreamInputSplit inputSplit;
@@ -50,7 +51,18 @@ final class StreamRecordReader<K, V> extends RecordReader<K, V> {
    * @param decoder The decoder to use for decoding stream events.
    */
   StreamRecordReader(StreamEventDecoder<K, V> decoder) {
+    this(decoder, false);
+  }
+
+  /**
+   * Construct a {@link StreamRecordReader} with a given {@link StreamEventDecoder}.
+   *
+   * @param decoder The decoder to use for decoding stream events.
+   * @param zeroCopy {@code true} to decode stream events as views of the stream file data blocks
+   */
+  StreamRecordReader(StreamEventDecoder<K, V> decoder, boolean zeroCopy) {
     this.decoder = decoder;
+    this.zeroCopy = zeroCopy;
     this.events = Lists.newArrayListWithCapacity(1);
     this.currentEntry = new StreamEventDecoder.DecodeResult<>();
   }
@@ -114,7 +126,7 @@ final class StreamRecordReader<K, V> extends RecordReader<K, V> {
   private StreamDataFileReader createReader(FileSystem fs, StreamInputSplit inputSplit) {
     return StreamDataFileReader.createWithOffset(
       Locations.newInputSupplier(fs, inputSplit.getPath()),
-      inputSplit.getIndexPath() == null ? null : Locations.newInputSupplier(fs, inputSplit.getIndexPath()),
-      inputSplit.getStart());
+      inputSplit.getIndexPath() == null ? null : StreamDataFileIndexCache.supplier(fs, inputSplit.getIndexPath()),
+      inputSplit.getStart(), zeroCopy);
   }
 }
@@ -21,6 +21,7 @@ import co.cask.cdap.data.file.PartitionedFileWriter;
 import co.cask.cdap.data.stream.TimePartitionedStreamFileWriter.TimePartition;
 import co.cask.cdap.data2.security.Impersonator;
 import co.cask.cdap.proto.id.StreamId;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.OutputSupplier;
 import com.google.common.primitives.Longs;
 import org.apache.twill.filesystem.Location;
@@ -29,6 +30,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Map;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
@@ -69,7 +71,32 @@ public class TimePartitionedStreamFileWriter extends PartitionedFileWriter<Strea
   public TimePartitionedStreamFileWriter(Location streamLocation, long partitionDuration,
                                          String fileNamePrefix, long indexInterval, StreamId streamId,
                                          Impersonator impersonator) {
-    super(new StreamWriterFactory(streamLocation, partitionDuration, fileNamePrefix, indexInterval),
+    this(streamLocation, partitionDuration, fileNamePrefix, indexInterval, 0L, streamId, impersonator);
+  }
+
+  /**
+   * Creates a writer that emits a new index entry when either the index time interval has passed or the given
+   * number of bytes has been written since the last index entry.
+   * See {@link StreamDataFileWriter#StreamDataFileWriter(OutputSupplier, OutputSupplier, long, long,
+   * java.util.Map)}.
+   */
+  public TimePartitionedStreamFileWriter(Location streamLocation, long partitionDuration,
+                                         String fileNamePrefix, long indexInterval, long indexSizeInterval,
+                                         StreamId streamId, Impersonator impersonator) {
+    this(streamLocation, partitionDuration, fileNamePrefix, indexInterval, indexSizeInterval,
+         ImmutableMap.<String, String>of(), streamId, impersonator);
+  }
+
+  /**
+   * Creates a writer that writes the given properties as the file properties of every stream file created,
+   * such as the {@link StreamDataFileConstants.Property.Key#BLOCK_CODEC} for compressing data blocks.
+   */
+  public TimePartitionedStreamFileWriter(Location streamLocation, long partitionDuration,
+                                         String fileNamePrefix, long indexInterval, long indexSizeInterval,
+                                         Map<String, String> fileProperties, StreamId streamId,
+                                         Impersonator impersonator) {
+    super(new StreamWriterFactory(streamLocation, partitionDuration, fileNamePrefix,
+                                  indexInterval, indexSizeInterval, fileProperties),
           streamId, impersonator);
     this.partitionDuration = partitionDuration;
   }
@@ -129,12 +156,17 @@ public class TimePartitionedStreamFileWriter extends PartitionedFileWriter<Strea
     private final long partitionDuration;
     private final String fileNamePrefix;
     private final long indexInterval;
+    private final long indexSizeInterval;
+    private final Map<String, String> fileProperties;
 
-    StreamWriterFactory(Location streamLocation, long partitionDuration, String fileNamePrefix, long indexInterval) {
+    StreamWriterFactory(Location streamLocation, long partitionDuration, String fileNamePrefix,
+                        long indexInterval, long indexSizeInterval, Map<String, String> fileProperties) {
       this.streamLocation = streamLocation;
       this.partitionDuration = partitionDuration;
       this.fileNamePrefix = fileNamePrefix;
       this.indexInterval = indexInterval;
+      this.indexSizeInterval = indexSizeInterval;
+      this.fileProperties = ImmutableMap.copyOf(fileProperties);
     }
 
     @Override
@@ -162,7 +194,8 @@ public class TimePartitionedStreamFileWriter extends PartitionedFileWriter<Strea
       }
 
       LOG.debug("New stream file created at {}", eventFile);
-      return new StreamDataFileWriter(createOutputSupplier(eventFile), createOutputSupplier(indexFile), indexInterval);
+      return new StreamDataFileWriter(createOutputSupplier(eventFile), createOutputSupplier(indexFile),
+                                      indexInterval, indexSizeInterval, fileProperties);
     }
 
     private OutputSupplier<OutputStream> createOutputSupplier(final Location location) {
@@ -18,6 +18,8 @@ package co.cask.cdap.data.stream.service;
 import co.cask.cdap.api.flow.flowlet.StreamEvent;
 import co.cask.cdap.api.stream.StreamEventData;
 import co.cask.cdap.common.NotFoundException;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data.file.FileWriter;
 import co.cask.cdap.data.file.FileWriters;
 import co.cask.cdap.data.stream.StreamCoordinatorClient;
@@ -33,6 +35,7 @@ import co.cask.cdap.data2.transaction.stream.StreamConfig;
 import co.cask.cdap.proto.Id;
 import co.cask.cdap.proto.id.NamespaceId;
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.MapMaker;
@@ -46,18 +49,24 @@ import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
 /**
@@ -84,6 +93,11 @@ import javax.annotation.concurrent.ThreadSafe;
  * The spin lock between step 2 to step 8 is necessary as it guarantees events enqueued by all threads would eventually
  * get written and flushed.
  *
+ * Optionally, when created with a {@link GroupCommitConfig}, each stream uses a group commit writer instead. Request
+ * threads put their requests into a pre-allocated bounded ring buffer and block until completed, while a single
+ * writer thread per stream drains the buffer in batches of at most {@link GroupCommitConfig#getMaxBatch()} requests,
+ * waiting at most {@link GroupCommitConfig#getMaxLatencyMillis()} for a batch to fill up, and performs one writer
+ * flush per batch. This avoids request threads spinning on the writer flag under high concurrency.
  */
 @ThreadSafe
 public final class ConcurrentStreamWriter implements Closeable {
@@ -99,10 +113,25 @@ public final class ConcurrentStreamWriter implements Closeable {
   private final Set<Id.Stream> generationWatched;
   private final List<Cancellable> cancellables;
   private final Lock createLock;
+  private final GroupCommitConfig groupCommitConfig;
 
   ConcurrentStreamWriter(StreamCoordinatorClient streamCoordinatorClient, StreamAdmin streamAdmin,
                          StreamFileWriterFactory writerFactory, int workerThreads,
                          StreamMetricsCollectorFactory metricsCollectorFactory, Impersonator impersonator) {
+    this(streamCoordinatorClient, streamAdmin, writerFactory, workerThreads,
+         metricsCollectorFactory, impersonator, null);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param groupCommitConfig if not {@code null}, events are persisted by a group commit writer thread per stream
+   *                          with the given configuration
+   */
+  ConcurrentStreamWriter(StreamCoordinatorClient streamCoordinatorClient, StreamAdmin streamAdmin,
+                         StreamFileWriterFactory writerFactory, int workerThreads,
+                         StreamMetricsCollectorFactory metricsCollectorFactory, Impersonator impersonator,
+                         @Nullable GroupCommitConfig groupCommitConfig) {
     this.streamCoordinatorClient = streamCoordinatorClient;
     this.streamAdmin = streamAdmin;
     this.workerThreads = workerThreads;
@@ -112,6 +141,7 @@ public final class ConcurrentStreamWriter implements Closeable {
     this.generationWatched = Sets.newHashSet();
     this.cancellables = Lists.newArrayList();
     this.createLock = new ReentrantLock();
+    this.groupCommitConfig = groupCommitConfig;
   }
 
   public void close(Id.Stream streamId) throws IOException, NotFoundException {
@@ -172,6 +202,10 @@ public final class ConcurrentStreamWriter implements Closeable {
     // Put the event to the queue first and then execute the write asynchronously
     final EventQueue eventQueue = getEventQueue(streamId);
     final WriteRequest writeRequest = eventQueue.append(headers, body);
+    if (eventQueue.isGroupCommit()) {
+      // The group commit writer thread will persist the event, hence no need to use the executor
+      return;
+    }
     executor.execute(new Runnable() {
       @Override
       public void run() {
@@ -244,6 +278,9 @@ public final class ConcurrentStreamWriter implements Closeable {
       }
 
       eventQueue = new EventQueue(streamId, metricsCollectorFactory.createMetricsCollector(streamId));
+      if (groupCommitConfig != null) {
+        eventQueue.startGroupCommit(groupCommitConfig);
+      }
       eventQueues.put(streamId, eventQueue);
 
       return eventQueue;
@@ -266,9 +303,13 @@ public final class ConcurrentStreamWriter implements Closeable {
    */
   private void persistUntilCompleted(Id.Stream streamId, EventQueue eventQueue, WriteRequest request)
     throws IOException {
-    while (!request.isCompleted()) {
-      if (!eventQueue.tryWrite()) {
-        Thread.yield();
+    if (eventQueue.isGroupCommit()) {
+      eventQueue.awaitGroupCommit(request);
+    } else {
+      while (!request.isCompleted()) {
+        if (!eventQueue.tryWrite()) {
+          Thread.yield();
+        }
       }
     }
     if (!request.isSuccess()) {
@@ -404,6 +445,7 @@ public final class ConcurrentStreamWriter implements Closeable {
     private final Function<StreamEventData, StreamEvent> eventTransformer;
     private FileWriter<StreamEventData> fileWriter;
     private boolean closed;
+    private volatile GroupCommitWriter groupCommitWriter;
 
     EventQueue(Id.Stream streamId, StreamMetricsCollectorFactory.StreamMetricsCollector metricsCollector) {
       this.streamId = streamId;
@@ -429,7 +471,7 @@ public final class ConcurrentStreamWriter implements Closeable {
      */
     WriteRequest append(Map<String, String> headers, ByteBuffer body) {
       WriteRequest request = new SingleWriteRequest(headers, body);
-      queue.add(request);
+      add(request);
       return request;
     }
 
@@ -442,10 +484,55 @@ public final class ConcurrentStreamWriter implements Closeable {
      */
     WriteRequest append(Iterator<? extends StreamEventData> events) {
       WriteRequest request = new BatchWriteRequest(events);
-      queue.add(request);
+      add(request);
       return request;
     }
 
+    /**
+     * Starts the group commit writer thread for this queue. After this method returns, all write requests
+     * will be persisted by the group commit writer.
+     */
+    void startGroupCommit(GroupCommitConfig config) {
+      GroupCommitWriter writer = new GroupCommitWriter(config);
+      groupCommitWriter = writer;
+      writer.start();
+    }
+
+    /**
+     * Returns {@code true} if write requests of this queue are persisted by a group commit writer thread.
+     */
+    boolean isGroupCommit() {
+      return groupCommitWriter != null;
+    }
+
+    /**
+     * Blocks until the given request is completed by the group commit writer.
+     *
+     * @throws IOException if interrupted while waiting
+     */
+    void awaitGroupCommit(WriteRequest request) throws IOException {
+      try {
+        while (!request.awaitCompleted(1, TimeUnit.SECONDS)) {
+          // If the writer thread is gone, the request might get added after the buffer was drained on close.
+          if (!groupCommitWriter.isAlive()) {
+            groupCommitWriter.failPending(new IOException("Stream writer closed"));
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for stream write to complete for " + streamId, e);
+      }
+    }
+
+    private void add(WriteRequest request) {
+      GroupCommitWriter writer = groupCommitWriter;
+      if (writer == null) {
+        queue.add(request);
+      } else {
+        writer.add(request);
+      }
+    }
+
     /**
      * Attempts to append a file to the stream.
      *
@@ -501,31 +588,9 @@ public final class ConcurrentStreamWriter implements Closeable {
       // is piggy back on the writerFlag atomic variable update in the finally block,
       // hence all states mutated will be visible to all threads after that.
       try {
-        metrics.reset();
-        List<WriteRequest> processQueue = Lists.newArrayListWithExpectedSize(workerThreads);
-        try {
-          FileWriter<StreamEventData> writer = getFileWriter();
-          WriteRequest request = queue.poll();
-          streamEvent.setTimestamp(System.currentTimeMillis());
-          while (request != null) {
-            processQueue.add(request);
-            request.write(writer, metrics);
-            request = queue.poll();
-          }
-          writer.flush();
-          for (WriteRequest processed : processQueue) {
-            processed.completed(null);
-          }
+        if (writeQueued(queue, Lists.<WriteRequest>newArrayListWithExpectedSize(workerThreads))) {
           bytesWritten = metrics.bytesWritten;
           eventsWritten = metrics.eventsWritten;
-        } catch (Throwable t) {
-          // On exception, remove this EventQueue from the map and close this event queue
-          eventQueues.remove(streamId, this);
-          doClose();
-
-          for (WriteRequest processed : processQueue) {
-            processed.completed(t);
-          }
         }
       } finally {
         writerFlag.set(false);
@@ -535,6 +600,75 @@ public final class ConcurrentStreamWriter implements Closeable {
       return true;
     }
 
+    /**
+     * Writes a batch of requests with one flush. This method is only called from the group commit writer thread.
+     *
+     * @param batch the requests to write. It will be drained by this method.
+     * @param processQueue a reusable list for holding requests being processed
+     */
+    void groupWrite(Queue<WriteRequest> batch, List<WriteRequest> processQueue) {
+      int bytesWritten = 0;
+      int eventsWritten = 0;
+
+      // Need to be the writer leader to guard against concurrent appendFile and close.
+      while (!writerFlag.compareAndSet(false, true)) {
+        Thread.yield();
+      }
+      try {
+        if (writeQueued(batch, processQueue)) {
+          bytesWritten = metrics.bytesWritten;
+          eventsWritten = metrics.eventsWritten;
+        }
+      } finally {
+        writerFlag.set(false);
+      }
+
+      metricsCollector.emitMetrics(bytesWritten, eventsWritten);
+    }
+
+    /**
+     * Writes all requests polled from the given queue, followed by one writer flush, and completes them.
+     * This method must be called while holding the writerFlag.
+     *
+     * @return true if the write succeeded, false otherwise
+     */
+    private boolean writeQueued(Queue<WriteRequest> source, List<WriteRequest> processQueue) {
+      metrics.reset();
+      processQueue.clear();
+      try {
+        FileWriter<StreamEventData> writer = getFileWriter();
+        WriteRequest request = source.poll();
+        streamEvent.setTimestamp(System.currentTimeMillis());
+        while (request != null) {
+          processQueue.add(request);
+          request.write(writer, metrics);
+          request = source.poll();
+        }
+        writer.flush();
+        for (WriteRequest processed : processQueue) {
+          processed.completed(null);
+        }
+        return true;
+      } catch (Throwable t) {
+        // On exception, remove this EventQueue from the map and close this event queue
+        eventQueues.remove(streamId, this);
+        doClose();
+
+        // Requests that were not polled yet also need to be failed
+        WriteRequest request = source.poll();
+        while (request != null) {
+          processQueue.add(request);
+          request = source.poll();
+        }
+        for (WriteRequest processed : processQueue) {
+          processed.completed(t);
+        }
+        return false;
+      } finally {
+        processQueue.clear();
+      }
+    }
+
     /**
      * Returns the current {@link FileWriter}. A new {@link FileWriter} will be created
      * if none existed yet. This method should only be called from the writer leader thread.
@@ -584,6 +718,168 @@ public final class ConcurrentStreamWriter implements Closeable {
         data = queue.poll();
       }
       closed = true;
+
+      GroupCommitWriter writer = groupCommitWriter;
+      if (writer != null) {
+        writer.stop(writerClosedException);
+      }
+    }
+
+    /**
+     * A thread that persists write requests of the enclosing {@link EventQueue} in batches.
+     */
+    private final class GroupCommitWriter extends Thread {
+
+      private final BlockingQueue<WriteRequest> buffer;
+      private final int maxBatch;
+      private final long maxLatencyNanos;
+      private volatile boolean running;
+
+      GroupCommitWriter(GroupCommitConfig config) {
+        super("stream-group-commit-" + streamId.getNamespaceId() + "." + streamId.getId());
+        setDaemon(true);
+        this.buffer = new ArrayBlockingQueue<>(config.getBufferSize());
+        this.maxBatch = config.getMaxBatch();
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxLatencyMillis());
+        this.running = true;
+      }
+
+      /**
+       * Adds a request to the ring buffer. It blocks if the buffer is full, which slows down writers when the
+       * writer thread cannot keep up.
+       */
+      void add(WriteRequest request) {
+        if (!running) {
+          request.completed(new IOException("Stream writer closed"));
+          return;
+        }
+        try {
+          buffer.put(request);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          request.completed(e);
+        }
+      }
+
+      @Override
+      public void run() {
+        Queue<WriteRequest> batch = new ArrayDeque<>(maxBatch);
+        List<WriteRequest> processQueue = new ArrayList<>(maxBatch);
+        try {
+          while (running) {
+            WriteRequest request = buffer.poll(1, TimeUnit.SECONDS);
+            if (request == null) {
+              continue;
+            }
+            batch.add(request);
+
+            // Collect more requests until reaching the max batch size or the commit window passed
+            long deadline = System.nanoTime() + maxLatencyNanos;
+            while (batch.size() < maxBatch) {
+              buffer.drainTo(batch, maxBatch - batch.size());
+              long waitNanos = deadline - System.nanoTime();
+              if (batch.size() >= maxBatch || waitNanos <= 0) {
+                break;
+              }
+              request = buffer.poll(waitNanos, TimeUnit.NANOSECONDS);
+              if (request == null) {
+                break;
+              }
+              batch.add(request);
+            }
+
+            groupWrite(batch, processQueue);
+          }
+        } catch (InterruptedException e) {
+          // Interrupted by stop. Remaining requests get failed below.
+          LOG.debug("Group commit writer for stream {} interrupted", streamId);
+        } finally {
+          running = false;
+          Throwable failure = new IOException("Stream writer closed").fillInStackTrace();
+          for (WriteRequest request : batch) {
+            request.completed(failure);
+          }
+          failPending(failure);
+        }
+      }
+
+      /**
+       * Stops this writer thread and fails all pending requests with the given failure.
+       */
+      void stop(Throwable failure) {
+        running = false;
+        if (Thread.currentThread() != this) {
+          interrupt();
+        }
+        failPending(failure);
+      }
+
+      /**
+       * Fails all requests that are still in the ring buffer.
+       */
+      void failPending(Throwable failure) {
+        WriteRequest request = buffer.poll();
+        while (request != null) {
+          request.completed(failure);
+          request = buffer.poll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Configurations for the group commit mode.
+   */
+  static final class GroupCommitConfig {
+
+    private final int bufferSize;
+    private final int maxBatch;
+    private final long maxLatencyMillis;
+
+    /**
+     * Creates a {@link GroupCommitConfig} from the given {@link CConfiguration}.
+     *
+     * @return a {@link GroupCommitConfig} or {@code null} if group commit is not enabled
+     */
+    @Nullable
+    static GroupCommitConfig create(CConfiguration cConf) {
+      if (!cConf.getBoolean(Constants.Stream.GROUP_COMMIT_ENABLED, false)) {
+        return null;
+      }
+      return new GroupCommitConfig(cConf.getInt(Constants.Stream.GROUP_COMMIT_BUFFER_SIZE),
+                                   cConf.getInt(Constants.Stream.GROUP_COMMIT_MAX_BATCH),
+                                   cConf.getLong(Constants.Stream.GROUP_COMMIT_MAX_LATENCY_MS));
+    }
+
+    GroupCommitConfig(int bufferSize, int maxBatch, long maxLatencyMillis) {
+      Preconditions.checkArgument(bufferSize > 0, "Group commit buffer size must be > 0: %s", bufferSize);
+      Preconditions.checkArgument(maxBatch > 0, "Group commit max batch must be > 0: %s", maxBatch);
+      Preconditions.checkArgument(maxLatencyMillis >= 0,
+                                  "Group commit max latency must be >= 0: %s", maxLatencyMillis);
+      this.bufferSize = bufferSize;
+      this.maxBatch = maxBatch;
+      this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    /**
+     * Returns the capacity of the ring buffer for holding pending write requests per stream.
+     */
+    int getBufferSize() {
+      return bufferSize;
+    }
+
+    /**
+     * Returns the maximum number of write requests to persist with one flush.
+     */
+    int getMaxBatch() {
+      return maxBatch;
+    }
+
+    /**
+     * Returns the maximum time in milliseconds to wait for more requests before flushing a batch.
+     */
+    long getMaxLatencyMillis() {
+      return maxLatencyMillis;
     }
   }
 
@@ -624,9 +920,23 @@ public final class ConcurrentStreamWriter implements Closeable {
       return isCompleted() && (failure == null);
     }
 
-    void completed(Throwable failure) {
+    synchronized void completed(Throwable failure) {
       this.state = State.COMPLETED;
       this.failure = failure;
+      notifyAll();
+    }
+
+    /**
+     * Waits for this request to complete. It is used when the request is completed by another thread
+     * without synchronizing through the writer flag.
+     *
+     * @return true if the request is completed, false if timeout reached
+     */
+    synchronized boolean awaitCompleted(long timeout, TimeUnit unit) throws InterruptedException {
+      if (state == State.PENDING) {
+        unit.timedWait(this, timeout);
+      }
+      return state != State.PENDING;
     }
 
     Throwable getFailure() {
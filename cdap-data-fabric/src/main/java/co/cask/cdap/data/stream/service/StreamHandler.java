@@ -137,7 +137,8 @@ public final class StreamHandler extends AbstractHttpHandler {
     StreamMetricsCollectorFactory metricsCollectorFactory = createStreamMetricsCollectorFactory();
     this.streamWriter = new ConcurrentStreamWriter(streamCoordinatorClient, streamAdmin, writerFactory,
                                                    cConf.getInt(Constants.Stream.WORKER_THREADS),
-                                                   metricsCollectorFactory, impersonator);
+                                                   metricsCollectorFactory, impersonator,
+                                                   ConcurrentStreamWriter.GroupCommitConfig.create(cConf));
     this.namespaceQueryAdmin = namespaceQueryAdmin;
     this.impersonator = impersonator;
   }
@@ -26,6 +26,7 @@ import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.discovery.EndpointStrategy;
 import co.cask.cdap.common.discovery.RandomEndpointStrategy;
 import co.cask.cdap.common.io.Locations;
+import co.cask.cdap.common.utils.ImmutablePair;
 import co.cask.cdap.data2.dataset2.ModuleConflictException;
 import co.cask.cdap.proto.DatasetInstanceConfiguration;
 import co.cask.cdap.proto.DatasetMeta;
@@ -44,6 +45,8 @@ import co.cask.common.http.HttpResponse;
 import com.google.common.base.Joiner;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
@@ -61,7 +64,11 @@ import java.lang.reflect.Type;
 import java.net.InetSocketAddress;
 import java.net.URL;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
@@ -74,12 +81,18 @@ class DatasetServiceClient {
   private static final Gson GSON = new Gson();
   private static final Type SUMMARY_LIST_TYPE = new TypeToken<List<DatasetSpecificationSummary>>() { }.getType();
   private static final Type MODULE_META_LIST_TYPE = new TypeToken<List<DatasetModuleMeta>>() { }.getType();
+  private static final Type META_MAP_TYPE = new TypeToken<Map<String, DatasetMeta>>() { }.getType();
 
   private final Supplier<EndpointStrategy> endpointStrategySupplier;
   private final NamespaceId namespaceId;
   private final HttpRequestConfig httpRequestConfig;
   private final boolean securityEnabled;
   private final AuthenticationContext authenticationContext;
+  // Caches of instance and type metadata, keyed by the user id the request is made with and the instance/type name,
+  // so that one user never sees metadata that the dataset service would not return to that user.
+  // Only existing instances and types are cached.
+  private final Cache<ImmutablePair<String, String>, DatasetMeta> instanceCache;
+  private final Cache<ImmutablePair<String, String>, DatasetTypeMeta> typeCache;
 
   DatasetServiceClient(final DiscoveryServiceClient discoveryClient, NamespaceId namespaceId,
                        CConfiguration cConf, AuthenticationContext authenticationContext) {
@@ -94,12 +107,47 @@ class DatasetServiceClient {
     this.httpRequestConfig = new HttpRequestConfig(httpTimeoutMs, httpTimeoutMs);
     this.securityEnabled = cConf.getBoolean(Constants.Security.ENABLED);
     this.authenticationContext = authenticationContext;
+    long cacheExpirationSecs = cConf.getLong(Constants.Dataset.META_CACHE_EXPIRATION_SECS);
+    this.instanceCache = CacheBuilder.newBuilder().expireAfterWrite(cacheExpirationSecs, TimeUnit.SECONDS).build();
+    this.typeCache = CacheBuilder.newBuilder().expireAfterWrite(cacheExpirationSecs, TimeUnit.SECONDS).build();
   }
 
   @Nullable
   public DatasetMeta getInstance(String instanceName, @Nullable Iterable<? extends Id> owners)
     throws DatasetManagementException {
 
+    ImmutablePair<String, String> cacheKey = getCacheKey(instanceName);
+    DatasetMeta meta = instanceCache.getIfPresent(cacheKey);
+    if (meta != null) {
+      return meta;
+    }
+    meta = fetchInstance(instanceName, owners);
+    if (meta != null) {
+      instanceCache.put(cacheKey, meta);
+    }
+    return meta;
+  }
+
+  @Nullable
+  public DatasetMeta getInstance(String instanceName) throws DatasetManagementException {
+    return getInstance(instanceName, null);
+  }
+
+  /**
+   * Returns whether the given dataset instance exists. Unlike {@link #getInstance(String)}, this always asks the
+   * dataset service, so that instances created or deleted by other clients are seen immediately.
+   */
+  public boolean hasInstance(String instanceName) throws DatasetManagementException {
+    DatasetMeta meta = fetchInstance(instanceName, null);
+    if (meta == null) {
+      invalidateInstance(instanceName);
+    }
+    return meta != null;
+  }
+
+  @Nullable
+  private DatasetMeta fetchInstance(String instanceName, @Nullable Iterable<? extends Id> owners)
+    throws DatasetManagementException {
     String query = "";
     if (owners != null) {
       Set<String> ownerParams = Sets.newHashSet();
@@ -121,9 +169,39 @@ class DatasetServiceClient {
     return GSON.fromJson(response.getResponseBodyAsString(), DatasetMeta.class);
   }
 
-  @Nullable
-  public DatasetMeta getInstance(String instanceName) throws DatasetManagementException {
-    return getInstance(instanceName, null);
+  /**
+   * Returns the {@link DatasetMeta} of the given dataset instances. Instances that are not cached are fetched with
+   * a single request to the dataset service.
+   *
+   * @param instanceNames the names of the dataset instances
+   * @return a map from instance name to {@link DatasetMeta}, for the instances that exist
+   */
+  public Map<String, DatasetMeta> getInstances(Collection<String> instanceNames) throws DatasetManagementException {
+    Map<String, DatasetMeta> result = new HashMap<>();
+    Set<String> missing = new HashSet<>();
+    for (String instanceName : instanceNames) {
+      DatasetMeta meta = instanceCache.getIfPresent(getCacheKey(instanceName));
+      if (meta == null) {
+        missing.add(instanceName);
+      } else {
+        result.put(instanceName, meta);
+      }
+    }
+    if (missing.isEmpty()) {
+      return result;
+    }
+
+    HttpResponse response = doPost("datasetmetas", GSON.toJson(missing));
+    if (HttpResponseStatus.OK.getCode() != response.getResponseCode()) {
+      throw new DatasetManagementException(String.format("Cannot retrieve dataset instances %s info, details: %s",
+                                                         missing, response));
+    }
+    Map<String, DatasetMeta> metas = GSON.fromJson(response.getResponseBodyAsString(), META_MAP_TYPE);
+    for (Map.Entry<String, DatasetMeta> entry : metas.entrySet()) {
+      instanceCache.put(getCacheKey(entry.getKey()), entry.getValue());
+    }
+    result.putAll(metas);
+    return result;
   }
 
   public Collection<DatasetSpecificationSummary> getAllInstances() throws DatasetManagementException {
@@ -148,6 +226,12 @@ class DatasetServiceClient {
 
   @Nullable
   public DatasetTypeMeta getType(String typeName) throws DatasetManagementException {
+    ImmutablePair<String, String> cacheKey = getCacheKey(typeName);
+    DatasetTypeMeta typeMeta = typeCache.getIfPresent(cacheKey);
+    if (typeMeta != null) {
+      return typeMeta;
+    }
+
     HttpResponse response = doGet("types/" + typeName);
     if (HttpResponseStatus.NOT_FOUND.getCode() == response.getResponseCode()) {
       return null;
@@ -156,7 +240,9 @@ class DatasetServiceClient {
       throw new DatasetManagementException(String.format("Cannot retrieve dataset type %s info, details: %s",
                                                          typeName, response));
     }
-    return GSON.fromJson(response.getResponseBodyAsString(), DatasetTypeMeta.class);
+    typeMeta = GSON.fromJson(response.getResponseBodyAsString(), DatasetTypeMeta.class);
+    typeCache.put(cacheKey, typeMeta);
+    return typeMeta;
   }
 
   public void addInstance(String datasetInstanceName, String datasetType, DatasetProperties props)
@@ -164,7 +250,13 @@ class DatasetServiceClient {
     DatasetInstanceConfiguration creationProperties =
       new DatasetInstanceConfiguration(datasetType, props.getProperties(), props.getDescription());
 
-    HttpResponse response = doPut("datasets/" + datasetInstanceName, GSON.toJson(creationProperties));
+    HttpResponse response;
+    try {
+      response = doPut("datasets/" + datasetInstanceName, GSON.toJson(creationProperties));
+    } finally {
+      // an instance with the same name may have been cached before it was deleted by another client
+      invalidateInstance(datasetInstanceName);
+    }
 
     if (HttpResponseStatus.CONFLICT.getCode() == response.getResponseCode()) {
       throw new InstanceConflictException(String.format("Failed to add instance %s due to conflict, details: %s",
@@ -178,8 +270,12 @@ class DatasetServiceClient {
 
   public void updateInstance(String datasetInstanceName, DatasetProperties props) throws DatasetManagementException {
 
-    HttpResponse response = doPut("datasets/" + datasetInstanceName + "/properties",
-                                  GSON.toJson(props.getProperties()));
+    HttpResponse response;
+    try {
+      response = doPut("datasets/" + datasetInstanceName + "/properties", GSON.toJson(props.getProperties()));
+    } finally {
+      invalidateInstance(datasetInstanceName);
+    }
 
     if (HttpResponseStatus.NOT_FOUND.getCode() == response.getResponseCode()) {
       throw new InstanceNotFoundException(datasetInstanceName);
@@ -206,7 +302,12 @@ class DatasetServiceClient {
   }
 
   public void deleteInstance(String datasetInstanceName) throws DatasetManagementException {
-    HttpResponse response = doDelete("datasets/" + datasetInstanceName);
+    HttpResponse response;
+    try {
+      response = doDelete("datasets/" + datasetInstanceName);
+    } finally {
+      invalidateInstance(datasetInstanceName);
+    }
     if (HttpResponseStatus.NOT_FOUND.getCode() == response.getResponseCode()) {
       throw new InstanceNotFoundException(datasetInstanceName);
     }
@@ -257,6 +358,29 @@ class DatasetServiceClient {
     }
   }
 
+  /**
+   * Removes all cached instance and type metadata. It should be called when dataset modules are changed, since
+   * that can change the types as well as the type metadata contained in the instance metadata.
+   */
+  void invalidateCache() {
+    instanceCache.invalidateAll();
+    typeCache.invalidateAll();
+  }
+
+  private void invalidateInstance(String instanceName) {
+    // Remove the cached metadata for all users
+    Iterator<ImmutablePair<String, String>> iterator = instanceCache.asMap().keySet().iterator();
+    while (iterator.hasNext()) {
+      if (instanceName.equals(iterator.next().getSecond())) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private ImmutablePair<String, String> getCacheKey(String name) {
+    return ImmutablePair.of(getUserId(), name);
+  }
+
   private HttpResponse doGet(String resource) throws DatasetManagementException {
     return doRequest(HttpMethod.GET, resource);
   }
@@ -269,6 +393,10 @@ class DatasetServiceClient {
     return doRequest(HttpMethod.POST, resource);
   }
 
+  private HttpResponse doPost(String resource, String body) throws DatasetManagementException {
+    return doRequest(HttpMethod.POST, resource, null, body);
+  }
+
   private HttpResponse doDelete(String resource) throws DatasetManagementException {
     return doRequest(HttpMethod.DELETE, resource);
   }
@@ -316,6 +444,17 @@ class DatasetServiceClient {
     if (!securityEnabled) {
       return builder;
     }
+    return builder.addHeader(Constants.Security.Headers.USER_ID, getUserId());
+  }
+
+  /**
+   * Returns the id of the user that requests to the dataset service are made with, or an empty string if security is
+   * not enabled.
+   */
+  private String getUserId() {
+    if (!securityEnabled) {
+      return "";
+    }
     String userId;
     if (NamespaceId.SYSTEM.equals(namespaceId)) {
       // For getting a system dataset like MDS, use the system principal. It is ok to do so, since DatasetServiceClient
@@ -331,7 +470,7 @@ class DatasetServiceClient {
 
       userId = authenticationContext.getPrincipal().getName();
     }
-    return builder.addHeader(Constants.Security.Headers.USER_ID, userId);
+    return userId;
   }
 
   private HttpResponse doRequest(HttpMethod method, String url) throws DatasetManagementException {
@@ -61,6 +61,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.jar.JarEntry;
@@ -102,6 +103,7 @@ public class RemoteDatasetFramework implements DatasetFramework {
         clientCache.getUnchecked(moduleId.getNamespace())
           .addModule(moduleId.getId(), moduleClass.getName(), deploymentJar);
       } finally {
+        invalidateMetaCaches();
         try {
           deploymentJar.delete();
         } catch (IOException e) {
@@ -120,18 +122,30 @@ public class RemoteDatasetFramework implements DatasetFramework {
   @Override
   public void addModule(Id.DatasetModule moduleId, DatasetModule module,
                         Location jarLocation) throws DatasetManagementException {
-    clientCache.getUnchecked(moduleId.getNamespace())
-      .addModule(moduleId.getId(), DatasetModules.getDatasetModuleClass(module).getName(), jarLocation);
+    try {
+      clientCache.getUnchecked(moduleId.getNamespace())
+        .addModule(moduleId.getId(), DatasetModules.getDatasetModuleClass(module).getName(), jarLocation);
+    } finally {
+      invalidateMetaCaches();
+    }
   }
 
   @Override
   public void deleteModule(Id.DatasetModule moduleId) throws DatasetManagementException {
-    clientCache.getUnchecked(moduleId.getNamespace()).deleteModule(moduleId.getId());
+    try {
+      clientCache.getUnchecked(moduleId.getNamespace()).deleteModule(moduleId.getId());
+    } finally {
+      invalidateMetaCaches();
+    }
   }
 
   @Override
   public void deleteAllModules(Id.Namespace namespaceId) throws DatasetManagementException {
-    clientCache.getUnchecked(namespaceId).deleteModules();
+    try {
+      clientCache.getUnchecked(namespaceId).deleteModules();
+    } finally {
+      invalidateMetaCaches();
+    }
   }
 
   @Override
@@ -162,9 +176,27 @@ public class RemoteDatasetFramework implements DatasetFramework {
     return meta == null ? null : meta.getSpec();
   }
 
+  /**
+   * Returns the {@link DatasetSpecification} of multiple dataset instances in a namespace. Specifications that are
+   * not cached locally are fetched with a single call to the dataset service.
+   *
+   * @param namespaceId the namespace of the dataset instances
+   * @param instanceNames the names of the dataset instances
+   * @return a map from instance name to {@link DatasetSpecification}, for the instances that exist
+   */
+  public Map<String, DatasetSpecification> getDatasetSpecs(Id.Namespace namespaceId, Collection<String> instanceNames)
+    throws DatasetManagementException {
+    Map<String, DatasetSpecification> specs = new HashMap<>();
+    for (Map.Entry<String, DatasetMeta> entry : clientCache.getUnchecked(namespaceId)
+                                                           .getInstances(instanceNames).entrySet()) {
+      specs.put(entry.getKey(), entry.getValue().getSpec());
+    }
+    return specs;
+  }
+
   @Override
   public boolean hasInstance(Id.DatasetInstance datasetInstanceId) throws DatasetManagementException {
-    return clientCache.getUnchecked(datasetInstanceId.getNamespace()).getInstance(datasetInstanceId.getId()) != null;
+    return clientCache.getUnchecked(datasetInstanceId.getNamespace()).hasInstance(datasetInstanceId.getId());
   }
 
   @Override
@@ -273,6 +305,16 @@ public class RemoteDatasetFramework implements DatasetFramework {
     // no-op. The RemoteDatasetFramework doesn't need to do anything. The lineage should be recorded before this point.
   }
 
+  /**
+   * Removes the cached dataset metadata of all namespaces. Types of the system namespace are visible in all
+   * namespaces, hence a module change in one namespace can change the types of others.
+   */
+  private void invalidateMetaCaches() {
+    for (DatasetServiceClient client : clientCache.asMap().values()) {
+      client.invalidateCache();
+    }
+  }
+
   private Location createDeploymentJar(Class<?> clz) throws IOException {
     File tempDir = new File(cConf.get(Constants.CFG_LOCAL_DATA_DIR),
                             cConf.get(Constants.AppFabric.TEMP_DIR)).getAbsoluteFile();
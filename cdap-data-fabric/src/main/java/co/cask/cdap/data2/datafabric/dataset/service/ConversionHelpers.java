@@ -121,6 +121,20 @@ class ConversionHelpers {
     }
   }
 
+  static List<String> getInstanceNames(HttpRequest request) throws BadRequestException {
+    Reader reader = new InputStreamReader(new ChannelBufferInputStream(request.getContent()), Charsets.UTF_8);
+    List<String> names;
+    try {
+      names = GSON.fromJson(reader, new TypeToken<List<String>>() { }.getType());
+    } catch (JsonSyntaxException e) {
+      throw new BadRequestException(e.getMessage());
+    }
+    if (names == null) {
+      throw new BadRequestException("Request body must be a json array of dataset instance names.");
+    }
+    return names;
+  }
+
   static Map<String, String> getProperties(HttpRequest request) throws BadRequestException {
     Reader reader = new InputStreamReader(new ChannelBufferInputStream(request.getContent()), Charsets.UTF_8);
     try {
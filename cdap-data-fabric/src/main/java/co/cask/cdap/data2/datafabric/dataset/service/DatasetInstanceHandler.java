@@ -87,6 +87,32 @@ public class DatasetInstanceHandler extends AbstractHttpHandler {
                        DatasetMeta.class);
   }
 
+  /**
+   * Gets the {@link DatasetMeta} for multiple dataset instances in a namespace. The request body is a JSON array of
+   * dataset instance names. The response is a JSON object that maps the name of each instance that exists to its
+   * {@link DatasetMeta}. Instances that do not exist are omitted from the response.
+   * <p>
+   * It has its own path, like the batch endpoints of app-fabric, since POST on the instances collection would
+   * mean creating an instance.
+   * </p>
+   *
+   * @param namespaceId namespace of the dataset instances
+   * @throws Exception if the request body is invalid
+   */
+  @POST
+  @Path("/data/datasetmetas")
+  public void getAll(HttpRequest request, HttpResponder responder,
+                     @PathParam("namespace-id") String namespaceId) throws Exception {
+    List<String> names = ConversionHelpers.getInstanceNames(request);
+    for (String name : names) {
+      // validate the instance names
+      ConversionHelpers.toDatasetInstanceId(namespaceId, name);
+    }
+    responder.sendJson(HttpResponseStatus.OK,
+                       instanceService.get(ConversionHelpers.toNamespaceId(namespaceId), names),
+                       new TypeToken<Map<String, DatasetMeta>>() { }.getType());
+  }
+
   /**
    * Creates a new dataset instance.
    *
@@ -67,6 +67,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -174,6 +175,46 @@ public class DatasetInstanceService {
     return datasetMeta;
   }
 
+  /**
+   * Gets multiple dataset instances in a namespace. Instances that do not exist are omitted from the result.
+   *
+   * @param namespace the namespace of the instances
+   * @param names the names of the instances to get
+   * @return a map from instance name to {@link DatasetMeta} for the instances that exist
+   * @throws NamespaceNotFoundException if the namespace does not exist
+   * @throws UnauthorizedException if perimeter security and authorization are enabled, and the current user does not
+   *  have any privileges on one of the existing instances
+   */
+  Map<String, DatasetMeta> get(Id.Namespace namespace, Collection<String> names) throws Exception {
+    // instances that are not found are omitted, so a missing namespace has to be reported explicitly
+    ensureNamespaceExists(namespace);
+    Principal principal = authenticationContext.getPrincipal();
+    // Create the filter once for all the instances
+    Predicate<EntityId> filter = authorizationEnforcer.createFilter(principal);
+    Map<String, DatasetMeta> result = new HashMap<>();
+    for (String name : names) {
+      Id.DatasetInstance instance = Id.DatasetInstance.from(namespace, name);
+      DatasetMeta datasetMeta;
+      try {
+        datasetMeta = metaCache.get(instance);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof NotFoundException) {
+          continue;
+        }
+        if ((cause instanceof Exception) && (cause instanceof HttpErrorStatusProvider)) {
+          throw (Exception) cause;
+        }
+        throw e;
+      }
+      if (!Principal.SYSTEM.equals(principal) && !filter.apply(instance.toEntityId())) {
+        throw new UnauthorizedException(principal, instance.toEntityId());
+      }
+      result.put(name, datasetMeta);
+    }
+    return result;
+  }
+
   /**
    * Read the dataset meta data (instance and type) from MDS.
    */
@@ -49,6 +49,12 @@ public class CubeDataset extends AbstractDataset implements Cube {
   public CubeDataset(String name, MetricsTable entityTable,
                      Map<Integer, Table> resolutionTables,
                      Map<String, ? extends Aggregation> aggregations) {
+    this(name, entityTable, resolutionTables, aggregations, new int[0]);
+  }
+
+  public CubeDataset(String name, MetricsTable entityTable,
+                     Map<Integer, Table> resolutionTables,
+                     Map<String, ? extends Aggregation> aggregations, int[] rollupResolutions) {
     super(name, entityTable, resolutionTables.values().toArray(new Dataset[resolutionTables.values().size()]));
     this.entityTable = entityTable;
     this.resolutionTables = resolutionTables;
@@ -59,7 +65,7 @@ public class CubeDataset extends AbstractDataset implements Cube {
     }
     this.cube = new DefaultCube(resolutions,
                                 new FactTableSupplierImpl(entityTable, resolutionTables),
-                                aggregations, ImmutableMap.<String, AggregationAlias>of());
+                                aggregations, ImmutableMap.<String, AggregationAlias>of(), 1, rollupResolutions);
   }
 
   @Override
@@ -92,6 +98,18 @@ public class CubeDataset extends AbstractDataset implements Cube {
     return cube.findMeasureNames(query);
   }
 
+  /**
+   * Materializes the data of the rollup resolutions of this cube up to the given time.
+   * See {@link DefaultCube#rollup(long)}. The transaction conflicts with concurrent transactions that add facts to
+   * this cube, so that it doesn't materialize a bucket without facts that are not yet committed.
+   *
+   * @param currentTs current time in seconds
+   * @return lag in seconds of each rollup resolution
+   */
+  public Map<Integer, Long> rollup(long currentTs) {
+    return cube.rollup(currentTs);
+  }
+
   @Override
   public void write(Object ignored, CubeFact cubeFact) {
     add(cubeFact);
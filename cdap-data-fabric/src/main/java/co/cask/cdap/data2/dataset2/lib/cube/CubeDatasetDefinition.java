@@ -31,6 +31,7 @@ import co.cask.cdap.data2.dataset2.lib.table.hbase.HBaseTableAdmin;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
 import com.google.gson.Gson;
 
 import java.io.IOException;
@@ -48,7 +49,8 @@ import java.util.Set;
  * <p/>
  * Cube dataset can be configured with aggregation resolutions and aggregations. E.g.
     <pre>
-     dataset.cube.resolutions=1,60
+     dataset.cube.resolutions=1,60,3600
+     dataset.cube.rollup.resolutions=3600
      dataset.cube.aggregation.userPages.dimensions=user,page
      dataset.cube.aggregation.userPages.requiredDimensions=page
      dataset.cube.aggregation.userActions.dimensions=user,action
@@ -57,7 +59,12 @@ import java.util.Set;
  *
  * <ul>
  *   <li>
- *     configures Cube to aggregate data for 1 second and 60 seconds resolutions
+ *     configures Cube to aggregate data for 1 second, 60 seconds and 1 hour resolutions
+ *   </li>
+ *   <li>
+ *     configures 1 hour resolution to be materialized from 60 seconds resolution by
+ *     {@link CubeDataset#rollup(long)} instead of being written with every fact; until materialized, its data is
+ *     computed from 60 seconds resolution when queried
  *   </li>
  *   <li>
  *     configures "userPages" aggregation (name doesn't have any restricted format, can be any alphabetical) that
@@ -82,6 +89,7 @@ public class CubeDatasetDefinition
   public static final String PROPERTY_AGGREGATION_PREFIX = "dataset.cube.aggregation.";
   public static final String PROPERTY_DIMENSIONS = "dimensions";
   public static final String PROPERTY_REQUIRED_DIMENSIONS = "requiredDimensions";
+  public static final String PROPERTY_ROLLUP_RESOLUTIONS = "dataset.cube.rollup.resolutions";
   // 1 second is the only default resolution
   public static final int[] DEFAULT_RESOLUTIONS = new int[]{1};
 
@@ -113,6 +121,8 @@ public class CubeDatasetDefinition
     DatasetProperties factTableProperties = computeFactTableProperties(properties);
     List<DatasetSpecification> datasetSpecs = Lists.newArrayList();
 
+    validateRollupResolutions(properties.getProperties());
+
     // Configuring table that hold mappings of tag names and values and such
     datasetSpecs.add(metricsTableDef.configure("entity", properties));
 
@@ -132,6 +142,7 @@ public class CubeDatasetDefinition
                                           DatasetProperties newProps,
                                           DatasetSpecification currentSpec) throws IncompatibleUpdateException {
 
+    validateRollupResolutions(newProps.getProperties());
     DatasetProperties factTableProperties = computeFactTableProperties(newProps);
     List<DatasetSpecification> datasetSpecs = Lists.newArrayList();
 
@@ -186,7 +197,8 @@ public class CubeDatasetDefinition
 
     Map<String, Aggregation> aggregations = getAggregations(spec.getProperties());
 
-    return new CubeDataset(spec.getName(), entityTable, resolutionTables, aggregations);
+    return new CubeDataset(spec.getName(), entityTable, resolutionTables, aggregations,
+                           getRollupResolutions(spec.getProperties()));
   }
 
   private DatasetProperties computeFactTableProperties(DatasetProperties props) {
@@ -236,19 +248,39 @@ public class CubeDatasetDefinition
     return aggregations;
   }
 
+  private void validateRollupResolutions(Map<String, String> propsMap) {
+    int[] resolutions = getResolutions(propsMap);
+    for (int rollupResolution : getRollupResolutions(propsMap)) {
+      if (!Ints.contains(resolutions, rollupResolution)) {
+        throw new IllegalArgumentException(String.format("Rollup resolution %d in property %s is not one of the " +
+                                                           "resolutions in property %s.", rollupResolution,
+                                                         PROPERTY_ROLLUP_RESOLUTIONS, Cube.PROPERTY_RESOLUTIONS));
+      }
+    }
+  }
+
   private int[] getResolutions(Map<String, String> propsMap) {
     // Example of configuring 1 second and 60 seconds resolutions:
     //   dataset.cube.resolutions=1,60
+    return parseResolutions(propsMap, Cube.PROPERTY_RESOLUTIONS, DEFAULT_RESOLUTIONS);
+  }
+
+  private int[] getRollupResolutions(Map<String, String> propsMap) {
+    // Example of materializing 3600 seconds resolution from the finer resolutions:
+    //   dataset.cube.rollup.resolutions=3600
+    return parseResolutions(propsMap, PROPERTY_ROLLUP_RESOLUTIONS, new int[0]);
+  }
 
-    String resProp = propsMap.get(Cube.PROPERTY_RESOLUTIONS);
+  private int[] parseResolutions(Map<String, String> propsMap, String property, int[] defaultResolutions) {
+    String resProp = propsMap.get(property);
     int[] resolutions;
     if (resProp == null) {
-      resolutions = DEFAULT_RESOLUTIONS;
+      resolutions = defaultResolutions;
     } else {
       String[] seconds = resProp.split(",");
       if (seconds.length == 0) {
         throw new IllegalArgumentException(String.format("Invalid value %s for property %s.",
-                                                         resProp, Cube.PROPERTY_RESOLUTIONS));
+                                                         resProp, property));
       }
       resolutions = new int[seconds.length];
       for (int i = 0; i < seconds.length; i++) {
@@ -256,7 +288,7 @@ public class CubeDatasetDefinition
           resolutions[i] = Integer.valueOf(seconds[i]);
         } catch (NumberFormatException e) {
           throw new IllegalArgumentException(String.format("Invalid resolution value %s in property %s.",
-                                                           seconds[i], Cube.PROPERTY_RESOLUTIONS));
+                                                           seconds[i], property));
         }
       }
     }
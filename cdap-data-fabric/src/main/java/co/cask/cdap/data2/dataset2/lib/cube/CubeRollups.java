@@ -0,0 +1,319 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.data2.dataset2.lib.cube;
+
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
+import co.cask.cdap.api.dataset.lib.cube.CubeFact;
+import co.cask.cdap.api.dataset.lib.cube.DimensionValue;
+import co.cask.cdap.api.dataset.lib.cube.MeasureType;
+import co.cask.cdap.api.dataset.lib.cube.Measurement;
+import co.cask.cdap.api.dataset.lib.cube.TimeValue;
+import co.cask.cdap.common.utils.ImmutablePair;
+import co.cask.cdap.data2.dataset2.lib.timeseries.Fact;
+import co.cask.cdap.data2.dataset2.lib.timeseries.FactScan;
+import co.cask.cdap.data2.dataset2.lib.timeseries.FactScanResult;
+import co.cask.cdap.data2.dataset2.lib.timeseries.FactScanner;
+import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maintains the resolutions of a {@link DefaultCube} that are not written on {@link DefaultCube#add(Collection)},
+ * but are materialized in the background from a finer resolution.
+ * <p/>
+ * Each rollup resolution keeps a watermark in its fact table: data before the watermark is materialized in the table,
+ * data after it is computed on the fly from the finer resolution it is rolled up from.
+ */
+final class CubeRollups {
+  // limits the amount of data materialized by a single rollup, so that a lagging rollup catches up in small steps
+  private static final int MAX_BUCKETS_PER_ROLLUP = 100;
+  private static final int WRITE_BATCH_SIZE = 1000;
+
+  private final Map<Integer, FactTable> resolutionToFactTable;
+  // rollup resolution -> resolution it is computed from, ordered by rollup resolution
+  private final NavigableMap<Integer, Integer> sources;
+  // finest of the written resolutions, stores the types of the measures
+  private final FactTable measureTypesTable;
+  private final ConcurrentMap<String, MeasureType> measureTypes;
+  private volatile boolean watermarksInitialized;
+
+  CubeRollups(Map<Integer, FactTable> resolutionToFactTable, int[] rollupResolutions) {
+    this.resolutionToFactTable = resolutionToFactTable;
+    this.sources = Maps.newTreeMap();
+    this.measureTypes = Maps.newConcurrentMap();
+
+    int[] written = new int[resolutionToFactTable.size()];
+    int count = 0;
+    for (int resolution : resolutionToFactTable.keySet()) {
+      if (!contains(rollupResolutions, resolution)) {
+        written[count++] = resolution;
+      }
+    }
+    if (count == 0) {
+      throw new IllegalArgumentException("At least one resolution must not be a rollup resolution, rollups: " +
+                                           Arrays.toString(rollupResolutions));
+    }
+    written = Arrays.copyOf(written, count);
+    Arrays.sort(written);
+    this.measureTypesTable = resolutionToFactTable.get(written[0]);
+
+    for (int rollup : rollupResolutions) {
+      if (!resolutionToFactTable.containsKey(rollup)) {
+        throw new IllegalArgumentException("Rollup resolution " + rollup + " is not one of the cube resolutions: " +
+                                             resolutionToFactTable.keySet());
+      }
+      // the coarsest resolution that evenly divides the rollup resolution gives the fewest records to aggregate
+      Integer source = null;
+      for (int resolution : resolutionToFactTable.keySet()) {
+        if (resolution < rollup && rollup % resolution == 0 && (source == null || resolution > source)) {
+          source = resolution;
+        }
+      }
+      if (source == null) {
+        throw new IllegalArgumentException("Rollup resolution " + rollup + " is not a multiple of any finer " +
+                                             "resolution of the cube: " + resolutionToFactTable.keySet());
+      }
+      sources.put(rollup, source);
+    }
+  }
+
+  boolean isRollup(int resolution) {
+    return sources.containsKey(resolution);
+  }
+
+  boolean isEmpty() {
+    return sources.isEmpty();
+  }
+
+  /**
+   * Records the information needed to roll up the given facts, before they are written to the written resolutions.
+   */
+  void beforeAdd(Collection<? extends CubeFact> facts) {
+    if (sources.isEmpty() || facts.isEmpty()) {
+      return;
+    }
+    long minTs = Long.MAX_VALUE;
+    Map<String, MeasureType> newTypes = Maps.newHashMap();
+    for (CubeFact fact : facts) {
+      minTs = Math.min(minTs, fact.getTimestamp());
+      for (Measurement measurement : fact.getMeasurements()) {
+        if (measureTypes.get(measurement.getName()) != measurement.getType()) {
+          newTypes.put(measurement.getName(), measurement.getType());
+        }
+      }
+    }
+    measureTypesTable.addMeasureTypes(newTypes);
+    measureTypes.putAll(newTypes);
+    initializeWatermarks(minTs);
+  }
+
+  /**
+   * Writes the facts that are before the watermark of a rollup resolution directly to its fact table, as the rollup
+   * only computes the data after its watermark from the finer resolution.
+   * <p/>
+   * The facts after the watermark are left to a later rollup. A concurrent rollup doesn't see them until they are
+   * committed, so it must not move the watermark past them meanwhile: the watermarks are locked to make the two
+   * transactions conflict.
+   *
+   * @return number of facts written to the rollup resolutions
+   */
+  int addLateFacts(List<Fact> facts) {
+    if (facts.isEmpty()) {
+      return 0;
+    }
+    int added = 0;
+    for (int resolution : sources.keySet()) {
+      resolutionToFactTable.get(resolution).lockRollupWatermark();
+      long materializedUntil = getMaterializedUntil(resolution);
+      List<Fact> lateFacts = Lists.newArrayList();
+      for (Fact fact : facts) {
+        if (fact.getTimestamp() < materializedUntil) {
+          lateFacts.add(fact);
+        }
+      }
+      if (!lateFacts.isEmpty()) {
+        resolutionToFactTable.get(resolution).add(lateFacts);
+        added += lateFacts.size();
+      }
+    }
+    return added;
+  }
+
+  /**
+   * Returns the timestamp up to which (exclusive) the data of the given resolution is stored in its fact table.
+   */
+  long getMaterializedUntil(int resolution) {
+    if (!sources.containsKey(resolution)) {
+      return Long.MAX_VALUE;
+    }
+    long watermark = resolutionToFactTable.get(resolution).getRollupWatermark();
+    return watermark < 0 ? Long.MAX_VALUE : watermark;
+  }
+
+  /**
+   * Computes the data of the given rollup resolution from the finer resolution it is rolled up from.
+   */
+  List<FactScanResult> computeFromSource(int resolution, FactScan scan) {
+    // same as for the materialized data, include buckets that start within the scan range
+    long startBucket = scan.getStartTs() / resolution * resolution;
+    long startTs = startBucket < scan.getStartTs() ? startBucket + resolution : startBucket;
+    long endBucket = scan.getEndTs() / resolution * resolution;
+    long endTs = endBucket > Long.MAX_VALUE - resolution ? Long.MAX_VALUE : endBucket + resolution - 1;
+    List<FactScanResult> sourceResults = Lists.newArrayList();
+    if (startTs <= endTs) {
+      scan(sources.get(resolution), new FactScan(startTs, endTs, scan.getMeasureNames(), scan.getDimensionValues()),
+           sourceResults);
+    }
+
+    // {measure name, dimension values} -> {time -> value}, source results of a series are ordered by time
+    Map<ImmutablePair<String, List<DimensionValue>>, TimeValueAggregator> series = Maps.newLinkedHashMap();
+    for (FactScanResult result : sourceResults) {
+      ImmutablePair<String, List<DimensionValue>> key =
+        new ImmutablePair<>(result.getMeasureName(), result.getDimensionValues());
+      TimeValueAggregator values = series.get(key);
+      if (values == null) {
+        // the latest gauge value of a bucket is its value, counters sum up
+        boolean gauge = getMeasureType(result.getMeasureName()) == MeasureType.GAUGE;
+        values = new TimeValueAggregator(gauge ? AggregationFunction.LATEST : AggregationFunction.SUM);
+        series.put(key, values);
+      }
+      for (TimeValue timeValue : result) {
+        values.add(timeValue.getTimestamp() / resolution * resolution, timeValue.getValue());
+      }
+    }
+
+    List<FactScanResult> results = Lists.newArrayListWithCapacity(series.size());
+    for (Map.Entry<ImmutablePair<String, List<DimensionValue>>, TimeValueAggregator> entry : series.entrySet()) {
+      results.add(new FactScanResult(entry.getKey().getFirst(), entry.getKey().getSecond(),
+                                     entry.getValue().toTimeValues()));
+    }
+    return results;
+  }
+
+  /**
+   * Materializes complete buckets of all rollup resolutions that are before the given time, starting from the finest
+   * rollup resolution, so that coarser rollups can use the data materialized by finer ones.
+   *
+   * @return lag in seconds of each rollup resolution, i.e. time from its watermark to the given time
+   */
+  Map<Integer, Long> rollup(long currentTs, Collection<? extends Aggregation> aggregations) {
+    Map<Integer, Long> lags = Maps.newTreeMap();
+    for (int resolution : sources.keySet()) {
+      FactTable table = resolutionToFactTable.get(resolution);
+      long watermark = table.getRollupWatermark();
+      if (watermark < 0) {
+        // nothing was written before, no need to materialize the past
+        watermark = currentTs / resolution * resolution;
+        table.setRollupWatermark(watermark);
+      }
+
+      long newWatermark = Math.min(currentTs / resolution * resolution,
+                                   watermark + (long) MAX_BUCKETS_PER_ROLLUP * resolution);
+      if (newWatermark > watermark) {
+        List<Fact> facts = Lists.newArrayList();
+        for (Aggregation aggregation : aggregations) {
+          List<DimensionValue> dimensionValues = Lists.newArrayList();
+          for (String dimensionName : aggregation.getDimensionNames()) {
+            dimensionValues.add(new DimensionValue(dimensionName, null));
+          }
+          FactScan scan = new FactScan(watermark, newWatermark - 1, ImmutableList.<String>of(), dimensionValues);
+          for (FactScanResult result : computeFromSource(resolution, scan)) {
+            // rolled up values are stored as gauges, so that repeating a failed rollup overwrites its partial results
+            for (TimeValue timeValue : result) {
+              facts.add(new Fact(timeValue.getTimestamp(), result.getDimensionValues(),
+                                 new Measurement(result.getMeasureName(), MeasureType.GAUGE, timeValue.getValue())));
+            }
+            if (facts.size() >= WRITE_BATCH_SIZE) {
+              table.add(facts);
+              facts.clear();
+            }
+          }
+        }
+        if (!facts.isEmpty()) {
+          table.add(facts);
+        }
+        table.setRollupWatermark(newWatermark);
+        watermark = newWatermark;
+      }
+      lags.put(resolution, currentTs - watermark);
+    }
+    return lags;
+  }
+
+  private void initializeWatermarks(long ts) {
+    if (watermarksInitialized) {
+      return;
+    }
+    for (int resolution : sources.keySet()) {
+      FactTable table = resolutionToFactTable.get(resolution);
+      if (table.getRollupWatermark() < 0) {
+        table.setRollupWatermark(ts / resolution * resolution);
+      }
+    }
+    watermarksInitialized = true;
+  }
+
+  private void scan(int resolution, FactScan scan, List<FactScanResult> results) {
+    long materializedUntil = getMaterializedUntil(resolution);
+    if (scan.getStartTs() < materializedUntil) {
+      FactScan materialized = new FactScan(scan.getStartTs(), Math.min(scan.getEndTs(), materializedUntil - 1),
+                                           scan.getMeasureNames(), scan.getDimensionValues());
+      FactScanner scanner = resolutionToFactTable.get(resolution).scan(materialized);
+      try {
+        Iterators.addAll(results, scanner);
+      } finally {
+        scanner.close();
+      }
+    }
+    if (scan.getEndTs() >= materializedUntil) {
+      results.addAll(computeFromSource(resolution, new FactScan(Math.max(scan.getStartTs(), materializedUntil),
+                                                                scan.getEndTs(), scan.getMeasureNames(),
+                                                                scan.getDimensionValues())));
+    }
+  }
+
+  private MeasureType getMeasureType(String measureName) {
+    MeasureType type = measureTypes.get(measureName);
+    if (type == null) {
+      // recorded by another process
+      for (Map.Entry<String, MeasureType> entry : measureTypesTable.getMeasureTypes().entrySet()) {
+        measureTypes.putIfAbsent(entry.getKey(), entry.getValue());
+      }
+      type = measureTypes.get(measureName);
+    }
+    return type == null ? MeasureType.COUNTER : type;
+  }
+
+  private static boolean contains(int[] values, int value) {
+    for (int v : values) {
+      if (v == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -16,7 +16,6 @@
 
 package co.cask.cdap.data2.dataset2.lib.cube;
 
-import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
 import co.cask.cdap.api.dataset.lib.cube.Cube;
 import co.cask.cdap.api.dataset.lib.cube.CubeDeleteQuery;
 import co.cask.cdap.api.dataset.lib.cube.CubeExploreQuery;
@@ -32,6 +31,7 @@ import co.cask.cdap.data2.dataset2.lib.timeseries.FactScan;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactScanResult;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactScanner;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
+import com.google.common.base.Throwables;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
@@ -40,17 +40,26 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.PeekingIterator;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 
 /**
@@ -62,10 +71,16 @@ public class DefaultCube implements Cube {
   private static final DimensionValueComparator DIMENSION_VALUE_COMPARATOR = new DimensionValueComparator();
   // hard-limit on max records to scan
   private static final int MAX_RECORDS_TO_SCAN = 100 * 1000;
+  private static final long QUERY_THREAD_KEEP_ALIVE_SECONDS = 60;
 
   private final Map<Integer, FactTable> resolutionToFactTable;
   private final Map<String, ? extends Aggregation> aggregations;
   private final Map<String, AggregationAlias> aggregationAliasMap;
+  private final int queryParallelism;
+  private final CubeRollups rollups;
+  // executes query shards in parallel, null if queries are executed sequentially
+  @Nullable
+  private final ExecutorService queryExecutor;
 
   @Nullable
   private MetricsCollector metrics;
@@ -73,12 +88,48 @@ public class DefaultCube implements Cube {
   public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
                      Map<String, ? extends Aggregation> aggregations,
                      Map<String, AggregationAlias> aggregationAliasMap) {
+    this(resolutions, factTableSupplier, aggregations, aggregationAliasMap, 1);
+  }
+
+  /**
+   * Creates an instance of {@link DefaultCube}.
+   *
+   * @param queryParallelism maximum number of threads used to scan a single query. A value greater than one must
+   *                         only be used if the fact tables provided by the supplier can be scanned concurrently.
+   */
+  public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
+                     Map<String, ? extends Aggregation> aggregations,
+                     Map<String, AggregationAlias> aggregationAliasMap, int queryParallelism) {
+    this(resolutions, factTableSupplier, aggregations, aggregationAliasMap, queryParallelism, new int[0]);
+  }
+
+  /**
+   * Creates an instance of {@link DefaultCube}.
+   *
+   * @param queryParallelism maximum number of threads used to scan a single query. A value greater than one must
+   *                         only be used if the fact tables provided by the supplier can be scanned concurrently.
+   * @param rollupResolutions resolutions that are not written on {@link #add(Collection)}, but materialized from a
+   *                          finer resolution by {@link #rollup(long)}. Each of them must be a multiple of another
+   *                          resolution of the cube.
+   */
+  public DefaultCube(int[] resolutions, FactTableSupplier factTableSupplier,
+                     Map<String, ? extends Aggregation> aggregations,
+                     Map<String, AggregationAlias> aggregationAliasMap, int queryParallelism,
+                     int[] rollupResolutions) {
     this.aggregations = aggregations;
     this.resolutionToFactTable = Maps.newHashMap();
     for (int resolution : resolutions) {
       resolutionToFactTable.put(resolution, factTableSupplier.get(resolution, 3600));
     }
     this.aggregationAliasMap = aggregationAliasMap;
+    this.queryParallelism = queryParallelism;
+    this.rollups = new CubeRollups(resolutionToFactTable, rollupResolutions);
+    // when all threads are busy, shards are scanned by the querying thread
+    this.queryExecutor = queryParallelism <= 1 ? null :
+      new ThreadPoolExecutor(0, queryParallelism, QUERY_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                             new SynchronousQueue<Runnable>(),
+                             Threads.createDaemonThreadFactory("cube-query-%d"),
+                             new ThreadPoolExecutor.CallerRunsPolicy());
   }
 
   @Override
@@ -112,15 +163,38 @@ public class DefaultCube implements Cube {
       }
     }
 
-    for (FactTable table : resolutionToFactTable.values()) {
-      table.add(toWrite);
+    rollups.beforeAdd(facts);
+    int addedFacts = 0;
+    for (Map.Entry<Integer, FactTable> entry : resolutionToFactTable.entrySet()) {
+      if (!rollups.isRollup(entry.getKey())) {
+        entry.getValue().add(toWrite);
+        addedFacts += toWrite.size();
+      }
     }
+    addedFacts += rollups.addLateFacts(toWrite);
 
     incrementMetric("cube.cubeFact.add.request.count", 1);
     incrementMetric("cube.cubeFact.added.count", facts.size());
     incrementMetric("cube.tsFact.created.count", toWrite.size());
     incrementMetric("cube.tsFact.created.dimValues.count", dimValuesCount);
-    incrementMetric("cube.tsFact.added.count", toWrite.size() * resolutionToFactTable.size());
+    incrementMetric("cube.tsFact.added.count", addedFacts);
+  }
+
+  /**
+   * Materializes the data of the rollup resolutions of this cube up to the given time. Until materialized, the data of
+   * a rollup resolution is computed from a finer resolution at query time.
+   *
+   * @param currentTs current time in seconds, only the buckets that end before it are materialized
+   * @return lag in seconds of each rollup resolution, i.e. time from the end of its materialized data to the given time
+   */
+  public Map<Integer, Long> rollup(long currentTs) {
+    Map<Integer, Long> lags = rollups.rollup(currentTs, aggregations.values());
+    if (metrics != null) {
+      for (Map.Entry<Integer, Long> lag : lags.entrySet()) {
+        metrics.gauge("cube.rollup.res." + lag.getKey() + ".lag.seconds", lag.getValue());
+      }
+    }
+    return lags;
   }
 
   @Override
@@ -206,10 +280,27 @@ public class DefaultCube implements Cube {
     FactScan scan = new FactScan(query.getStartTs(), query.getEndTs(),
                                  query.getMeasurements().keySet(), dimensionValues);
 
-    // 3) execute scan query
+    // 3) execute scan query, split into shards that are scanned in parallel
     FactTable table = resolutionToFactTable.get(query.getResolution());
-    FactScanner scanner = table.scan(scan);
-    Table<Map<String, String>, String, Map<Long, Long>> resultMap = getTimeSeries(query, scanner);
+    // for a rollup resolution, data after its watermark is computed from a finer resolution
+    long materializedUntil = rollups.getMaterializedUntil(query.getResolution());
+    List<FactScan> shards = ImmutableList.of();
+    if (scan.getStartTs() < materializedUntil) {
+      FactScan materialized = new FactScan(scan.getStartTs(), Math.min(scan.getEndTs(), materializedUntil - 1),
+                                           scan.getMeasureNames(), scan.getDimensionValues());
+      shards = queryExecutor == null ?
+        ImmutableList.of(materialized) : table.splitScan(materialized, queryParallelism);
+    }
+    List<FactScanResult> notMaterialized = ImmutableList.of();
+    if (scan.getEndTs() >= materializedUntil) {
+      notMaterialized = rollups.computeFromSource(
+        query.getResolution(), new FactScan(Math.max(scan.getStartTs(), materializedUntil), scan.getEndTs(),
+                                            scan.getMeasureNames(), scan.getDimensionValues()));
+      incrementMetric("cube.query.rollup.computed.count", 1);
+    }
+    incrementMetric("cube.query.shards.count", shards.size());
+    Table<Map<String, String>, String, TimeValueAggregator> resultMap =
+      getTimeSeries(query, table, shards, notMaterialized);
 
     incrementMetric("cube.query.request.success.count", 1);
     incrementMetric("cube.query.result.size", resultMap.size());
@@ -327,93 +418,160 @@ public class DefaultCube implements Cube {
     return currentBest;
   }
 
-  private Table<Map<String, String>, String, Map<Long, Long>> getTimeSeries(CubeQuery query, FactScanner scanner) {
-    // {dimension values, measure} -> {time -> value}s
-    Table<Map<String, String>, String, Map<Long, Long>> result = HashBasedTable.create();
-
-    int count = 0;
-    while (scanner.hasNext()) {
-      FactScanResult next = scanner.next();
-      incrementMetric("cube.query.scan.records.count", 1);
-
-      boolean skip = false;
-      // using tree map, as we are using it as a key for a map
-      Map<String, String> seriesDimensions = Maps.newTreeMap();
-      for (String dimensionName : query.getGroupByDimensions()) {
-        // todo: use Map<String, String> instead of List<DimensionValue> into a String, String, everywhere
-        for (DimensionValue dimensionValue : next.getDimensionValues()) {
-          if (dimensionName.equals(dimensionValue.getName())) {
-            if (dimensionValue.getValue() == null) {
-              // Currently, we do NOT return null as grouped by value.
-              // Depending on whether dimension is required or not the records with null value in it may or may not be
-              // in aggregation. At this moment, the choosing of the aggregation for query doesn't look at this, so
-              // potentially null may or may not be included in results, depending on the aggregation selected
-              // querying. We don't want to produce inconsistent results varying due to different aggregations selected,
-              // so don't return nulls in any of those cases.
-              skip = true;
-              continue;
-            }
-            seriesDimensions.put(dimensionName, dimensionValue.getValue());
-            break;
+  private Table<Map<String, String>, String, TimeValueAggregator> getTimeSeries(final CubeQuery query,
+                                                                               final FactTable table,
+                                                                               List<FactScan> shards,
+                                                                               List<FactScanResult> notMaterialized) {
+    // the limit on records to scan is shared by all shards
+    final AtomicInteger scannedRecords = new AtomicInteger();
+    Table<Map<String, String>, String, TimeValueAggregator> result;
+    if (shards.size() <= 1) {
+      result = shards.isEmpty() ?
+        HashBasedTable.<Map<String, String>, String, TimeValueAggregator>create() :
+        scanShard(query, table, shards.get(0), scannedRecords);
+    } else {
+      result = scanShards(query, table, shards, scannedRecords);
+    }
+    // not materialized data of a rollup resolution is the latest
+    merge(result, getTimeSeries(query, notMaterialized.iterator(), scannedRecords));
+    return result;
+  }
+
+  private Table<Map<String, String>, String, TimeValueAggregator> scanShards(final CubeQuery query,
+                                                                            final FactTable table,
+                                                                            List<FactScan> shards,
+                                                                            final AtomicInteger scannedRecords) {
+    List<Future<Table<Map<String, String>, String, TimeValueAggregator>>> futures = Lists.newArrayList();
+    try {
+      for (final FactScan shard : shards) {
+        futures.add(queryExecutor.submit(new Callable<Table<Map<String, String>, String, TimeValueAggregator>>() {
+          @Override
+          public Table<Map<String, String>, String, TimeValueAggregator> call() {
+            return scanShard(query, table, shard, scannedRecords);
           }
+        }));
+      }
+
+      // merge partial results in the order of the shards, which are ordered by time
+      Table<Map<String, String>, String, TimeValueAggregator> result = null;
+      for (Future<Table<Map<String, String>, String, TimeValueAggregator>> future : futures) {
+        Table<Map<String, String>, String, TimeValueAggregator> partial = future.get();
+        if (result == null) {
+          result = partial;
+        } else {
+          merge(result, partial);
         }
       }
+      return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      // no-op for completed shards, stops the remaining ones if a shard failed
+      for (Future<?> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
 
-      if (skip) {
-        incrementMetric("cube.query.scan.skipped.count", 1);
-        continue;
+  private static void merge(Table<Map<String, String>, String, TimeValueAggregator> result,
+                            Table<Map<String, String>, String, TimeValueAggregator> later) {
+    for (Table.Cell<Map<String, String>, String, TimeValueAggregator> cell : later.cellSet()) {
+      TimeValueAggregator aggregator = result.get(cell.getRowKey(), cell.getColumnKey());
+      if (aggregator == null) {
+        result.put(cell.getRowKey(), cell.getColumnKey(), cell.getValue());
+      } else {
+        aggregator.addAll(cell.getValue());
       }
+    }
+  }
+
+  private Table<Map<String, String>, String, TimeValueAggregator> scanShard(CubeQuery query, FactTable table,
+                                                                           FactScan shard,
+                                                                           AtomicInteger scannedRecords) {
+    FactScanner scanner = table.scan(shard);
+    try {
+      return getTimeSeries(query, scanner, scannedRecords);
+    } finally {
+      scanner.close();
+    }
+  }
 
-      for (TimeValue timeValue : next) {
-        Map<Long, Long> timeValues = result.get(seriesDimensions, next.getMeasureName());
-        if (timeValues == null) {
-          result.put(seriesDimensions, next.getMeasureName(), Maps.<Long, Long>newHashMap());
+  private Table<Map<String, String>, String, TimeValueAggregator> getTimeSeries(CubeQuery query,
+                                                                               Iterator<FactScanResult> scanner,
+                                                                               AtomicInteger scannedRecords) {
+    // {dimension values, measure} -> {time -> value}s
+    Table<Map<String, String>, String, TimeValueAggregator> result = HashBasedTable.create();
+
+    int scanned = 0;
+    int skipped = 0;
+    try {
+      while (scanner.hasNext()) {
+        FactScanResult next = scanner.next();
+        scanned++;
+
+        boolean skip = false;
+        // using tree map, as we are using it as a key for a map
+        Map<String, String> seriesDimensions = Maps.newTreeMap();
+        for (String dimensionName : query.getGroupByDimensions()) {
+          // todo: use Map<String, String> instead of List<DimensionValue> into a String, String, everywhere
+          for (DimensionValue dimensionValue : next.getDimensionValues()) {
+            if (dimensionName.equals(dimensionValue.getName())) {
+              if (dimensionValue.getValue() == null) {
+                // Currently, we do NOT return null as grouped by value.
+                // Depending on whether dimension is required or not the records with null value in it may or may not
+                // be in aggregation. At this moment, the choosing of the aggregation for query doesn't look at this,
+                // so potentially null may or may not be included in results, depending on the aggregation selected
+                // querying. We don't want to produce inconsistent results varying due to different aggregations
+                // selected, so don't return nulls in any of those cases.
+                skip = true;
+                continue;
+              }
+              seriesDimensions.put(dimensionName, dimensionValue.getValue());
+              break;
+            }
+          }
         }
 
-        AggregationFunction function = query.getMeasurements().get(next.getMeasureName());
-        if (AggregationFunction.SUM == function) {
-          Long value =  result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value == null ? 0 : value;
-          value += timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.MAX == function) {
-          Long value = result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value != null && value > timeValue.getValue() ? value : timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.MIN == function) {
-          Long value =  result.get(seriesDimensions, next.getMeasureName()).get(timeValue.getTimestamp());
-          value = value != null && value < timeValue.getValue() ? value : timeValue.getValue();
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), value);
-        } else if (AggregationFunction.LATEST == function) {
-          result.get(seriesDimensions, next.getMeasureName()).put(timeValue.getTimestamp(), timeValue.getValue());
-        } else {
-          // should never happen: developer error
-          throw new RuntimeException("Unknown MeasureType: " + function);
+        if (skip) {
+          skipped++;
+          continue;
+        }
+
+        TimeValueAggregator timeValues = result.get(seriesDimensions, next.getMeasureName());
+        for (TimeValue timeValue : next) {
+          if (timeValues == null) {
+            timeValues = new TimeValueAggregator(query.getMeasurements().get(next.getMeasureName()));
+            result.put(seriesDimensions, next.getMeasureName(), timeValues);
+          }
+          timeValues.add(timeValue.getTimestamp(), timeValue.getValue());
+        }
+        if (scannedRecords.incrementAndGet() >= MAX_RECORDS_TO_SCAN) {
+          break;
         }
       }
-      if (++count >= MAX_RECORDS_TO_SCAN) {
-        break;
-      }
+    } finally {
+      incrementMetric("cube.query.scan.records.count", scanned);
+      incrementMetric("cube.query.scan.skipped.count", skipped);
     }
     return result;
   }
 
   private Collection<TimeSeries> convertToQueryResult(CubeQuery query,
                                                       Table<Map<String, String>, String,
-                                                        Map<Long, Long>> resultTable) {
+                                                        TimeValueAggregator> resultTable) {
 
     List<TimeSeries> result = Lists.newArrayList();
     // iterating each groupValue dimensions
-    for (Map.Entry<Map<String, String>, Map<String, Map<Long, Long>>> row : resultTable.rowMap().entrySet()) {
+    for (Map.Entry<Map<String, String>, Map<String, TimeValueAggregator>> row : resultTable.rowMap().entrySet()) {
       // iterating each measure
-      for (Map.Entry<String, Map<Long, Long>> measureEntry : row.getValue().entrySet()) {
+      for (Map.Entry<String, TimeValueAggregator> measureEntry : row.getValue().entrySet()) {
         // generating time series for a grouping and a measure
         int count = 0;
-        List<TimeValue> timeValues = Lists.newArrayList();
-        for (Map.Entry<Long, Long> timeValue : measureEntry.getValue().entrySet()) {
-          timeValues.add(new TimeValue(timeValue.getKey(), timeValue.getValue()));
-        }
-        Collections.sort(timeValues);
+        // sorted by timestamp
+        List<TimeValue> timeValues = measureEntry.getValue().toTimeValues();
         PeekingIterator<TimeValue> timeValueItor = Iterators.peekingIterator(
           new TimeSeriesInterpolator(timeValues, query.getInterpolator(), query.getResolution()).iterator());
         List<TimeValue> resultTimeValues = Lists.newArrayList();
@@ -437,6 +595,9 @@ public class DefaultCube implements Cube {
 
   @Override
   public void close() throws IOException {
+    if (queryExecutor != null) {
+      queryExecutor.shutdownNow();
+    }
     for (FactTable factTable : resolutionToFactTable.values()) {
       factTable.close();
     }
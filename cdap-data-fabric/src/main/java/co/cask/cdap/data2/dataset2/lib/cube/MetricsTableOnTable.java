@@ -18,6 +18,7 @@ package co.cask.cdap.data2.dataset2.lib.cube;
 
 import co.cask.cdap.api.dataset.table.Increment;
 import co.cask.cdap.api.dataset.table.Put;
+import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.api.dataset.table.Table;
@@ -92,6 +93,34 @@ class MetricsTableOnTable implements MetricsTable {
     table.delete(row, columns);
   }
 
+  @Override
+  public int deleteRange(@Nullable byte[] start, @Nullable byte[] stop, @Nullable byte[][] columns,
+                         @Nullable FuzzyRowFilter filter) {
+    int deletedRows = 0;
+    try (Scanner scanner = scan(start, stop, filter)) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        if (columns == null) {
+          table.delete(row.getRow());
+          deletedRows++;
+        } else if (hasAnyColumn(row, columns)) {
+          table.delete(row.getRow(), columns);
+          deletedRows++;
+        }
+      }
+    }
+    return deletedRows;
+  }
+
+  private static boolean hasAnyColumn(Row row, byte[][] columns) {
+    for (byte[] column : columns) {
+      if (row.get(column) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   public Scanner scan(@Nullable byte[] start, @Nullable byte[] stop,
                       @Nullable FuzzyRowFilter filter) {
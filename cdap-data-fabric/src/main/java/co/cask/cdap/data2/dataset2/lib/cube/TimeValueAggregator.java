@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.cube;
+
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
+import co.cask.cdap.api.dataset.lib.cube.TimeValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Aggregates values of a single time series by timestamp. Timestamps and values are kept in primitive arrays of an
+ * open-addressing hash table, which avoids boxing every value while scanning facts.
+ *
+ * Not thread-safe: each query shard aggregates into its own instances, which are then merged.
+ */
+final class TimeValueAggregator {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final AggregationFunction function;
+
+  private long[] timestamps;
+  private long[] values;
+  private boolean[] used;
+  private int size;
+
+  TimeValueAggregator(@Nullable AggregationFunction function) {
+    if (function == null) {
+      // should never happen: developer error
+      throw new RuntimeException("Unknown MeasureType: " + function);
+    }
+    this.function = function;
+    this.timestamps = new long[INITIAL_CAPACITY];
+    this.values = new long[INITIAL_CAPACITY];
+    this.used = new boolean[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Adds a value for the given timestamp, aggregating it with the existing value of the timestamp, if any.
+   */
+  void add(long timestamp, long value) {
+    int slot = findSlot(timestamps, used, timestamp);
+    if (!used[slot]) {
+      used[slot] = true;
+      timestamps[slot] = timestamp;
+      values[slot] = value;
+      if (++size * 2 > used.length) {
+        resize();
+      }
+      return;
+    }
+    values[slot] = aggregate(values[slot], value);
+  }
+
+  /**
+   * Merges all values of the given aggregator into this one. For {@link AggregationFunction#LATEST}, values of the
+   * given aggregator are treated as the later ones.
+   */
+  void addAll(TimeValueAggregator other) {
+    for (int i = 0; i < other.used.length; i++) {
+      if (other.used[i]) {
+        add(other.timestamps[i], other.values[i]);
+      }
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the aggregated values, sorted by timestamp.
+   */
+  List<TimeValue> toTimeValues() {
+    long[] sortedTimestamps = new long[size];
+    int count = 0;
+    for (int i = 0; i < used.length; i++) {
+      if (used[i]) {
+        sortedTimestamps[count++] = timestamps[i];
+      }
+    }
+    Arrays.sort(sortedTimestamps);
+
+    List<TimeValue> result = new ArrayList<>(size);
+    for (long timestamp : sortedTimestamps) {
+      result.add(new TimeValue(timestamp, values[findSlot(timestamps, used, timestamp)]));
+    }
+    return result;
+  }
+
+  private long aggregate(long existing, long value) {
+    switch (function) {
+      case SUM:
+        return existing + value;
+      case MAX:
+        return Math.max(existing, value);
+      case MIN:
+        return Math.min(existing, value);
+      case LATEST:
+        return value;
+      default:
+        // should never happen: developer error
+        throw new RuntimeException("Unknown MeasureType: " + function);
+    }
+  }
+
+  private void resize() {
+    long[] oldTimestamps = timestamps;
+    long[] oldValues = values;
+    boolean[] oldUsed = used;
+
+    timestamps = new long[oldUsed.length * 2];
+    values = new long[oldUsed.length * 2];
+    used = new boolean[oldUsed.length * 2];
+    for (int i = 0; i < oldUsed.length; i++) {
+      if (oldUsed[i]) {
+        int slot = findSlot(timestamps, used, oldTimestamps[i]);
+        used[slot] = true;
+        timestamps[slot] = oldTimestamps[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * Returns the slot holding the given timestamp, or the free slot where it should be inserted.
+   * The table length must be a power of two.
+   */
+  private static int findSlot(long[] timestamps, boolean[] used, long timestamp) {
+    int mask = used.length - 1;
+    int slot = hash(timestamp) & mask;
+    while (used[slot] && timestamps[slot] != timestamp) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private static int hash(long timestamp) {
+    // timestamps are usually multiples of the resolution, so spread the bits before masking
+    long h = timestamp * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
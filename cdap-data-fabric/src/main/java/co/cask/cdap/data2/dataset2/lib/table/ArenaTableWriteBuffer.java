@@ -0,0 +1,366 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link TableWriteBuffer} that keeps changes in a skip list allocated in primitive arrays. Row, column and value
+ * bytes are copied into a single growable byte array arena, and skip list nodes and links are stored in int arrays,
+ * hence buffering a put or an increment does not allocate any object except when an array needs to grow.
+ * The arrays are retained and reused by the next transaction unless they grew too large.
+ *
+ * Updates are only materialized as {@link Update} objects when they are read. In particular, the whole buffer is
+ * materialized once on commit by {@link #drain()} (copy-on-commit), which makes this buffer a good fit for
+ * transactions that perform a large number of writes and relatively few reads.
+ *
+ * Maps returned for reads are snapshots that are not affected by later changes to the buffer.
+ */
+final class ArenaTableWriteBuffer implements TableWriteBuffer {
+
+  private static final int MAX_LEVEL = 16;
+  private static final int NIL = -1;
+  private static final int HEAD = 0;
+
+  // Layout of a node in the nodes array
+  private static final int ROW_OFFSET = 0;
+  private static final int ROW_LENGTH = 1;
+  private static final int COLUMN_OFFSET = 2;
+  private static final int COLUMN_LENGTH = 3;
+  private static final int VALUE_OFFSET = 4;
+  // -1 for null value (delete)
+  private static final int VALUE_LENGTH = 5;
+  private static final int TYPE = 6;
+  private static final int LINKS_OFFSET = 7;
+  private static final int NODE_SIZE = 8;
+
+  private static final int TYPE_PUT = 0;
+  private static final int TYPE_INCREMENT = 1;
+  // Type of a newly inserted node that has no update yet
+  private static final int TYPE_NONE = 2;
+
+  private static final int INITIAL_DATA_CAPACITY = 64 * 1024;
+  private static final int INITIAL_NODE_CAPACITY = 1024;
+  // Arrays bigger than these are released when the buffer is cleared
+  private static final int MAX_RETAINED_DATA_CAPACITY = 4 * 1024 * 1024;
+  private static final int MAX_RETAINED_NODE_CAPACITY = 64 * 1024;
+
+  private static final byte[] EMPTY = new byte[0];
+
+  private final Random random = new Random();
+  private final int[] preds = new int[MAX_LEVEL];
+
+  private byte[] data;
+  private int dataSize;
+  private int[] nodes;
+  // Number of nodes, including the head node
+  private int nodeCount;
+  private int[] links;
+  private int linksSize;
+  // Current highest level in use
+  private int level;
+
+  // Cache of the materialized buffer, invalidated on every change
+  private NavigableMap<byte[], NavigableMap<byte[], Update>> materialized;
+
+  ArenaTableWriteBuffer() {
+    allocate();
+  }
+
+  @Nullable
+  @Override
+  public NavigableMap<byte[], Update> getRow(byte[] row) {
+    int node = link(findGreaterOrEqual(row, EMPTY), 0);
+    if (node == NIL || compareRow(node, row) != 0) {
+      return null;
+    }
+    NavigableMap<byte[], Update> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    while (node != NIL && compareRow(node, row) == 0) {
+      columns.put(copyColumn(node), toUpdate(node));
+      node = link(node, 0);
+    }
+    return columns;
+  }
+
+  @Override
+  public NavigableMap<byte[], NavigableMap<byte[], Update>> getRows(@Nullable byte[] startRow,
+                                                                    @Nullable byte[] stopRow) {
+    if (startRow == null && stopRow == null) {
+      return materializeAll();
+    }
+    int node = startRow == null ? link(HEAD, 0) : link(findGreaterOrEqual(startRow, EMPTY), 0);
+    return materialize(node, stopRow);
+  }
+
+  @Override
+  public Iterable<NavigableMap<byte[], NavigableMap<byte[], Update>>> getAll() {
+    return Collections.singletonList(materializeAll());
+  }
+
+  private NavigableMap<byte[], NavigableMap<byte[], Update>> materializeAll() {
+    if (materialized == null) {
+      materialized = materialize(link(HEAD, 0), null);
+    }
+    return materialized;
+  }
+
+  @Override
+  public void put(byte[] row, byte[][] columns, byte[][] values) {
+    materialized = null;
+    for (int i = 0; i < columns.length; i++) {
+      int node = findOrInsert(row, columns[i]);
+      byte[] value = values[i];
+      nodes[node + TYPE] = TYPE_PUT;
+      if (value == null) {
+        nodes[node + VALUE_LENGTH] = -1;
+      } else if (nodes[node + VALUE_LENGTH] == value.length) {
+        // Overwrite the old value in place
+        System.arraycopy(value, 0, data, nodes[node + VALUE_OFFSET], value.length);
+      } else {
+        nodes[node + VALUE_OFFSET] = append(value, 0, value.length);
+        nodes[node + VALUE_LENGTH] = value.length;
+      }
+    }
+  }
+
+  @Override
+  public void increment(byte[] row, byte[][] columns, long[] amounts) {
+    materialized = null;
+    for (int i = 0; i < columns.length; i++) {
+      int node = findOrInsert(row, columns[i]);
+      int valueLength = nodes[node + VALUE_LENGTH];
+
+      if (valueLength == -1) {
+        // A new node becomes an increment, while a delete becomes a put of the given amount (see mergeUpdates)
+        if (nodes[node + TYPE] == TYPE_NONE) {
+          nodes[node + TYPE] = TYPE_INCREMENT;
+        }
+        nodes[node + VALUE_OFFSET] = append(Bytes.toBytes(amounts[i]), 0, Bytes.SIZEOF_LONG);
+        nodes[node + VALUE_LENGTH] = Bytes.SIZEOF_LONG;
+        continue;
+      }
+
+      if (valueLength != Bytes.SIZEOF_LONG) {
+        throw new NumberFormatException("Attempted to increment a value that is not convertible to long");
+      }
+      // Both put and increment with a long value can be updated in place
+      int offset = nodes[node + VALUE_OFFSET];
+      Bytes.putLong(data, offset, Bytes.toLong(data, offset) + amounts[i]);
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return link(HEAD, 0) == NIL;
+  }
+
+  @Override
+  public DrainedChanges drain() {
+    NavigableMap<byte[], NavigableMap<byte[], Update>> result = materializeAll();
+    clear();
+    return new SingleBatchChanges(result);
+  }
+
+  @Override
+  public void clear() {
+    materialized = null;
+    if (data.length > MAX_RETAINED_DATA_CAPACITY || nodes.length > MAX_RETAINED_NODE_CAPACITY * NODE_SIZE) {
+      allocate();
+      return;
+    }
+    dataSize = 0;
+    initHead();
+  }
+
+  private void allocate() {
+    data = new byte[INITIAL_DATA_CAPACITY];
+    nodes = new int[INITIAL_NODE_CAPACITY * NODE_SIZE];
+    links = new int[INITIAL_NODE_CAPACITY * 2];
+    dataSize = 0;
+    initHead();
+  }
+
+  private void initHead() {
+    nodeCount = 1;
+    level = 1;
+    linksSize = MAX_LEVEL;
+    Arrays.fill(nodes, 0, NODE_SIZE, 0);
+    nodes[HEAD + LINKS_OFFSET] = 0;
+    Arrays.fill(links, 0, MAX_LEVEL, NIL);
+  }
+
+  /**
+   * Materializes nodes starting from the given one, up to but excluding the first node with row >= stopRow.
+   */
+  private NavigableMap<byte[], NavigableMap<byte[], Update>> materialize(int node, @Nullable byte[] stopRow) {
+    NavigableMap<byte[], NavigableMap<byte[], Update>> result = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    NavigableMap<byte[], Update> columns = null;
+    int lastRowOffset = NIL;
+    while (node != NIL && (stopRow == null || compareRow(node, stopRow) < 0)) {
+      // Nodes of the same row share the same row bytes in the arena
+      if (columns == null || nodes[node + ROW_OFFSET] != lastRowOffset) {
+        lastRowOffset = nodes[node + ROW_OFFSET];
+        columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        result.put(Arrays.copyOfRange(data, lastRowOffset, lastRowOffset + nodes[node + ROW_LENGTH]), columns);
+      }
+      columns.put(copyColumn(node), toUpdate(node));
+      node = link(node, 0);
+    }
+    return result;
+  }
+
+  private Update toUpdate(int node) {
+    int offset = nodes[node + VALUE_OFFSET];
+    int length = nodes[node + VALUE_LENGTH];
+    if (nodes[node + TYPE] == TYPE_INCREMENT) {
+      return new IncrementValue(Bytes.toLong(data, offset));
+    }
+    return new PutValue(length < 0 ? null : Arrays.copyOfRange(data, offset, offset + length));
+  }
+
+  private byte[] copyColumn(int node) {
+    int offset = nodes[node + COLUMN_OFFSET];
+    return Arrays.copyOfRange(data, offset, offset + nodes[node + COLUMN_LENGTH]);
+  }
+
+  /**
+   * Finds the node for the given row and column, inserting a new one if it doesn't exist yet.
+   * A newly inserted node has type {@link #TYPE_NONE}.
+   */
+  private int findOrInsert(byte[] row, byte[] column) {
+    int pred = findGreaterOrEqual(row, column);
+    int node = link(pred, 0);
+    if (node != NIL && compare(node, row, column) == 0) {
+      return node;
+    }
+
+    int nodeLevel = randomLevel();
+    if (nodeLevel > level) {
+      for (int i = level; i < nodeLevel; i++) {
+        preds[i] = HEAD;
+      }
+      level = nodeLevel;
+    }
+
+    // Reuse the row bytes of an adjacent node of the same row
+    int rowOffset;
+    if (pred != HEAD && compareRow(pred, row) == 0) {
+      rowOffset = nodes[pred + ROW_OFFSET];
+    } else if (node != NIL && compareRow(node, row) == 0) {
+      rowOffset = nodes[node + ROW_OFFSET];
+    } else {
+      rowOffset = append(row, 0, row.length);
+    }
+    int columnOffset = append(column, 0, column.length);
+
+    int newNode = nodeCount * NODE_SIZE;
+    if (newNode + NODE_SIZE > nodes.length) {
+      nodes = Arrays.copyOf(nodes, nodes.length * 2);
+    }
+    if (linksSize + nodeLevel > links.length) {
+      links = Arrays.copyOf(links, Math.max(links.length * 2, linksSize + nodeLevel));
+    }
+    nodeCount++;
+
+    nodes[newNode + ROW_OFFSET] = rowOffset;
+    nodes[newNode + ROW_LENGTH] = row.length;
+    nodes[newNode + COLUMN_OFFSET] = columnOffset;
+    nodes[newNode + COLUMN_LENGTH] = column.length;
+    nodes[newNode + VALUE_OFFSET] = NIL;
+    nodes[newNode + VALUE_LENGTH] = -1;
+    nodes[newNode + TYPE] = TYPE_NONE;
+    nodes[newNode + LINKS_OFFSET] = linksSize;
+    linksSize += nodeLevel;
+
+    for (int i = 0; i < nodeLevel; i++) {
+      setLink(newNode, i, link(preds[i], i));
+      setLink(preds[i], i, newNode);
+    }
+    return newNode;
+  }
+
+  /**
+   * Finds the last node that is smaller than the given row and column, or the head node if there is none.
+   * The predecessor at each level is recorded in {@link #preds}.
+   */
+  private int findGreaterOrEqual(byte[] row, byte[] column) {
+    int node = HEAD;
+    for (int i = level - 1; i >= 0; i--) {
+      int next = link(node, i);
+      while (next != NIL && compare(next, row, column) < 0) {
+        node = next;
+        next = link(node, i);
+      }
+      preds[i] = node;
+    }
+    return node;
+  }
+
+  private int randomLevel() {
+    // Each level is promoted with probability of 1/4
+    int result = 1;
+    while (result < MAX_LEVEL && (random.nextInt() & 3) == 0) {
+      result++;
+    }
+    return result;
+  }
+
+  private int link(int node, int level) {
+    return links[nodes[node + LINKS_OFFSET] + level];
+  }
+
+  private void setLink(int node, int level, int next) {
+    links[nodes[node + LINKS_OFFSET] + level] = next;
+  }
+
+  private int compareRow(int node, byte[] row) {
+    return Bytes.compareTo(data, nodes[node + ROW_OFFSET], nodes[node + ROW_LENGTH], row, 0, row.length);
+  }
+
+  private int compare(int node, byte[] row, byte[] column) {
+    int cmp = compareRow(node, row);
+    if (cmp != 0) {
+      return cmp;
+    }
+    return Bytes.compareTo(data, nodes[node + COLUMN_OFFSET], nodes[node + COLUMN_LENGTH],
+                           column, 0, column.length);
+  }
+
+  /**
+   * Appends the given bytes to the arena and returns the offset of it.
+   */
+  private int append(byte[] bytes, int offset, int length) {
+    if (dataSize + length > data.length) {
+      long newCapacity = Math.max((long) data.length * 2, (long) dataSize + length);
+      if (newCapacity > Integer.MAX_VALUE - 8) {
+        throw new IllegalStateException("Transaction write buffer is too large: " + newCapacity + " bytes");
+      }
+      data = Arrays.copyOf(data, (int) newCapacity);
+    }
+    int result = dataSize;
+    System.arraycopy(bytes, offset, data, dataSize, length);
+    dataSize += length;
+    return result;
+  }
+}
@@ -37,6 +37,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,7 +50,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import javax.annotation.Nullable;
 
 /**
@@ -92,11 +92,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private final boolean enableReadlessIncrements;
 
   // In-memory buffer that keeps not yet persisted data. It is row->(column->value) map. Value can be null which means
-  // that the corresponded column was removed.
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> buff;
+  // that the corresponded column was removed. The implementation is selected by table properties.
+  private TableWriteBuffer buff;
 
   // Keeps track of what was persisted so far
-  private NavigableMap<byte[], NavigableMap<byte[], Update>> toUndo;
+  private TableWriteBuffer.DrainedChanges toUndo;
 
   // Report data ops metrics to
   private MetricsCollector metricsCollector;
@@ -143,7 +143,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     // we want it to be of format length+value to avoid conflicts like table="ab", row="cd" vs table="abc", row="d"
     // Default uses the above scheme. Subclasses can change it by overriding the #getNameAsTxChangePrefix method
     this.nameAsTxChangePrefix = Bytes.add(new byte[]{(byte) name.length()}, Bytes.toBytes(name));
-    this.buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+    this.buff = TableProperties.createWriteBuffer(properties);
   }
 
   /**
@@ -253,8 +253,11 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   @Override
   public void close() throws IOException {
     // releasing resources
+    if (buff != null) {
+      buff.clear();
+    }
     buff = null;
-    toUndo = null;
+    releaseUndo();
   }
 
   @Override
@@ -266,7 +269,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     }
     // starting with fresh buffer when tx starts
     buff.clear();
-    toUndo = null;
+    releaseUndo();
   }
 
   @Override
@@ -300,29 +303,33 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
 
   private Collection<byte[]> getRowChanges() {
     // we resolve conflicts on row level of individual table
-    List<byte[]> changes = new ArrayList<>(buff.size());
-    for (byte[] changedRow : buff.keySet()) {
-      changes.add(Bytes.add(getNameAsTxChangePrefix(), changedRow));
+    List<byte[]> changes = new ArrayList<>();
+    for (NavigableMap<byte[], NavigableMap<byte[], Update>> changedRows : buff.getAll()) {
+      for (byte[] changedRow : changedRows.keySet()) {
+        changes.add(Bytes.add(getNameAsTxChangePrefix(), changedRow));
+      }
     }
     return changes;
   }
 
   private Collection<byte[]> getColumnChanges() {
     // we resolve conflicts on row level of individual table
-    List<byte[]> changes = new ArrayList<>(buff.size());
-    for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange : buff.entrySet()) {
-      if (rowChange.getValue() == null) {
-        // NOTE: as of now we cannot detect conflict between delete whole row and row's column value change.
-        //       this is not a big problem as of now, as row deletion is now act as deletion of every column, but this
-        //       will change in future, so we will have to address the issue.
-        continue;
-      }
+    List<byte[]> changes = new ArrayList<>();
+    for (NavigableMap<byte[], NavigableMap<byte[], Update>> changedRows : buff.getAll()) {
+      for (Map.Entry<byte[], NavigableMap<byte[], Update>> rowChange : changedRows.entrySet()) {
+        if (rowChange.getValue() == null) {
+          // NOTE: as of now we cannot detect conflict between delete whole row and row's column value change.
+          //       this is not a big problem as of now, as row deletion is now act as deletion of every column, but
+          //       this will change in future, so we will have to address the issue.
+          continue;
+        }
 
-      // using length + value format to prevent conflicts like row="ab", column="cd" vs row="abc", column="d"
-      byte[] rowTxChange = Bytes.add(Bytes.toBytes(rowChange.getKey().length), rowChange.getKey());
+        // using length + value format to prevent conflicts like row="ab", column="cd" vs row="abc", column="d"
+        byte[] rowTxChange = Bytes.add(Bytes.toBytes(rowChange.getKey().length), rowChange.getKey());
 
-      for (byte[] column : rowChange.getValue().keySet()) {
-        changes.add(Bytes.add(getNameAsTxChangePrefix(), rowTxChange, column));
+        for (byte[] column : rowChange.getValue().keySet()) {
+          changes.add(Bytes.add(getNameAsTxChangePrefix(), rowTxChange, column));
+        }
       }
     }
     return changes;
@@ -333,14 +340,14 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
     if (!buff.isEmpty()) {
       // We first assume that all data will be persisted. So that if exception happen during persist we try to
       // rollback everything we had in in-memory buffer.
-      toUndo = buff;
-      // clearing up in-memory buffer by initializing new map.
-      // NOTE: we want to init map here so that if no changes are made we re-use same instance of the map in next tx
-      // NOTE: we could cache two maps and swap them to avoid creation of map instances, but code would be ugly
-      buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+      // Draining also clears up the in-memory buffer, which is reused in next tx.
+      toUndo = buff.drain();
       // TODO: tracking of persisted items can be optimized by returning a pair {succeededOrNot, persisted} which
       //       tells if persisting succeeded and what was persisted (i.e. what we will have to undo in case of rollback)
-      persist(toUndo);
+      // NOTE: changes may come in multiple batches if the buffer was spilled to disk
+      for (NavigableMap<byte[], NavigableMap<byte[], Update>> batch : toUndo) {
+        persist(batch);
+      }
     }
     return true;
   }
@@ -349,19 +356,28 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public void postTxCommit() {
     // don't need buffer anymore: tx has been committed
     buff.clear();
-    toUndo = null;
+    releaseUndo();
   }
 
   @Override
   public boolean rollbackTx() throws Exception {
     buff.clear();
     if (toUndo != null) {
-      undo(toUndo);
-      toUndo = null;
+      for (NavigableMap<byte[], NavigableMap<byte[], Update>> batch : toUndo) {
+        undo(batch);
+      }
+      releaseUndo();
     }
     return true;
   }
 
+  private void releaseUndo() {
+    if (toUndo != null) {
+      Closeables.closeQuietly(toUndo);
+      toUndo = null;
+    }
+  }
+
   /**
    * NOTE: Depending on the use-case, calling this method may be much less
    *       efficient than calling same method with columns as parameters because it may always require round trip to
@@ -393,7 +409,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   public Row get(byte[] row, byte[] startColumn, byte[] stopColumn, int limit) {
     reportRead(1);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = buff.getRow(row);
 
     // NOTE: since we cannot tell the exact column set, we always have to go to persisted store.
     //       potential improvement: do not fetch columns available in in-mem buffer (we know them at this point)
@@ -443,7 +459,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
         rowColumns.putAll(persistedRow);
 
         byte[] row = get.getRow();
-        NavigableMap<byte[], Update> buffCols = buff.get(row);
+        NavigableMap<byte[], Update> buffCols = buff.getRow(row);
 
         // merge what was in the buffer and what was persisted
         if (buffCols != null) {
@@ -474,24 +490,13 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   }
 
   private void putInternal(byte[] row, byte[][] columns, byte[][] values) {
-    NavigableMap<byte[], Update> colVals = buff.get(row);
-    boolean newRow = false;
-    if (colVals == null) {
-      colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      newRow = true;
-    }
     for (int i = 0; i < columns.length; i++) {
-      // NOTE: we copy passed column's and value's byte arrays to protect buffer against possible changes of these
-      // arrays on client
       if (values[i] != null && values[i].length == 0) {
         warnAboutEmptyValue(columns[i]);
       }
-      colVals.put(copy(columns[i]), new PutValue(copy(values[i])));
-    }
-    if (newRow) {
-      // NOTE: we copy passed row's byte arrays to protect buffer against possible changes of this array on client
-      buff.put(copy(row), colVals);
     }
+    // NOTE: the buffer copies passed byte arrays to protect itself against possible changes of these arrays on client
+    buff.put(row, columns, values);
   }
 
   /**
@@ -581,14 +586,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   @Override
   public void increment(byte[] row, byte[][] columns, long[] amounts) {
     if (enableReadlessIncrements) {
-      NavigableMap<byte[], Update> colVals = buff.get(row);
-      if (colVals == null) {
-        colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-        buff.put(row, colVals);
-      }
-      for (int i = 0; i < columns.length; i++) {
-        colVals.put(columns[i], Updates.mergeUpdates(colVals.get(columns[i]), new IncrementValue(amounts[i])));
-      }
+      buff.increment(row, columns, amounts);
       reportWrite(1, getSize(row) + getSize(columns) + getSize(amounts));
     } else {
       incrementAndGet(row, columns, amounts);
@@ -661,20 +659,9 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   }
 
   private NavigableMap<byte[], NavigableMap<byte[], Update>> scanBuffer(Scan scan) {
-    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap;
-    byte[] startRow = scan.getStartRow();
-    byte[] stopRow = scan.getStopRow();
-    if (startRow == null && stopRow == null) {
-      bufferMap = buff;
-    } else if (startRow == null) {
-      bufferMap = buff.headMap(stopRow, false);
-    } else if (stopRow == null) {
-      bufferMap = buff.tailMap(startRow, true);
-    } else {
-      bufferMap = buff.subMap(startRow, true, stopRow, false);
-    }
-    bufferMap = applyFilter(bufferMap, scan.getFilter());
-    return bufferMap;
+    NavigableMap<byte[], NavigableMap<byte[], Update>> bufferMap = buff.getRows(scan.getStartRow(),
+                                                                                  scan.getStopRow());
+    return applyFilter(bufferMap, scan.getFilter());
   }
 
   private NavigableMap<byte[], NavigableMap<byte[], Update>> applyFilter(
@@ -701,11 +688,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Map<byte[], byte[]> getRowMap(byte[] row) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
-    boolean rowDeleted = buffCols == null && buff.containsKey(row);
-    if (rowDeleted) {
-      return Collections.emptyMap();
-    }
+    NavigableMap<byte[], Update> buffCols = buff.getRow(row);
 
     Map<byte[], byte[]> persisted = getPersisted(row, null);
 
@@ -722,7 +705,7 @@ public abstract class BufferingTable extends AbstractTable implements MeteredDat
   private Map<byte[], byte[]> getRowMap(byte[] row, byte[][] columns) throws Exception {
     NavigableMap<byte[], byte[]> result = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
     // checking if the row was deleted inside this tx
-    NavigableMap<byte[], Update> buffCols = buff.get(row);
+    NavigableMap<byte[], Update> buffCols = buff.getRow(row);
 
     // if nothing locally, return all from server
     if (buffCols == null) {
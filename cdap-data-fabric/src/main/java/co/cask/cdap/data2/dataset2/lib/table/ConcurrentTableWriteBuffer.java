@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import javax.annotation.Nullable;
+
+/**
+ * The default {@link TableWriteBuffer}, which keeps changes in a {@link ConcurrentSkipListMap} of rows to
+ * {@link java.util.TreeMap}s of columns. Maps returned for reads are live views of the buffer.
+ */
+final class ConcurrentTableWriteBuffer implements TableWriteBuffer {
+
+  private NavigableMap<byte[], NavigableMap<byte[], Update>> buff;
+
+  ConcurrentTableWriteBuffer() {
+    this.buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+  }
+
+  @Nullable
+  @Override
+  public NavigableMap<byte[], Update> getRow(byte[] row) {
+    return buff.get(row);
+  }
+
+  @Override
+  public NavigableMap<byte[], NavigableMap<byte[], Update>> getRows(@Nullable byte[] startRow,
+                                                                    @Nullable byte[] stopRow) {
+    if (startRow == null && stopRow == null) {
+      return buff;
+    }
+    if (startRow == null) {
+      return buff.headMap(stopRow, false);
+    }
+    if (stopRow == null) {
+      return buff.tailMap(startRow, true);
+    }
+    return buff.subMap(startRow, true, stopRow, false);
+  }
+
+  @Override
+  public Iterable<NavigableMap<byte[], NavigableMap<byte[], Update>>> getAll() {
+    return Collections.singletonList(buff);
+  }
+
+  @Override
+  public void put(byte[] row, byte[][] columns, byte[][] values) {
+    NavigableMap<byte[], Update> colVals = buff.get(row);
+    boolean newRow = false;
+    if (colVals == null) {
+      colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      newRow = true;
+    }
+    for (int i = 0; i < columns.length; i++) {
+      // NOTE: we copy passed column's and value's byte arrays to protect buffer against possible changes of these
+      // arrays on client
+      colVals.put(copy(columns[i]), new PutValue(copy(values[i])));
+    }
+    if (newRow) {
+      // NOTE: we copy passed row's byte arrays to protect buffer against possible changes of this array on client
+      buff.put(copy(row), colVals);
+    }
+  }
+
+  @Override
+  public void increment(byte[] row, byte[][] columns, long[] amounts) {
+    NavigableMap<byte[], Update> colVals = buff.get(row);
+    if (colVals == null) {
+      colVals = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+      buff.put(copy(row), colVals);
+    }
+    for (int i = 0; i < columns.length; i++) {
+      Update existing = colVals.get(columns[i]);
+      colVals.put(existing == null ? copy(columns[i]) : columns[i],
+                  Updates.mergeUpdates(existing, new IncrementValue(amounts[i])));
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return buff.isEmpty();
+  }
+
+  @Override
+  public DrainedChanges drain() {
+    NavigableMap<byte[], NavigableMap<byte[], Update>> result = buff;
+    // NOTE: we could cache two maps and swap them to avoid creation of map instances, but code would be ugly
+    buff = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+    return new SingleBatchChanges(result);
+  }
+
+  @Override
+  public void clear() {
+    buff.clear();
+  }
+
+  private static byte[] copy(byte[] bytes) {
+    return bytes == null ? null : Arrays.copyOf(bytes, bytes.length);
+  }
+}
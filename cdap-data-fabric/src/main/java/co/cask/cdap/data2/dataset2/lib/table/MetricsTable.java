@@ -75,6 +75,18 @@ public interface MetricsTable extends Dataset {
    */
   void delete(byte[] row, byte[][] columns);
 
+  /**
+   * Deletes the specified columns of all rows in a range.
+   *
+   * @param start the row key of the first row to delete. If null, the range begins at the first row of the table.
+   * @param stop the row key to stop the range at (exclusive). If null, the range goes to the last row of the table.
+   * @param columns names of columns to delete, or {@code null} to delete the entire rows
+   * @param filter if non-null, a fuzzy row filter that selects the rows to delete within the range
+   * @return the number of rows that had any of the cells deleted
+   */
+  int deleteRange(@Nullable byte[] start, @Nullable byte[] stop, @Nullable byte[][] columns,
+                   @Nullable FuzzyRowFilter filter);
+
   /**
    * Get a scanner for a table.
    * @param start the row key of the first row to scan. If null, the scan begins at the first row of the table.
@@ -0,0 +1,598 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.DataSetException;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.io.Closeables;
+import com.google.common.io.CountingOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link TableWriteBuffer} that spills buffered changes to local files when the memory used by the buffer
+ * exceeds a threshold, so that transactions that change a large amount of data do not run out of memory.
+ *
+ * Changes are buffered in a delegate in-memory buffer. When the estimated size of it exceeds the threshold, its content
+ * is written to a sorted run file and the delegate is cleared. Reads merge updates from all run files, from the
+ * oldest to the newest, followed by the in-memory updates, as described by {@link Updates#mergeUpdates}.
+ * Draining the buffer performs the same merge lazily and returns the result in batches, so that the whole change set
+ * is never held in memory.
+ *
+ * NOTE: reads that hit spilled data are much slower than in-memory reads. Scans of the buffer materialize the
+ * merged rows in the scanned range.
+ */
+final class SpillingTableWriteBuffer implements TableWriteBuffer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SpillingTableWriteBuffer.class);
+
+  // Rough estimate of memory used per buffered cell in addition to the row, column and value bytes
+  private static final int CELL_OVERHEAD = 64;
+  // Maximum number of cells in a batch returned by getAll and drain
+  private static final int MAX_BATCH_CELLS = 10000;
+
+  private final TableWriteBuffer delegate;
+  private final long threshold;
+  private final File spillDir;
+  private final List<RunFile> runs;
+  private long memorySize;
+
+  /**
+   * Creates an instance.
+   *
+   * @param delegate the in-memory buffer for changes that are not spilled yet
+   * @param threshold estimated memory size in bytes of the in-memory buffer to trigger spilling
+   * @param spillDir local directory for writing the spilled files
+   */
+  SpillingTableWriteBuffer(TableWriteBuffer delegate, long threshold, File spillDir) {
+    Preconditions.checkArgument(threshold > 0, "Spill threshold must be > 0: %s", threshold);
+    this.delegate = delegate;
+    this.threshold = threshold;
+    this.spillDir = spillDir;
+    this.runs = new ArrayList<>();
+  }
+
+  @Nullable
+  @Override
+  public NavigableMap<byte[], Update> getRow(byte[] row) {
+    if (runs.isEmpty()) {
+      return delegate.getRow(row);
+    }
+    NavigableMap<byte[], Update> result = null;
+    try {
+      for (RunFile run : runs) {
+        result = merge(result, run.getRow(row));
+      }
+    } catch (IOException e) {
+      throw new DataSetException("Failed to read row from spilled buffer " + Bytes.toStringBinary(row), e);
+    }
+    return merge(result, delegate.getRow(row));
+  }
+
+  @Override
+  public NavigableMap<byte[], NavigableMap<byte[], Update>> getRows(@Nullable byte[] startRow,
+                                                                    @Nullable byte[] stopRow) {
+    if (runs.isEmpty()) {
+      return delegate.getRows(startRow, stopRow);
+    }
+    NavigableMap<byte[], NavigableMap<byte[], Update>> result = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    Iterator<RowUpdates> iterator = new MergingIterator(runs, delegate.getRows(startRow, stopRow), startRow, stopRow);
+    while (iterator.hasNext()) {
+      RowUpdates rowUpdates = iterator.next();
+      result.put(rowUpdates.row, rowUpdates.columns);
+    }
+    return result;
+  }
+
+  @Override
+  public Iterable<NavigableMap<byte[], NavigableMap<byte[], Update>>> getAll() {
+    if (runs.isEmpty()) {
+      return delegate.getAll();
+    }
+    final List<RunFile> currentRuns = new ArrayList<>(runs);
+    final NavigableMap<byte[], NavigableMap<byte[], Update>> memory = delegate.getRows(null, null);
+    return new Iterable<NavigableMap<byte[], NavigableMap<byte[], Update>>>() {
+      @Override
+      public Iterator<NavigableMap<byte[], NavigableMap<byte[], Update>>> iterator() {
+        return new BatchIterator(new MergingIterator(currentRuns, memory, null, null));
+      }
+    };
+  }
+
+  @Override
+  public void put(byte[] row, byte[][] columns, byte[][] values) {
+    delegate.put(row, columns, values);
+    long size = row.length;
+    for (int i = 0; i < columns.length; i++) {
+      size += columns[i].length + (values[i] == null ? 0 : values[i].length) + CELL_OVERHEAD;
+    }
+    addMemorySize(size);
+  }
+
+  @Override
+  public void increment(byte[] row, byte[][] columns, long[] amounts) {
+    delegate.increment(row, columns, amounts);
+    long size = row.length;
+    for (byte[] column : columns) {
+      size += column.length + Bytes.SIZEOF_LONG + CELL_OVERHEAD;
+    }
+    addMemorySize(size);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return runs.isEmpty() && delegate.isEmpty();
+  }
+
+  @Override
+  public DrainedChanges drain() {
+    if (runs.isEmpty()) {
+      memorySize = 0;
+      return delegate.drain();
+    }
+    // Spill what's left in memory so that the drained changes don't depend on the in-memory buffer
+    spill();
+    final List<RunFile> drainedRuns = new ArrayList<>(runs);
+    runs.clear();
+
+    return new DrainedChanges() {
+
+      private final List<Closeable> iterators = new ArrayList<>();
+
+      @Override
+      public Iterator<NavigableMap<byte[], NavigableMap<byte[], Update>>> iterator() {
+        MergingIterator iterator = new MergingIterator(drainedRuns, null, null, null);
+        iterators.add(iterator);
+        return new BatchIterator(iterator);
+      }
+
+      @Override
+      public void close() throws IOException {
+        for (Closeable iterator : iterators) {
+          Closeables.closeQuietly(iterator);
+        }
+        for (RunFile run : drainedRuns) {
+          run.delete();
+        }
+      }
+    };
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+    memorySize = 0;
+    for (RunFile run : runs) {
+      run.delete();
+    }
+    runs.clear();
+  }
+
+  private void addMemorySize(long size) {
+    memorySize += size;
+    if (memorySize > threshold) {
+      spill();
+    }
+  }
+
+  /**
+   * Writes the content of the in-memory buffer to a new run file and clears the in-memory buffer.
+   */
+  private void spill() {
+    if (delegate.isEmpty()) {
+      return;
+    }
+    try (DrainedChanges changes = delegate.drain()) {
+      File file = File.createTempFile("table.buffer.", ".run", spillDir);
+      try {
+        RunFile run = RunFile.write(file, changes);
+        runs.add(run);
+        LOG.debug("Spilled {} rows of estimated size {} bytes to {}", run.rowCount, memorySize, file);
+      } catch (IOException e) {
+        if (!file.delete()) {
+          LOG.warn("Failed to delete spill file {}", file);
+        }
+        throw e;
+      }
+    } catch (IOException e) {
+      throw new DataSetException("Failed to spill table buffer to " + spillDir, e);
+    }
+    memorySize = 0;
+  }
+
+  /**
+   * Merges the newer updates on top of the given base. The base map is modified and returned, unless it is
+   * {@code null}, in which case a new map is returned.
+   */
+  @Nullable
+  private static NavigableMap<byte[], Update> merge(@Nullable NavigableMap<byte[], Update> base,
+                                                    @Nullable NavigableMap<byte[], Update> newer) {
+    if (newer == null) {
+      return base;
+    }
+    if (base == null) {
+      base = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    }
+    for (Map.Entry<byte[], Update> entry : newer.entrySet()) {
+      base.put(entry.getKey(), Updates.mergeUpdates(base.get(entry.getKey()), entry.getValue()));
+    }
+    return base;
+  }
+
+  /**
+   * Updates of a row.
+   */
+  private static final class RowUpdates {
+    private final byte[] row;
+    private final NavigableMap<byte[], Update> columns;
+
+    RowUpdates(byte[] row, NavigableMap<byte[], Update> columns) {
+      this.row = row;
+      this.columns = columns;
+    }
+  }
+
+  /**
+   * Groups rows from a {@link MergingIterator} into batches of at most {@link #MAX_BATCH_CELLS} cells.
+   */
+  private static final class BatchIterator
+    extends AbstractIterator<NavigableMap<byte[], NavigableMap<byte[], Update>>> {
+
+    private final MergingIterator rows;
+
+    BatchIterator(MergingIterator rows) {
+      this.rows = rows;
+    }
+
+    @Override
+    protected NavigableMap<byte[], NavigableMap<byte[], Update>> computeNext() {
+      if (!rows.hasNext()) {
+        return endOfData();
+      }
+      NavigableMap<byte[], NavigableMap<byte[], Update>> batch = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+      int cells = 0;
+      while (cells < MAX_BATCH_CELLS && rows.hasNext()) {
+        RowUpdates rowUpdates = rows.next();
+        batch.put(rowUpdates.row, rowUpdates.columns);
+        cells += rowUpdates.columns.size();
+      }
+      return batch;
+    }
+  }
+
+  /**
+   * Iterator that merges rows from run files and an optional in-memory map in row order. Updates of the same row
+   * are merged from the oldest source to the newest. The iterator closes itself when exhausted.
+   */
+  private static final class MergingIterator extends AbstractIterator<RowUpdates> implements Closeable {
+
+    private final List<Closeable> readers;
+    private final PriorityQueue<Source> sources;
+
+    MergingIterator(List<RunFile> runs, @Nullable NavigableMap<byte[], NavigableMap<byte[], Update>> memory,
+                    @Nullable byte[] startRow, @Nullable byte[] stopRow) {
+      this.readers = new ArrayList<>();
+      this.sources = new PriorityQueue<>(runs.size() + 1);
+      try {
+        int order = 0;
+        for (RunFile run : runs) {
+          RunFile.Reader reader = run.read(startRow, stopRow);
+          readers.add(reader);
+          addSource(new Source(reader, order++));
+        }
+        if (memory != null) {
+          final Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator = memory.entrySet().iterator();
+          addSource(new Source(new AbstractIterator<RowUpdates>() {
+            @Override
+            protected RowUpdates computeNext() {
+              if (!iterator.hasNext()) {
+                return endOfData();
+              }
+              Map.Entry<byte[], NavigableMap<byte[], Update>> entry = iterator.next();
+              return new RowUpdates(entry.getKey(), entry.getValue());
+            }
+          }, order));
+        }
+      } catch (IOException e) {
+        close();
+        throw new DataSetException("Failed to read spilled table buffer", e);
+      }
+    }
+
+    @Override
+    protected RowUpdates computeNext() {
+      Source source = sources.poll();
+      if (source == null) {
+        close();
+        return endOfData();
+      }
+      byte[] row = source.current.row;
+      NavigableMap<byte[], Update> columns = merge(null, source.current.columns);
+      advance(source);
+
+      // Merge the same row from other sources, which are polled in order of their age
+      while (!sources.isEmpty() && Bytes.equals(sources.peek().current.row, row)) {
+        source = sources.poll();
+        columns = merge(columns, source.current.columns);
+        advance(source);
+      }
+      return new RowUpdates(row, columns);
+    }
+
+    @Override
+    public void close() {
+      for (Closeable reader : readers) {
+        Closeables.closeQuietly(reader);
+      }
+      readers.clear();
+      sources.clear();
+    }
+
+    private void addSource(Source source) {
+      if (source.rows.hasNext()) {
+        source.current = source.rows.next();
+        sources.add(source);
+      }
+    }
+
+    private void advance(Source source) {
+      if (source.rows.hasNext()) {
+        source.current = source.rows.next();
+        sources.add(source);
+      }
+    }
+  }
+
+  /**
+   * A source of rows in a {@link MergingIterator}.
+   */
+  private static final class Source implements Comparable<Source> {
+    private final Iterator<RowUpdates> rows;
+    private final int order;
+    private RowUpdates current;
+
+    Source(Iterator<RowUpdates> rows, int order) {
+      this.rows = rows;
+      this.order = order;
+    }
+
+    @Override
+    public int compareTo(Source other) {
+      int cmp = Bytes.compareTo(current.row, other.current.row);
+      return cmp == 0 ? Integer.compare(order, other.order) : cmp;
+    }
+  }
+
+  /**
+   * A local file containing sorted rows of updates. Each row is written as:
+   *
+   * <pre>
+   * [row length][row][number of columns]([column length][column][type][value])*
+   * </pre>
+   *
+   * The type is one of {@link #TYPE_PUT}, {@link #TYPE_DELETE} or {@link #TYPE_INCREMENT}. The value is written as
+   * [length][bytes] for put, a long for increment and is absent for delete. A sparse index of the position of
+   * every {@link #INDEX_INTERVAL} rows is kept in memory for looking up rows.
+   */
+  private static final class RunFile {
+
+    private static final byte TYPE_PUT = 0;
+    private static final byte TYPE_DELETE = 1;
+    private static final byte TYPE_INCREMENT = 2;
+    private static final int INDEX_INTERVAL = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final int rowCount;
+    private final List<byte[]> indexRows;
+    private final List<Long> indexPositions;
+
+    static RunFile write(File file, Iterable<NavigableMap<byte[], NavigableMap<byte[], Update>>> batches)
+      throws IOException {
+      List<byte[]> indexRows = new ArrayList<>();
+      List<Long> indexPositions = new ArrayList<>();
+      int rowCount = 0;
+
+      CountingOutputStream counting = new CountingOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+      try (DataOutputStream output = new DataOutputStream(counting)) {
+        for (NavigableMap<byte[], NavigableMap<byte[], Update>> batch : batches) {
+          for (Map.Entry<byte[], NavigableMap<byte[], Update>> row : batch.entrySet()) {
+            if (rowCount % INDEX_INTERVAL == 0) {
+              indexRows.add(row.getKey());
+              indexPositions.add(counting.getCount());
+            }
+            rowCount++;
+            writeBytes(output, row.getKey());
+            output.writeInt(row.getValue().size());
+            for (Map.Entry<byte[], Update> column : row.getValue().entrySet()) {
+              writeBytes(output, column.getKey());
+              Update update = column.getValue();
+              if (update instanceof IncrementValue) {
+                output.writeByte(TYPE_INCREMENT);
+                output.writeLong(((IncrementValue) update).getValue());
+              } else if (update.getBytes() == null) {
+                output.writeByte(TYPE_DELETE);
+              } else {
+                output.writeByte(TYPE_PUT);
+                writeBytes(output, update.getBytes());
+              }
+            }
+          }
+        }
+      }
+      return new RunFile(file, rowCount, indexRows, indexPositions);
+    }
+
+    private RunFile(File file, int rowCount, List<byte[]> indexRows, List<Long> indexPositions) {
+      this.file = file;
+      this.rowCount = rowCount;
+      this.indexRows = indexRows;
+      this.indexPositions = indexPositions;
+    }
+
+    /**
+     * Returns the updates of the given row or {@code null} if the row is not in this file.
+     */
+    @Nullable
+    NavigableMap<byte[], Update> getRow(byte[] row) throws IOException {
+      try (Reader reader = read(row, null)) {
+        if (reader.hasNext()) {
+          RowUpdates rowUpdates = reader.next();
+          if (Bytes.equals(rowUpdates.row, row)) {
+            return rowUpdates.columns;
+          }
+        }
+        return null;
+      }
+    }
+
+    /**
+     * Opens a {@link Reader} for reading rows in the given range.
+     */
+    Reader read(@Nullable byte[] startRow, @Nullable byte[] stopRow) throws IOException {
+      int indexEntry = -1;
+      if (startRow != null) {
+        // Find the last index entry with row <= startRow
+        int idx = Collections.binarySearch(indexRows, startRow, Bytes.BYTES_COMPARATOR);
+        indexEntry = idx >= 0 ? idx : -idx - 2;
+      }
+      long position = 0L;
+      int row = 0;
+      if (indexEntry >= 0) {
+        position = indexPositions.get(indexEntry);
+        row = indexEntry * INDEX_INTERVAL;
+      }
+
+      FileInputStream input = new FileInputStream(file);
+      try {
+        input.getChannel().position(position);
+        return new Reader(new DataInputStream(new BufferedInputStream(input, BUFFER_SIZE)),
+                          rowCount - row, startRow, stopRow);
+      } catch (IOException e) {
+        Closeables.closeQuietly(input);
+        throw e;
+      }
+    }
+
+    void delete() {
+      if (!file.delete() && file.exists()) {
+        LOG.warn("Failed to delete spill file {}", file);
+      }
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException {
+      byte[] bytes = new byte[input.readInt()];
+      input.readFully(bytes);
+      return bytes;
+    }
+
+    /**
+     * Reads rows sequentially from a {@link RunFile}.
+     */
+    private static final class Reader extends AbstractIterator<RowUpdates> implements Closeable {
+
+      private final DataInputStream input;
+      private final byte[] startRow;
+      private final byte[] stopRow;
+      private int remaining;
+
+      Reader(DataInputStream input, int remaining, @Nullable byte[] startRow, @Nullable byte[] stopRow) {
+        this.input = input;
+        this.remaining = remaining;
+        this.startRow = startRow;
+        this.stopRow = stopRow;
+      }
+
+      @Override
+      protected RowUpdates computeNext() {
+        try {
+          while (remaining > 0) {
+            remaining--;
+            byte[] row = readBytes(input);
+            if (stopRow != null && Bytes.compareTo(row, stopRow) >= 0) {
+              break;
+            }
+            NavigableMap<byte[], Update> columns = readColumns();
+            if (startRow == null || Bytes.compareTo(row, startRow) >= 0) {
+              return new RowUpdates(row, columns);
+            }
+          }
+        } catch (IOException e) {
+          throw new DataSetException("Failed to read spilled table buffer", e);
+        }
+        close();
+        return endOfData();
+      }
+
+      @Override
+      public void close() {
+        remaining = 0;
+        Closeables.closeQuietly(input);
+      }
+
+      private NavigableMap<byte[], Update> readColumns() throws IOException {
+        NavigableMap<byte[], Update> columns = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+          byte[] column = readBytes(input);
+          byte type = input.readByte();
+          switch (type) {
+            case TYPE_PUT:
+              columns.put(column, new PutValue(readBytes(input)));
+              break;
+            case TYPE_DELETE:
+              columns.put(column, new PutValue(null));
+              break;
+            case TYPE_INCREMENT:
+              columns.put(column, new IncrementValue(input.readLong()));
+              break;
+            default:
+              throw new IOException("Unknown update type " + type);
+          }
+        }
+        return columns;
+      }
+    }
+  }
+}
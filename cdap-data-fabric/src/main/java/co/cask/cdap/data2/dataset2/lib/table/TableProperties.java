@@ -22,6 +22,7 @@ import co.cask.cdap.api.dataset.table.ConflictDetection;
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.common.conf.Constants;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 import javax.annotation.Nullable;
@@ -90,6 +91,44 @@ public class TableProperties {
     return !"true".equalsIgnoreCase(props.get(Constants.Dataset.TABLE_TX_DISABLED));
   }
 
+  /**
+   * Creates the {@link TableWriteBuffer} for buffering transaction changes as being set in the given specification.
+   * If the {@link Constants.Dataset#TABLE_WRITE_BUFFER} property is set to "arena", an arena-allocated buffer is
+   * used, which greatly reduces allocation for transactions with large number of writes. Otherwise the default
+   * buffer backed by concurrent skip list is used.
+   *
+   * If {@link Constants.Dataset#TABLE_WRITE_BUFFER_SPILL_THRESHOLD} is set, changes are spilled to local files
+   * under {@link Constants.Dataset#TABLE_WRITE_BUFFER_SPILL_DIR} (default to the {@code java.io.tmpdir}) whenever
+   * the in-memory buffer grows beyond the threshold in bytes.
+   *
+   * @throws IllegalArgumentException if the property value is not a valid buffer type or spill threshold.
+   */
+  static TableWriteBuffer createWriteBuffer(Map<String, String> props) {
+    String value = props.get(Constants.Dataset.TABLE_WRITE_BUFFER);
+    TableWriteBuffer buffer;
+    if (value == null || "default".equalsIgnoreCase(value)) {
+      buffer = new ConcurrentTableWriteBuffer();
+    } else if ("arena".equalsIgnoreCase(value)) {
+      buffer = new ArenaTableWriteBuffer();
+    } else {
+      throw new IllegalArgumentException("Invalid table write buffer type: " + value);
+    }
+
+    String threshold = props.get(Constants.Dataset.TABLE_WRITE_BUFFER_SPILL_THRESHOLD);
+    if (threshold == null) {
+      return buffer;
+    }
+    long spillThreshold;
+    try {
+      spillThreshold = Long.parseLong(threshold);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid table write buffer spill threshold: " + threshold);
+    }
+    String spillDir = props.get(Constants.Dataset.TABLE_WRITE_BUFFER_SPILL_DIR);
+    return new SpillingTableWriteBuffer(buffer, spillThreshold,
+                                        new File(spillDir == null ? System.getProperty("java.io.tmpdir") : spillDir));
+  }
+
   /**
    * Returns the column family as being set in the given specification.
    * If it is not set, the {@link #DEFAULT_DATA_COLUMN_FAMILY} will be returned.
@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import javax.annotation.Nullable;
+
+/**
+ * In-memory buffer of changes made by a transaction to a {@link BufferingTable}. Logically it is a sorted map of
+ * row -> (column -> {@link Update}). Implementations copy the row, column and value byte arrays given to them,
+ * hence callers are free to reuse them afterwards.
+ *
+ * NOTE: maps returned by methods of this interface must not be modified by the caller.
+ */
+interface TableWriteBuffer {
+
+  /**
+   * Returns the buffered updates of the given row.
+   *
+   * @return a map from column to {@link Update}, or {@code null} if there is no buffered change for the row
+   */
+  @Nullable
+  NavigableMap<byte[], Update> getRow(byte[] row);
+
+  /**
+   * Returns the buffered rows in the given range.
+   *
+   * @param startRow first row to include, or {@code null} to start from the first buffered row
+   * @param stopRow row to stop at (exclusive), or {@code null} to include up to the last buffered row
+   */
+  NavigableMap<byte[], NavigableMap<byte[], Update>> getRows(@Nullable byte[] startRow, @Nullable byte[] stopRow);
+
+  /**
+   * Returns all buffered changes as a sequence of sorted, non-overlapping batches of rows, in row order.
+   * Buffers that keep everything in memory return a single batch.
+   */
+  Iterable<NavigableMap<byte[], NavigableMap<byte[], Update>>> getAll();
+
+  /**
+   * Buffers puts of the given columns. A {@code null} value represents a delete of the column.
+   */
+  void put(byte[] row, byte[][] columns, byte[][] values);
+
+  /**
+   * Buffers increments of the given columns. The increment is merged with the update already buffered for
+   * the same column, as described by {@link Updates#mergeUpdates(Update, Update)}.
+   */
+  void increment(byte[] row, byte[][] columns, long[] amounts);
+
+  /**
+   * Returns {@code true} if there is no buffered change.
+   */
+  boolean isEmpty();
+
+  /**
+   * Returns all buffered changes and resets this buffer to empty. The changes returned are not affected by
+   * any changes made to this buffer afterwards.
+   */
+  DrainedChanges drain();
+
+  /**
+   * Discards all buffered changes.
+   */
+  void clear();
+
+  /**
+   * Changes drained from a {@link TableWriteBuffer}. It can be iterated multiple times, each time giving the same
+   * sequence of batches as described in {@link #getAll()}. Resources held are released by {@link #close()}.
+   */
+  interface DrainedChanges extends Iterable<NavigableMap<byte[], NavigableMap<byte[], Update>>>, Closeable {
+  }
+
+  /**
+   * {@link DrainedChanges} that consist of a single in-memory batch.
+   */
+  final class SingleBatchChanges implements DrainedChanges {
+
+    private final NavigableMap<byte[], NavigableMap<byte[], Update>> batch;
+
+    SingleBatchChanges(NavigableMap<byte[], NavigableMap<byte[], Update>> batch) {
+      this.batch = batch;
+    }
+
+    @Override
+    public Iterator<NavigableMap<byte[], NavigableMap<byte[], Update>>> iterator() {
+      return Collections.singletonList(batch).iterator();
+    }
+
+    @Override
+    public void close() {
+      // no-op
+    }
+  }
+}
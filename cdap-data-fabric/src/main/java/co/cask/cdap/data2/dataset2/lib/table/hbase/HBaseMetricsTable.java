@@ -40,6 +40,10 @@ import org.apache.hadoop.hbase.client.Increment;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
 import org.apache.hadoop.hbase.util.Pair;
 
 import java.io.IOException;
@@ -53,6 +57,8 @@ import javax.annotation.Nullable;
  * An HBase metrics table client.
  */
 public class HBaseMetricsTable implements MetricsTable {
+  // max number of rows to delete in a single batch of a range delete
+  private static final int DELETES_PER_BATCH = 1000;
 
   private final HBaseTableUtil tableUtil;
   private final TableId tableId;
@@ -214,6 +220,67 @@ public class HBaseMetricsTable implements MetricsTable {
     }
   }
 
+  @Override
+  public int deleteRange(@Nullable byte[] startRow, @Nullable byte[] stopRow, @Nullable byte[][] columns,
+                         @Nullable FuzzyRowFilter filter) {
+    // only the row keys are needed to build the deletes, so have the region servers return one key per row
+    // and no values. When columns are given, rows that have none of them are not returned at all.
+    ScanBuilder scanBuilder = tableUtil.buildScan();
+    scanBuilder.setCaching(1000);
+    if (startRow != null) {
+      scanBuilder.setStartRow(startRow);
+    }
+    if (stopRow != null) {
+      scanBuilder.setStopRow(stopRow);
+    }
+    if (columns == null) {
+      scanBuilder.addFamily(columnFamily);
+    } else {
+      for (byte[] column : columns) {
+        scanBuilder.addColumn(columnFamily, column);
+      }
+    }
+    FilterList filterList = new FilterList(FilterList.Operator.MUST_PASS_ALL);
+    if (filter != null) {
+      filterList.addFilter(toHBaseFilter(filter));
+    }
+    filterList.addFilter(new FirstKeyOnlyFilter());
+    filterList.addFilter(new KeyOnlyFilter());
+    scanBuilder.setFilter(filterList);
+
+    int deletedRows = 0;
+    try {
+      ResultScanner resultScanner = hTable.getScanner(scanBuilder.build());
+      try {
+        List<Delete> deletes = Lists.newArrayListWithCapacity(DELETES_PER_BATCH);
+        Result result;
+        while ((result = resultScanner.next()) != null) {
+          DeleteBuilder delete = tableUtil.buildDelete(result.getRow());
+          // without columns the whole row is deleted
+          if (columns != null) {
+            for (byte[] column : columns) {
+              delete.deleteColumns(columnFamily, column);
+            }
+          }
+          deletes.add(delete.build());
+          deletedRows++;
+          if (deletes.size() >= DELETES_PER_BATCH) {
+            hTable.delete(deletes);
+            deletes.clear();
+          }
+        }
+        if (!deletes.isEmpty()) {
+          hTable.delete(deletes);
+        }
+      } finally {
+        resultScanner.close();
+      }
+    } catch (IOException e) {
+      throw new DataSetException("Delete range failed on table " + tableId, e);
+    }
+    return deletedRows;
+  }
+
   @Override
   public Scanner scan(@Nullable byte[] startRow, @Nullable byte[] stopRow,
                       @Nullable FuzzyRowFilter filter) {
@@ -240,15 +307,19 @@ public class HBaseMetricsTable implements MetricsTable {
     }
     scan.addFamily(columnFamily);
     if (filter != null) {
-      List<Pair<byte[], byte[]>> fuzzyPairs = Lists.newArrayListWithExpectedSize(filter.getFuzzyKeysData().size());
-      for (ImmutablePair<byte[], byte[]> pair : filter.getFuzzyKeysData()) {
-        fuzzyPairs.add(Pair.newPair(pair.getFirst(), pair.getSecond()));
-      }
-      scan.setFilter(new org.apache.hadoop.hbase.filter.FuzzyRowFilter(fuzzyPairs));
+      scan.setFilter(toHBaseFilter(filter));
     }
     return scan;
   }
 
+  private static Filter toHBaseFilter(FuzzyRowFilter filter) {
+    List<Pair<byte[], byte[]>> fuzzyPairs = Lists.newArrayListWithExpectedSize(filter.getFuzzyKeysData().size());
+    for (ImmutablePair<byte[], byte[]> pair : filter.getFuzzyKeysData()) {
+      fuzzyPairs.add(Pair.newPair(pair.getFirst(), pair.getSecond()));
+    }
+    return new org.apache.hadoop.hbase.filter.FuzzyRowFilter(fuzzyPairs);
+  }
+
   @Override
   public void close() throws IOException {
     hTable.close();
@@ -18,6 +18,7 @@ package co.cask.cdap.data2.dataset2.lib.table.inmemory;
 
 import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.DatasetContext;
+import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.data2.dataset2.lib.table.FuzzyRowFilter;
@@ -105,6 +106,32 @@ public class InMemoryMetricsTable implements MetricsTable {
     }
   }
 
+  @Override
+  public int deleteRange(@Nullable byte[] start, @Nullable byte[] stop, @Nullable byte[][] columns,
+                         @Nullable FuzzyRowFilter filter) {
+    // row -> columns to delete, null to delete the entire row
+    SortedMap<byte[], byte[][]> deletes = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    try (Scanner scanner = scan(start, stop, filter)) {
+      Row row;
+      while ((row = scanner.next()) != null) {
+        if (columns == null || hasAnyColumn(row, columns)) {
+          deletes.put(row.getRow(), columns);
+        }
+      }
+    }
+    InMemoryTableService.deleteColumns(tableName, deletes);
+    return deletes.size();
+  }
+
+  private static boolean hasAnyColumn(Row row, byte[][] columns) {
+    for (byte[] column : columns) {
+      if (row.get(column) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   public Scanner scan(@Nullable byte[] start, @Nullable byte[] stop,
                       @Nullable FuzzyRowFilter filter) {
@@ -208,6 +208,22 @@ public class InMemoryTableService {
     columnValues.remove(column);
   }
 
+  public static synchronized void deleteColumns(String tableName, SortedMap<byte[], byte[][]> deletes) {
+    ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
+    for (Map.Entry<byte[], byte[][]> delete : deletes.entrySet()) {
+      if (delete.getValue() == null) {
+        table.remove(delete.getKey());
+        continue;
+      }
+      NavigableMap<byte[], NavigableMap<Long, Update>> columnValues = table.get(delete.getKey());
+      if (columnValues != null) {
+        for (byte[] column : delete.getValue()) {
+          columnValues.remove(column);
+        }
+      }
+    }
+  }
+
   public static synchronized void delete(String tableName, byte[] rowPrefix) {
     ConcurrentNavigableMap<byte[], NavigableMap<byte[], NavigableMap<Long, Update>>> table = tables.get(tableName);
     if (rowPrefix.length == 0) {
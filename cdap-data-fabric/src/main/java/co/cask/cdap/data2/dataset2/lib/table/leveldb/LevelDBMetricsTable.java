@@ -134,6 +134,16 @@ public class LevelDBMetricsTable implements MetricsTable {
     }
   }
 
+  @Override
+  public int deleteRange(@Nullable byte[] start, @Nullable byte[] stop, @Nullable byte[][] columns,
+                         @Nullable FuzzyRowFilter filter) {
+    try {
+      return core.deleteRange(start, stop, filter, columns);
+    } catch (IOException e) {
+      throw new DataSetException("Delete failed on table " + tableName, e);
+    }
+  }
+
   @Override
   public Scanner scan(@Nullable byte[] start, @Nullable byte[] stop,
                       @Nullable FuzzyRowFilter filter) {
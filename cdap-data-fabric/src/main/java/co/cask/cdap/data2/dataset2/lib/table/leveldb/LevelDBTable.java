@@ -20,6 +20,7 @@ import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.DataSetException;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetSpecification;
+import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Scan;
 import co.cask.cdap.api.dataset.table.Scanner;
 import co.cask.cdap.common.conf.CConfiguration;
@@ -33,6 +34,7 @@ import co.cask.tephra.Transaction;
 import com.google.common.collect.Maps;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import javax.annotation.Nullable;
@@ -93,9 +95,8 @@ public class LevelDBTable extends BufferingTable {
         }
       }
     }
-    for (Map.Entry<byte[], NavigableMap<byte[], Long>> incEntry : increments.entrySet()) {
-      core.increment(incEntry.getKey(), incEntry.getValue());
-    }
+    // apply all increments as one batch
+    core.increment(increments);
     core.persist(puts, persistedVersion);
   }
 
@@ -115,6 +116,11 @@ public class LevelDBTable extends BufferingTable {
     return core.getRow(row, null, startColumn, stopColumn, limit, tx);
   }
 
+  @Override
+  protected List<Map<byte[], byte[]>> getPersisted(List<Get> gets) throws Exception {
+    return core.getRows(gets, tx);
+  }
+
   @Override
   protected Scanner scanPersisted(Scan scan) throws Exception {
 
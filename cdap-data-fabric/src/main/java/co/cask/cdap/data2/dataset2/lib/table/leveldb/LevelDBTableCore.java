@@ -17,6 +17,7 @@
 package co.cask.cdap.data2.dataset2.lib.table.leveldb;
 
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Result;
 import co.cask.cdap.api.dataset.table.Row;
 import co.cask.cdap.api.dataset.table.Scanner;
@@ -27,6 +28,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.iq80.leveldb.DB;
 import org.iq80.leveldb.DBIterator;
@@ -40,8 +42,10 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.concurrent.locks.Lock;
 import javax.annotation.Nullable;
 
 /**
@@ -91,49 +95,83 @@ public class LevelDBTableCore {
     return service.getWriteOptions();
   }
 
-
-  public synchronized boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
-    byte[] existing = getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
-    // verify
-    if (oldValue == null && existing != null) {
-      return false;
-    }
-    if (oldValue != null && (existing == null || !Bytes.equals(oldValue, existing))) {
-      return false;
-    }
-    // write
-    if (newValue == null) {
-      // to-do
-      deleteColumn(row, column);
-    } else {
-      persist(Collections.singletonMap(row, Collections.singletonMap(column, newValue)), System.currentTimeMillis());
-    }
-    return true;
+  private LevelDBWriteCoordinator getWriteCoordinator() {
+    return service.getWriteCoordinator(tableName);
   }
 
-  public synchronized Map<byte[], Long> increment(byte[] row, Map<byte[], Long> increments) throws IOException {
-    Map<byte[], Long> result = getResultMap(row, increments);
-    Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-    for (Map.Entry<byte[], Long> entry : result.entrySet()) {
-      replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
+  // Read-modify-write operations are guarded by row locks that are shared by all clients of the same table,
+  // such that operations on different rows do not block each other.
+
+  public boolean swap(byte[] row, byte[] column, byte[] oldValue, byte[] newValue) throws IOException {
+    Lock lock = getWriteCoordinator().getRowLock(row);
+    lock.lock();
+    try {
+      byte[] existing = getRow(row, new byte[][] { column }, null, null, -1, null).get(column);
+      // verify
+      if (oldValue == null && existing != null) {
+        return false;
+      }
+      if (oldValue != null && (existing == null || !Bytes.equals(oldValue, existing))) {
+        return false;
+      }
+      // write
+      if (newValue == null) {
+        // to-do
+        deleteColumn(row, column);
+      } else {
+        persist(Collections.singletonMap(row, Collections.singletonMap(column, newValue)),
+                System.currentTimeMillis());
+      }
+      return true;
+    } finally {
+      lock.unlock();
     }
-    persist(ImmutableMap.of(row, replacing), System.currentTimeMillis());
-    return result;
   }
 
-
-  public synchronized void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) throws IOException {
-    Map<byte[], Map<byte[], byte[]>> resultMap = Maps.newHashMap();
-    for (NavigableMap.Entry<byte[], NavigableMap<byte[], Long>> row : updates.entrySet()) {
-      NavigableMap<byte[], Long> increments = row.getValue();
+  public Map<byte[], Long> increment(byte[] row, Map<byte[], Long> increments) throws IOException {
+    Lock lock = getWriteCoordinator().getRowLock(row);
+    lock.lock();
+    try {
+      Map<byte[], Long> result = getResultMap(row, increments);
       Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
-      Map<byte[], Long> result = getResultMap(row.getKey(), increments);
       for (Map.Entry<byte[], Long> entry : result.entrySet()) {
         replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
       }
-      resultMap.put(row.getKey(), replacing);
+      persist(ImmutableMap.of(row, replacing), System.currentTimeMillis());
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void increment(NavigableMap<byte[], NavigableMap<byte[], Long>> updates) throws IOException {
+    if (updates.isEmpty()) {
+      return;
+    }
+    // locks are returned in a consistent order, which prevents deadlocks between concurrent multi-row increments
+    List<Lock> locks = getWriteCoordinator().getRowLocks(updates.keySet());
+    int locked = 0;
+    try {
+      for (Lock lock : locks) {
+        lock.lock();
+        locked++;
+      }
+      Map<byte[], Map<byte[], byte[]>> resultMap = Maps.newHashMap();
+      for (NavigableMap.Entry<byte[], NavigableMap<byte[], Long>> row : updates.entrySet()) {
+        NavigableMap<byte[], Long> increments = row.getValue();
+        Map<byte[], byte[]> replacing = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+        Map<byte[], Long> result = getResultMap(row.getKey(), increments);
+        for (Map.Entry<byte[], Long> entry : result.entrySet()) {
+          replacing.put(entry.getKey(), Bytes.toBytes(entry.getValue()));
+        }
+        resultMap.put(row.getKey(), replacing);
+      }
+      persist(resultMap, System.currentTimeMillis());
+    } finally {
+      for (int i = locked - 1; i >= 0; i--) {
+        locks.get(i).unlock();
+      }
     }
-    persist(resultMap, System.currentTimeMillis());
   }
 
   private Map<byte[], Long> getResultMap(byte[] row, Map<byte[], Long> increments) throws IOException {
@@ -167,7 +205,7 @@ public class LevelDBTableCore {
         batch.put(key, column.getValue() == null ? DELETE_MARKER : column.getValue());
       }
     }
-    db.write(batch, service.getWriteOptions());
+    getWriteCoordinator().write(db, batch, getWriteOptions());
   }
 
   public void put(byte[] row, byte[] column, byte[] value, long version) throws IOException {
@@ -186,7 +224,7 @@ public class LevelDBTableCore {
         batch.delete(key);
       }
     }
-    db.write(batch, service.getWriteOptions());
+    getWriteCoordinator().write(db, batch, getWriteOptions());
   }
 
   public Scanner scan(byte[] startRow, byte[] stopRow,
@@ -229,6 +267,37 @@ public class LevelDBTableCore {
     }
   }
 
+  /**
+   * Reads multiple rows. All rows are read through a single iterator, which means that they are read
+   * from the same consistent snapshot of the table, and the cost of creating an iterator is only paid once.
+   */
+  public List<Map<byte[], byte[]>> getRows(List<Get> gets, Transaction tx) throws IOException {
+    List<Map<byte[], byte[]>> results = Lists.newArrayListWithCapacity(gets.size());
+    if (gets.isEmpty()) {
+      return results;
+    }
+    try (DBIterator iterator = getDB().iterator()) {
+      for (Get get : gets) {
+        byte[] row = get.getRow();
+        byte[][] columns = null;
+        if (get.getColumns() != null) {
+          if (get.getColumns().isEmpty()) {
+            results.add(EMPTY_ROW_MAP);
+            continue;
+          }
+          columns = get.getColumns().toArray(new byte[get.getColumns().size()][]);
+          Arrays.sort(columns, Bytes.BYTES_COMPARATOR);
+        }
+        int limit = columns == null ? -1 : columns.length;
+        byte[] startKey = createStartKey(row, columns == null ? null : columns[0]);
+        byte[] endKey = createEndKey(row, columns == null ? null : upperBound(columns[columns.length - 1]));
+        iterator.seek(startKey);
+        results.add(getRow(iterator, endKey, tx, false, columns, limit).getSecond());
+      }
+    }
+    return results;
+  }
+
   private static Scanner createEmptyScanner() {
     return new Scanner() {
       @Override
@@ -384,14 +453,19 @@ public class LevelDBTableCore {
       }
     }
     // delete all the entries that were found
-    db.write(batch, getWriteOptions());
+    getWriteCoordinator().write(db, batch, getWriteOptions());
   }
 
-  public void deleteRange(byte[] startRow, byte[] stopRow, @Nullable FuzzyRowFilter filter, @Nullable byte[][] columns)
+  /**
+   * Deletes the given columns, or all columns if {@code null}, of the rows in the given range.
+   *
+   * @return the number of rows that had any of the cells deleted
+   */
+  public int deleteRange(byte[] startRow, byte[] stopRow, @Nullable FuzzyRowFilter filter, @Nullable byte[][] columns)
     throws IOException {
     if (columns != null) {
       if (columns.length == 0) {
-        return;
+        return 0;
       }
       columns = Arrays.copyOf(columns, columns.length);
       Arrays.sort(columns, Bytes.BYTES_COMPARATOR);
@@ -409,10 +483,14 @@ public class LevelDBTableCore {
       Row rowValues;
       WriteBatch batch = db.createWriteBatch();
       int deletesInBatch = 0;
+      int deletedRows = 0;
 
       // go through all matching cells and delete them in batches.
       while ((rowValues = scanner.next()) != null) {
         byte[] row = rowValues.getRow();
+        if (!rowValues.isEmpty()) {
+          deletedRows++;
+        }
         for (byte[] column : rowValues.getColumns().keySet()) {
           addToDeleteBatch(batch, deleteIterator, row, column);
           deletesInBatch++;
@@ -420,7 +498,7 @@ public class LevelDBTableCore {
           // perform the deletes when we have built up a batch.
           if (deletesInBatch >= deletesPerRound) {
             // delete all the entries that were found
-            db.write(batch, getWriteOptions());
+            getWriteCoordinator().write(db, batch, getWriteOptions());
             batch = db.createWriteBatch();
             deletesInBatch = 0;
           }
@@ -429,8 +507,9 @@ public class LevelDBTableCore {
 
       // perform any outstanding deletes
       if (deletesInBatch > 0) {
-        db.write(batch, getWriteOptions());
+        getWriteCoordinator().write(db, batch, getWriteOptions());
       }
+      return deletedRows;
     } finally {
       deleteIterator.close();
     }
@@ -58,8 +58,10 @@ public class LevelDBTableService {
   private long cacheSize;
   private String basePath;
   private WriteOptions writeOptions;
+  private int rowLockStripes = Constants.DEFAULT_DATA_LEVELDB_ROW_LOCK_STRIPES;
 
   private final ConcurrentMap<String, DB> tables = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, LevelDBWriteCoordinator> writeCoordinators = Maps.newConcurrentMap();
 
   private static final LevelDBTableService SINGLETON = new LevelDBTableService();
 
@@ -86,6 +88,8 @@ public class LevelDBTableService {
     cacheSize = config.getLong(Constants.CFG_DATA_LEVELDB_CACHESIZE, Constants.DEFAULT_DATA_LEVELDB_CACHESIZE);
     writeOptions = new WriteOptions().sync(
       config.getBoolean(Constants.CFG_DATA_LEVELDB_FSYNC, Constants.DEFAULT_DATA_LEVELDB_FSYNC));
+    rowLockStripes = config.getInt(Constants.CFG_DATA_LEVELDB_ROW_LOCK_STRIPES,
+                                   Constants.DEFAULT_DATA_LEVELDB_ROW_LOCK_STRIPES);
   }
 
   /**
@@ -93,6 +97,7 @@ public class LevelDBTableService {
    */
   public void clearTables() {
     tables.clear();
+    writeCoordinators.clear();
   }
 
   public Collection<String> list() throws Exception {
@@ -153,6 +158,22 @@ public class LevelDBTableService {
     return writeOptions;
   }
 
+  /**
+   * Returns the coordinator for row locks and group commits of the given table. It is shared by all clients
+   * of the table in this JVM.
+   */
+  LevelDBWriteCoordinator getWriteCoordinator(String tableName) {
+    LevelDBWriteCoordinator coordinator = writeCoordinators.get(tableName);
+    if (coordinator == null) {
+      coordinator = new LevelDBWriteCoordinator(rowLockStripes);
+      LevelDBWriteCoordinator existing = writeCoordinators.putIfAbsent(tableName, coordinator);
+      if (existing != null) {
+        coordinator = existing;
+      }
+    }
+    return coordinator;
+  }
+
   public DB getTable(String tableName) throws IOException {
     DB db = tables.get(tableName);
     if (db == null) {
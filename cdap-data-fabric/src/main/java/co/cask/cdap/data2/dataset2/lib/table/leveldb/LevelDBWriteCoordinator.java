@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table.leveldb;
+
+import co.cask.cdap.api.common.Bytes;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.WriteBatch;
+import org.iq80.leveldb.WriteOptions;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Coordinates concurrent writes to a single LevelDB table. It provides:
+ * <ul>
+ *   <li>row locks striped by row hash, so that read-modify-write operations on different rows can proceed
+ *   in parallel, while operations on the same row are serialized across all clients of the table;</li>
+ *   <li>group commit of write batches: writers that arrive while another write is in progress are queued and
+ *   applied by a single leader thread, which only syncs the log once for the whole group.</li>
+ * </ul>
+ */
+@ThreadSafe
+final class LevelDBWriteCoordinator {
+
+  private static final WriteOptions NO_SYNC = new WriteOptions().sync(false);
+
+  private final Striped<Lock> rowLocks;
+  private final Lock writeLock = new ReentrantLock();
+  private final Queue<PendingWrite> pendingWrites = new ConcurrentLinkedQueue<>();
+
+  LevelDBWriteCoordinator(int lockStripes) {
+    Preconditions.checkArgument(lockStripes > 0, "Number of lock stripes must be positive: %s", lockStripes);
+    this.rowLocks = Striped.lock(lockStripes);
+  }
+
+  /**
+   * Returns the lock guarding the given row.
+   */
+  Lock getRowLock(byte[] row) {
+    return rowLocks.getAt(stripe(row));
+  }
+
+  /**
+   * Returns the locks guarding the given rows, without duplicates and in a globally consistent order. Callers
+   * must acquire them in the returned order to avoid deadlocks.
+   */
+  List<Lock> getRowLocks(Collection<byte[]> rows) {
+    int[] stripes = new int[rows.size()];
+    int i = 0;
+    for (byte[] row : rows) {
+      stripes[i++] = stripe(row);
+    }
+    Arrays.sort(stripes);
+    List<Lock> locks = Lists.newArrayListWithCapacity(stripes.length);
+    for (i = 0; i < stripes.length; i++) {
+      if (i == 0 || stripes[i] != stripes[i - 1]) {
+        locks.add(rowLocks.getAt(stripes[i]));
+      }
+    }
+    return locks;
+  }
+
+  /**
+   * Applies the given batch to the given database. If the write options require a sync, this call is grouped
+   * with other concurrent writers of the same table, such that the log is synced only once per group. This method
+   * returns only after the batch has been applied (and synced, if required).
+   */
+  void write(DB db, WriteBatch batch, WriteOptions options) {
+    if (!options.sync()) {
+      // without sync, there is nothing to amortize
+      db.write(batch, options);
+      return;
+    }
+
+    PendingWrite write = new PendingWrite(db, batch);
+    pendingWrites.add(write);
+    writeLock.lock();
+    try {
+      // a previous leader may have already applied this write while we were waiting for the lock
+      if (!write.done) {
+        applyPending(options);
+      }
+    } finally {
+      writeLock.unlock();
+    }
+    if (write.failure != null) {
+      throw write.failure;
+    }
+  }
+
+  /**
+   * Applies all pending writes. Only the last write to each database is synced, which also makes all preceding
+   * writes to that database durable. Must be called while holding the write lock.
+   */
+  private void applyPending(WriteOptions syncOptions) {
+    List<PendingWrite> group = Lists.newArrayList();
+    PendingWrite pending = pendingWrites.poll();
+    while (pending != null) {
+      group.add(pending);
+      pending = pendingWrites.poll();
+    }
+
+    // determine the last write for each database, which is the one that needs to sync
+    boolean[] sync = new boolean[group.size()];
+    Set<DB> synced = Sets.newIdentityHashSet();
+    for (int i = group.size() - 1; i >= 0; i--) {
+      sync[i] = synced.add(group.get(i).db);
+    }
+
+    RuntimeException failure = null;
+    try {
+      for (int i = 0; i < group.size(); i++) {
+        PendingWrite write = group.get(i);
+        write.db.write(write.batch, sync[i] ? syncOptions : NO_SYNC);
+      }
+    } catch (RuntimeException e) {
+      // without a successful sync, none of the writes in the group can be considered durable
+      failure = e;
+    }
+    for (PendingWrite write : group) {
+      write.failure = failure;
+      write.done = true;
+    }
+  }
+
+  private int stripe(byte[] row) {
+    return (Bytes.hashCode(row) & Integer.MAX_VALUE) % rowLocks.size();
+  }
+
+  /**
+   * A write batch waiting to be applied. Its state is only accessed while holding the write lock.
+   */
+  private static final class PendingWrite {
+    private final DB db;
+    private final WriteBatch batch;
+    private boolean done;
+    private RuntimeException failure;
+
+    PendingWrite(DB db, WriteBatch batch) {
+      this.db = db;
+      this.batch = batch;
+    }
+  }
+}
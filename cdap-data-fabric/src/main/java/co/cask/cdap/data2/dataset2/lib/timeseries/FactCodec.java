@@ -171,6 +171,13 @@ public class FactCodec {
     return newRowKey;
   }
 
+  /**
+   * Returns the time base of the rows that store the given timestamp.
+   */
+  long getRowTimeBase(long ts) {
+    return getTimeBase(roundToResolution(ts));
+  }
+
   private long roundToResolution(long ts) {
     return (ts / resolution) * resolution;
   }
@@ -51,6 +51,8 @@ public final class FactScanner implements Iterator<FactScanResult> {
   // set of measureNames - useful to process measures that are requested while scanning.
   private final Set<String> measureNames;
 
+  private boolean closed;
+
   /**
    * Construct a FactScanner. Should only be called by FactTable.
    */
@@ -64,7 +66,11 @@ public final class FactScanner implements Iterator<FactScanResult> {
   }
 
   public void close() {
-    scanner.close();
+    // the scanner is closed when it is exhausted, and may be closed again by the caller
+    if (!closed) {
+      closed = true;
+      scanner.close();
+    }
   }
 
   public int getRowScanned() {
@@ -133,7 +139,7 @@ public final class FactScanner implements Iterator<FactScanResult> {
           return new FactScanResult(measureName, dimensionValues, timeValues);
         }
 
-        scanner.close();
+        close();
         return endOfData();
       }
     };
@@ -57,6 +57,14 @@ public final class FactTable implements Closeable {
   private static final int MAX_RECORDS_TO_SCAN_DURING_SEARCH = 10 * 1000 * 1000;
   private static final int MAX_SCANS_DURING_SEARCH = 10 * 1000;
 
+  // Row for table metadata. Fact rows start with the codec version (0), so this row is never part of a fact scan.
+  private static final byte[] META_ROW = new byte[] {(byte) 0xff, 'm', 'e', 't', 'a'};
+  private static final byte[] META_ROW_STOP = Bytes.add(META_ROW, new byte[] {0});
+  private static final byte[] ROLLUP_WATERMARK_COLUMN = Bytes.toBytes("rollup.watermark");
+  // written by every transaction that reads or changes the watermark and depends on it not changing concurrently
+  private static final byte[] ROLLUP_WATERMARK_LOCK_COLUMN = Bytes.toBytes("rollup.watermark.lock");
+  private static final String MEASURE_TYPE_COLUMN_PREFIX = "measure.type.";
+
   private static final Function<byte[], Long> BYTES_TO_LONG = new Function<byte[], Long>() {
     @Override
     public Long apply(byte[] input) {
@@ -81,6 +89,7 @@ public final class FactTable implements Closeable {
 
   private final String putCountMetric;
   private final String incrementCountMetric;
+  private final String deleteCountMetric;
 
   @Nullable
   private MetricsCollector metrics;
@@ -108,6 +117,7 @@ public final class FactTable implements Closeable {
     this.rollTime = rollTime;
     this.putCountMetric = "factTable." + resolution + ".put.count";
     this.incrementCountMetric = "factTable." + resolution + ".increment.count";
+    this.deleteCountMetric = "factTable." + resolution + ".delete.count";
   }
 
   public void setMetricsCollector(MetricsCollector metrics) {
@@ -150,6 +160,34 @@ public final class FactTable implements Closeable {
     return new FactScanner(getScanner(scan), codec, scan.getStartTs(), scan.getEndTs(), scan.getMeasureNames());
   }
 
+  /**
+   * Splits the given scan into at most {@code maxSplits} scans over disjoint ranges of rows, which can be executed
+   * in parallel. Since row keys start with the time base, each split covers a contiguous range of time bases and
+   * the time range of a split is restricted accordingly, so that scanning all splits yields exactly the facts
+   * that the given scan yields.
+   * @param scan the scan to split
+   * @param maxSplits maximum number of splits to return
+   * @return list of scans, ordered by time range
+   */
+  public List<FactScan> splitScan(FactScan scan, int maxSplits) {
+    long firstTimeBase = codec.getRowTimeBase(scan.getStartTs());
+    long lastTimeBase = codec.getRowTimeBase(scan.getEndTs());
+    long timeBases = (lastTimeBase - firstTimeBase) / rollTime + 1;
+    if (maxSplits < 2 || timeBases < 2) {
+      return ImmutableList.of(scan);
+    }
+
+    int splits = (int) Math.min(maxSplits, timeBases);
+    long timeBasesPerSplit = (timeBases + splits - 1) / splits;
+    List<FactScan> result = Lists.newArrayListWithCapacity(splits);
+    for (long splitStart = firstTimeBase; splitStart <= lastTimeBase; splitStart += timeBasesPerSplit * rollTime) {
+      long splitEnd = splitStart + timeBasesPerSplit * rollTime - 1;
+      result.add(new FactScan(Math.max(scan.getStartTs(), splitStart), Math.min(scan.getEndTs(), splitEnd),
+                              scan.getMeasureNames(), scan.getDimensionValues()));
+    }
+    return result;
+  }
+
   private Scanner getScanner(FactScan scan) {
     // use null if no metrics or more than one metrics are provided in the scan
     String measureName = scan.getMeasureNames().size() == 1 ? scan.getMeasureNames().iterator().next() : null;
@@ -183,33 +221,69 @@ public final class FactTable implements Closeable {
    * @param scan specifies deletion criteria
    */
   public void delete(FactScan scan) {
-    try (Scanner scanner = getScanner(scan)) {
-      Row row;
-      while ((row = scanner.next()) != null) {
-        List<byte[]> columns = Lists.newArrayList();
-
-        boolean exhausted = false;
-        for (byte[] column : row.getColumns().keySet()) {
-          long ts = codec.getTimestamp(row.getRow(), column);
-          if (ts < scan.getStartTs()) {
-            continue;
-          }
+    // Row keys start with the agg group followed by the time base, so the rows of the time bases that are entirely
+    // in the time range form a single key range, whose rows are deleted as a whole. Only the columns within the time
+    // range are deleted from the rows of the first and the last time base.
+    long startTimeBase = codec.getRowTimeBase(scan.getStartTs());
+    long endTimeBase = codec.getRowTimeBase(scan.getEndTs());
+    long firstFullTimeBase = scan.getStartTs() == startTimeBase ? startTimeBase : startTimeBase + rollTime;
+    long lastFullTimeBase = scan.getEndTs() >= getLastTimestamp(endTimeBase) ? endTimeBase : endTimeBase - rollTime;
+
+    if (firstFullTimeBase <= lastFullTimeBase) {
+      deleteRange(scan, firstFullTimeBase, getLastTimestamp(lastFullTimeBase), null);
+    }
+    if (startTimeBase < firstFullTimeBase) {
+      long endTs = Math.min(scan.getEndTs(), getLastTimestamp(startTimeBase));
+      deleteRange(scan, scan.getStartTs(), endTs, getColumns(startTimeBase, scan.getStartTs(), endTs));
+    }
+    if (endTimeBase > lastFullTimeBase && endTimeBase >= firstFullTimeBase) {
+      deleteRange(scan, endTimeBase, scan.getEndTs(), getColumns(endTimeBase, endTimeBase, scan.getEndTs()));
+    }
+  }
 
-          if (ts > scan.getEndTs()) {
-            exhausted = true;
-            break;
-          }
+  /**
+   * Returns the timestamp of the last column in the row of the given time base.
+   */
+  private long getLastTimestamp(long timeBase) {
+    return timeBase + (rollTime - 1) / resolution * resolution;
+  }
 
-          columns.add(column);
-        }
+  /**
+   * Returns the columns of the row of the given time base that are within the given time range.
+   */
+  private byte[][] getColumns(long timeBase, long startTs, long endTs) {
+    // the first column at or after the start of the time range
+    long startCol = (startTs - timeBase + resolution - 1) / resolution;
+    long endCol = (endTs - timeBase) / resolution;
+    if (startCol > endCol) {
+      return new byte[0][];
+    }
+    byte[][] columns = new byte[(int) (endCol - startCol + 1)][];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = Bytes.toBytes((short) (startCol + i));
+    }
+    return columns;
+  }
 
-        // todo: do deletes efficiently, in batches, not one-by-one
-        timeSeriesTable.delete(row.getRow(), columns.toArray(new byte[columns.size()][]));
+  private void deleteRange(FactScan scan, long startTs, long endTs, @Nullable byte[][] columns) {
+    if (columns != null && columns.length == 0) {
+      return;
+    }
+    String measureName = scan.getMeasureNames().size() == 1 ? scan.getMeasureNames().iterator().next() : null;
+    byte[] startRow = codec.createStartRowKey(scan.getDimensionValues(), measureName, startTs, false);
+    byte[] endRow = codec.createEndRowKey(scan.getDimensionValues(), measureName, endTs, false);
+    endRow = Bytes.stopKeyForPrefix(endRow);
+    FuzzyRowFilter fuzzyRowFilter = createFuzzyRowFilter(scan, startRow);
 
-        if (exhausted) {
-          break;
-        }
-      }
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("Deleting from fact table {} with scan: {}; constructed startRow: {}, endRow: {}, columns: {}, " +
+                  "fuzzyRowFilter: {}", timeSeriesTable, scan, toPrettyLog(startRow), toPrettyLog(endRow),
+                columns == null ? "all" : columns.length, fuzzyRowFilter);
+    }
+
+    int deletedRows = timeSeriesTable.deleteRange(startRow, endRow, columns, fuzzyRowFilter);
+    if (metrics != null) {
+      metrics.increment(deleteCountMetric, deletedRows);
     }
   }
 
@@ -385,6 +459,80 @@ public final class FactTable implements Closeable {
     entityTable.close();
   }
 
+  /**
+   * Returns the timestamp up to which (exclusive) this table's data was computed by rollup of a finer resolution, or
+   * {@code -1} if it was never set.
+   */
+  public long getRollupWatermark() {
+    byte[] value = timeSeriesTable.get(META_ROW, ROLLUP_WATERMARK_COLUMN);
+    return value == null ? -1L : Bytes.toLong(value);
+  }
+
+  /**
+   * Sets the timestamp up to which (exclusive) this table's data was computed by rollup of a finer resolution.
+   */
+  public void setRollupWatermark(long watermark) {
+    NavigableMap<byte[], NavigableMap<byte[], Long>> update = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    NavigableMap<byte[], Long> columns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    columns.put(ROLLUP_WATERMARK_COLUMN, watermark);
+    columns.put(ROLLUP_WATERMARK_LOCK_COLUMN, 0L);
+    update.put(META_ROW, columns);
+    timeSeriesTable.put(update);
+  }
+
+  /**
+   * Makes the current transaction conflict with any concurrent transaction that sets the rollup watermark with
+   * {@link #setRollupWatermark(long)}. Only writes are checked for conflicts, so a transaction that decides what to
+   * write based on {@link #getRollupWatermark()} must call this to not miss a concurrent change of the watermark.
+   */
+  public void lockRollupWatermark() {
+    NavigableMap<byte[], NavigableMap<byte[], Long>> update = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    NavigableMap<byte[], Long> columns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    // the value doesn't matter, only that the cell is written
+    columns.put(ROLLUP_WATERMARK_LOCK_COLUMN, 0L);
+    update.put(META_ROW, columns);
+    timeSeriesTable.put(update);
+  }
+
+  /**
+   * Records the types of the given measures, as they are needed to compute rollups of the stored facts.
+   */
+  public void addMeasureTypes(Map<String, MeasureType> measureTypes) {
+    if (measureTypes.isEmpty()) {
+      return;
+    }
+    NavigableMap<byte[], NavigableMap<byte[], Long>> update = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    NavigableMap<byte[], Long> columns = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    for (Map.Entry<String, MeasureType> measureType : measureTypes.entrySet()) {
+      columns.put(Bytes.toBytes(MEASURE_TYPE_COLUMN_PREFIX + measureType.getKey()),
+                  (long) measureType.getValue().ordinal());
+    }
+    update.put(META_ROW, columns);
+    timeSeriesTable.put(update);
+  }
+
+  /**
+   * Returns the measure types recorded with {@link #addMeasureTypes(Map)}.
+   */
+  public Map<String, MeasureType> getMeasureTypes() {
+    Map<String, MeasureType> result = Maps.newHashMap();
+    try (Scanner scanner = timeSeriesTable.scan(META_ROW, META_ROW_STOP, null)) {
+      Row row = scanner.next();
+      if (row == null) {
+        return result;
+      }
+      MeasureType[] types = MeasureType.values();
+      for (Map.Entry<byte[], byte[]> column : row.getColumns().entrySet()) {
+        String columnName = Bytes.toString(column.getKey());
+        if (columnName.startsWith(MEASURE_TYPE_COLUMN_PREFIX)) {
+          result.put(columnName.substring(MEASURE_TYPE_COLUMN_PREFIX.length()),
+                     types[(int) Bytes.toLong(column.getValue())]);
+        }
+      }
+    }
+    return result;
+  }
+
   public static byte[][] getSplits(int aggGroupsCount) {
     return FactCodec.getSplits(aggGroupsCount);
   }
@@ -16,6 +16,8 @@
 package co.cask.cdap.data2.transaction.queue;
 
 import co.cask.cdap.api.common.Bytes;
+import co.cask.cdap.api.dataset.metrics.MeteredDataset;
+import co.cask.cdap.api.metrics.MetricsCollector;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.queue.QueueName;
 import co.cask.cdap.common.utils.ImmutablePair;
@@ -32,9 +34,13 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,13 +53,28 @@ import java.util.Map;
 import java.util.NavigableMap;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
 
 /**
  * Common queue consumer for persisting engines such as HBase and LevelDB.
+ * <p>
+ * If {@link QueueConstants.ConfigKeys#DEQUEUE_PREFETCH_DEPTH} is positive, the next scan of queue rows is started in
+ * the background when the entry cache is about to run out, so that it is already done by the time the cache needs
+ * to be refilled. The scanned rows are filtered with the transaction that the scan was started in, which is the
+ * same as if they were scanned synchronously in that transaction. Rows whose state this consumer changed after the
+ * scan was started are ignored, since their scanned state is stale.
+ * </p>
  */
-public abstract class AbstractQueueConsumer implements QueueConsumer, TransactionAware {
+public abstract class AbstractQueueConsumer implements QueueConsumer, TransactionAware, MeteredDataset {
 
   private static final Logger LOG = LoggerFactory.getLogger(AbstractQueueConsumer.class);
   private static final DequeueResult<byte[]> EMPTY_RESULT = DequeueResult.Empty.result();
@@ -64,6 +85,13 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
   // Multiple of batches to fetch per scan.
   // Number of rows to scan = max(MIN_FETCH_ROWS, dequeueBatchSize * groupSize * PREFETCH_BATCHES)
   private static final int PREFETCH_BATCHES = 10;
+  // Maximum time to wait for a read-ahead scan to stop when the consumer is closed
+  private static final long READ_AHEAD_STOP_TIMEOUT_SECONDS = 10L;
+
+  // Shared by all consumers, threads only live while there are scans in the background
+  private static final ExecutorService READ_AHEAD_EXECUTOR =
+    new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                           Threads.createDaemonThreadFactory("queue-read-ahead-%d"));
 
   private static final Function<SimpleQueueEntry, byte[]> ENTRY_TO_BYTE_ARRAY =
     new Function<SimpleQueueEntry, byte[]>() {
@@ -83,6 +111,16 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
   // Maximum amount of time spent in dequeue to avoid transaction timeout.
   private final long maxDequeueMillis;
 
+  // Number of scan batches to read ahead in the background, 0 to disable read-ahead.
+  private final int prefetchDepth;
+  // Rows of which this consumer changed the state since the read-ahead scan started.
+  private final Set<byte[]> modifiedRows;
+  private ReadAhead readAhead;
+  private MetricsCollector metricsCollector;
+  // Time spent on scans, or waiting for them, in the current dequeue call
+  private long scanMillis;
+  private boolean scanned;
+
   private byte[] scanStartRow;
   private boolean committed;
   protected Transaction transaction;
@@ -117,6 +155,10 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
                                 "Invalid value for %s", QueueConstants.ConfigKeys.DEQUEUE_TX_PERCENT);
     long txTimeout = TimeUnit.SECONDS.toMillis(cConf.getLong(TxConstants.Manager.CFG_TX_TIMEOUT));
     this.maxDequeueMillis = txTimeout * dequeuePercent / 100;
+
+    this.prefetchDepth = cConf.getInt(QueueConstants.ConfigKeys.DEQUEUE_PREFETCH_DEPTH,
+                                      QueueConstants.DEFAULT_DEQUEUE_PREFETCH_DEPTH);
+    this.modifiedRows = Sets.newTreeSet(Bytes.BYTES_COMPARATOR);
   }
 
   @Override
@@ -136,15 +178,32 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
 
   @Override
   public DequeueResult<byte[]> dequeue(int maxBatchSize) throws IOException {
+    scanMillis = 0L;
+    scanned = false;
     DequeueResult<byte[]> result = performDequeue(maxBatchSize);
     // Start row can be updated to the largest rowKey in the consumingEntries
     // that is smaller than or equal to scanStartRow. If no such key exists, update start row to scanStartRow
     byte[] floorKey = consumingEntries.floorKey(scanStartRow);
     updateStartRow(floorKey == null ? scanStartRow : floorKey);
 
+    if (prefetchDepth > 0 && readAhead == null && entryCache.size() <= maxBatchSize) {
+      // The next dequeue will drain the cache, start the next scan while the result is processed
+      startReadAhead(maxBatchSize);
+    }
+    if (metricsCollector != null) {
+      metricsCollector.increment(scanned ? "queue.dequeue.cache.miss" : "queue.dequeue.cache.hit", 1);
+      if (scanMillis > 0) {
+        metricsCollector.increment("queue.dequeue.scan.blocked.ms", scanMillis);
+      }
+    }
     return result;
   }
 
+  @Override
+  public void setMetricsCollector(MetricsCollector metricsCollector) {
+    this.metricsCollector = metricsCollector;
+  }
+
   @Override
   public void startTx(Transaction tx) {
     consumingEntries.clear();
@@ -171,6 +230,9 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
 
     byte[] stateContent = encodeStateColumn(ConsumerEntryState.PROCESSED);
     updateState(consumingEntries.keySet(), stateColumnName, stateContent);
+    if (readAhead != null) {
+      modifiedRows.addAll(consumingEntries.keySet());
+    }
     commitCount += consumingEntries.size();
     committed = true;
     return true;
@@ -184,6 +246,9 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
 
     // Put the consuming entries back to cache
     entryCache.putAll(consumingEntries);
+    if (readAhead != null) {
+      modifiedRows.addAll(consumingEntries.keySet());
+    }
 
     // If not committed, no need to update HBase.
     if (!committed) {
@@ -202,6 +267,38 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
     return true;
   }
 
+  /**
+   * Stops the read-ahead scan if there is one and waits for it to complete, so that the table it scans can be
+   * closed. Consumers should call it when they are closed, before closing the table.
+   */
+  protected final void stopReadAhead() {
+    if (readAhead == null) {
+      return;
+    }
+    ReadAhead current = readAhead;
+    cancelReadAhead();
+    try {
+      Uninterruptibles.getUninterruptibly(current.rows, READ_AHEAD_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      // The scanned rows are discarded anyway
+      LOG.debug("Read-ahead scan failed for queue {} while closing.", queueName, e.getCause());
+    } catch (TimeoutException e) {
+      LOG.warn("Timeout in stopping read-ahead scan for queue {} after {} seconds.",
+               queueName, READ_AHEAD_STOP_TIMEOUT_SECONDS);
+      current.rows.cancel(true);
+    }
+  }
+
+  /**
+   * Tells the read-ahead scan to stop after the row being fetched, without waiting for it.
+   */
+  private void cancelReadAhead() {
+    if (readAhead != null) {
+      readAhead.cancelled.set(true);
+      readAhead = null;
+    }
+  }
+
   /**
    * Called when the start row is updated.
    */
@@ -290,7 +387,12 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
 
     // If not enough entries from the cache, try to get more.
     if (entries.size() < maxBatchSize) {
-      populateRowCache(entries.keySet(), maxBatchSize, stopwatch);
+      scanned = true;
+      Stopwatch scanStopwatch = new Stopwatch().start();
+      if (!populateFromReadAhead(entries.keySet(), stopwatch)) {
+        populateRowCache(entries.keySet(), maxBatchSize, stopwatch);
+      }
+      scanMillis += scanStopwatch.elapsedMillis();
       hasEntry = fetchFromCache(entries, maxBatchSize) || hasEntry;
     }
 
@@ -312,73 +414,172 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
   }
 
   private void populateRowCache(Set<byte[]> excludeRows, int maxBatchSize, Stopwatch stopwatch) throws IOException {
-
-    long readPointer = transaction.getReadPointer();
-
     // Scan the table for queue entries.
     int numRows = Math.max(MIN_FETCH_ROWS, maxBatchSize * PREFETCH_BATCHES);
     QueueScanner scanner = getScanner(scanStartRow,
                                       QueueEntryRow.getStopRowForTransaction(queueRowPrefix, transaction),
                                       numRows);
     try {
-      // Try fill up the cache
-      boolean firstScannedRow = true;
-      while (entryCache.size() < numRows) {
-        ImmutablePair<byte[], Map<byte[], byte[]>> entry = scanner.next();
-        if (entry == null) {
-          // No more result, breaking out.
-          break;
-        }
+      cacheRows(scanner, transaction, excludeRows, numRows, stopwatch, false);
+    } finally {
+      scanner.close();
+    }
+  }
 
-        byte[] rowKey = entry.getFirst();
-        if (excludeRows.contains(rowKey)) {
-          continue;
+  /**
+   * Starts scanning the rows for the next {@link #populateRowCache(Set, int, Stopwatch)} in the background.
+   */
+  private void startReadAhead(int maxBatchSize) throws IOException {
+    final int numRows = Math.max(MIN_FETCH_ROWS, maxBatchSize * PREFETCH_BATCHES) * prefetchDepth;
+    final QueueScanner scanner = getScanner(scanStartRow,
+                                            QueueEntryRow.getStopRowForTransaction(queueRowPrefix, transaction),
+                                            numRows);
+    final AtomicBoolean cancelled = new AtomicBoolean();
+    Future<List<ImmutablePair<byte[], Map<byte[], byte[]>>>> rows = READ_AHEAD_EXECUTOR.submit(
+      new Callable<List<ImmutablePair<byte[], Map<byte[], byte[]>>>>() {
+        @Override
+        public List<ImmutablePair<byte[], Map<byte[], byte[]>>> call() throws Exception {
+          try {
+            List<ImmutablePair<byte[], Map<byte[], byte[]>>> rows = Lists.newArrayList();
+            ImmutablePair<byte[], Map<byte[], byte[]>> row = scanner.next();
+            while (row != null && !cancelled.get()) {
+              rows.add(row);
+              if (rows.size() >= numRows) {
+                break;
+              }
+              row = scanner.next();
+            }
+            return rows;
+          } finally {
+            scanner.close();
+          }
         }
+      });
+    modifiedRows.clear();
+    readAhead = new ReadAhead(transaction, Arrays.copyOf(scanStartRow, scanStartRow.length), numRows,
+                              rows, cancelled);
+  }
 
-        // Row key is queue_name + writePointer + counter
-        long writePointer = QueueEntryRow.getWritePointer(rowKey, queueRowPrefix.length);
+  /**
+   * Fills the entry cache with the rows of the read-ahead scan, waiting for it to complete if needed.
+   *
+   * @return {@code true} if the read-ahead scan was used, {@code false} if the rows should be scanned synchronously
+   */
+  private boolean populateFromReadAhead(Set<byte[]> excludeRows, Stopwatch stopwatch) throws IOException {
+    if (readAhead == null) {
+      return false;
+    }
+    ReadAhead current = readAhead;
+    if (!Arrays.equals(current.startRow, scanStartRow)) {
+      // The scan start row moved since the read-ahead scan started, simply discard it
+      cancelReadAhead();
+      return false;
+    }
 
-        // If it is first row returned by the scanner and was written before the earliest in progress,
-        // it's safe to advance scanStartRow to current row because nothing can be written before this row.
-        if (firstScannedRow && writePointer < transaction.getFirstInProgress()) {
-          firstScannedRow = false;
-          scanStartRow = Arrays.copyOf(rowKey, rowKey.length);
-        }
+    List<ImmutablePair<byte[], Map<byte[], byte[]>>> rows;
+    try {
+      long waitMillis = Math.max(0L, maxDequeueMillis - stopwatch.elapsedMillis());
+      rows = Uninterruptibles.getUninterruptibly(current.rows, waitMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      // Dequeue time limit reached, keep the scan for the next dequeue
+      return true;
+    } catch (ExecutionException e) {
+      LOG.warn("Read-ahead scan failed for queue {}. Scanning again.", queueName, e.getCause());
+      readAhead = null;
+      return false;
+    }
+    readAhead = null;
 
-        // If writes later than the reader pointer, abort the loop, as entries that comes later are all uncommitted.
-        // this is probably not needed due to the limit of the scan to the stop row, but to be safe...
-        if (writePointer > readPointer) {
-          break;
-        }
-        // If the write is in the excluded list, ignore it.
-        if (transaction.isExcluded(writePointer)) {
-          continue;
-        }
+    final Iterator<ImmutablePair<byte[], Map<byte[], byte[]>>> iterator = rows.iterator();
+    QueueScanner scanner = new QueueScanner() {
+      @Override
+      public ImmutablePair<byte[], Map<byte[], byte[]>> next() {
+        return iterator.hasNext() ? iterator.next() : null;
+      }
 
-        // Based on the strategy to determine if include the given entry or not.
-        byte[] dataBytes = entry.getSecond().get(QueueEntryRow.DATA_COLUMN);
-        byte[] metaBytes = entry.getSecond().get(QueueEntryRow.META_COLUMN);
+      @Override
+      public void close() {
+        // no-op
+      }
+    };
+    cacheRows(scanner, current.transaction, excludeRows, current.numRows, stopwatch, true);
+    return true;
+  }
 
-        if (dataBytes == null || metaBytes == null) {
-          continue;
-        }
+  /**
+   * Adds the rows returned by the given scanner to the entry cache, as long as they can be consumed.
+   *
+   * @param scanner the scanner started at {@link #scanStartRow}
+   * @param tx the transaction in which the scanner was created
+   * @param excludeRows rows to ignore
+   * @param numRows maximum size of the entry cache
+   * @param stopwatch for checking the dequeue time limit
+   * @param fromReadAhead {@code true} if the rows are from a read-ahead scan
+   */
+  private void cacheRows(QueueScanner scanner, Transaction tx, Set<byte[]> excludeRows, int numRows,
+                         Stopwatch stopwatch, boolean fromReadAhead) throws IOException {
+    long readPointer = tx.getReadPointer();
+
+    // Try fill up the cache
+    boolean firstScannedRow = true;
+    while (entryCache.size() < numRows) {
+      ImmutablePair<byte[], Map<byte[], byte[]>> entry = scanner.next();
+      if (entry == null) {
+        // No more result, breaking out.
+        break;
+      }
 
-        byte[] stateBytes = entry.getSecond().get(stateColumnName);
+      byte[] rowKey = entry.getFirst();
+      if (excludeRows.contains(rowKey)) {
+        continue;
+      }
 
-        int counter = Bytes.toInt(rowKey, rowKey.length - 4, Ints.BYTES);
-        if (!shouldInclude(writePointer, counter, metaBytes, stateBytes)) {
-          continue;
-        }
+      // Row key is queue_name + writePointer + counter
+      long writePointer = QueueEntryRow.getWritePointer(rowKey, queueRowPrefix.length);
 
-        entryCache.put(rowKey, new SimpleQueueEntry(rowKey, dataBytes, stateBytes));
+      // If it is first row returned by the scanner and was written before the earliest in progress,
+      // it's safe to advance scanStartRow to current row because nothing can be written before this row.
+      if (firstScannedRow && writePointer < tx.getFirstInProgress()) {
+        firstScannedRow = false;
+        scanStartRow = Arrays.copyOf(rowKey, rowKey.length);
+      }
 
-        // Check here to make sure there is at least one entry read to make sure there is some progress
-        if (stopwatch.elapsedMillis() >= maxDequeueMillis) {
-          break;
-        }
+      // Entries read ahead that are already cached, or whose state this consumer changed, are stale.
+      if (fromReadAhead && (entryCache.containsKey(rowKey) || modifiedRows.contains(rowKey))) {
+        continue;
+      }
+
+      // If writes later than the reader pointer, abort the loop, as entries that comes later are all uncommitted.
+      // this is probably not needed due to the limit of the scan to the stop row, but to be safe...
+      if (writePointer > readPointer) {
+        break;
+      }
+      // If the write is in the excluded list, ignore it.
+      if (tx.isExcluded(writePointer)) {
+        continue;
+      }
+
+      // Based on the strategy to determine if include the given entry or not.
+      byte[] dataBytes = entry.getSecond().get(QueueEntryRow.DATA_COLUMN);
+      byte[] metaBytes = entry.getSecond().get(QueueEntryRow.META_COLUMN);
+
+      if (dataBytes == null || metaBytes == null) {
+        continue;
+      }
+
+      byte[] stateBytes = entry.getSecond().get(stateColumnName);
+
+      int counter = Bytes.toInt(rowKey, rowKey.length - 4, Ints.BYTES);
+      if (!shouldInclude(tx, writePointer, counter, metaBytes, stateBytes)) {
+        continue;
+      }
+
+      entryCache.put(rowKey, new SimpleQueueEntry(rowKey, dataBytes, stateBytes));
+
+      // Check here to make sure there is at least one entry read to make sure there is some progress
+      if (stopwatch.elapsedMillis() >= maxDequeueMillis) {
+        break;
       }
-    } finally {
-      scanner.close();
     }
   }
 
@@ -391,11 +592,11 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
     return stateContent;
   }
 
-  private boolean shouldInclude(long enqueueWritePointer, int counter,
+  private boolean shouldInclude(Transaction tx, long enqueueWritePointer, int counter,
                                 byte[] metaValue, byte[] stateValue) throws IOException {
 
     QueueEntryRow.CanConsume canConsume =
-      QueueEntryRow.canConsume(getConfig(), transaction, enqueueWritePointer, counter, metaValue, stateValue);
+      QueueEntryRow.canConsume(getConfig(), tx, enqueueWritePointer, counter, metaValue, stateValue);
 
     if (QueueEntryRow.CanConsume.NO_INCLUDING_ALL_OLDER == canConsume) {
       scanStartRow = getNextRow(scanStartRow, enqueueWritePointer, counter);
@@ -420,6 +621,28 @@ public abstract class AbstractQueueConsumer implements QueueConsumer, Transactio
     return getClass().getSimpleName() + "(queue = " + queueName + ")";
   }
 
+  /**
+   * A scan of queue rows running in the background.
+   */
+  private static final class ReadAhead {
+
+    private final Transaction transaction;
+    private final byte[] startRow;
+    private final int numRows;
+    private final Future<List<ImmutablePair<byte[], Map<byte[], byte[]>>>> rows;
+    // Set to stop the scan, which is checked after each row
+    private final AtomicBoolean cancelled;
+
+    ReadAhead(Transaction transaction, byte[] startRow, int numRows,
+              Future<List<ImmutablePair<byte[], Map<byte[], byte[]>>>> rows, AtomicBoolean cancelled) {
+      this.transaction = transaction;
+      this.startRow = startRow;
+      this.numRows = numRows;
+      this.rows = rows;
+      this.cancelled = cancelled;
+    }
+  }
+
   /**
    * Implementation of dequeue result.
    */
@@ -29,6 +29,7 @@ public final class QueueConstants {
     public static final String QUEUE_TABLE_COPROCESSOR_DIR = "data.queue.table.coprocessor.dir";
     public static final String QUEUE_TABLE_PRESPLITS = "data.queue.table.presplits";
     public static final String DEQUEUE_TX_PERCENT = "data.queue.dequeue.tx.percent";
+    public static final String DEQUEUE_PREFETCH_DEPTH = "data.queue.dequeue.prefetch.depth";
   }
 
   // This is a hardcoded value for the row key distributor bucket size before CDAP-1946
@@ -37,6 +38,9 @@ public final class QueueConstants {
 
   public static final String DEFAULT_QUEUE_TABLE_COPROCESSOR_DIR = "/queue";
 
+  // Read-ahead of queue rows is disabled by default
+  public static final int DEFAULT_DEQUEUE_PREFETCH_DEPTH = 0;
+
   public static final long MAX_CREATE_TABLE_WAIT = 5000L;    // Maximum wait of 5 seconds for table creation.
 
   // How frequently (in seconds) to update the ConsumerConfigCache data for the HBaseQueueRegionObserver
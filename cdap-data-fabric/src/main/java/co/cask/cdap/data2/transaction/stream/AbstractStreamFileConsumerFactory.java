@@ -15,6 +15,8 @@
  */
 package co.cask.cdap.data2.transaction.stream;
 
+import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data.file.FileReader;
@@ -32,9 +34,11 @@ import co.cask.cdap.proto.Id;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.inject.Inject;
 import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +61,9 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
   private final StreamAdmin streamAdmin;
   private final StreamConsumerStateStoreFactory stateStoreFactory;
   private final String tablePrefix;
+  private final boolean zeroCopy;
+  private final int readAheadSize;
+  private MetricsCollectionService metricsCollectionService;
 
   protected AbstractStreamFileConsumerFactory(CConfiguration cConf, StreamAdmin streamAdmin,
                                               StreamConsumerStateStoreFactory stateStoreFactory) {
@@ -64,6 +71,14 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
     this.streamAdmin = streamAdmin;
     this.stateStoreFactory = stateStoreFactory;
     this.tablePrefix = String.format("%s.%s", Id.Namespace.SYSTEM.getId(), QueueConstants.QueueType.STREAM.toString());
+    this.zeroCopy = cConf.getBoolean(Constants.Stream.CONSUMER_ZERO_COPY, false);
+    this.readAheadSize = cConf.getInt(Constants.Stream.CONSUMER_READ_AHEAD_SIZE, 0);
+  }
+
+  @SuppressWarnings("unused")
+  @Inject(optional = true)
+  public void setMetricsCollectionService(MetricsCollectionService metricsCollectionService) {
+    this.metricsCollectionService = metricsCollectionService;
   }
 
   /**
@@ -169,7 +184,9 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
       if (useStoredStates) {
         LOG.info("Create file reader with consumer state: {}", consumerState);
         // Has existing offsets, just resume from there.
-        MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, consumerState.getState());
+        MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, consumerState.getState(),
+                                                                         zeroCopy, readAheadSize,
+                                                                         getMetricsContext(streamConfig));
         reader.initialize();
         return reader;
       }
@@ -208,8 +225,24 @@ public abstract class AbstractStreamFileConsumerFactory implements StreamConsume
     LOG.info("Empty consumer state. Create file reader with file offsets: groupId={}, instanceId={} states={}",
              consumerState.getGroupId(), consumerState.getInstanceId(), fileOffsets);
 
-    MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, fileOffsets);
+    MultiLiveStreamFileReader reader = new MultiLiveStreamFileReader(streamConfig, fileOffsets, zeroCopy,
+                                                                     readAheadSize, getMetricsContext(streamConfig));
     reader.initialize();
     return reader;
   }
+
+  /**
+   * Returns the {@link MetricsContext} for reporting the read lag of the given stream, or {@code null} if
+   * there is no {@link MetricsCollectionService}.
+   */
+  @Nullable
+  private MetricsContext getMetricsContext(StreamConfig streamConfig) {
+    if (metricsCollectionService == null) {
+      return null;
+    }
+    Id.Stream streamId = streamConfig.getStreamId();
+    return metricsCollectionService.getContext(ImmutableMap.of(Constants.Metrics.Tag.NAMESPACE,
+                                                               streamId.getNamespaceId(),
+                                                               Constants.Metrics.Tag.STREAM, streamId.getId()));
+  }
 }
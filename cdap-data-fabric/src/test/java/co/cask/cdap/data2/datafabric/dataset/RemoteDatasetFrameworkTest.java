@@ -17,9 +17,12 @@
 package co.cask.cdap.data2.datafabric.dataset;
 
 import co.cask.cdap.api.dataset.DatasetManagementException;
+import co.cask.cdap.api.dataset.DatasetProperties;
+import co.cask.cdap.api.dataset.DatasetSpecification;
 import co.cask.cdap.api.dataset.module.DatasetDefinitionRegistry;
 import co.cask.cdap.api.dataset.module.DatasetModule;
 import co.cask.cdap.api.metrics.MetricsCollectionService;
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.CConfigurationUtil;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.discovery.EndpointStrategy;
@@ -71,6 +74,7 @@ import co.cask.tephra.TransactionManager;
 import co.cask.tephra.inmemory.InMemoryTxSystemClient;
 import co.cask.tephra.runtime.TransactionInMemoryModule;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
@@ -90,6 +94,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -100,6 +105,8 @@ public class RemoteDatasetFrameworkTest extends AbstractDatasetFrameworkTest {
   private DatasetOpExecutorService opExecutorService;
   private DatasetService service;
   private RemoteDatasetFramework framework;
+  private DiscoveryServiceClient discoveryServiceClient;
+  private AuthenticationContext authenticationContext;
 
   @Before
   public void before() throws Exception {
@@ -141,9 +148,9 @@ public class RemoteDatasetFrameworkTest extends AbstractDatasetFrameworkTest {
     TransactionSystemClientService txSystemClientService = new DelegatingTransactionSystemClientService(txSystemClient);
 
     DiscoveryService discoveryService = injector.getInstance(DiscoveryService.class);
-    DiscoveryServiceClient discoveryServiceClient = injector.getInstance(DiscoveryServiceClient.class);
+    discoveryServiceClient = injector.getInstance(DiscoveryServiceClient.class);
     MetricsCollectionService metricsCollectionService = injector.getInstance(MetricsCollectionService.class);
-    AuthenticationContext authenticationContext = injector.getInstance(AuthenticationContext.class);
+    authenticationContext = injector.getInstance(AuthenticationContext.class);
 
     framework = new RemoteDatasetFramework(cConf, discoveryServiceClient, registryFactory, authenticationContext);
     SystemDatasetInstantiatorFactory datasetInstantiatorFactory =
@@ -229,6 +236,58 @@ public class RemoteDatasetFrameworkTest extends AbstractDatasetFrameworkTest {
     }
   }
 
+  @Test
+  public void testDatasetMetaCache() throws Exception {
+    Id.DatasetModule inMemory = Id.DatasetModule.from(NAMESPACE_ID, "inMemory");
+    Id.DatasetType tableType = Id.DatasetType.from(NAMESPACE_ID, "table");
+    Id.DatasetInstance table1 = Id.DatasetInstance.from(NAMESPACE_ID, "table1");
+    Id.DatasetInstance table2 = Id.DatasetInstance.from(NAMESPACE_ID, "table2");
+
+    // the cache is disabled by default, as in program containers, enable it for a separate client
+    CConfiguration cacheConf = CConfiguration.copy(cConf);
+    cacheConf.setLong(Constants.Dataset.META_CACHE_EXPIRATION_SECS, 3600);
+    RemoteDatasetFramework cachingFramework =
+      new RemoteDatasetFramework(cacheConf, discoveryServiceClient, registryFactory, authenticationContext);
+
+    cachingFramework.addModule(inMemory, new InMemoryTableModule());
+    Assert.assertTrue(cachingFramework.hasType(tableType));
+    cachingFramework.addInstance("table", table1, DatasetProperties.builder().add("key", "v1").build());
+    cachingFramework.addInstance("table", table2, DatasetProperties.EMPTY);
+
+    // instances that do not exist should be omitted
+    Map<String, DatasetSpecification> specs =
+      cachingFramework.getDatasetSpecs(NAMESPACE_ID, ImmutableList.of("table1", "table2", "table3"));
+    Assert.assertEquals(ImmutableSet.of("table1", "table2"), specs.keySet());
+    Assert.assertEquals("v1", specs.get("table1").getProperty("key"));
+    Assert.assertEquals(specs.get("table1"), cachingFramework.getDatasetSpec(table1));
+
+    // updates made through the framework should be visible right away
+    cachingFramework.updateInstance(table1, DatasetProperties.builder().add("key", "v2").build());
+    Assert.assertEquals("v2", cachingFramework.getDatasetSpec(table1).getProperty("key"));
+    Assert.assertEquals("v2", cachingFramework.getDatasetSpecs(NAMESPACE_ID, ImmutableList.of("table1"))
+      .get("table1").getProperty("key"));
+
+    // so should deletes and re-creates
+    cachingFramework.deleteInstance(table2);
+    Assert.assertFalse(cachingFramework.hasInstance(table2));
+    Assert.assertTrue(cachingFramework.getDatasetSpecs(NAMESPACE_ID, ImmutableList.of("table2")).isEmpty());
+    cachingFramework.addInstance("table", table2, DatasetProperties.builder().add("key", "v3").build());
+    Assert.assertEquals("v3", cachingFramework.getDatasetSpec(table2).getProperty("key"));
+
+    // changes made by other clients are not visible from the cache, but existence checks are never cached
+    framework.updateInstance(table1, DatasetProperties.builder().add("key", "v4").build());
+    Assert.assertEquals("v4", framework.getDatasetSpec(table1).getProperty("key"));
+    Assert.assertEquals("v2", cachingFramework.getDatasetSpec(table1).getProperty("key"));
+    framework.deleteInstance(table1);
+    Assert.assertFalse(cachingFramework.hasInstance(table1));
+    Assert.assertNull(cachingFramework.getDatasetSpec(table1));
+
+    // and module changes
+    cachingFramework.deleteAllInstances(NAMESPACE_ID);
+    cachingFramework.deleteModule(inMemory);
+    Assert.assertFalse(cachingFramework.hasType(tableType));
+  }
+
   private void createNamespace (Id.Namespace namespaceId) throws Exception {
     // since the namespace admin here is an in memory one we need to create the location explicitly
     namespacedLocationFactory.get(namespaceId).mkdirs();
@@ -249,6 +249,34 @@ public class DatasetInstanceHandlerTest extends DatasetServiceTestBase {
     }
   }
 
+  @Test
+  public void testGetMultipleInstances() throws Exception {
+    try {
+      deployModule("module1", TestModule1.class);
+      deployModule("module2", TestModule2.class);
+      DatasetProperties props = DatasetProperties.builder().add("prop1", "val1").build();
+      Assert.assertEquals(HttpStatus.SC_OK, createInstance("dataset1", "datasetType2", props).getResponseCode());
+      Assert.assertEquals(HttpStatus.SC_OK, createInstance("dataset2", "datasetType1").getResponseCode());
+
+      // instances that do not exist should be omitted from the response
+      Map<String, DatasetMeta> metas =
+        getInstancesObject(Arrays.asList("dataset1", "dataset2", "nosuch")).getResponseObject();
+      Assert.assertEquals(2, metas.size());
+      Assert.assertEquals(props.getProperties(), metas.get("dataset1").getSpec().getOriginalProperties());
+      Assert.assertEquals("datasetType2", metas.get("dataset1").getType().getName());
+      Assert.assertEquals("datasetType1", metas.get("dataset2").getType().getName());
+      Assert.assertEquals(getInstanceObject("dataset2").getResponseObject().getSpec(),
+                          metas.get("dataset2").getSpec());
+
+      Assert.assertTrue(getInstancesObject(Collections.<String>emptyList()).getResponseObject().isEmpty());
+    } finally {
+      Assert.assertEquals(HttpStatus.SC_OK, deleteInstance("dataset1").getResponseCode());
+      Assert.assertEquals(HttpStatus.SC_OK, deleteInstance("dataset2").getResponseCode());
+      Assert.assertEquals(HttpStatus.SC_OK, deleteModule("module2").getResponseCode());
+      Assert.assertEquals(HttpStatus.SC_OK, deleteModule("module1").getResponseCode());
+    }
+  }
+
   @Test
   public void testCreateDelete() throws Exception {
     try {
@@ -342,6 +370,9 @@ public class DatasetInstanceHandlerTest extends DatasetServiceTestBase {
     HttpResponse response = makeInstancesRequest(nonExistent.getId());
     assertNamespaceNotFound(response, nonExistent);
 
+    response = getInstanceMetas(nonExistent, Collections.singletonList("ds"));
+    assertNamespaceNotFound(response, nonExistent);
+
     // TODO: commented out for now until we add back namespace checks on get dataset CDAP-3901
 //    response = getInstance(datasetInstance);
 //    assertNamespaceNotFound(response, nonExistent);
@@ -433,6 +464,16 @@ public class DatasetInstanceHandlerTest extends DatasetServiceTestBase {
     return ObjectResponse.fromJsonBody(response, DatasetMeta.class);
   }
 
+  private ObjectResponse<Map<String, DatasetMeta>> getInstancesObject(List<String> instanceNames) throws IOException {
+    HttpResponse response = getInstanceMetas(Id.Namespace.DEFAULT, instanceNames);
+    return ObjectResponse.fromJsonBody(response, new TypeToken<Map<String, DatasetMeta>>() { }.getType());
+  }
+
+  private HttpResponse getInstanceMetas(Id.Namespace namespace, List<String> instanceNames) throws IOException {
+    URL url = getUrl(namespace.getId(), "/data/datasetmetas");
+    return HttpRequests.execute(HttpRequest.post(url).withBody(GSON.toJson(instanceNames)).build());
+  }
+
   private ObjectResponse<Map<String, String>> getInstanceProperties(String instanceName) throws IOException {
     HttpRequest request = HttpRequest.get(getUrl("/data/datasets/" + instanceName + "/properties")).build();
     HttpResponse response = HttpRequests.execute(request);
@@ -491,6 +532,12 @@ public class DatasetInstanceHandlerTest extends DatasetServiceTestBase {
       validatePost(getUrl("/data/datasets"), "", 405);
       validateDelete(getUrl("/data/datasets"), 405);
 
+      validatePost(getUrl("/data/datasetmetas"), "", 400);
+      validatePost(getUrl("/data/datasetmetas"), "['nusüch']", 400);
+      validatePost(getUrl("/data/datasetmetas"), "['nusuch'", 400);
+      validatePost(getUrl("inval+d", "/data/datasetmetas"), "['nusuch']", 400);
+      validateGet(getUrl("/data/datasetmetas"), 405);
+
       validateGet(getUrl("/data/datasets/nusuch"), 404);
       validateGet(getUrl("/data/datasets/nusüch"), 400);
       validateGet(getUrl("nosuchnamespace", "/data/datasets/nusuch"), 404);
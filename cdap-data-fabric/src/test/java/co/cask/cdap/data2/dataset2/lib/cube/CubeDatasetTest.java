@@ -38,6 +38,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.junit.Assert;
 import org.junit.ClassRule;
 import org.junit.Test;
 
@@ -132,6 +133,79 @@ public class CubeDatasetTest extends AbstractCubeTest {
     }
   }
 
+  @Test
+  public void testRollupConflictsWithAdd() throws Exception {
+    // A fact after the rollup watermark is only written to the finer resolution, as the rollup materializes it later.
+    // This test ensures that a rollup running concurrently with the add, that doesn't see the uncommitted fact, can't
+    // move the watermark past it: one of the two transactions must fail, or the fact is lost for the rollup.
+    Aggregation agg = new DefaultAggregation(ImmutableList.of("dim1"));
+    DatasetProperties props = DatasetProperties.builder()
+      .addAll(configureProperties(new int[] {1, 60}, ImmutableMap.of("agg", agg)).getProperties())
+      .add(CubeDatasetDefinition.PROPERTY_ROLLUP_RESOLUTIONS, "60")
+      .build();
+    Id.DatasetInstance id = Id.DatasetInstance.from(DatasetFrameworkTestUtil.NAMESPACE_ID, "rollupConflictCube");
+    dsFrameworkUtil.createInstance(Cube.class.getName(), id, props);
+    CubeDataset cube1 = dsFrameworkUtil.getInstance(id);
+    CubeDataset cube2 = dsFrameworkUtil.getInstance(id);
+
+    Configuration txConf = HBaseConfiguration.create();
+    TransactionManager txManager = new TransactionManager(txConf);
+    txManager.startAndWait();
+    try {
+      TransactionSystemClient txClient = new InMemoryTxSystemClient(txManager);
+
+      // the first fact starts the watermark at 0, the first rollup materializes its minute
+      Transaction tx = txClient.startShort();
+      cube1.startTx(tx);
+      writeInc(cube1, "count", 0, 1, "1");
+      Assert.assertTrue(commit(txClient, tx, cube1));
+
+      tx = txClient.startShort();
+      cube2.startTx(tx);
+      cube2.rollup(60);
+      Assert.assertTrue(commit(txClient, tx, cube2));
+
+      // add a fact after the watermark, and roll up past it before the add is committed
+      Transaction addTx = txClient.startShort();
+      cube1.startTx(addTx);
+      writeInc(cube1, "count", 90, 5, "1");
+
+      tx = txClient.startShort();
+      cube2.startTx(tx);
+      cube2.rollup(180);
+      Assert.assertTrue(commit(txClient, tx, cube2));
+
+      Assert.assertFalse(commit(txClient, addTx, cube1));
+
+      // retrying the add writes the fact behind the new watermark
+      tx = txClient.startShort();
+      cube1.startTx(tx);
+      writeInc(cube1, "count", 90, 5, "1");
+      Assert.assertTrue(commit(txClient, tx, cube1));
+
+      tx = txClient.startShort();
+      cube2.startTx(tx);
+      verifyCountQuery(cube2, 0, 179, 60, "count", AggregationFunction.SUM,
+                       ImmutableMap.of("dim1", "1"), ImmutableList.<String>of(),
+                       ImmutableList.of(new TimeSeries("count", ImmutableMap.<String, String>of(),
+                                                       timeValues(0, 1, 60, 5))));
+      Assert.assertTrue(commit(txClient, tx, cube2));
+    } finally {
+      txManager.stopAndWait();
+    }
+  }
+
+  private static boolean commit(TransactionSystemClient txClient, Transaction tx,
+                                TransactionAware txAware) throws Exception {
+    if (txClient.canCommit(tx, txAware.getTxChanges()) && txAware.commitTx() && txClient.commit(tx)) {
+      txAware.postTxCommit();
+      return true;
+    }
+    txAware.rollbackTx();
+    txClient.abort(tx);
+    return false;
+  }
+
   private DatasetProperties configureProperties(int[] resolutions, Map<String, ? extends Aggregation> aggregations) {
     DatasetProperties.Builder builder = DatasetProperties.builder();
 
@@ -16,13 +16,21 @@
 
 package co.cask.cdap.data2.dataset2.lib.cube;
 
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
 import co.cask.cdap.api.dataset.lib.cube.Cube;
+import co.cask.cdap.api.dataset.lib.cube.TimeSeries;
+import co.cask.cdap.api.dataset.lib.cube.TimeValue;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryMetricsTable;
 import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryTableService;
 import co.cask.cdap.data2.dataset2.lib.timeseries.EntityTable;
 import co.cask.cdap.data2.dataset2.lib.timeseries.FactTable;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -31,7 +39,12 @@ import java.util.Map;
 public class DefaultCubeTest extends AbstractCubeTest {
 
   @Override
-  protected Cube getCube(final String name, int[] resolutions, Map<String, ? extends Aggregation> aggregations) {
+  protected Cube getCube(String name, int[] resolutions, Map<String, ? extends Aggregation> aggregations) {
+    return getCube(name, resolutions, aggregations, new int[0]);
+  }
+
+  protected DefaultCube getCube(final String name, int[] resolutions, Map<String, ? extends Aggregation> aggregations,
+                                int[] rollupResolutions) {
     FactTableSupplier supplier = new FactTableSupplier() {
       @Override
       public FactTable get(int resolution, int rollTime) {
@@ -46,6 +59,108 @@ public class DefaultCubeTest extends AbstractCubeTest {
       }
     };
 
-    return new DefaultCube(resolutions, supplier, aggregations, ImmutableMap.<String, AggregationAlias>of());
+    return new DefaultCube(resolutions, supplier, aggregations, ImmutableMap.<String, AggregationAlias>of(),
+                           getQueryParallelism(), rollupResolutions);
+  }
+
+  protected int getQueryParallelism() {
+    return 1;
+  }
+
+  @Test
+  public void testRollup() throws Exception {
+    Aggregation agg = new DefaultAggregation(ImmutableList.of("dim1", "dim2"));
+    // 60 seconds resolution is rolled up from 1 second resolution, 1 hour resolution from 60 seconds resolution
+    DefaultCube cube = getCube("rollupCube", new int[] {1, 60, 3600}, ImmutableMap.of("agg", agg),
+                               new int[] {60, 3600});
+
+    // two facts per minute for two and a half hours
+    long endTs = 9000;
+    for (long ts = 0; ts < endTs; ts += 30) {
+      writeInc(cube, "count", ts, 1, "1", "a");
+      writeGauge(cube, "gauge", ts, ts, "1", "a");
+    }
+
+    // nothing is materialized yet, the data is computed from 1 second resolution
+    verifyRollupQueries(cube, endTs, 0);
+
+    // the first rollups are limited in the number of buckets they materialize
+    Map<Integer, Long> lags = cube.rollup(endTs);
+    Assert.assertTrue(lags.get(60) > 0);
+    verifyRollupQueries(cube, endTs, 0);
+    while (lags.get(60) > 0) {
+      lags = cube.rollup(endTs);
+    }
+    Assert.assertEquals(ImmutableMap.of(60, 0L, 3600, 1800L), lags);
+    verifyRollupQueries(cube, endTs, 0);
+
+    // the data after the watermark is merged with the materialized data
+    for (long ts = endTs; ts < endTs + 600; ts += 30) {
+      writeInc(cube, "count", ts, 1, "1", "a");
+      writeGauge(cube, "gauge", ts, ts, "1", "a");
+    }
+    verifyRollupQueries(cube, endTs + 600, 0);
+    verifyRollupQueries(cube, endTs + 600, 3000);
+
+    // rolling up again doesn't change the results
+    cube.rollup(endTs + 3600);
+    verifyRollupQueries(cube, endTs + 600, 0);
+  }
+
+  @Test
+  public void testRollupLateFacts() throws Exception {
+    Aggregation agg = new DefaultAggregation(ImmutableList.of("dim1", "dim2"));
+    DefaultCube cube = getCube("lateRollupCube", new int[] {1, 60, 3600}, ImmutableMap.of("agg", agg),
+                               new int[] {60, 3600});
+
+    // the first facts start the watermarks at 3600
+    for (long ts = 3600; ts < 7200; ts += 30) {
+      writeInc(cube, "count", ts, 1, "1", "a");
+    }
+    Map<Integer, Long> lags = cube.rollup(7200);
+    while (lags.get(60) > 0) {
+      lags = cube.rollup(7200);
+    }
+    Assert.assertEquals(ImmutableMap.of(60, 0L, 3600, 0L), lags);
+
+    // facts behind the watermarks, both in a materialized bucket and before the first fact
+    writeInc(cube, "count", 3630, 5, "1", "a");
+    writeInc(cube, "count", 100, 2, "1", "a");
+
+    for (int i = 0; i < 2; i++) {
+      List<TimeValue> minutes = Lists.newArrayList(new TimeValue(60, 2));
+      for (long bucket = 3600; bucket < 7200; bucket += 60) {
+        minutes.add(new TimeValue(bucket, bucket == 3600 ? 7 : 2));
+      }
+      verifyCountQuery(cube, 0, 7200, 60, "count", AggregationFunction.SUM,
+                       ImmutableMap.of("dim1", "1"), ImmutableList.<String>of(),
+                       ImmutableList.of(new TimeSeries("count", ImmutableMap.<String, String>of(), minutes)));
+      verifyCountQuery(cube, 0, 7200, 3600, "count", AggregationFunction.SUM,
+                       ImmutableMap.of("dim1", "1"), ImmutableList.<String>of(),
+                       ImmutableList.of(new TimeSeries("count", ImmutableMap.<String, String>of(),
+                                                       ImmutableList.of(new TimeValue(0, 2),
+                                                                        new TimeValue(3600, 125)))));
+      // rolling up later buckets doesn't count the late facts again
+      cube.rollup(14400);
+    }
+  }
+
+  private void verifyRollupQueries(Cube cube, long endTs, long queryStartTs) throws Exception {
+    for (int resolution : new int[] {60, 3600}) {
+      List<TimeValue> counts = Lists.newArrayList();
+      List<TimeValue> gauges = Lists.newArrayList();
+      long firstBucket = (queryStartTs + resolution - 1) / resolution * resolution;
+      for (long bucket = firstBucket; bucket < endTs; bucket += resolution) {
+        long bucketEnd = Math.min(bucket + resolution, endTs);
+        counts.add(new TimeValue(bucket, (bucketEnd - bucket) / 30));
+        gauges.add(new TimeValue(bucket, bucketEnd - 30));
+      }
+      verifyCountQuery(cube, queryStartTs, endTs, resolution, "count", AggregationFunction.SUM,
+                       ImmutableMap.of("dim1", "1"), ImmutableList.<String>of(),
+                       ImmutableList.of(new TimeSeries("count", ImmutableMap.<String, String>of(), counts)));
+      verifyCountQuery(cube, queryStartTs, endTs, resolution, "gauge", AggregationFunction.LATEST,
+                       ImmutableMap.of("dim1", "1"), ImmutableList.<String>of(),
+                       ImmutableList.of(new TimeSeries("gauge", ImmutableMap.<String, String>of(), gauges)));
+    }
   }
 }
@@ -143,6 +143,17 @@ public class MetricsTableOnTableTest extends MetricsTableTest {
       });
     }
 
+    @Override
+    public int deleteRange(@Nullable final byte[] start, @Nullable final byte[] stop,
+                           @Nullable final byte[][] columns, @Nullable final FuzzyRowFilter filter) {
+      return txnl.executeUnchecked(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          return delegate.deleteRange(start, stop, columns, filter);
+        }
+      });
+    }
+
     @Override
     public Scanner scan(@Nullable final byte[] start, @Nullable final byte[] stop,
                         @Nullable final FuzzyRowFilter filter) {
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.cube;
+
+import co.cask.cdap.api.dataset.lib.cube.AggregationFunction;
+import co.cask.cdap.api.dataset.lib.cube.Cube;
+import co.cask.cdap.api.dataset.lib.cube.TimeSeries;
+import co.cask.cdap.api.dataset.lib.cube.TimeValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the {@link DefaultCube} tests with queries split into shards that are scanned in parallel.
+ */
+public class ParallelDefaultCubeTest extends DefaultCubeTest {
+
+  @Override
+  protected DefaultCube getCube(String name, int[] resolutions, Map<String, ? extends Aggregation> aggregations,
+                                int[] rollupResolutions) {
+    // in-memory tables are shared within the JVM, so don't reuse the tables of DefaultCubeTest
+    return super.getCube("parallel-" + name, resolutions, aggregations, rollupResolutions);
+  }
+
+  @Override
+  protected int getQueryParallelism() {
+    return 4;
+  }
+
+  @Test
+  public void testQueryAcrossTimeBases() throws Exception {
+    Aggregation agg = new DefaultAggregation(ImmutableList.of("dim1", "dim2"));
+    int resolution = 1;
+    Cube cube = getCube("multiTimeBaseCube", new int[] {resolution}, ImmutableMap.of("agg", agg));
+
+    // DefaultCube rolls rows every hour, so write data that spans ten row time bases
+    int hours = 10;
+    List<TimeValue> expectedSum = Lists.newArrayList();
+    List<TimeValue> expectedMax = Lists.newArrayList();
+    List<TimeValue> expectedLatest = Lists.newArrayList();
+    for (int hour = 0; hour < hours; hour++) {
+      long ts = hour * 3600L + 5;
+      writeInc(cube, "count", ts, hour, "1", "a");
+      writeInc(cube, "count", ts, 2 * hour, "1", "b");
+      writeGauge(cube, "gauge", ts, hour, "1", "a");
+      writeGauge(cube, "gauge", ts, 2 * hour, "1", "b");
+      expectedSum.add(new TimeValue(ts, 3 * hour));
+      expectedMax.add(new TimeValue(ts, 2 * hour));
+      // the latest value of a time bucket comes from the last row scanned, i.e. "b"
+      expectedLatest.add(new TimeValue(ts, 2 * hour));
+    }
+
+    long endTs = hours * 3600L;
+    verifyCountQuery(cube, 0, endTs, resolution, "count", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), ImmutableList.<String>of(),
+                     ImmutableList.of(new TimeSeries("count", ImmutableMap.<String, String>of(), expectedSum)));
+    verifyCountQuery(cube, 0, endTs, resolution, "gauge", AggregationFunction.MAX,
+                     ImmutableMap.of("dim1", "1"), ImmutableList.<String>of(),
+                     ImmutableList.of(new TimeSeries("gauge", ImmutableMap.<String, String>of(), expectedMax)));
+    verifyCountQuery(cube, 0, endTs, resolution, "gauge", AggregationFunction.LATEST,
+                     ImmutableMap.of("dim1", "1"), ImmutableList.<String>of(),
+                     ImmutableList.of(new TimeSeries("gauge", ImmutableMap.<String, String>of(), expectedLatest)));
+
+    // query a range that starts and ends in the middle of time bases
+    verifyCountQuery(cube, 3600, 5 * 3600 + 5, resolution, "count", AggregationFunction.SUM,
+                     ImmutableMap.of("dim1", "1"), ImmutableList.<String>of(),
+                     ImmutableList.of(new TimeSeries("count", ImmutableMap.<String, String>of(),
+                                                     expectedSum.subList(1, 6))));
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+
+/**
+ * Tests for {@link ArenaTableWriteBuffer}. It verifies the buffer behaves the same as the
+ * {@link ConcurrentTableWriteBuffer}.
+ */
+public class ArenaTableWriteBufferTest {
+
+  @Test
+  public void testPutIncrement() {
+    TableWriteBuffer buffer = new ArenaTableWriteBuffer();
+    Assert.assertTrue(buffer.isEmpty());
+    Assert.assertNull(buffer.getRow(Bytes.toBytes("r1")));
+
+    byte[] row = Bytes.toBytes("r1");
+    byte[] column = Bytes.toBytes("c1");
+    buffer.put(row, new byte[][] { column }, new byte[][] { Bytes.toBytes("v1") });
+    // Changing the arrays passed in shouldn't affect the buffer
+    row[0] = 'x';
+    column[0] = 'x';
+    Assert.assertNull(buffer.getRow(row));
+    Assert.assertArrayEquals(Bytes.toBytes("v1"),
+                             ((PutValue) buffer.getRow(Bytes.toBytes("r1")).get(Bytes.toBytes("c1"))).getValue());
+
+    // Increment on new column gives an increment, increment on put gives a put
+    buffer.put(Bytes.toBytes("r2"), new byte[][] { Bytes.toBytes("c1") }, new byte[][] { Bytes.toBytes(10L) });
+    buffer.increment(Bytes.toBytes("r2"), new byte[][] { Bytes.toBytes("c1"), Bytes.toBytes("c2") },
+                     new long[] { 5L, 3L });
+    buffer.increment(Bytes.toBytes("r2"), new byte[][] { Bytes.toBytes("c2") }, new long[] { 4L });
+
+    NavigableMap<byte[], Update> columns = buffer.getRow(Bytes.toBytes("r2"));
+    Assert.assertEquals(2, columns.size());
+    Assert.assertArrayEquals(Bytes.toBytes(15L), ((PutValue) columns.get(Bytes.toBytes("c1"))).getValue());
+    Assert.assertEquals(7L, ((IncrementValue) columns.get(Bytes.toBytes("c2"))).getValue().longValue());
+
+    // Delete followed by increment is a put
+    buffer.put(Bytes.toBytes("r2"), new byte[][] { Bytes.toBytes("c2") }, new byte[1][]);
+    Assert.assertNull(((PutValue) buffer.getRow(Bytes.toBytes("r2")).get(Bytes.toBytes("c2"))).getValue());
+    buffer.increment(Bytes.toBytes("r2"), new byte[][] { Bytes.toBytes("c2") }, new long[] { 2L });
+    Assert.assertArrayEquals(Bytes.toBytes(2L),
+                             ((PutValue) buffer.getRow(Bytes.toBytes("r2")).get(Bytes.toBytes("c2"))).getValue());
+
+    // Increment on non-long value should fail
+    try {
+      buffer.increment(Bytes.toBytes("r1"), new byte[][] { Bytes.toBytes("c1") }, new long[] { 1L });
+      Assert.fail("Expected NumberFormatException");
+    } catch (NumberFormatException e) {
+      // expected
+    }
+
+    NavigableMap<byte[], NavigableMap<byte[], Update>> drained = buffer.drain().iterator().next();
+    Assert.assertEquals(2, drained.size());
+    Assert.assertTrue(buffer.isEmpty());
+
+    // The buffer is reusable after drained
+    buffer.put(Bytes.toBytes("r3"), new byte[][] { Bytes.toBytes("c3") }, new byte[][] { Bytes.toBytes("v3") });
+    Assert.assertEquals(1, buffer.getAll().iterator().next().size());
+    Assert.assertEquals(2, drained.size());
+  }
+
+  @Test
+  public void testCompareWithDefault() {
+    TableWriteBuffer expected = new ConcurrentTableWriteBuffer();
+    TableWriteBuffer actual = new ArenaTableWriteBuffer();
+    Random random = new Random();
+
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 20000; i++) {
+        byte[] row = Bytes.toBytes("row" + random.nextInt(500));
+        byte[][] columns = { Bytes.toBytes("col" + random.nextInt(20)) };
+        switch (random.nextInt(3)) {
+          case 0:
+            byte[][] values = { Bytes.toBytes(random.nextLong()) };
+            expected.put(row, columns, values);
+            actual.put(row, columns, values);
+            break;
+          case 1:
+            byte[][] deletes = new byte[1][];
+            expected.put(row, columns, deletes);
+            actual.put(row, columns, deletes);
+            break;
+          default:
+            long[] amounts = { random.nextInt(100) };
+            expected.increment(row, columns, amounts);
+            actual.increment(row, columns, amounts);
+        }
+      }
+
+      assertEquals(expected.getAll().iterator().next(), actual.getAll().iterator().next());
+      assertEquals(expected.getRows(Bytes.toBytes("row1"), Bytes.toBytes("row3")),
+                   actual.getRows(Bytes.toBytes("row1"), Bytes.toBytes("row3")));
+      assertEquals(expected.getRows(null, Bytes.toBytes("row2")), actual.getRows(null, Bytes.toBytes("row2")));
+      assertEquals(expected.getRows(Bytes.toBytes("row4"), null), actual.getRows(Bytes.toBytes("row4"), null));
+      assertEquals(expected.drain().iterator().next(), actual.drain().iterator().next());
+      Assert.assertTrue(actual.isEmpty());
+    }
+  }
+
+  private void assertEquals(NavigableMap<byte[], NavigableMap<byte[], Update>> expected,
+                            NavigableMap<byte[], NavigableMap<byte[], Update>> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator = actual.entrySet().iterator();
+    for (Map.Entry<byte[], NavigableMap<byte[], Update>> expectedRow : expected.entrySet()) {
+      Map.Entry<byte[], NavigableMap<byte[], Update>> actualRow = iterator.next();
+      Assert.assertArrayEquals(expectedRow.getKey(), actualRow.getKey());
+      Assert.assertEquals(expectedRow.getValue().size(), actualRow.getValue().size());
+
+      Iterator<Map.Entry<byte[], Update>> columnIterator = actualRow.getValue().entrySet().iterator();
+      for (Map.Entry<byte[], Update> expectedColumn : expectedRow.getValue().entrySet()) {
+        Map.Entry<byte[], Update> actualColumn = columnIterator.next();
+        Assert.assertArrayEquals(expectedColumn.getKey(), actualColumn.getKey());
+        Assert.assertEquals(expectedColumn.getValue().getClass(), actualColumn.getValue().getClass());
+        Assert.assertArrayEquals(expectedColumn.getValue().getBytes(), actualColumn.getValue().getBytes());
+      }
+    }
+  }
+}
@@ -275,6 +275,40 @@ public abstract class MetricsTableTest {
     Assert.assertEquals(3L, Bytes.toLong(table.get(A, B)));
   }
 
+  @Test
+  public void testDeleteRange() throws Exception {
+    MetricsTable table = getTable("testDeleteRange");
+    NavigableMap<byte[], SortedMap<byte[], Long>> writes = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+    byte[] abc = { 'a', 'b', 'c' };
+    for (byte b1 : abc) {
+      for (byte b2 : abc) {
+        writes.put(new byte[] { b1, b2 }, mapOf(A, Bytes.toLong(X), B, Bytes.toLong(Y)));
+      }
+    }
+    table.put(writes);
+
+    // delete column A of the rows in [b, c) that end with 'a'
+    FuzzyRowFilter filter = new FuzzyRowFilter(
+      ImmutableList.of(ImmutablePair.of(new byte[] { '*', 'a' }, new byte[] { 0x01, 0x00 })));
+    Assert.assertEquals(1, table.deleteRange(new byte[] { 'b' }, new byte[] { 'c' }, new byte[][] { A }, filter));
+    Assert.assertNull(table.get(new byte[] { 'b', 'a' }, A));
+    Assert.assertArrayEquals(Y, table.get(new byte[] { 'b', 'a' }, B));
+    Assert.assertArrayEquals(X, table.get(new byte[] { 'a', 'a' }, A));
+    Assert.assertArrayEquals(X, table.get(new byte[] { 'c', 'a' }, A));
+    Assert.assertArrayEquals(X, table.get(new byte[] { 'b', 'b' }, A));
+
+    // delete the entire rows in [b, c)
+    Assert.assertEquals(3, table.deleteRange(new byte[] { 'b' }, new byte[] { 'c' }, null, null));
+    for (byte b2 : abc) {
+      Assert.assertNull(table.get(new byte[] { 'b', b2 }, A));
+      Assert.assertNull(table.get(new byte[] { 'b', b2 }, B));
+    }
+    Assert.assertEquals(6, countRange(table, null, null));
+
+    // nothing is left to delete in [b, c)
+    Assert.assertEquals(0, table.deleteRange(new byte[] { 'b' }, new byte[] { 'c' }, new byte[][] { A }, null));
+  }
+
   private static int countRange(MetricsTable table, Integer start, Integer stop) throws Exception {
     Scanner scanner = table.scan(start == null ? null : Bytes.toBytes(start),
                                  stop == null ? null : Bytes.toBytes(stop), null);
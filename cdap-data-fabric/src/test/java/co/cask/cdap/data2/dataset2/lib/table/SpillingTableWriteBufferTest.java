@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table;
+
+import co.cask.cdap.api.common.Bytes;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Tests for {@link SpillingTableWriteBuffer}. It verifies the buffer behaves the same as an in-memory buffer.
+ */
+public class SpillingTableWriteBufferTest {
+
+  @ClassRule
+  public static final TemporaryFolder TMP_FOLDER = new TemporaryFolder();
+
+  @Test
+  public void testSpillDefault() throws Exception {
+    testSpill(new ConcurrentTableWriteBuffer());
+  }
+
+  @Test
+  public void testSpillArena() throws Exception {
+    testSpill(new ArenaTableWriteBuffer());
+  }
+
+  private void testSpill(TableWriteBuffer memoryBuffer) throws Exception {
+    File spillDir = TMP_FOLDER.newFolder();
+    TableWriteBuffer expected = new ConcurrentTableWriteBuffer();
+    TableWriteBuffer actual = new SpillingTableWriteBuffer(memoryBuffer, 100000, spillDir);
+    Random random = new Random();
+
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < 50000; i++) {
+        byte[] row = Bytes.toBytes("row" + random.nextInt(2000));
+        byte[][] columns = { Bytes.toBytes("col" + random.nextInt(20)) };
+        switch (random.nextInt(3)) {
+          case 0:
+            byte[][] values = { Bytes.toBytes(random.nextLong()) };
+            expected.put(row, columns, values);
+            actual.put(row, columns, values);
+            break;
+          case 1:
+            byte[][] deletes = new byte[1][];
+            expected.put(row, columns, deletes);
+            actual.put(row, columns, deletes);
+            break;
+          default:
+            long[] amounts = { random.nextInt(100) };
+            expected.increment(row, columns, amounts);
+            actual.increment(row, columns, amounts);
+        }
+
+        // Verify reading a single row, which may be merged from spilled files
+        if (i % 1000 == 0) {
+          assertEquals(singleRow(row, expected.getRow(row)), singleRow(row, actual.getRow(row)));
+        }
+      }
+
+      // Changes must have been spilled
+      Assert.assertTrue(spillDir.list().length > 0);
+
+      assertEquals(expected.getRows(Bytes.toBytes("row1"), Bytes.toBytes("row3")),
+                   actual.getRows(Bytes.toBytes("row1"), Bytes.toBytes("row3")));
+      assertEquals(merge(expected.getAll()), merge(actual.getAll()));
+
+      NavigableMap<byte[], NavigableMap<byte[], Update>> expectedChanges = merge(expected.drain());
+      Assert.assertFalse(actual.isEmpty());
+      try (TableWriteBuffer.DrainedChanges changes = actual.drain()) {
+        Assert.assertTrue(actual.isEmpty());
+        // Drained changes can be iterated multiple times
+        assertEquals(expectedChanges, merge(changes));
+        assertEquals(expectedChanges, merge(changes));
+      }
+      // Spilled files are removed after drained changes are closed
+      Assert.assertEquals(0, spillDir.list().length);
+    }
+  }
+
+  private NavigableMap<byte[], NavigableMap<byte[], Update>> singleRow(byte[] row,
+                                                                       NavigableMap<byte[], Update> columns) {
+    NavigableMap<byte[], NavigableMap<byte[], Update>> result = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    if (columns != null) {
+      result.put(row, columns);
+    }
+    return result;
+  }
+
+  private NavigableMap<byte[], NavigableMap<byte[], Update>> merge(
+    Iterable<NavigableMap<byte[], NavigableMap<byte[], Update>>> batches) {
+    NavigableMap<byte[], NavigableMap<byte[], Update>> result = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+    for (NavigableMap<byte[], NavigableMap<byte[], Update>> batch : batches) {
+      // Batches must be non-overlapping and in order
+      Assert.assertTrue(result.isEmpty() || Bytes.compareTo(result.lastKey(), batch.firstKey()) < 0);
+      result.putAll(batch);
+    }
+    return result;
+  }
+
+  private void assertEquals(NavigableMap<byte[], NavigableMap<byte[], Update>> expected,
+                            NavigableMap<byte[], NavigableMap<byte[], Update>> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    Iterator<Map.Entry<byte[], NavigableMap<byte[], Update>>> iterator = actual.entrySet().iterator();
+    for (Map.Entry<byte[], NavigableMap<byte[], Update>> expectedRow : expected.entrySet()) {
+      Map.Entry<byte[], NavigableMap<byte[], Update>> actualRow = iterator.next();
+      Assert.assertArrayEquals(expectedRow.getKey(), actualRow.getKey());
+      Assert.assertEquals(expectedRow.getValue().size(), actualRow.getValue().size());
+
+      Iterator<Map.Entry<byte[], Update>> columnIterator = actualRow.getValue().entrySet().iterator();
+      for (Map.Entry<byte[], Update> expectedColumn : expectedRow.getValue().entrySet()) {
+        Map.Entry<byte[], Update> actualColumn = columnIterator.next();
+        Assert.assertArrayEquals(expectedColumn.getKey(), actualColumn.getKey());
+        Assert.assertEquals(expectedColumn.getValue().getClass(), actualColumn.getValue().getClass());
+        Assert.assertArrayEquals(expectedColumn.getValue().getBytes(), actualColumn.getValue().getBytes());
+      }
+    }
+  }
+}
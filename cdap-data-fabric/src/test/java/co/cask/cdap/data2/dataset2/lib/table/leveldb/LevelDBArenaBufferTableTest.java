@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.data2.dataset2.lib.table.leveldb;
+
+import co.cask.cdap.api.dataset.DatasetContext;
+import co.cask.cdap.api.dataset.DatasetSpecification;
+import co.cask.cdap.api.dataset.table.ConflictDetection;
+import co.cask.cdap.api.dataset.table.Table;
+import co.cask.cdap.common.conf.Constants;
+
+import java.io.IOException;
+
+/**
+ * Runs the LevelDB table tests with the arena-allocated write buffer.
+ */
+public class LevelDBArenaBufferTableTest extends LevelDBTableTest {
+
+  @Override
+  protected LevelDBTable getTable(DatasetContext datasetContext, String name,
+                                  ConflictDetection level) throws IOException {
+    DatasetSpecification spec = DatasetSpecification
+      .builder(name, "table")
+      .property(Table.PROPERTY_CONFLICT_LEVEL, level.name())
+      .property(Constants.Dataset.TABLE_WRITE_BUFFER, "arena")
+      .build();
+    return new LevelDBTable(datasetContext, name, service, cConf, spec);
+  }
+}
@@ -16,10 +16,12 @@
 
 package co.cask.cdap.data2.dataset2.lib.table.leveldb;
 
+import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.api.dataset.DatasetContext;
 import co.cask.cdap.api.dataset.DatasetProperties;
 import co.cask.cdap.api.dataset.DatasetSpecification;
 import co.cask.cdap.api.dataset.table.ConflictDetection;
+import co.cask.cdap.api.dataset.table.Get;
 import co.cask.cdap.api.dataset.table.Table;
 import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
@@ -31,6 +33,9 @@ import co.cask.cdap.data.runtime.DataSetsModules;
 import co.cask.cdap.data.runtime.TransactionMetricsModule;
 import co.cask.cdap.data2.dataset2.lib.table.BufferingTableTest;
 import co.cask.cdap.security.auth.context.AuthenticationContextModules;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.junit.Assert;
@@ -40,6 +45,15 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * test for LevelDB tables.
@@ -52,7 +66,7 @@ public class LevelDBTableTest extends BufferingTableTest<LevelDBTable> {
   static LevelDBTableService service;
   static Injector injector = null;
 
-  private static CConfiguration cConf;
+  static CConfiguration cConf;
 
   @BeforeClass
   public static void init() throws Exception {
@@ -110,4 +124,81 @@ public class LevelDBTableTest extends BufferingTableTest<LevelDBTable> {
       service.list().contains(tableName);
     }
   }
+
+  @Test
+  public void testConcurrentIncrementsAcrossClients() throws Exception {
+    final String tableName = "concurrentIncrements";
+    service.ensureTableExists(tableName);
+
+    // two clients of the same table, as used by two dataset instances in different threads
+    final LevelDBTableCore[] cores = {
+      new LevelDBTableCore(tableName, service), new LevelDBTableCore(tableName, service)
+    };
+    final byte[][] rows = { Bytes.toBytes("r1"), Bytes.toBytes("r2"), Bytes.toBytes("r3") };
+    final byte[] column = Bytes.toBytes("c");
+    final int threadCount = 8;
+    final int iterations = 200;
+
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      final CyclicBarrier barrier = new CyclicBarrier(threadCount);
+      List<Future<?>> futures = Lists.newArrayList();
+      for (int t = 0; t < threadCount; t++) {
+        final int threadId = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            LevelDBTableCore core = cores[threadId % cores.length];
+            barrier.await();
+            for (int i = 0; i < iterations; i++) {
+              // alternate between single-row and multi-row increments, which lock stripes in different ways
+              if (i % 2 == 0) {
+                core.increment(rows[i % rows.length], ImmutableMap.of(column, 1L));
+              } else {
+                NavigableMap<byte[], NavigableMap<byte[], Long>> updates = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+                for (byte[] row : rows) {
+                  NavigableMap<byte[], Long> increments = Maps.newTreeMap(Bytes.BYTES_COMPARATOR);
+                  increments.put(column, 1L);
+                  updates.put(row, increments);
+                }
+                core.increment(updates);
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // every row gets one increment per multi-row iteration, and a share of the single-row iterations
+    long[] expected = new long[rows.length];
+    for (int i = 0; i < iterations; i++) {
+      if (i % 2 == 0) {
+        expected[i % rows.length] += threadCount;
+      } else {
+        for (int r = 0; r < rows.length; r++) {
+          expected[r] += threadCount;
+        }
+      }
+    }
+
+    // read all rows with one multi-get and verify they agree with single-row reads
+    List<Get> gets = Lists.newArrayList();
+    for (byte[] row : rows) {
+      gets.add(new Get(row, column));
+    }
+    gets.add(new Get(Bytes.toBytes("nonExisting")));
+    List<Map<byte[], byte[]>> results = cores[0].getRows(gets, null);
+    Assert.assertEquals(gets.size(), results.size());
+    for (int r = 0; r < rows.length; r++) {
+      Assert.assertEquals(expected[r], Bytes.toLong(results.get(r).get(column)));
+      Assert.assertEquals(expected[r], Bytes.toLong(cores[1].getRow(rows[r], null, null, null, -1, null).get(column)));
+    }
+    Assert.assertTrue(results.get(rows.length).isEmpty());
+  }
 }
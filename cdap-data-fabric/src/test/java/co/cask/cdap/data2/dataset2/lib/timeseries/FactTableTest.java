@@ -474,6 +474,41 @@ public class FactTableTest {
     assertScan(table, expected, scan);
   }
 
+  @Test
+  public void testDeleteAcrossDimensionValues() throws Exception {
+    InMemoryTableService.create("DeleteEntityTable");
+    InMemoryTableService.create("DeleteDataTable");
+    int resolution = 10;
+    int rollTimebaseInterval = 100;
+
+    FactTable table = new FactTable(new InMemoryMetricsTable("DeleteDataTable"),
+                                    new EntityTable(new InMemoryMetricsTable("DeleteEntityTable")),
+                                    resolution, rollTimebaseInterval);
+
+    // three rows for each of the dimension values
+    long ts = 1000;
+    int dimValuesCount = 500;
+    List<Fact> facts = Lists.newArrayList();
+    for (int k = 0; k < dimValuesCount; k++) {
+      for (int i = 0; i < 30; i++) {
+        facts.add(new Fact(ts + i * resolution, dimValues("dim1", "value" + k),
+                           new Measurement("metric", MeasureType.COUNTER, i + 1)));
+      }
+    }
+    table.add(facts);
+
+    // deletes the end of the first row, the second row and the beginning of the third row of every dimension value
+    table.delete(new FactScan(ts + 5 * resolution, ts + 25 * resolution - 1, dimValues("dim1", null)));
+
+    Table<String, List<DimensionValue>, List<TimeValue>> expected = HashBasedTable.create();
+    for (int k = 0; k < dimValuesCount; k++) {
+      List<TimeValue> timeValues = timeValues(ts, resolution, 1, 2, 3, 4, 5);
+      timeValues.addAll(timeValues(ts + 25 * resolution, resolution, 26, 27, 28, 29, 30));
+      expected.put("metric", dimValues("dim1", "value" + k), timeValues);
+    }
+    assertScan(table, expected, new FactScan(0, ts + 100 * resolution, dimValues("dim1", null)));
+  }
+
   @Test
   public void testMaxResolution() throws Exception {
     // we use Integer.MAX_VALUE as resolution to compute all-time total values
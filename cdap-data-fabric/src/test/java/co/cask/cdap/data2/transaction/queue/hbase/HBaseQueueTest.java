@@ -39,6 +39,7 @@ import co.cask.cdap.data2.queue.DequeueStrategy;
 import co.cask.cdap.data2.queue.QueueClientFactory;
 import co.cask.cdap.data2.queue.QueueConsumer;
 import co.cask.cdap.data2.queue.QueueEntry;
+import co.cask.cdap.data2.queue.QueueProducer;
 import co.cask.cdap.data2.transaction.Transactions;
 import co.cask.cdap.data2.transaction.queue.QueueAdmin;
 import co.cask.cdap.data2.transaction.queue.QueueConfigurer;
@@ -58,6 +59,7 @@ import co.cask.cdap.notifications.feeds.service.NoOpNotificationFeedManager;
 import co.cask.cdap.proto.Id;
 import co.cask.cdap.proto.id.NamespaceId;
 import co.cask.tephra.TransactionAware;
+import co.cask.tephra.TransactionContext;
 import co.cask.tephra.TransactionExecutor;
 import co.cask.tephra.TransactionExecutorFactory;
 import co.cask.tephra.TransactionManager;
@@ -407,6 +409,80 @@ public abstract class HBaseQueueTest extends QueueTest {
     }
   }
 
+  @Test (timeout = 60000L)
+  public void testEvictionBeforeStartRows() throws Exception {
+    final QueueName queueName = QueueName.fromFlowlet(Id.Namespace.DEFAULT.getId(),
+                                                      "evictapp", "flow", "flowlet", "evictstartrows");
+    configureGroups(queueName, ImmutableList.of(new ConsumerGroupConfig(0L, 1, DequeueStrategy.FIFO, null),
+                                                new ConsumerGroupConfig(1L, 1, DequeueStrategy.FIFO, null)));
+    final List<ConsumerConfig> consumerConfigs = ImmutableList.of(
+      new ConsumerConfig(0L, 0, 1, DequeueStrategy.FIFO, null),
+      new ConsumerConfig(1L, 0, 1, DequeueStrategy.FIFO, null)
+    );
+
+    // Enqueue two batches of 5 entries, in two transactions
+    final List<Long> writePointers = Lists.newArrayList();
+    try (final QueueProducer producer = queueClientFactory.createProducer(queueName)) {
+      for (int batch = 0; batch < 2; batch++) {
+        final int start = batch * 5;
+        TransactionContext txContext = new TransactionContext(txSystemClient, (TransactionAware) producer);
+        txContext.start();
+        writePointers.add(txContext.getCurrentTransaction().getWritePointer());
+        for (int i = start; i < start + 5; i++) {
+          producer.enqueue(new QueueEntry(Bytes.toBytes(i)));
+        }
+        txContext.finish();
+      }
+    }
+
+    // Group 0 processes all the entries
+    Assert.assertEquals(ImmutableList.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), dequeueAll(queueName, consumerConfigs.get(0)));
+
+    // Move the start rows of both groups to the beginning of the second batch. Group 1 never processed the first
+    // batch, hence those rows don't have all the state columns. They can only be evicted because they are before the
+    // smallest start row.
+    final byte[] startRow = QueueEntryRow.getQueueEntryRowKey(queueName, writePointers.get(1), 0);
+    try (HBaseConsumerStateStore stateStore = ((HBaseQueueAdmin) queueAdmin).getConsumerStateStore(queueName)) {
+      Transactions.createTransactionExecutor(executorFactory, stateStore).execute(new TransactionExecutor.Subroutine() {
+        @Override
+        public void apply() throws Exception {
+          for (ConsumerConfig consumerConfig : consumerConfigs) {
+            stateStore.updateState(consumerConfig.getGroupId(), consumerConfig.getInstanceId(), startRow);
+          }
+        }
+      });
+    }
+
+    forceEviction(queueName, 2);
+
+    // Rows of the first batch are evicted, while rows of the second batch are kept since group 1 hasn't processed them
+    Assert.assertEquals(5, countRows(((HBaseQueueAdmin) queueAdmin).getDataTableId(queueName)));
+    Assert.assertEquals(ImmutableList.of(5, 6, 7, 8, 9), dequeueAll(queueName, consumerConfigs.get(1)));
+
+    verifyQueueIsEmpty(queueName, consumerConfigs);
+  }
+
+  /**
+   * Dequeues and processes all entries that are available to the given consumer.
+   */
+  private List<Integer> dequeueAll(QueueName queueName, ConsumerConfig consumerConfig) throws Exception {
+    List<Integer> values = Lists.newArrayList();
+    try (QueueConsumer consumer = queueClientFactory.createConsumer(queueName, consumerConfig, 2)) {
+      while (true) {
+        TransactionContext txContext = new TransactionContext(txSystemClient, (TransactionAware) consumer);
+        txContext.start();
+        DequeueResult<byte[]> result = consumer.dequeue(10);
+        for (byte[] data : result) {
+          values.add(Bytes.toInt(data));
+        }
+        txContext.finish();
+        if (result.isEmpty()) {
+          return values;
+        }
+      }
+    }
+  }
+
   // This test upgrade from old queue (salted base) to new queue (sharded base)
   @Test (timeout = 30000L)
   public void testQueueUpgrade() throws Exception {
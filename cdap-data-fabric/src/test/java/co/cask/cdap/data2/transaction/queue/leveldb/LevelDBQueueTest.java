@@ -54,7 +54,13 @@ public class LevelDBQueueTest extends QueueTest {
 
   @BeforeClass
   public static void init() throws Exception {
-    CConfiguration conf = CConfiguration.create();
+    init(CConfiguration.create());
+  }
+
+  /**
+   * Starts the LevelDB queue and transaction services with the given configuration.
+   */
+  protected static void init(CConfiguration conf) throws Exception {
     conf.set(Constants.CFG_LOCAL_DATA_DIR, tmpFolder.newFolder().getAbsolutePath());
     conf.set(Constants.Dataset.TABLE_PREFIX, "test");
     Injector injector = Guice.createInjector(
@@ -23,6 +23,7 @@ import co.cask.cdap.common.conf.SConfiguration;
 import co.cask.cdap.gateway.router.handlers.HttpRequestHandler;
 import co.cask.cdap.gateway.router.handlers.HttpStatusRequestHandler;
 import co.cask.cdap.gateway.router.handlers.IdleEventProcessor;
+import co.cask.cdap.gateway.router.handlers.OutboundConnectionPool;
 import co.cask.cdap.gateway.router.handlers.SecurityAuthenticationHttpHandler;
 import co.cask.cdap.security.auth.AccessTokenTransformer;
 import co.cask.cdap.security.auth.TokenValidator;
@@ -30,6 +31,7 @@ import co.cask.cdap.security.tools.SSLHandlerFactory;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Closeables;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
@@ -99,10 +101,12 @@ public class NettyRouter extends AbstractIdleService {
   private final boolean sslEnabled;
   private final SSLHandlerFactory sslHandlerFactory;
   private final int connectionTimeout;
+  private final int upstreamMaxConnections;
 
   private Timer timer;
   private ServerBootstrap serverBootstrap;
   private ClientBootstrap clientBootstrap;
+  private OutboundConnectionPool connectionPool;
   private DiscoveryServiceClient discoveryServiceClient;
 
   @Inject
@@ -154,6 +158,7 @@ public class NettyRouter extends AbstractIdleService {
       this.sslHandlerFactory = null;
     }
     this.connectionTimeout = cConf.getInt(Constants.Router.CONNECTION_TIMEOUT_SECS);
+    this.upstreamMaxConnections = cConf.getInt(Constants.Router.UPSTREAM_MAX_CONNECTIONS, 0);
     LOG.info("Using connection timeout: {}", connectionTimeout);
     LOG.info("Service to Port Mapping - {}", this.serviceToPortMap);
   }
@@ -187,6 +192,7 @@ public class NettyRouter extends AbstractIdleService {
       }
     } finally {
       serverBootstrap.shutdown();
+      Closeables.closeQuietly(connectionPool);
       clientBootstrap.shutdown();
       clientBootstrap.releaseExternalResources();
       serverBootstrap.releaseExternalResources();
@@ -258,7 +264,7 @@ public class NettyRouter extends AbstractIdleService {
           }
           // for now there's only one hardcoded rule, but if there will be more, we may want it generic and configurable
           pipeline.addLast("http-request-handler",
-                           new HttpRequestHandler(clientBootstrap, serviceLookup, ImmutableList.<ProxyRule>of()));
+                           new HttpRequestHandler(connectionPool, serviceLookup, ImmutableList.<ProxyRule>of()));
           return pipeline;
         }
       }
@@ -329,6 +335,11 @@ public class NettyRouter extends AbstractIdleService {
     });
 
     clientBootstrap.setOption("bufferFactory", new DirectChannelBufferFactory());
+    clientBootstrap.setOption("keepAlive", true);
+
+    connectionPool = new OutboundConnectionPool(clientBootstrap, discoveryServiceClient, timer,
+                                                upstreamMaxConnections,
+                                                TimeUnit.SECONDS.toMillis(connectionTimeout));
   }
 
   private boolean isSSLEnabled() {
@@ -0,0 +1,257 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.gateway.router;
+
+import com.google.common.base.Preconditions;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A routing table that maps request paths to services. The routing rules are compiled into a trie of path segments,
+ * with wildcard nodes for segments that match anything, so that a lookup only walks the path once without splitting
+ * it. When more than one rule matches a path, the rule that was added first wins.
+ */
+final class RouteTable {
+
+  private final Node root;
+
+  private RouteTable(Node root) {
+    this.root = root;
+  }
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Looks up the route for the given path.
+   *
+   * @param path the normalized URI path, without the query string. Empty path segments are ignored.
+   * @param method the method of the request
+   * @return the {@link Route} of the first rule that matches the path, or {@code null} if no rule matches
+   */
+  @Nullable
+  Route lookup(String path, HttpMethod method) {
+    Rule rule = find(root, path, 0, method, null);
+    return rule == null ? null : rule.route;
+  }
+
+  /**
+   * Finds the rule with the lowest priority that matches the path under the given node.
+   *
+   * @param node the trie node that matched the path up to the offset
+   * @param offset the offset in the path after the last matched segment
+   * @param best the best rule found so far
+   */
+  @Nullable
+  private Rule find(Node node, String path, int offset, HttpMethod method, @Nullable Rule best) {
+    int start = skipSeparators(path, offset);
+    boolean endOfPath = start == path.length();
+
+    // Rules are sorted by priority, hence the first acceptable one is the best in this node
+    for (Rule rule : node.rules) {
+      if (best != null && rule.priority >= best.priority) {
+        break;
+      }
+      if (rule.accepts(method, endOfPath)) {
+        best = rule;
+        break;
+      }
+    }
+    if (endOfPath) {
+      return best;
+    }
+
+    int end = path.indexOf('/', start);
+    if (end < 0) {
+      end = path.length();
+    }
+    Node child = node.getChild(path, start, end);
+    if (child != null && (best == null || child.minPriority < best.priority)) {
+      best = find(child, path, end, method, best);
+    }
+    child = node.wildcard;
+    if (child != null && (best == null || child.minPriority < best.priority)) {
+      best = find(child, path, end, method, best);
+    }
+    return best;
+  }
+
+  private static int skipSeparators(String path, int offset) {
+    int length = path.length();
+    while (offset < length && path.charAt(offset) == '/') {
+      offset++;
+    }
+    return offset;
+  }
+
+  /**
+   * The destination of a routing rule.
+   */
+  abstract static class Route {
+
+    /**
+     * Returns the service that handles the given path, which can be {@code null} if the request should not be routed.
+     */
+    @Nullable
+    abstract String getService(String path);
+
+    /**
+     * Creates a {@link Route} to a fixed service.
+     */
+    static Route of(@Nullable final String service) {
+      return new Route() {
+        @Override
+        String getService(String path) {
+          return service;
+        }
+
+        @Override
+        public String toString() {
+          return String.valueOf(service);
+        }
+      };
+    }
+  }
+
+  /**
+   * Builder for {@link RouteTable}. Rules are prioritized by the order they are added.
+   */
+  static final class Builder {
+
+    private final Node root = new Node();
+    private int priority;
+
+    private Builder() {
+    }
+
+    /**
+     * Adds a rule that matches paths starting with the given segments, with {@code null} matching any segment.
+     */
+    Builder add(@Nullable String service, String... segments) {
+      return add(Route.of(service), null, false, segments);
+    }
+
+    /**
+     * Adds a rule that matches paths starting with the given segments for requests with the given method only.
+     */
+    Builder add(HttpMethod method, @Nullable String service, String... segments) {
+      return add(Route.of(service), method, false, segments);
+    }
+
+    /**
+     * Adds a rule that matches paths starting with the given segments.
+     */
+    Builder add(Route route, String... segments) {
+      return add(route, null, false, segments);
+    }
+
+    /**
+     * Adds a rule that matches paths with exactly the given segments, with {@code null} matching any segment.
+     */
+    Builder addExact(@Nullable String service, String... segments) {
+      return add(Route.of(service), null, true, segments);
+    }
+
+    RouteTable build() {
+      return new RouteTable(root);
+    }
+
+    private Builder add(Route route, @Nullable HttpMethod method, boolean exact, String... segments) {
+      Rule rule = new Rule(route, method, exact, priority++);
+      Node node = root;
+      node.minPriority = Math.min(node.minPriority, rule.priority);
+      for (String segment : segments) {
+        Preconditions.checkArgument(segment == null || (!segment.isEmpty() && segment.indexOf('/') < 0),
+                                    "Invalid path segment '%s'", segment);
+        node = node.getOrAddChild(segment);
+        node.minPriority = Math.min(node.minPriority, rule.priority);
+      }
+      // Priority only increases, so the rules list stays sorted
+      node.rules.add(rule);
+      return this;
+    }
+  }
+
+  /**
+   * A routing rule attached to the trie node of its last segment.
+   */
+  private static final class Rule {
+    private final Route route;
+    private final HttpMethod method;
+    private final boolean exact;
+    private final int priority;
+
+    private Rule(Route route, @Nullable HttpMethod method, boolean exact, int priority) {
+      this.route = route;
+      this.method = method;
+      this.exact = exact;
+      this.priority = priority;
+    }
+
+    boolean accepts(HttpMethod requestMethod, boolean endOfPath) {
+      return (!exact || endOfPath) && (method == null || method.equals(requestMethod));
+    }
+  }
+
+  /**
+   * A node in the trie, which corresponds to a path segment.
+   */
+  private static final class Node {
+    private final List<String> names = new ArrayList<>();
+    private final List<Node> children = new ArrayList<>();
+    private final List<Rule> rules = new ArrayList<>();
+    private Node wildcard;
+    // The lowest priority of all rules in the subtree rooted at this node, used to prune the search
+    private int minPriority = Integer.MAX_VALUE;
+
+    /**
+     * Returns the literal child for the path segment between start and end, or {@code null} if there is none.
+     */
+    @Nullable
+    Node getChild(String path, int start, int end) {
+      int length = end - start;
+      for (int i = 0; i < names.size(); i++) {
+        String name = names.get(i);
+        if (name.length() == length && path.regionMatches(start, name, 0, length)) {
+          return children.get(i);
+        }
+      }
+      return null;
+    }
+
+    Node getOrAddChild(@Nullable String name) {
+      if (name == null) {
+        if (wildcard == null) {
+          wildcard = new Node();
+        }
+        return wildcard;
+      }
+      int idx = names.indexOf(name);
+      if (idx >= 0) {
+        return children.get(idx);
+      }
+      Node child = new Node();
+      names.add(name);
+      children.add(child);
+      return child;
+    }
+  }
+}
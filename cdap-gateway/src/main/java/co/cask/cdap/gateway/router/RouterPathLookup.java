@@ -20,6 +20,7 @@ import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.service.ServiceDiscoverable;
 import co.cask.http.AbstractHttpHandler;
 import org.apache.commons.lang.StringUtils;
+import org.jboss.netty.handler.codec.http.HttpMethod;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 
 /**
@@ -27,6 +28,12 @@ import org.jboss.netty.handler.codec.http.HttpRequest;
  */
 public final class RouterPathLookup extends AbstractHttpHandler {
 
+  /**
+   * Routing rules for the v3 API. Rules are matched in the order they are added, and requests that don't match
+   * any rule are routed to app-fabric.
+   */
+  private static final RouteTable V3_ROUTES = createV3Routes();
+
   @SuppressWarnings("unused")
   private enum AllowedMethod {
     GET, PUT, POST, DELETE
@@ -42,20 +49,31 @@ public final class RouterPathLookup extends AbstractHttpHandler {
    */
   public String getRoutingService(String fallbackService, String requestPath, HttpRequest httpRequest) {
     try {
-      String method = httpRequest.getMethod().getName();
-      AllowedMethod requestMethod = AllowedMethod.valueOf(method);
-      String[] uriParts = StringUtils.split(requestPath, '/');
+      HttpMethod method = httpRequest.getMethod();
+      AllowedMethod.valueOf(method.getName());
+
+      int start = 0;
+      while (start < requestPath.length() && requestPath.charAt(start) == '/') {
+        start++;
+      }
+      if (start == requestPath.length()) {
+        return Constants.Service.APP_FABRIC_HTTP;
+      }
+      int end = requestPath.indexOf('/', start);
+      end = end < 0 ? requestPath.length() : end;
+      String version = Constants.Gateway.API_VERSION_3_TOKEN;
+      boolean isV3 = end - start == version.length() && requestPath.regionMatches(start, version, 0, version.length());
 
       //Check if the call should go to webapp
       //If service contains "$HOST" and if first split element is NOT the gateway version, then send it to WebApp
       //WebApp serves only static files (HTML, CSS, JS) and so /<appname> calls should go to WebApp
       //But stream calls issued by the UI should be routed to the appropriate CDAP service
-      if (fallbackService.contains("$HOST") && (uriParts.length >= 1)
-        && !("/" + uriParts[0]).equals(Constants.Gateway.API_VERSION_3)) {
+      if (fallbackService.contains("$HOST") && !isV3) {
         return fallbackService;
       }
-      if (uriParts[0].equals(Constants.Gateway.API_VERSION_3_TOKEN)) {
-        return getV3RoutingService(uriParts, requestMethod);
+      if (isV3) {
+        RouteTable.Route route = V3_ROUTES.lookup(requestPath, method);
+        return route == null ? Constants.Service.APP_FABRIC_HTTP : route.getService(requestPath);
       }
     } catch (Exception e) {
       // Ignore exception. Default routing to app-fabric.
@@ -63,123 +81,107 @@ public final class RouterPathLookup extends AbstractHttpHandler {
     return Constants.Service.APP_FABRIC_HTTP;
   }
 
-  private String getV3RoutingService(String [] uriParts, AllowedMethod requestMethod) {
-    if ((uriParts.length >= 2) && uriParts[1].equals("feeds")) {
-      // TODO find a better way to handle that - this looks hackish
-      return null;
-    } else if ((uriParts.length >= 9) && "services".equals(uriParts[5]) && "methods".equals(uriParts[7])) {
-      //User defined services handle methods on them:
-      //Path: "/v3/namespaces/{namespace-id}/apps/{app-id}/services/{service-id}/methods/<user-defined-method-path>"
-      return ServiceDiscoverable.getName(uriParts[2], uriParts[4], uriParts[6]);
-    } else if (matches(uriParts, "v3", "system", "services", null, "logs")) {
-      //Log Handler Path /v3/system/services/<service-id>/logs
-      return Constants.Service.METRICS;
-    } else if (matches(uriParts, "v3", "namespaces", null, "apps", null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "artifacts", null, "versions", null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "datasets", null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "metadata") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "views", null, "metadata") ||
-
-      matches(uriParts, "v3", "namespaces", null, "apps", null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "artifacts", null, "versions", null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "datasets", null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "metadata", "properties") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "views", null, "metadata", "properties") ||
-
-      matches(uriParts, "v3", "namespaces", null, "apps", null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "artifacts", null, "versions", null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "datasets", null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "metadata", "tags") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "views", null, "metadata", "tags") ||
-
-      matches(uriParts, "v3", "namespaces", null, "metadata", "search") ||
-      matches(uriParts, "v3", "namespaces", null, "datasets", null, "lineage") ||
-      matches(uriParts, "v3", "namespaces", null, "streams", null, "lineage") ||
-      matches(uriParts, "v3", "namespaces", null, "apps", null, null, null, "runs", null, "metadata")) {
-      return Constants.Service.METADATA_SERVICE;
-    } else if (matches(uriParts, "v3", "security", "authorization") ||
-      matches(uriParts, "v3", "namespaces", null, "securekeys")) {
-      // Authorization and Secure Store Handlers currently run in App Fabric
-      return Constants.Service.APP_FABRIC_HTTP;
-    } else if (matches(uriParts, "v3", "security", "store", "namespaces", null)) {
-      return Constants.Service.APP_FABRIC_HTTP;
-    } else if ((matches(uriParts, "v3", "namespaces", null, "streams", null, "programs")
-      || matches(uriParts, "v3", "namespaces", null, "data", "datasets", null, "programs")) &&
-      requestMethod.equals(AllowedMethod.GET)) {
-      return Constants.Service.APP_FABRIC_HTTP;
-    } else if ((uriParts.length >= 4) && uriParts[1].equals("namespaces") && uriParts[3].equals("streams")) {
-      // /v3/namespaces/<namespace>/streams goes to AppFabricHttp
-      // All else go to Stream Handler
-      if (uriParts.length == 4) {
-        return Constants.Service.APP_FABRIC_HTTP;
-      } else {
-        return Constants.Service.STREAMS;
+  private static RouteTable createV3Routes() {
+    RouteTable.Builder builder = RouteTable.builder();
+
+    // TODO find a better way to handle that - this looks hackish
+    builder.add((String) null, "v3", "feeds");
+
+    //User defined services handle methods on them:
+    //Path: "/v3/namespaces/{namespace-id}/apps/{app-id}/services/{service-id}/methods/<user-defined-method-path>"
+    builder.add(new RouteTable.Route() {
+      @Override
+      String getService(String path) {
+        String[] uriParts = StringUtils.split(path, '/');
+        return ServiceDiscoverable.getName(uriParts[2], uriParts[4], uriParts[6]);
       }
-    } else if ((uriParts.length >= 8 && uriParts[7].equals("logs")) ||
-      (uriParts.length >= 10 && uriParts[9].equals("logs")) ||
-      (uriParts.length >= 6 && uriParts[5].equals("logs"))) {
-      //Log Handler Paths:
-      // /v3/namespaces/<namespaceid>/apps/<appid>/<programid-type>/<programid>/logs
-      // /v3/namespaces/{namespace-id}/apps/{app-id}/{program-type}/{program-id}/runs/{run-id}/logs
-      return Constants.Service.METRICS;
-    } else if (uriParts.length >= 2 && uriParts[1].equals("metrics")) {
-      //Metrics Search Handler Path /v3/metrics
-      return Constants.Service.METRICS;
-    } else if (uriParts.length >= 5 && uriParts[1].equals("data") && uriParts[2].equals("explore") &&
-      (uriParts[3].equals("queries") || uriParts[3].equals("jdbc") || uriParts[3].equals("namespaces"))) {
-      // non-namespaced explore operations. For example, /v3/data/explore/queries/{id}
-      return Constants.Service.EXPLORE_HTTP_USER_SERVICE;
-    } else if (uriParts.length >= 6 && uriParts[3].equals("data") && uriParts[4].equals("explore") &&
-      (uriParts[5].equals("queries") || uriParts[5].equals("streams") || uriParts[5].equals("datasets")
-        || uriParts[5].equals("tables") || uriParts[5].equals("jdbc"))) {
-      // namespaced explore operations. For example, /v3/namespaces/{namespace-id}/data/explore/streams/{stream}/enable
-      return Constants.Service.EXPLORE_HTTP_USER_SERVICE;
-    } else if ((uriParts.length == 3) && uriParts[1].equals("explore") && uriParts[2].equals("status")) {
-      return Constants.Service.EXPLORE_HTTP_USER_SERVICE;
-    } else if (uriParts.length == 7 && uriParts[3].equals("data") && uriParts[4].equals("datasets") &&
-      (uriParts[6].equals("flows") || uriParts[6].equals("workers") || uriParts[6].equals("mapreduce"))) {
-      // namespaced app fabric data operations:
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/flows
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/workers
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/mapreduce
-      return Constants.Service.APP_FABRIC_HTTP;
-    } else if ((uriParts.length >= 4) && uriParts[3].equals("data")) {
-      // other data operations. For example:
-      // /v3/namespaces/{namespace-id}/data/datasets
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/properties
-      // /v3/namespaces/{namespace-id}/data/datasets/{name}/admin/{method}
-      return Constants.Service.DATASET_MANAGER;
+    }, "v3", null, null, null, null, "services", null, "methods", null);
+
+    //Log Handler Path /v3/system/services/<service-id>/logs
+    builder.add(Constants.Service.METRICS, "v3", "system", "services", null, "logs");
+
+    String metadata = Constants.Service.METADATA_SERVICE;
+    for (String suffix : new String[] { null, "properties", "tags" }) {
+      builder
+        .add(metadata, withSuffix(suffix, "v3", "namespaces", null, "apps", null, "metadata"))
+        .add(metadata, withSuffix(suffix, "v3", "namespaces", null, "apps", null, null, null, "metadata"))
+        .add(metadata, withSuffix(suffix, "v3", "namespaces", null, "artifacts", null, "versions", null, "metadata"))
+        .add(metadata, withSuffix(suffix, "v3", "namespaces", null, "datasets", null, "metadata"))
+        .add(metadata, withSuffix(suffix, "v3", "namespaces", null, "streams", null, "metadata"))
+        .add(metadata, withSuffix(suffix, "v3", "namespaces", null, "streams", null, "views", null, "metadata"));
     }
-    return Constants.Service.APP_FABRIC_HTTP;
+    builder
+      .add(metadata, "v3", "namespaces", null, "metadata", "search")
+      .add(metadata, "v3", "namespaces", null, "datasets", null, "lineage")
+      .add(metadata, "v3", "namespaces", null, "streams", null, "lineage")
+      .add(metadata, "v3", "namespaces", null, "apps", null, null, null, "runs", null, "metadata");
+
+    // Authorization and Secure Store Handlers currently run in App Fabric
+    builder
+      .add(Constants.Service.APP_FABRIC_HTTP, "v3", "security", "authorization")
+      .add(Constants.Service.APP_FABRIC_HTTP, "v3", "namespaces", null, "securekeys")
+      .add(Constants.Service.APP_FABRIC_HTTP, "v3", "security", "store", "namespaces", null);
+
+    builder
+      .add(HttpMethod.GET, Constants.Service.APP_FABRIC_HTTP, "v3", "namespaces", null, "streams", null, "programs")
+      .add(HttpMethod.GET, Constants.Service.APP_FABRIC_HTTP,
+           "v3", "namespaces", null, "data", "datasets", null, "programs");
+
+    // /v3/namespaces/<namespace>/streams goes to AppFabricHttp
+    // All else go to Stream Handler
+    builder
+      .addExact(Constants.Service.APP_FABRIC_HTTP, "v3", "namespaces", null, "streams")
+      .add(Constants.Service.STREAMS, "v3", "namespaces", null, "streams", null);
+
+    //Log Handler Paths:
+    // /v3/namespaces/<namespaceid>/apps/<appid>/<programid-type>/<programid>/logs
+    // /v3/namespaces/{namespace-id}/apps/{app-id}/{program-type}/{program-id}/runs/{run-id}/logs
+    builder
+      .add(Constants.Service.METRICS, "v3", null, null, null, null, null, null, "logs")
+      .add(Constants.Service.METRICS, "v3", null, null, null, null, null, null, null, null, "logs")
+      .add(Constants.Service.METRICS, "v3", null, null, null, null, "logs");
+
+    //Metrics Search Handler Path /v3/metrics
+    builder.add(Constants.Service.METRICS, "v3", "metrics");
+
+    // non-namespaced explore operations. For example, /v3/data/explore/queries/{id}
+    for (String operation : new String[] { "queries", "jdbc", "namespaces" }) {
+      builder.add(Constants.Service.EXPLORE_HTTP_USER_SERVICE, "v3", "data", "explore", operation, null);
+    }
+    // namespaced explore operations. For example, /v3/namespaces/{namespace-id}/data/explore/streams/{stream}/enable
+    for (String operation : new String[] { "queries", "streams", "datasets", "tables", "jdbc" }) {
+      builder.add(Constants.Service.EXPLORE_HTTP_USER_SERVICE, "v3", null, null, "data", "explore", operation);
+    }
+    builder.addExact(Constants.Service.EXPLORE_HTTP_USER_SERVICE, "v3", "explore", "status");
+
+    // namespaced app fabric data operations:
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/flows
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/workers
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/mapreduce
+    for (String programType : new String[] { "flows", "workers", "mapreduce" }) {
+      builder.addExact(Constants.Service.APP_FABRIC_HTTP, "v3", null, null, "data", "datasets", null, programType);
+    }
+
+    // other data operations. For example:
+    // /v3/namespaces/{namespace-id}/data/datasets
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/properties
+    // /v3/namespaces/{namespace-id}/data/datasets/{name}/admin/{method}
+    builder.add(Constants.Service.DATASET_MANAGER, "v3", null, null, "data");
+
+    return builder.build();
   }
 
   /**
-   * Determines if actual matches expected.
-   *
-   * - actual may be longer than expected, but we'll return true as long as expected was found
-   * - null in expected means "accept any string"
-   *
-   * @param actual actual string array to check
-   * @param expected expected string array format
-   * @return true if actual matches expected
+   * Appends the suffix to the given path segments if it is not {@code null}.
    */
-  private boolean matches(String[] actual, String... expected) {
-    if (actual.length < expected.length) {
-      return false;
-    }
-
-    for (int i = 0; i < expected.length; i++) {
-      if (expected[i] == null) {
-        continue;
-      }
-      if (!expected[i].equals(actual[i])) {
-        return false;
-      }
+  private static String[] withSuffix(String suffix, String... segments) {
+    if (suffix == null) {
+      return segments;
     }
-    return true;
+    String[] result = new String[segments.length + 1];
+    System.arraycopy(segments, 0, result, 0, segments.length);
+    result[segments.length] = suffix;
+    return result;
   }
 }
@@ -22,8 +22,10 @@ import co.cask.cdap.gateway.router.ProxyRule;
 import co.cask.cdap.gateway.router.RouterServiceLookup;
 import com.google.common.collect.Queues;
 import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.twill.discovery.Discoverable;
-import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
@@ -52,6 +54,7 @@ import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
 /**
  * Handler that handles HTTP requests and forwards to appropriate services. The service discovery is
@@ -61,7 +64,7 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(HttpRequestHandler.class);
 
-  private final ClientBootstrap clientBootstrap;
+  private final OutboundConnectionPool connectionPool;
   private final RouterServiceLookup serviceLookup;
   // Data structure is used to clean up the channel futures on connection close.
   private final Map<WrappedDiscoverable, MessageSender> discoveryLookup;
@@ -71,10 +74,10 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
   private MessageSender chunkSender;
   private volatile boolean channelClosed;
 
-  public HttpRequestHandler(ClientBootstrap clientBootstrap,
+  public HttpRequestHandler(OutboundConnectionPool connectionPool,
                             RouterServiceLookup serviceLookup,
                             List<ProxyRule> proxyRules) {
-    this.clientBootstrap = clientBootstrap;
+    this.connectionPool = connectionPool;
     this.serviceLookup = serviceLookup;
     this.discoveryLookup = new HashMap<>();
     this.proxyRules = proxyRules;
@@ -108,35 +111,11 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
       WrappedDiscoverable discoverable = getDiscoverable(request,
                                                          (InetSocketAddress) inboundChannel.getLocalAddress());
 
-      // If no event sender, make new connection, otherwise reuse existing one.
+      // If no event sender, acquire a connection from the pool, otherwise reuse existing one.
       MessageSender sender =  discoveryLookup.get(discoverable);
       if (sender == null || !sender.isConnected()) {
-        InetSocketAddress address = discoverable.getSocketAddress();
-
-        ChannelFuture future = clientBootstrap.connect(address);
-        final Channel outboundChannel = future.getChannel();
-        outboundChannel.getPipeline().addAfter("request-encoder",
-                                               "outbound-handler", new OutboundHandler(inboundChannel));
-        sender = new MessageSender(inboundChannel, future);
+        sender = new MessageSender(inboundChannel, discoverable, connectionPool);
         discoveryLookup.put(discoverable, sender);
-
-        // Remember the in-flight outbound channel
-        inboundChannel.setAttachment(outboundChannel);
-        outboundChannel.getCloseFuture().addListener(new ChannelFutureListener() {
-          @Override
-          public void operationComplete(ChannelFuture future) throws Exception {
-            inboundChannel.getPipeline().execute(new Runnable() {
-              @Override
-              public void run() {
-                // When the outbound channel closed,
-                // close the inbound channel as well if it carries the in-flight request
-                if (outboundChannel.equals(inboundChannel.getAttachment())) {
-                  closeOnFlush(inboundChannel);
-                }
-              }
-            });
-          }
-        });
       }
 
       // Send the message.
@@ -233,7 +212,8 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
 
   /**
    * For sending messages to outbound channel while maintaining the order of messages according to
-   * the order that {@link #send(Object)} method is called.
+   * the order that {@link #send(Object)} method is called. The outbound channel is acquired from the
+   * {@link OutboundConnectionPool} and is released back to it on {@link #close()}.
    *
    * It uses a lock-free algorithm similar to the one
    * in {@link co.cask.cdap.data.stream.service.ConcurrentStreamWriter} to do the write through the
@@ -241,44 +221,98 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
    */
   private static final class MessageSender implements Closeable {
     private final Channel inBoundChannel;
-    private final ChannelFuture channelFuture;
+    private final WrappedDiscoverable discoverable;
+    private final OutboundConnectionPool connectionPool;
+    private final ListenableFuture<Channel> channelFuture;
     private final Queue<OutboundMessage> messages;
     private final AtomicBoolean writer;
+    private final ChannelFutureListener closeListener;
 
-    private MessageSender(Channel inBoundChannel, ChannelFuture channelFuture) {
+    private MessageSender(final Channel inBoundChannel, WrappedDiscoverable discoverable,
+                          OutboundConnectionPool connectionPool) {
       this.inBoundChannel = inBoundChannel;
-      this.channelFuture = channelFuture;
+      this.discoverable = discoverable;
+      this.connectionPool = connectionPool;
+      this.channelFuture = connectionPool.acquire(discoverable, inBoundChannel);
       this.messages = Queues.newConcurrentLinkedQueue();
       this.writer = new AtomicBoolean(false);
+      this.closeListener = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) throws Exception {
+          inBoundChannel.getPipeline().execute(new Runnable() {
+            @Override
+            public void run() {
+              // When the outbound channel closed,
+              // close the inbound channel as well if it carries the in-flight request
+              if (MessageSender.this.equals(inBoundChannel.getAttachment())) {
+                closeOnFlush(inBoundChannel);
+              }
+            }
+          });
+        }
+      };
+
+      Futures.addCallback(channelFuture, new FutureCallback<Channel>() {
+        @Override
+        public void onSuccess(Channel channel) {
+          channel.getCloseFuture().addListener(closeListener);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          LOG.debug("Failed to acquire connection to {}", MessageSender.this.discoverable.getSocketAddress(), t);
+        }
+      });
     }
 
     private boolean isConnected() {
-      return channelFuture.getChannel().isConnected();
+      if (!channelFuture.isDone()) {
+        // Still connecting or waiting for a connection
+        return true;
+      }
+      Channel channel = getChannel();
+      return channel != null && channel.isConnected();
     }
 
     private void send(Object msg) {
-      // Attach the outbound channel to the inbound to indicate the in-flight request outbound.
-      inBoundChannel.setAttachment(channelFuture.getChannel());
+      // Attach the sender to the inbound to indicate the in-flight request outbound.
+      inBoundChannel.setAttachment(this);
 
       final OutboundMessage message = new OutboundMessage(msg);
       messages.add(message);
-      if (channelFuture.isSuccess()) {
-        flushUntilCompleted(channelFuture.getChannel(), message);
+      Channel channel = getChannel();
+      if (channel != null) {
+        flushUntilCompleted(channel, message);
       } else {
-        channelFuture.addListener(new ChannelFutureListener() {
+        Futures.addCallback(channelFuture, new FutureCallback<Channel>() {
           @Override
-          public void operationComplete(ChannelFuture future) throws Exception {
-            if (!future.isSuccess()) {
-              closeOnFlush(inBoundChannel);
-              return;
-            }
+          public void onSuccess(Channel channel) {
+            flushUntilCompleted(channel, message);
+          }
 
-            flushUntilCompleted(future.getChannel(), message);
+          @Override
+          public void onFailure(Throwable t) {
+            closeOnFlush(inBoundChannel);
           }
         });
       }
     }
 
+    /**
+     * Returns the outbound channel if it was acquired successfully, or {@code null} otherwise.
+     */
+    @Nullable
+    private Channel getChannel() {
+      if (!channelFuture.isDone() || channelFuture.isCancelled()) {
+        return null;
+      }
+      try {
+        return Futures.getUnchecked(channelFuture);
+      } catch (Exception e) {
+        return null;
+      }
+    }
+
     /**
      * Writes queued messages to the given channel and keep doing it until the given message is written.
      */
@@ -308,7 +342,15 @@ public class HttpRequestHandler extends SimpleChannelUpstreamHandler {
 
     @Override
     public void close() throws IOException {
-      closeOnFlush(channelFuture.getChannel());
+      // If the connection is not acquired yet, the pool takes it back when it becomes available
+      if (channelFuture.cancel(false)) {
+        return;
+      }
+      Channel channel = getChannel();
+      if (channel != null) {
+        channel.getCloseFuture().removeListener(closeListener);
+        connectionPool.release(discoverable, channel);
+      }
     }
   }
 
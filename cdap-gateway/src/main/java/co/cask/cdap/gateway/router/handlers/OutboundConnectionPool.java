@@ -0,0 +1,362 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.gateway.router.handlers;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.twill.common.Cancellable;
+import org.apache.twill.common.Threads;
+import org.apache.twill.discovery.Discoverable;
+import org.apache.twill.discovery.DiscoveryServiceClient;
+import org.apache.twill.discovery.ServiceDiscovered;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of keep-alive connections from the router to the discovered service endpoints, so that short lived client
+ * connections don't need to open a new connection to the service for every request.
+ *
+ * A connection acquired from the pool is bound to one inbound client channel until it is released. On release, it
+ * is put back to the pool if the last request on it has completed and both sides agreed to keep the connection
+ * alive; otherwise it is closed. Idle connections are closed by the {@link IdleEventProcessor} in the client
+ * pipeline after the idle timeout, and when the endpoint is no longer discoverable.
+ */
+public final class OutboundConnectionPool implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OutboundConnectionPool.class);
+
+  private final ClientBootstrap clientBootstrap;
+  private final DiscoveryServiceClient discoveryServiceClient;
+  private final Timer timer;
+  private final int maxConnections;
+  private final long waitTimeoutMillis;
+  private final ConcurrentMap<WrappedDiscoverable, Endpoint> endpoints;
+  private final Map<String, Cancellable> discoveryWatches;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong waits = new AtomicLong();
+  private final AtomicLong connects = new AtomicLong();
+  private volatile boolean closed;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param clientBootstrap the {@link ClientBootstrap} for creating new connections
+   * @param discoveryServiceClient the {@link DiscoveryServiceClient} for watching the endpoints availability
+   * @param timer the {@link Timer} for timing out requests waiting for a connection
+   * @param maxConnections maximum number of connections to each endpoint, or {@code 0} for no limit
+   * @param waitTimeoutMillis maximum time in milliseconds a request waits for a connection when the limit is reached
+   */
+  public OutboundConnectionPool(ClientBootstrap clientBootstrap, DiscoveryServiceClient discoveryServiceClient,
+                                Timer timer, int maxConnections, long waitTimeoutMillis) {
+    this.clientBootstrap = clientBootstrap;
+    this.discoveryServiceClient = discoveryServiceClient;
+    this.timer = timer;
+    this.maxConnections = maxConnections;
+    this.waitTimeoutMillis = waitTimeoutMillis;
+    this.endpoints = new ConcurrentHashMap<>();
+    this.discoveryWatches = new HashMap<>();
+  }
+
+  /**
+   * Acquires a connection to the given endpoint for the given inbound channel. An idle connection is reused if
+   * available, otherwise a new connection is opened, unless the number of connections to the endpoint has
+   * reached the limit, in which case the returned future completes when a connection is released.
+   *
+   * @param discoverable the endpoint to connect to
+   * @param inboundChannel the client channel that the responses are written to
+   * @return a future that completes with a connected channel
+   */
+  public ListenableFuture<Channel> acquire(WrappedDiscoverable discoverable, Channel inboundChannel) {
+    Endpoint endpoint = getEndpoint(discoverable);
+    synchronized (endpoint) {
+      Channel channel = endpoint.idleChannels.pollLast();
+      while (channel != null) {
+        if (channel.isConnected()) {
+          hits.incrementAndGet();
+          bind(channel, inboundChannel);
+          return Futures.immediateFuture(channel);
+        }
+        channel = endpoint.idleChannels.pollLast();
+      }
+
+      if (maxConnections <= 0 || endpoint.connections < maxConnections) {
+        SettableFuture<Channel> future = SettableFuture.create();
+        connect(discoverable, endpoint, inboundChannel, future);
+        return future;
+      }
+
+      waits.incrementAndGet();
+      final Waiter waiter = new Waiter(inboundChannel);
+      endpoint.waiters.add(waiter);
+      final Endpoint waitEndpoint = endpoint;
+      timer.newTimeout(new TimerTask() {
+        @Override
+        public void run(Timeout timeout) throws Exception {
+          boolean removed;
+          synchronized (waitEndpoint) {
+            removed = waitEndpoint.waiters.remove(waiter);
+          }
+          if (removed) {
+            waiter.future.setException(new TimeoutException("Timeout waiting for a connection"));
+          }
+        }
+      }, waitTimeoutMillis, TimeUnit.MILLISECONDS);
+      return waiter.future;
+    }
+  }
+
+  /**
+   * Releases a connection acquired from this pool. The connection is kept for reuse if possible, otherwise
+   * it will be closed.
+   */
+  public void release(WrappedDiscoverable discoverable, Channel channel) {
+    unbind(channel);
+
+    IdleEventProcessor idleEventProcessor = channel.getPipeline().get(IdleEventProcessor.class);
+    Endpoint endpoint = endpoints.get(discoverable);
+    if (closed || endpoint == null || !channel.isConnected()
+      || idleEventProcessor == null || !idleEventProcessor.isReusable()) {
+      HttpRequestHandler.closeOnFlush(channel);
+      return;
+    }
+
+    synchronized (endpoint) {
+      if (!endpoint.discoverable) {
+        HttpRequestHandler.closeOnFlush(channel);
+        return;
+      }
+      // Hand over the connection to a request waiting for it first
+      Waiter waiter = endpoint.waiters.poll();
+      while (waiter != null) {
+        bind(channel, waiter.inboundChannel);
+        if (waiter.future.set(channel)) {
+          return;
+        }
+        unbind(channel);
+        waiter = endpoint.waiters.poll();
+      }
+      endpoint.idleChannels.addLast(channel);
+    }
+  }
+
+  /**
+   * Returns the number of times that a pooled connection was reused.
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of times that a request had to wait for a connection because of the connection limit.
+   */
+  public long getWaits() {
+    return waits.get();
+  }
+
+  /**
+   * Returns the number of new connections opened.
+   */
+  public long getConnects() {
+    return connects.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    synchronized (discoveryWatches) {
+      for (Cancellable cancellable : discoveryWatches.values()) {
+        cancellable.cancel();
+      }
+      discoveryWatches.clear();
+    }
+    for (Endpoint endpoint : endpoints.values()) {
+      closeIdleChannels(endpoint);
+    }
+    LOG.info("Closed outbound connection pool. Connections reused: {}, waits: {}, opened: {}",
+             hits.get(), waits.get(), connects.get());
+  }
+
+  private Endpoint getEndpoint(WrappedDiscoverable discoverable) {
+    Endpoint endpoint = endpoints.get(discoverable);
+    if (endpoint != null) {
+      return endpoint;
+    }
+    endpoint = new Endpoint();
+    Endpoint existing = endpoints.putIfAbsent(discoverable, endpoint);
+    if (existing != null) {
+      return existing;
+    }
+    watchDiscovery(discoverable.getName());
+    return endpoint;
+  }
+
+  /**
+   * Watches for changes of the given service, so that connections to endpoints no longer discoverable
+   * won't be reused.
+   */
+  private void watchDiscovery(final String serviceName) {
+    synchronized (discoveryWatches) {
+      if (closed || discoveryWatches.containsKey(serviceName)) {
+        return;
+      }
+      ServiceDiscovered serviceDiscovered = discoveryServiceClient.discover(serviceName);
+      discoveryWatches.put(serviceName, serviceDiscovered.watchChanges(new ServiceDiscovered.ChangeListener() {
+        @Override
+        public void onChange(ServiceDiscovered serviceDiscovered) {
+          ImmutableSet.Builder<WrappedDiscoverable> builder = ImmutableSet.builder();
+          for (Discoverable discoverable : serviceDiscovered) {
+            builder.add(new WrappedDiscoverable(discoverable));
+          }
+          updateDiscoverable(serviceName, builder.build());
+        }
+      }, Threads.SAME_THREAD_EXECUTOR));
+    }
+  }
+
+  private void updateDiscoverable(String serviceName, Set<WrappedDiscoverable> discoverables) {
+    for (Map.Entry<WrappedDiscoverable, Endpoint> entry : endpoints.entrySet()) {
+      if (!serviceName.equals(entry.getKey().getName())) {
+        continue;
+      }
+      Endpoint endpoint = entry.getValue();
+      boolean discoverable = discoverables.contains(entry.getKey());
+      synchronized (endpoint) {
+        endpoint.discoverable = discoverable;
+      }
+      if (!discoverable) {
+        LOG.debug("Endpoint {} of service {} is no longer available, closing idle connections.",
+                  entry.getKey().getSocketAddress(), serviceName);
+        closeIdleChannels(endpoint);
+      }
+    }
+  }
+
+  private void closeIdleChannels(Endpoint endpoint) {
+    List<Channel> channels;
+    synchronized (endpoint) {
+      channels = new ArrayList<>(endpoint.idleChannels);
+      endpoint.idleChannels.clear();
+    }
+    for (Channel channel : channels) {
+      channel.close();
+    }
+  }
+
+  /**
+   * Opens a new connection to the given endpoint. Must be called while holding the lock of the endpoint.
+   */
+  private void connect(WrappedDiscoverable discoverable, final Endpoint endpoint,
+                       Channel inboundChannel, final SettableFuture<Channel> future) {
+    connects.incrementAndGet();
+    endpoint.connections++;
+
+    ChannelFuture connectFuture = clientBootstrap.connect(discoverable.getSocketAddress());
+    final Channel channel = connectFuture.getChannel();
+    channel.getPipeline().addAfter("request-encoder", "outbound-handler", new OutboundHandler(inboundChannel));
+
+    final WrappedDiscoverable key = discoverable;
+    channel.getCloseFuture().addListener(new ChannelFutureListener() {
+      @Override
+      public void operationComplete(ChannelFuture closeFuture) throws Exception {
+        Waiter waiter;
+        synchronized (endpoint) {
+          endpoint.connections--;
+          endpoint.idleChannels.remove(channel);
+          waiter = closed ? null : endpoint.waiters.poll();
+          if (waiter != null) {
+            // Open a new connection for the waiting request in place of the closed one
+            connect(key, endpoint, waiter.inboundChannel, waiter.future);
+          }
+        }
+      }
+    });
+    connectFuture.addListener(new ChannelFutureListener() {
+      @Override
+      public void operationComplete(ChannelFuture connectFuture) throws Exception {
+        if (!connectFuture.isSuccess()) {
+          future.setException(connectFuture.getCause());
+          return;
+        }
+        if (!future.set(channel)) {
+          // The request is gone while connecting, keep the connection for others
+          release(key, channel);
+        }
+      }
+    });
+  }
+
+  private void bind(Channel channel, Channel inboundChannel) {
+    OutboundHandler outboundHandler = channel.getPipeline().get(OutboundHandler.class);
+    if (outboundHandler != null) {
+      outboundHandler.setInboundChannel(inboundChannel);
+    }
+  }
+
+  private void unbind(Channel channel) {
+    OutboundHandler outboundHandler = channel.getPipeline().get(OutboundHandler.class);
+    if (outboundHandler != null) {
+      outboundHandler.setInboundChannel(null);
+    }
+  }
+
+  /**
+   * Connections to one endpoint. All fields are guarded by the lock of the instance.
+   */
+  private static final class Endpoint {
+    private final Deque<Channel> idleChannels = new LinkedList<>();
+    private final Queue<Waiter> waiters = new LinkedList<>();
+    private int connections;
+    private boolean discoverable = true;
+  }
+
+  /**
+   * A request waiting for a connection.
+   */
+  private static final class Waiter {
+    private final Channel inboundChannel;
+    private final SettableFuture<Channel> future = SettableFuture.create();
+
+    private Waiter(Channel inboundChannel) {
+      this.inboundChannel = inboundChannel;
+    }
+  }
+}
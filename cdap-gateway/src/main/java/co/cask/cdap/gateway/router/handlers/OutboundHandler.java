@@ -28,20 +28,38 @@ import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 /**
- * Handles requests to and from a discoverable endpoint.
+ * Handles requests to and from a discoverable endpoint. The responses are written to the inbound channel that the
+ * connection is currently bound to, which changes when the connection is reused through the
+ * {@link OutboundConnectionPool}.
  */
 public class OutboundHandler extends SimpleChannelUpstreamHandler {
   private static final Logger LOG = LoggerFactory.getLogger(OutboundHandler.class);
 
-  private final Channel inboundChannel;
+  private volatile Channel inboundChannel;
+
+  public OutboundHandler(@Nullable Channel inboundChannel) {
+    this.inboundChannel = inboundChannel;
+  }
 
-  public OutboundHandler(Channel inboundChannel) {
+  /**
+   * Sets the inbound channel that the responses are written to, or {@code null} if the connection is idle.
+   */
+  void setInboundChannel(@Nullable Channel inboundChannel) {
     this.inboundChannel = inboundChannel;
   }
 
   @Override
   public void messageReceived(ChannelHandlerContext ctx, MessageEvent event) throws Exception {
+    Channel inboundChannel = this.inboundChannel;
+    if (inboundChannel == null) {
+      // There is no request on an idle connection, hence the connection is not usable anymore
+      LOG.debug("Unexpected message received on idle connection {}", ctx.getChannel());
+      ctx.getChannel().close();
+      return;
+    }
     // write the channel buffer to inbound channel
     ChannelBuffer wrappedMessage = ChannelBuffers.wrappedBuffer((ChannelBuffer) event.getMessage());
     Channels.write(inboundChannel, wrappedMessage);
@@ -50,6 +68,10 @@ public class OutboundHandler extends SimpleChannelUpstreamHandler {
 
   @Override
   public void channelInterestChanged(ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+    final Channel inboundChannel = this.inboundChannel;
+    if (inboundChannel == null) {
+      return;
+    }
     inboundChannel.getPipeline().execute(new Runnable() {
       @Override
       public void run() {
@@ -27,23 +27,30 @@ import co.cask.cdap.proto.ProgramType;
 import co.cask.cdap.proto.RunRecord;
 import co.cask.cdap.proto.id.Ids;
 import co.cask.cdap.proto.id.ProgramId;
+import com.google.common.base.Charsets;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.util.EntityUtils;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Test LogHandler.
@@ -175,6 +182,30 @@ public class LogHandlerTestRun extends MetricsSuiteTestBase {
     Assert.fail();
   }
 
+  @Test
+  public void testFullLogsDownload() throws Exception {
+    String logsUrl = getVersionedAPIPath(String.format("apps/testApp1/flows/testFlow1/logs?start=%s&stop=%s",
+                                                       MockLogReader.getMockTimeSecs(0),
+                                                       MockLogReader.getMockTimeSecs(80)),
+                                         MockLogReader.TEST_NAMESPACE);
+    HttpResponse response = doGet(logsUrl);
+    Assert.assertEquals(HttpResponseStatus.OK.getCode(), response.getStatusLine().getStatusCode());
+    Assert.assertNull(response.getFirstHeader(HttpHeaders.Names.CONTENT_ENCODING));
+    String plainLogs = EntityUtils.toString(response.getEntity(), Charsets.UTF_8);
+    verifyLogs(plainLogs, "testFlow1", "text", false, true, true, 80, 0);
+
+    // The same logs should be downloaded compressed if the client accepts gzip
+    response = doGet(logsUrl, new Header[] {
+      new BasicHeader(HttpHeaders.Names.ACCEPT_ENCODING, HttpHeaders.Values.GZIP)
+    });
+    Assert.assertEquals(HttpResponseStatus.OK.getCode(), response.getStatusLine().getStatusCode());
+    Assert.assertEquals(HttpHeaders.Values.GZIP,
+                        response.getFirstHeader(HttpHeaders.Names.CONTENT_ENCODING).getValue());
+    try (InputStream is = new GZIPInputStream(response.getEntity().getContent())) {
+      Assert.assertEquals(plainLogs, new String(ByteStreams.toByteArray(is), Charsets.UTF_8));
+    }
+  }
+
   @Test
   public void testWorkflowLogs() throws Exception {
     testLogs("testTemplate1", "workflows", "testWorkflow1", MockLogReader.TEST_NAMESPACE);
@@ -422,6 +453,15 @@ public class LogHandlerTestRun extends MetricsSuiteTestBase {
     throws IOException {
     Assert.assertEquals(HttpResponseStatus.OK.getCode(), response.getStatusLine().getStatusCode());
     String out = EntityUtils.toString(response.getEntity());
+    verifyLogs(out, entityId, format, runIdOrFilter, fullLogs, escapeChoice, expectedEvents, expectedStartValue);
+  }
+
+  /**
+   * Verify the logs in the response body. See {@link #verifyLogs(HttpResponse, String, String, boolean, boolean,
+   * boolean, int, int)} for the parameters.
+   */
+  private void verifyLogs(String out, String entityId, String format, boolean runIdOrFilter,
+                          boolean fullLogs, boolean escapeChoice, int expectedEvents, int expectedStartValue) {
     List<String> logMessages = new ArrayList<>();
     boolean escape;
     // based on the format choose the appropriate GSON deserialization type
@@ -431,6 +431,32 @@ public abstract class NettyRouterTestBase {
     Assert.assertEquals(1, defaultServer1.getNumConnectionsClosed() + defaultServer2.getNumConnectionsClosed());
   }
 
+  @Test(timeout = 10000)
+  public void testUpstreamConnectionReuse() throws Exception {
+    defaultServer2.cancelRegistration();
+
+    String path = "/v2/ping";
+    URI uri = new URI(resolveURI(Constants.Router.GATEWAY_DISCOVERY_NAME, path));
+
+    // make requests with a new client connection each time
+    for (int i = 0; i < 5; i++) {
+      Socket socket = getSocketFactory().createSocket(uri.getHost(), uri.getPort());
+      try {
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        Assert.assertEquals("HTTP/1.1 200 OK\r", makeRequest(uri, out, socket.getInputStream()));
+      } finally {
+        socket.close();
+      }
+      // wait for the router to release the connection to the server when the client connection is closed
+      TimeUnit.MILLISECONDS.sleep(200);
+    }
+
+    // all requests should have gone through the same connection to the server
+    Assert.assertEquals(5, defaultServer1.getNumRequests() + defaultServer2.getNumRequests());
+    Assert.assertEquals(1, defaultServer1.getNumConnectionsOpened() + defaultServer2.getNumConnectionsOpened());
+    Assert.assertEquals(0, defaultServer1.getNumConnectionsClosed() + defaultServer2.getNumConnectionsClosed());
+  }
+
   private String makeRequest(URI uri, PrintWriter out, InputStream inputStream) throws IOException {
 
     //Send request
@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.gateway.router;
+
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RouteTable}.
+ */
+public class RouteTableTest {
+
+  @Test
+  public void testPriority() {
+    RouteTable table = RouteTable.builder()
+      .add("first", "a", null, "c")
+      .add("second", "a", "b", "c")
+      .add("third", "a", "b")
+      .build();
+
+    // The wildcard rule was added first, hence wins over the literal one
+    assertRoute(table, "first", "/a/b/c");
+    assertRoute(table, "first", "/a/x/c/d");
+    assertRoute(table, "third", "/a/b/d");
+    assertRoute(table, "third", "/a/b");
+    assertRoute(table, null, "/a/x");
+    assertRoute(table, null, "/b");
+  }
+
+  @Test
+  public void testExactAndMethod() {
+    RouteTable table = RouteTable.builder()
+      .addExact("exact", "a", null)
+      .add(HttpMethod.GET, "get", "a", null, "b")
+      .add("prefix", "a", null)
+      .build();
+
+    assertRoute(table, "exact", "/a/x");
+    assertRoute(table, "exact", "//a///x//");
+    assertRoute(table, "prefix", "/a/x/y");
+    assertRoute(table, "get", "/a/x/b");
+    Assert.assertEquals("prefix", table.lookup("/a/x/b", HttpMethod.PUT).getService("/a/x/b"));
+    assertRoute(table, null, "/a");
+    assertRoute(table, null, "/");
+    assertRoute(table, null, "");
+  }
+
+  @Test
+  public void testRoute() {
+    RouteTable table = RouteTable.builder()
+      .add(new RouteTable.Route() {
+        @Override
+        String getService(String path) {
+          return path.substring(path.lastIndexOf('/') + 1);
+        }
+      }, "a", null)
+      .add((String) null, "b")
+      .build();
+
+    assertRoute(table, "x", "/a/x");
+
+    // Route to a null service is different from no route
+    RouteTable.Route route = table.lookup("/b/c", HttpMethod.GET);
+    Assert.assertNotNull(route);
+    Assert.assertNull(route.getService("/b/c"));
+  }
+
+  private void assertRoute(RouteTable table, String expected, String path) {
+    RouteTable.Route route = table.lookup(path, HttpMethod.GET);
+    Assert.assertEquals(expected, route == null ? null : route.getService(path));
+  }
+}
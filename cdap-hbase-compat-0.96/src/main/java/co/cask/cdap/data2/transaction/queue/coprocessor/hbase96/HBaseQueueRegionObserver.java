@@ -187,6 +187,8 @@ public final class HBaseQueueRegionObserver extends BaseRegionObserver {
     private long rowsEvicted = 0;
     // couldn't be evicted due to incomplete view of row
     private long skippedIncomplete = 0;
+    // evicted without inspecting the columns, as all consumers have moved past it
+    private long rowsBeforeStartRows = 0;
 
     private EvictionInternalScanner(String action, RegionCoprocessorEnvironment env, InternalScanner scanner) {
       this.triggeringAction = action;
@@ -248,7 +250,8 @@ public final class HBaseQueueRegionObserver extends BaseRegionObserver {
     @Override
     public void close() throws IOException {
       LOG.info("Region " + env.getRegion().getRegionNameAsString() + " " + triggeringAction +
-                 ", rows evicted: " + rowsEvicted + " / " + totalRows + ", skipped incomplete: " + skippedIncomplete);
+                 ", rows evicted: " + rowsEvicted + " / " + totalRows + ", skipped incomplete: " + skippedIncomplete +
+                 ", evicted before start rows: " + rowsBeforeStartRows);
       scanner.close();
     }
 
@@ -268,6 +271,14 @@ public final class HBaseQueueRegionObserver extends BaseRegionObserver {
         return false;
       }
 
+      // Rows before the start rows of all consumers will never be read again, hence can be evicted in bulk without
+      // looking at the columns. This also drops rows of which only some columns are seen by this flush or compaction.
+      byte[] smallestStartRow = consumerConfig.getSmallestStartRow();
+      if (smallestStartRow != null && compareRowKey(result.get(0), smallestStartRow) < 0) {
+        rowsBeforeStartRows++;
+        return true;
+      }
+
       // TODO (terence): Right now we can only evict if we see all the data columns.
       // It's because it's possible that in some previous flush, only the data columns are flush,
       // then consumer writes the state columns. In the next flush, it'll only see the state columns and those
@@ -316,13 +327,11 @@ public final class HBaseQueueRegionObserver extends BaseRegionObserver {
         }
       }
 
-      // It can be evicted if from the state columns, it's been processed by all consumer groups
-      // Otherwise, this row has to be less than smallest among all current consumers.
-      // The second condition is for handling consumer being removed after it consumed some entries.
-      // However, the second condition alone is not good enough as it's possible that in hash partitioning,
-      // only one consumer is keep consuming when the other consumer never proceed.
-      return consumedGroups == consumerConfig.getNumGroups()
-        || compareRowKey(result.get(0), consumerConfig.getSmallestStartRow()) < 0;
+      // It can be evicted if from the state columns, it's been processed by all consumer groups.
+      // Rows that are less than smallest start row among all current consumers are already evicted above, which
+      // handles consumer being removed after it consumed some entries. However, that alone is not good enough as
+      // it's possible that in hash partitioning, only one consumer is keep consuming when the other never proceed.
+      return consumedGroups == consumerConfig.getNumGroups();
     }
 
     private int compareRowKey(Cell cell, byte[] row) {
@@ -16,7 +16,13 @@
 
 package co.cask.cdap.security.auth;
 
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.Codec;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.inject.Inject;
 import org.apache.commons.codec.binary.Base64;
@@ -24,20 +30,44 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * This class validates the accessToken and returns the different states
  * of accessToken validation.
+ *
+ * Tokens that are validated successfully are cached for a short time, so that repeated requests with the same
+ * token skip the decoding and digest computation. A cache hit requires the exact same token, which must have been
+ * signed with a valid key, and the token expiration is still checked on every request. Secret keys are only removed
+ * after all tokens signed with them have expired, hence key rotation doesn't affect the cached tokens.
  */
 public class AccessTokenValidator extends AbstractIdleService implements TokenValidator {
   private static final Logger LOG = LoggerFactory.getLogger(AccessTokenValidator.class);
   private final TokenManager tokenManager;
   private final Codec<AccessToken> accessTokenCodec;
+  // Map from validated token to its expiration time
+  private final Cache<String, Long> validatedTokens;
 
   @Inject
-  public AccessTokenValidator(TokenManager tokenManager, Codec<AccessToken> accessTokenCodec) {
+  public AccessTokenValidator(TokenManager tokenManager, Codec<AccessToken> accessTokenCodec, CConfiguration cConf) {
+    this(tokenManager, accessTokenCodec,
+         cConf.getInt(Constants.Security.TOKEN_VALIDATION_CACHE_SIZE, 10000),
+         cConf.getLong(Constants.Security.TOKEN_VALIDATION_CACHE_EXPIRATION, 60000L));
+  }
+
+  @VisibleForTesting
+  AccessTokenValidator(TokenManager tokenManager, Codec<AccessToken> accessTokenCodec,
+                       int cacheSize, long cacheExpirationMillis) {
     this.tokenManager = tokenManager;
     this.accessTokenCodec = accessTokenCodec;
+    this.validatedTokens = cacheSize > 0 && cacheExpirationMillis > 0
+      ? CacheBuilder.newBuilder()
+          .maximumSize(cacheSize)
+          .expireAfterWrite(cacheExpirationMillis, TimeUnit.MILLISECONDS)
+          .recordStats()
+          .<String, Long>build()
+      : null;
   }
 
   @Override
@@ -47,6 +77,10 @@ public class AccessTokenValidator extends AbstractIdleService implements TokenVa
 
   @Override
   protected void shutDown() throws Exception {
+    CacheStats stats = getCacheStats();
+    if (stats != null) {
+      LOG.info("Access token validation cache hit rate: {}, {}", stats.hitRate(), stats);
+    }
     tokenManager.stopAndWait();
   }
 
@@ -58,11 +92,27 @@ public class AccessTokenValidator extends AbstractIdleService implements TokenVa
       LOG.debug("Token is missing");
       return TokenState.MISSING;
     }
+
+    if (validatedTokens != null) {
+      Long expiration = validatedTokens.getIfPresent(token);
+      if (expiration != null) {
+        if (expiration >= System.currentTimeMillis()) {
+          return TokenState.VALID;
+        }
+        validatedTokens.invalidate(token);
+        LOG.debug("{} Token is expired.", TokenState.EXPIRED);
+        return TokenState.EXPIRED;
+      }
+    }
+
     byte[] decodedToken = Base64.decodeBase64(token);
 
     try {
       accessToken = accessTokenCodec.decode(decodedToken);
       tokenManager.validateSecret(accessToken);
+      if (validatedTokens != null) {
+        validatedTokens.put(token, accessToken.getIdentifier().getExpireTimestamp());
+      }
     } catch (IOException ioe) {
       state = TokenState.INVALID;
       LOG.debug("Unknown Schema version for Access Token. {}", ioe);
@@ -72,4 +122,12 @@ public class AccessTokenValidator extends AbstractIdleService implements TokenVa
     }
     return state;
   }
+
+  /**
+   * Returns the statistics of the validated token cache, or {@code null} if the cache is disabled.
+   */
+  @Nullable
+  public CacheStats getCacheStats() {
+    return validatedTokens == null ? null : validatedTokens.stats();
+  }
 }
@@ -30,6 +30,8 @@ import com.google.common.base.Preconditions;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.MapDifference;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.AbstractScheduledService;
 import com.google.inject.Inject;
@@ -46,6 +48,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -73,6 +77,8 @@ public class DefaultAuthorizationEnforcementService extends AbstractScheduledSer
   private final int cacheTtlSecs;
   private final int cacheRefreshIntervalSecs;
   private final LoadingCache<Principal, Map<EntityId, Set<Action>>> authPolicyCache;
+  // Last time in milliseconds that the privileges of each cached principal were used
+  private final ConcurrentMap<Principal, Long> lastAccessTimes;
 
   private ScheduledExecutorService executor;
 
@@ -84,6 +90,7 @@ public class DefaultAuthorizationEnforcementService extends AbstractScheduledSer
     this.cacheTtlSecs = cConf.getInt(Constants.Security.Authorization.CACHE_TTL_SECS);
     this.cacheRefreshIntervalSecs = cConf.getInt(Constants.Security.Authorization.CACHE_REFRESH_INTERVAL_SECS);
     validateCacheConfig();
+    this.lastAccessTimes = new ConcurrentHashMap<>();
     this.authPolicyCache = CacheBuilder.newBuilder()
       .expireAfterWrite(cacheTtlSecs, TimeUnit.SECONDS)
       .build(new CacheLoader<Principal, Map<EntityId, Set<Action>>>() {
@@ -114,8 +121,33 @@ public class DefaultAuthorizationEnforcementService extends AbstractScheduledSer
       return;
     }
     LOG.trace("Running authorization enforcement service iteration...");
+    long idleThreshold = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(cacheTtlSecs);
     for (Principal principal : authPolicyCache.asMap().keySet()) {
-      updatePrivileges(principal);
+      // Stop refreshing principals that are no longer used, so that the load on the authorizer doesn't keep growing
+      // with every principal ever seen. Their privileges will be fetched again on next use.
+      Long lastAccessTime = lastAccessTimes.get(principal);
+      if (lastAccessTime != null && lastAccessTime < idleThreshold) {
+        LOG.debug("Removing privileges of principal {} from the cache since it was not used recently", principal);
+        authPolicyCache.invalidate(principal);
+        lastAccessTimes.remove(principal, lastAccessTime);
+        continue;
+      }
+      try {
+        updatePrivileges(principal);
+      } catch (Exception e) {
+        // Keep the cached privileges until they expire, and continue refreshing the other principals
+        LOG.warn("Error while updating privileges for {}. Cached privileges will be used until they expire.",
+                 principal, e);
+      }
+    }
+
+    // Drop the access times of principals that are no longer cached, e.g. because their privileges expired after
+    // failed refreshes. Recently accessed ones are kept, since their privileges may still be loading.
+    Set<Principal> cachedPrincipals = authPolicyCache.asMap().keySet();
+    for (Map.Entry<Principal, Long> entry : lastAccessTimes.entrySet()) {
+      if (entry.getValue() < idleThreshold && !cachedPrincipals.contains(entry.getKey())) {
+        lastAccessTimes.remove(entry.getKey(), entry.getValue());
+      }
     }
   }
 
@@ -178,6 +210,7 @@ public class DefaultAuthorizationEnforcementService extends AbstractScheduledSer
   protected void shutDown() throws Exception {
     LOG.debug("Shutting down authorization enforcement service...");
     authPolicyCache.invalidateAll();
+    lastAccessTimes.clear();
     if (executor != null) {
       executor.shutdownNow();
     }
@@ -189,6 +222,11 @@ public class DefaultAuthorizationEnforcementService extends AbstractScheduledSer
     return authPolicyCache.asMap();
   }
 
+  @VisibleForTesting
+  Map<Principal, Long> getLastAccessTimes() {
+    return lastAccessTimes;
+  }
+
   private Map<EntityId, Set<Action>> fetchPrivileges(Principal principal) throws Exception {
     State serviceState = state();
     // The only states in which the service can be used are:
@@ -220,7 +258,16 @@ public class DefaultAuthorizationEnforcementService extends AbstractScheduledSer
   }
 
   private Map<EntityId, Set<Action>> getPrivileges(Principal principal) throws Exception {
-    return cacheEnabled ? authPolicyCache.get(principal) : fetchPrivileges(principal);
+    if (!cacheEnabled) {
+      return fetchPrivileges(principal);
+    }
+    long now = System.currentTimeMillis();
+    Long lastAccessTime = lastAccessTimes.get(principal);
+    // Only update the access time once a second to avoid contention on the map
+    if (lastAccessTime == null || now - lastAccessTime >= 1000) {
+      lastAccessTimes.put(principal, now);
+    }
+    return authPolicyCache.get(principal);
   }
   /**
    * On an authorization-enabled cluster, if caching is enabled too, updates the cache in the
@@ -250,8 +297,14 @@ public class DefaultAuthorizationEnforcementService extends AbstractScheduledSer
    */
   private void updatePrivileges(Principal principal) throws Exception {
     Map<EntityId, Set<Action>> privileges = fetchPrivileges(principal);
-    authPolicyCache.put(principal, privileges);
-    LOG.debug("Updated privileges for principal {} as {}", principal, privileges);
+    Map<EntityId, Set<Action>> previous = authPolicyCache.asMap().put(principal, privileges);
+    if (previous == null) {
+      LOG.debug("Updated privileges for principal {} as {}", principal, privileges);
+    } else if (!previous.equals(privileges)) {
+      MapDifference<EntityId, Set<Action>> difference = Maps.difference(previous, privileges);
+      LOG.debug("Updated privileges for principal {}. Added: {}, removed: {}, changed: {}", principal,
+                difference.entriesOnlyOnRight(), difference.entriesOnlyOnLeft(), difference.entriesDiffering());
+    }
   }
 
   private void validateCacheConfig() {
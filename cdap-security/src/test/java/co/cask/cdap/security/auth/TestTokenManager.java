@@ -20,12 +20,14 @@ import co.cask.cdap.api.common.Bytes;
 import co.cask.cdap.common.io.Codec;
 import co.cask.cdap.common.utils.ImmutablePair;
 import com.google.common.collect.Lists;
+import org.apache.commons.codec.binary.Base64;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
@@ -112,4 +114,39 @@ public abstract class TestTokenManager {
 
     tokenManager.stopAndWait();
   }
+
+  @Test
+  public void testTokenValidatorCache() throws Exception {
+    ImmutablePair<TokenManager, Codec<AccessToken>> pair = getTokenManagerAndCodec();
+    TokenManager tokenManager = pair.getFirst();
+    tokenManager.startAndWait();
+    Codec<AccessToken> tokenCodec = pair.getSecond();
+    AccessTokenValidator validator = new AccessTokenValidator(tokenManager, tokenCodec, 100, TOKEN_DURATION);
+
+    long now = System.currentTimeMillis();
+    String user = "testuser";
+    List<String> groups = Lists.newArrayList("users", "admins");
+    AccessToken token = tokenManager.signIdentifier(new AccessTokenIdentifier(user, groups, now, now + 500));
+    String encodedToken = Bytes.toString(Base64.encodeBase64(tokenCodec.encode(token)));
+
+    // second validation should be served from the cache
+    assertEquals(TokenState.VALID, validator.validate(encodedToken));
+    assertEquals(TokenState.VALID, validator.validate(encodedToken));
+    assertEquals(1L, validator.getCacheStats().hitCount());
+
+    // token with invalid signature should not be affected by the cached one
+    byte[] invalidDigest = token.getDigestBytes();
+    new Random().nextBytes(invalidDigest);
+    AccessToken invalidToken = new AccessToken(token.getIdentifier(), token.getKeyId(), invalidDigest);
+    String encodedInvalidToken = Bytes.toString(Base64.encodeBase64(tokenCodec.encode(invalidToken)));
+    assertEquals(TokenState.INVALID, validator.validate(encodedInvalidToken));
+    assertEquals(TokenState.INVALID, validator.validate(encodedInvalidToken));
+
+    // cached token should still expire
+    TimeUnit.MILLISECONDS.sleep(now + 600 - System.currentTimeMillis());
+    assertEquals(TokenState.EXPIRED, validator.validate(encodedToken));
+    assertEquals(TokenState.EXPIRED, validator.validate(encodedToken));
+
+    tokenManager.stopAndWait();
+  }
 }
@@ -37,6 +37,7 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -159,6 +160,45 @@ public class DefaultAuthorizationEnforcementServiceTest extends AuthorizationTes
     }
   }
 
+  @Test
+  public void testIdlePrincipalsRemoved() throws Exception {
+    CConfiguration cConfCopy = CConfiguration.copy(CCONF);
+    cConfCopy.setInt(Constants.Security.Authorization.CACHE_TTL_SECS, 2);
+    cConfCopy.setInt(Constants.Security.Authorization.CACHE_REFRESH_INTERVAL_SECS, 1);
+    try (AuthorizerInstantiator authorizerInstantiator = new AuthorizerInstantiator(cConfCopy, AUTH_CONTEXT_FACTORY)) {
+      Authorizer authorizer = authorizerInstantiator.get();
+      DatasetId ds = NS.dataset("idle");
+      authorizer.grant(ds, ALICE, ImmutableSet.of(Action.READ));
+      DefaultAuthorizationEnforcementService authEnforcementService =
+        new DefaultAuthorizationEnforcementService(authorizer, cConfCopy);
+      authEnforcementService.startAndWait();
+      try {
+        authEnforcementService.enforce(ds, ALICE, Action.READ);
+        Assert.assertTrue(authEnforcementService.getCache().containsKey(ALICE));
+        // alice's privileges should not be refreshed any more once they have not been used for longer than the TTL
+        TimeUnit.MILLISECONDS.sleep(2100);
+        authEnforcementService.runOneIteration();
+        Assert.assertFalse(authEnforcementService.getCache().containsKey(ALICE));
+        Assert.assertFalse(authEnforcementService.getLastAccessTimes().containsKey(ALICE));
+        // they should be fetched again on next use
+        authEnforcementService.enforce(ds, ALICE, Action.READ);
+        Assert.assertTrue(authEnforcementService.getCache().containsKey(ALICE));
+        Assert.assertTrue(authEnforcementService.getLastAccessTimes().containsKey(ALICE));
+        // the access time should be dropped once the privileges are no longer cached, e.g. after they expired
+        authEnforcementService.getCache().remove(ALICE);
+        authEnforcementService.runOneIteration();
+        Assert.assertTrue(authEnforcementService.getLastAccessTimes().containsKey(ALICE));
+        TimeUnit.MILLISECONDS.sleep(2100);
+        authEnforcementService.runOneIteration();
+        Assert.assertFalse(authEnforcementService.getCache().containsKey(ALICE));
+        Assert.assertFalse(authEnforcementService.getLastAccessTimes().containsKey(ALICE));
+      } finally {
+        authEnforcementService.stopAndWait();
+        authorizer.revoke(ds);
+      }
+    }
+  }
+
   @Test
   public void testAuthCacheFilter() throws Exception {
     try (AuthorizerInstantiator authorizerInstantiator = new AuthorizerInstantiator(CCONF, AUTH_CONTEXT_FACTORY)) {
@@ -32,6 +32,9 @@ public final class LoggingConfiguration {
   public static final String LOG_PATTERN = "log.pattern";
   public static final String LOG_BASE_DIR = "log.base.dir";
   public static final String LOG_FILE_SYNC_INTERVAL_BYTES = "log.file.sync.interval.bytes";
+  public static final String LOG_FILE_INDEX_INTERVAL_BYTES = "log.file.index.interval.bytes";
+  public static final String LOG_FILE_READ_PARALLELISM = "log.file.read.parallelism";
+  public static final String LOG_DOWNLOAD_MAX_INFLIGHT_BYTES = "log.download.max.inflight.bytes";
 
   // Used only in Distributed mode
   public static final String NUM_PARTITIONS = "log.publish.num.partitions";
@@ -56,6 +59,9 @@ public final class LoggingConfiguration {
   public static final long DEFAULT_KAFKA_PROCUDER_BUFFER_MS = 1000;
   public static final String DEFAULT_NUM_PARTITIONS = "10";
   public static final int DEFAULT_LOG_CLEANUP_RUN_INTERVAL_MINS = 24 * 60;
+  public static final long DEFAULT_LOG_FILE_INDEX_INTERVAL_BYTES = 256 * 1024;
+  public static final int DEFAULT_LOG_FILE_READ_PARALLELISM = 4;
+  public static final long DEFAULT_LOG_DOWNLOAD_MAX_INFLIGHT_BYTES = 1024 * 1024;
 
   public static final long DEFAULT_LOG_SAVER_EVENT_BUCKET_INTERVAL_MS = 1 * 1000;
   public static final long DEFAULT_LOG_SAVER_MAXIMUM_INMEMORY_EVENT_BUCKETS = 8;
@@ -66,6 +66,7 @@ public class FileLogAppender extends LogAppender {
   private final RootLocationFactory rootLocationFactory;
   private final String logBaseDir;
   private final int syncIntervalBytes;
+  private final long indexIntervalBytes;
   private final long retentionDurationMs;
   private final long maxLogFileSizeBytes;
   private final long inactiveIntervalMs;
@@ -100,6 +101,11 @@ public class FileLogAppender extends LogAppender {
     Preconditions.checkArgument(this.syncIntervalBytes > 0,
                                 "Log file sync interval is invalid: %s", this.syncIntervalBytes);
 
+    this.indexIntervalBytes = cConfig.getLong(LoggingConfiguration.LOG_FILE_INDEX_INTERVAL_BYTES,
+                                              LoggingConfiguration.DEFAULT_LOG_FILE_INDEX_INTERVAL_BYTES);
+    Preconditions.checkArgument(this.indexIntervalBytes > 0,
+                                "Log file index interval is invalid: %s", this.indexIntervalBytes);
+
     long retentionDurationDays = cConfig.getLong(LoggingConfiguration.LOG_RETENTION_DURATION_DAYS, -1);
     Preconditions.checkArgument(retentionDurationDays > 0,
                                 "Log file retention duration is invalid: %s", retentionDurationDays);
@@ -140,7 +146,7 @@ public class FileLogAppender extends LogAppender {
 
       AvroFileWriter avroFileWriter = new AvroFileWriter(fileMetaDataManager, namespacedLocationFactory, logBaseDir,
                                                          logSchema, maxLogFileSizeBytes, syncIntervalBytes,
-                                                         inactiveIntervalMs, impersonator);
+                                                         inactiveIntervalMs, indexIntervalBytes, impersonator);
       logFileWriter = new SimpleLogFileWriter(avroFileWriter, checkpointIntervalMs);
 
       LogCleanup logCleanup = new LogCleanup(fileMetaDataManager, rootLocationFactory, retentionDurationMs,
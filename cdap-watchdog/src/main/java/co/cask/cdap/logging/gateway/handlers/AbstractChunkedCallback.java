@@ -20,9 +20,11 @@ import co.cask.cdap.logging.read.Callback;
 import co.cask.cdap.logging.read.LogEvent;
 import co.cask.http.ChunkResponder;
 import co.cask.http.HttpResponder;
+import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.io.Closeables;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,27 +37,51 @@ import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 
 /**
- * LogReader Callback class that uses {@link ChunkResponder} to send logs back in chunks.
+ * LogReader Callback class that uses {@link ChunkResponder} to send logs back in chunks. If a
+ * {@link StreamingBodyProducer} is given, the chunks are pulled by the channel with flow control instead.
  */
 public abstract class AbstractChunkedCallback implements Callback {
   private static final Logger LOG = LoggerFactory.getLogger(AbstractChunkedCallback.class);
 
   private final AtomicBoolean closed = new AtomicBoolean();
   private final HttpResponder responder;
+  private final StreamingBodyProducer bodyProducer;
   private final ByteBuffer chunkBuffer = ByteBuffer.allocate(8 * 1024);
   private final CharsetEncoder charsetEncoder = Charset.forName("UTF-8").newEncoder();
   private final AtomicInteger count = new AtomicInteger();
   private ChunkResponder chunkResponder;
 
   AbstractChunkedCallback(HttpResponder responder) {
+    this(responder, null);
+  }
+
+  AbstractChunkedCallback(HttpResponder responder, @Nullable StreamingBodyProducer bodyProducer) {
     this.responder = responder;
+    this.bodyProducer = bodyProducer;
   }
 
   @Override
   public void init() {
-    chunkResponder = responder.sendChunkStart(HttpResponseStatus.OK, getResponseHeaders());
+    if (bodyProducer == null) {
+      chunkResponder = responder.sendChunkStart(HttpResponseStatus.OK, getResponseHeaders());
+      return;
+    }
+    Multimap<String, String> headers = LinkedListMultimap.create(getResponseHeaders());
+    if (bodyProducer.isCompressed()) {
+      headers.put(HttpHeaders.Names.CONTENT_ENCODING, HttpHeaders.Values.GZIP);
+    }
+    responder.sendContent(HttpResponseStatus.OK, bodyProducer, headers);
+    chunkResponder = bodyProducer;
+  }
+
+  /**
+   * Returns {@code true} if the response was started by {@link #init()}.
+   */
+  boolean isStarted() {
+    return chunkResponder != null;
   }
 
   @Override
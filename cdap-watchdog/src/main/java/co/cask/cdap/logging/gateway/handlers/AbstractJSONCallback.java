@@ -27,6 +27,7 @@ import org.jboss.netty.handler.codec.http.HttpHeaders;
 import java.io.IOException;
 import java.nio.CharBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
 
 /**
  * LogReader callback that sends JSON objects.
@@ -39,6 +40,10 @@ public abstract class AbstractJSONCallback extends AbstractChunkedCallback {
     super(responder);
   }
 
+  AbstractJSONCallback(HttpResponder responder, @Nullable StreamingBodyProducer bodyProducer) {
+    super(responder, bodyProducer);
+  }
+
   @Override
   protected Multimap<String, String> getResponseHeaders() {
     return ImmutableMultimap.of(HttpHeaders.Names.CONTENT_TYPE, "application/json");
@@ -21,6 +21,8 @@ import ch.qos.logback.classic.spi.ThrowableProxyUtil;
 import co.cask.cdap.logging.read.LogEvent;
 import co.cask.http.HttpResponder;
 
+import javax.annotation.Nullable;
+
 /**
  * LogReader callback to encode log events, as {@link LogData} objects.
  */
@@ -30,6 +32,10 @@ public class LogDataOffsetCallback extends AbstractJSONCallback {
     super(responder);
   }
 
+  LogDataOffsetCallback(HttpResponder responder, @Nullable StreamingBodyProducer bodyProducer) {
+    super(responder, bodyProducer);
+  }
+
   @Override
   public Object encodeSend(LogEvent logEvent) {
     ILoggingEvent event = logEvent.getLoggingEvent();
@@ -32,15 +32,20 @@ import co.cask.cdap.logging.read.ReadRange;
 import co.cask.cdap.proto.Id;
 import co.cask.cdap.proto.ProgramType;
 import co.cask.http.AbstractHttpHandler;
+import co.cask.http.HandlerContext;
 import co.cask.http.HttpHandler;
 import co.cask.http.HttpResponder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import org.apache.twill.common.Threads;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpRequest;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import javax.ws.rs.DefaultValue;
@@ -60,12 +65,30 @@ public class LogHandler extends AbstractHttpHandler {
   private final LogReader logReader;
   private final ProgramStore programStore;
   private final String logPattern;
+  private final long maxInflightBytes;
+
+  // Executor for reading the logs of full log downloads, as the reading blocks until the client consumes the content
+  private ExecutorService downloadExecutor;
 
   @Inject
   public LogHandler(LogReader logReader, CConfiguration cConfig, ProgramStore programStore) {
     this.logReader = logReader;
     this.programStore = programStore;
     this.logPattern = cConfig.get(LoggingConfiguration.LOG_PATTERN, LoggingConfiguration.DEFAULT_LOG_PATTERN);
+    this.maxInflightBytes = cConfig.getLong(LoggingConfiguration.LOG_DOWNLOAD_MAX_INFLIGHT_BYTES,
+                                            LoggingConfiguration.DEFAULT_LOG_DOWNLOAD_MAX_INFLIGHT_BYTES);
+  }
+
+  @Override
+  public void init(HandlerContext context) {
+    super.init(context);
+    downloadExecutor = Executors.newCachedThreadPool(Threads.createDaemonThreadFactory("log-download-%d"));
+  }
+
+  @Override
+  public void destroy(HandlerContext context) {
+    super.destroy(context);
+    downloadExecutor.shutdownNow();
   }
 
   @GET
@@ -80,7 +103,8 @@ public class LogHandler extends AbstractHttpHandler {
     LoggingContext loggingContext =
       LoggingContextHelper.getLoggingContext(namespaceId, appId, programId,
                                              ProgramType.valueOfCategoryName(programType));
-    doGetLogs(responder, loggingContext, fromTimeSecsParam, toTimeSecsParam, escape, filterStr, null, "text");
+    doGetLogs(request, responder, loggingContext, fromTimeSecsParam, toTimeSecsParam, escape, filterStr, null,
+              "text");
   }
 
   @GET
@@ -98,10 +122,11 @@ public class LogHandler extends AbstractHttpHandler {
     LoggingContext loggingContext = LoggingContextHelper.getLoggingContextWithRunId(namespaceId, appId, programId, type,
                                                                                     runId, runRecord.getSystemArgs());
 
-    doGetLogs(responder, loggingContext, fromTimeSecsParam, toTimeSecsParam, escape, filterStr, runRecord, format);
+    doGetLogs(request, responder, loggingContext, fromTimeSecsParam, toTimeSecsParam, escape, filterStr, runRecord,
+              format);
   }
 
-  private void doGetLogs(HttpResponder responder, LoggingContext loggingContext,
+  private void doGetLogs(HttpRequest request, HttpResponder responder, LoggingContext loggingContext,
                          long fromTimeSecsParam, long toTimeSecsParam, boolean escape, String filterStr,
                          @Nullable RunRecordMeta runRecord, String format) {
     try {
@@ -116,9 +141,8 @@ public class LogHandler extends AbstractHttpHandler {
                                           LogOffset.INVALID_KAFKA_OFFSET);
       readRange = adjustReadRange(readRange, runRecord, fromTimeSecsParam != -1);
 
-      Callback logCallback = getFullLogsCallback(format, responder, escape);
-      logReader.getLog(loggingContext, readRange.getFromMillis(), readRange.getToMillis(), filter, logCallback);
-      logCallback.close();
+      getFullLogs(request, responder, loggingContext, readRange.getFromMillis(), readRange.getToMillis(), filter,
+                  escape, format);
     } catch (SecurityException e) {
       responder.sendStatus(HttpResponseStatus.UNAUTHORIZED);
     } catch (IllegalArgumentException e) {
@@ -283,9 +307,8 @@ public class LogHandler extends AbstractHttpHandler {
       Filter filter = FilterParser.parse(filterStr);
       LoggingContext loggingContext = LoggingContextHelper.getLoggingContext(Id.Namespace.SYSTEM.getId(), componentId,
                                                                              serviceId);
-      Callback logCallback = getFullLogsCallback(format, responder, escape);
-      logReader.getLog(loggingContext, timeRange.getFromMillis(), timeRange.getToMillis(), filter, logCallback);
-      logCallback.close();
+      getFullLogs(request, responder, loggingContext, timeRange.getFromMillis(), timeRange.getToMillis(), filter,
+                  escape, format);
     } catch (IllegalArgumentException e) {
       responder.sendString(HttpResponseStatus.BAD_REQUEST, e.getMessage());
     }
@@ -373,13 +396,48 @@ public class LogHandler extends AbstractHttpHandler {
     JSON
   }
 
-  private Callback getFullLogsCallback(String format, HttpResponder responder, boolean escape) {
+  /**
+   * Streams all logs in the time range to the client. The logs are read by the download executor and pulled by the
+   * channel as the client consumes them, with at most {@link #maxInflightBytes} bytes buffered, and are compressed if
+   * the client accepts gzip. Reading in the handler thread is not possible, as the channel may pull the content in
+   * the same thread.
+   */
+  private void getFullLogs(HttpRequest request, final HttpResponder responder, final LoggingContext loggingContext,
+                           final long fromTimeMillis, final long toTimeMillis, final Filter filter, boolean escape,
+                           String format) {
+    String acceptEncoding = HttpHeaders.getHeader(request, HttpHeaders.Names.ACCEPT_ENCODING);
+    boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains(HttpHeaders.Values.GZIP);
+    final StreamingBodyProducer bodyProducer = new StreamingBodyProducer(maxInflightBytes, gzip);
+    final AbstractChunkedCallback logCallback = getFullLogsCallback(format, responder, escape, bodyProducer);
+
+    downloadExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          logReader.getLog(loggingContext, fromTimeMillis, toTimeMillis, filter, logCallback);
+        } catch (Throwable t) {
+          LOG.warn("Failed to read logs for {}", loggingContext.getLogPartition(), t);
+          if (logCallback.isStarted()) {
+            // Abort the content streaming so that the channel won't wait for more chunks
+            bodyProducer.handleError(t);
+          } else {
+            responder.sendString(HttpResponseStatus.INTERNAL_SERVER_ERROR, "Failed to read logs");
+          }
+          return;
+        }
+        logCallback.close();
+      }
+    });
+  }
+
+  private AbstractChunkedCallback getFullLogsCallback(String format, HttpResponder responder, boolean escape,
+                                                      StreamingBodyProducer bodyProducer) {
     LogFormatType formatType = getFormatType(format);
     switch (formatType) {
       case JSON:
-        return new LogDataOffsetCallback(responder);
+        return new LogDataOffsetCallback(responder, bodyProducer);
       default:
-        return new TextCallback(responder, logPattern, escape);
+        return new TextCallback(responder, logPattern, escape, bodyProducer);
     }
   }
 
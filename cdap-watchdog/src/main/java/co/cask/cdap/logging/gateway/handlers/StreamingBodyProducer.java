@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.gateway.handlers;
+
+import co.cask.http.BodyProducer;
+import co.cask.http.ChunkResponder;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link ChunkResponder} that hands the chunks written by the log reading thread to the Netty channel through
+ * the {@link BodyProducer} interface. Netty only pulls the next chunk when the channel is writable, and the writer
+ * blocks when the number of bytes not yet pulled exceeds the limit, so that a slow client holds back the log reading
+ * instead of buffering the logs in memory. The content can optionally be compressed with gzip.
+ *
+ * The writer must be a dedicated thread, not the HTTP handler thread, since Netty may pull the chunks in the thread
+ * that starts the response.
+ */
+final class StreamingBodyProducer extends BodyProducer implements ChunkResponder {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StreamingBodyProducer.class);
+
+  private final long maxInflightBytes;
+  private final Queue<ChannelBuffer> chunks;
+  private final ByteArrayOutputStream compressedBytes;
+  private final GZIPOutputStream gzipOutput;
+  private long inflightBytes;
+  private boolean endOfContent;
+  private Throwable failure;
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxInflightBytes maximum number of bytes written but not yet pulled by the channel
+   * @param gzip {@code true} to compress the content with gzip
+   */
+  StreamingBodyProducer(long maxInflightBytes, boolean gzip) {
+    Preconditions.checkArgument(maxInflightBytes > 0, "Maximum in-flight bytes must be > 0: %s", maxInflightBytes);
+    this.maxInflightBytes = maxInflightBytes;
+    this.chunks = new LinkedList<>();
+    this.compressedBytes = gzip ? new ByteArrayOutputStream() : null;
+    try {
+      this.gzipOutput = gzip ? new GZIPOutputStream(compressedBytes) : null;
+    } catch (IOException e) {
+      // Should not happen, as it only writes the gzip header to memory
+      throw Throwables.propagate(e);
+    }
+  }
+
+  boolean isCompressed() {
+    return gzipOutput != null;
+  }
+
+  @Override
+  public void sendChunk(ByteBuffer chunk) throws IOException {
+    sendChunk(ChannelBuffers.wrappedBuffer(chunk));
+  }
+
+  @Override
+  public void sendChunk(ChannelBuffer chunk) throws IOException {
+    if (!chunk.readable()) {
+      // Empty chunk signals end of content to the channel, hence cannot be enqueued
+      return;
+    }
+    if (gzipOutput == null) {
+      enqueue(ChannelBuffers.copiedBuffer(chunk));
+      return;
+    }
+    chunk.readBytes(gzipOutput, chunk.readableBytes());
+    enqueueCompressed();
+  }
+
+  /**
+   * Marks the end of the content. The channel completes the response after pulling all the chunks.
+   */
+  @Override
+  public void close() throws IOException {
+    if (gzipOutput != null) {
+      gzipOutput.finish();
+      enqueueCompressed();
+    }
+    synchronized (this) {
+      endOfContent = true;
+      notifyAll();
+    }
+  }
+
+  @Override
+  public ChannelBuffer nextChunk() throws Exception {
+    ChannelBuffer chunk;
+    synchronized (this) {
+      // An empty chunk ends the content, hence wait for the writer. The writer never blocks on an empty queue,
+      // so the wait is bounded by the time for reading the next chunk of logs.
+      while (chunks.isEmpty() && !endOfContent && failure == null) {
+        wait();
+      }
+      if (failure != null) {
+        throw new IOException("Failed to produce log content", failure);
+      }
+      chunk = chunks.poll();
+      if (chunk == null) {
+        return ChannelBuffers.EMPTY_BUFFER;
+      }
+      inflightBytes -= chunk.readableBytes();
+      notifyAll();
+    }
+    return chunk;
+  }
+
+  @Override
+  public void finished() throws Exception {
+    LOG.trace("Finished streaming log content");
+  }
+
+  @Override
+  public void handleError(@Nullable Throwable cause) {
+    LOG.debug("Failed to stream log content", cause);
+    synchronized (this) {
+      failure = cause == null ? new IOException("Log content streaming failed") : cause;
+      chunks.clear();
+      notifyAll();
+    }
+  }
+
+  private void enqueueCompressed() throws IOException {
+    if (compressedBytes.size() > 0) {
+      enqueue(ChannelBuffers.wrappedBuffer(compressedBytes.toByteArray()));
+      compressedBytes.reset();
+    }
+  }
+
+  /**
+   * Enqueues a chunk for the channel to pull, blocking while there are too many bytes in flight.
+   */
+  private synchronized void enqueue(ChannelBuffer chunk) throws IOException {
+    try {
+      // Always allow one chunk in the queue, even if it is larger than the limit
+      while (failure == null && !chunks.isEmpty() && inflightBytes + chunk.readableBytes() > maxInflightBytes) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to send log content");
+    }
+    if (failure != null) {
+      throw new IOException("Failed to stream log content", failure);
+    }
+    chunks.add(chunk);
+    inflightBytes += chunk.readableBytes();
+    notifyAll();
+  }
+}
@@ -30,6 +30,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.CharBuffer;
+import javax.annotation.Nullable;
 
 /**
  * LogReader callback to encode log events, as text.
@@ -39,7 +40,12 @@ class TextCallback extends AbstractChunkedCallback {
   private final boolean escape;
 
   TextCallback(HttpResponder responder, String logPattern, boolean escape) {
-    super(responder);
+    this(responder, logPattern, escape, null);
+  }
+
+  TextCallback(HttpResponder responder, String logPattern, boolean escape,
+               @Nullable StreamingBodyProducer bodyProducer) {
+    super(responder, bodyProducer);
     this.escape = escape;
 
     ch.qos.logback.classic.Logger rootLogger =
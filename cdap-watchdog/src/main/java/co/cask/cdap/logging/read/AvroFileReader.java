@@ -16,12 +16,17 @@
 
 package co.cask.cdap.logging.read;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import co.cask.cdap.common.io.Locations;
 import co.cask.cdap.common.io.SeekableInputStream;
 import co.cask.cdap.data2.security.Impersonator;
+import co.cask.cdap.logging.filter.AndFilter;
 import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.filter.LogLevelExpression;
+import co.cask.cdap.logging.filter.OrFilter;
 import co.cask.cdap.logging.serialize.LoggingEvent;
+import co.cask.cdap.logging.write.LogFileIndex;
 import co.cask.cdap.proto.id.NamespaceId;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
@@ -36,14 +41,19 @@ import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
 
 /**
- * Reads log events from an Avro file.
+ * Reads log events from an Avro file. If the {@link LogFileIndex} of the file is available, it is used to seek
+ * to the requested time and to skip segments that have no event of the log levels accepted by the filter.
+ * Otherwise the file is scanned through the Avro sync points.
  */
 public class AvroFileReader {
   private static final Logger LOG = LoggerFactory.getLogger(AvroFileReader.class);
@@ -60,6 +70,12 @@ public class AvroFileReader {
     try {
       DataFileReader<GenericRecord> dataFileReader = createReader(file, namespaceId, impersonator);
       try {
+        LogFileIndex index = readIndex(file, namespaceId, impersonator);
+        if (index != null) {
+          readLog(dataFileReader, index, logFilter, fromTimeMs, toTimeMs, maxEvents, callback);
+          return;
+        }
+
         ILoggingEvent loggingEvent;
         GenericRecord datum;
         if (dataFileReader.hasNext()) {
@@ -120,6 +136,11 @@ public class AvroFileReader {
       DataFileReader<GenericRecord> dataFileReader = createReader(file, namespaceId, impersonator);
 
       try {
+        LogFileIndex index = readIndex(file, namespaceId, impersonator);
+        if (index != null) {
+          return readLogPrev(dataFileReader, index, logFilter, fromTimeMs, maxEvents);
+        }
+
         if (!dataFileReader.hasNext()) {
           return ImmutableList.of();
         }
@@ -182,6 +203,74 @@ public class AvroFileReader {
     }
   }
 
+  /**
+   * Reads log events in the time range using the index of the file.
+   */
+  private void readLog(DataFileReader<GenericRecord> dataFileReader, LogFileIndex index, Filter logFilter,
+                       long fromTimeMs, long toTimeMs, int maxEvents, Callback callback) throws IOException {
+    Level minLevel = getMinimumLevel(logFilter);
+    List<LogFileIndex.Entry> entries = index.getEntries();
+    GenericRecord datum = null;
+    int count = 0;
+    long prevTimestamp = -1;
+
+    for (int i = index.findEntry(fromTimeMs); i < entries.size(); i++) {
+      LogFileIndex.Entry entry = entries.get(i);
+      if (entry.getMinTimestamp() >= toTimeMs && entry.getMinTimestamp() > prevTimestamp) {
+        break;
+      }
+      if (!entry.hasLevel(minLevel)) {
+        LOG.trace("Skipping segment at position {} with no event at level {}", entry.getPosition(), minLevel);
+        continue;
+      }
+
+      dataFileReader.seek(entry.getPosition());
+      long endSyncPosition = i + 1 < entries.size() ? entries.get(i + 1).getPosition() : -1L;
+      while ((endSyncPosition == -1 || dataFileReader.previousSync() < endSyncPosition) && dataFileReader.hasNext()) {
+        datum = dataFileReader.next(datum);
+        ILoggingEvent loggingEvent = LoggingEvent.decode(datum);
+        if (loggingEvent.getTimeStamp() >= fromTimeMs && logFilter.match(loggingEvent)) {
+          ++count;
+          if ((count > maxEvents || loggingEvent.getTimeStamp() >= toTimeMs)
+            && loggingEvent.getTimeStamp() != prevTimestamp) {
+            return;
+          }
+          callback.handle(new LogEvent(loggingEvent,
+                                       new LogOffset(LogOffset.INVALID_KAFKA_OFFSET, loggingEvent.getTimeStamp())));
+        }
+        prevTimestamp = loggingEvent.getTimeStamp();
+      }
+    }
+  }
+
+  /**
+   * Reads the last log events before the given time using the index of the file, from the last segment backward.
+   */
+  private Collection<LogEvent> readLogPrev(DataFileReader<GenericRecord> dataFileReader, LogFileIndex index,
+                                           Filter logFilter, long fromTimeMs, int maxEvents) throws IOException {
+    Level minLevel = getMinimumLevel(logFilter);
+    List<LogFileIndex.Entry> entries = index.getEntries();
+    List<List<LogEvent>> logSegments = Lists.newArrayList();
+    int count = 0;
+
+    for (int i = entries.size() - 1; i >= 0 && count < maxEvents; i--) {
+      LogFileIndex.Entry entry = entries.get(i);
+      if (entry.getMinTimestamp() > fromTimeMs || !entry.hasLevel(minLevel)) {
+        continue;
+      }
+      dataFileReader.seek(entry.getPosition());
+      long endSyncPosition = i + 1 < entries.size() ? entries.get(i + 1).getPosition() : -1L;
+      List<LogEvent> logSegment = readToEndSyncPosition(dataFileReader, logFilter, fromTimeMs, endSyncPosition);
+      if (!logSegment.isEmpty()) {
+        logSegments.add(logSegment);
+        count += logSegment.size();
+      }
+    }
+
+    int skip = count >= maxEvents ? count - maxEvents : 0;
+    return Lists.newArrayList(Iterables.skip(Iterables.concat(Lists.reverse(logSegments)), skip));
+  }
+
   /**
    *  Read current block in Avro file from current block sync marker to next block sync marker
    */
@@ -228,6 +317,69 @@ public class AvroFileReader {
     return startPosition;
   }
 
+  /**
+   * Reads the {@link LogFileIndex} of the given log file.
+   *
+   * @return the index or {@code null} if the index is not available, e.g. for a log file that is still being written
+   */
+  @Nullable
+  private LogFileIndex readIndex(final Location file, NamespaceId namespaceId, Impersonator impersonator) {
+    try {
+      return impersonator.doAs(namespaceId, new Callable<LogFileIndex>() {
+        @Override
+        public LogFileIndex call() throws Exception {
+          Location indexLocation = LogFileIndex.getIndexLocation(file);
+          if (!indexLocation.exists()) {
+            return null;
+          }
+          try (DataInputStream input = new DataInputStream(new BufferedInputStream(indexLocation.getInputStream()))) {
+            return LogFileIndex.read(input);
+          }
+        }
+      });
+    } catch (Exception e) {
+      LOG.debug("Failed to read index of log file {}. Reading without index.", file, e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the minimum log level that an event must have to be accepted by the given filter, or {@code null} if
+   * the filter doesn't restrict the log level.
+   */
+  @Nullable
+  private static Level getMinimumLevel(Filter filter) {
+    if (filter instanceof LogLevelExpression) {
+      return ((LogLevelExpression) filter).getLevel();
+    }
+    if (filter instanceof AndFilter) {
+      // All expressions must match, hence the highest level of them
+      Level result = null;
+      for (Filter expression : ((AndFilter) filter).getExpressions()) {
+        Level level = getMinimumLevel(expression);
+        if (level != null && (result == null || level.isGreaterOrEqual(result))) {
+          result = level;
+        }
+      }
+      return result;
+    }
+    if (filter instanceof OrFilter) {
+      // Any expression can match, hence the lowest level of them, and no restriction if any of them has none
+      Level result = null;
+      for (Filter expression : ((OrFilter) filter).getExpressions()) {
+        Level level = getMinimumLevel(expression);
+        if (level == null) {
+          return null;
+        }
+        if (result == null || result.isGreaterOrEqual(level)) {
+          result = level;
+        }
+      }
+      return result;
+    }
+    return null;
+  }
+
   private DataFileReader<GenericRecord> createReader(Location location, NamespaceId namespaceId,
                                                      Impersonator impersonator) throws IOException {
     return new DataFileReader<>(new LocationSeekableInput(location, namespaceId, impersonator),
@@ -34,29 +34,49 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import org.apache.avro.Schema;
+import org.apache.twill.common.Threads;
 import org.apache.twill.filesystem.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.NavigableMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Reads log events from a file.
+ * Reads log events from a file. When reading a time range with {@link #getLog}, multiple files are read in parallel
+ * ahead of the callback, while the events are still delivered to the callback in file order.
  */
 public class FileLogReader implements LogReader {
   private static final Logger LOG = LoggerFactory.getLogger(FileLogReader.class);
 
+  // Maximum number of events buffered for each file that is read ahead
+  private static final int READ_AHEAD_BUFFER_SIZE = 1000;
+
   private final FileMetaDataManager fileMetaDataManager;
   private final Schema schema;
   private final Impersonator impersonator;
+  private final int readParallelism;
 
   @Inject
   public FileLogReader(CConfiguration cConf, FileMetaDataManager fileMetaDataManager, Impersonator impersonator) {
     String baseDir = cConf.get(LoggingConfiguration.LOG_BASE_DIR);
     Preconditions.checkNotNull(baseDir, "Log base dir cannot be null");
 
+    this.readParallelism = cConf.getInt(LoggingConfiguration.LOG_FILE_READ_PARALLELISM,
+                                        LoggingConfiguration.DEFAULT_LOG_FILE_READ_PARALLELISM);
+    Preconditions.checkArgument(readParallelism > 0, "Log file read parallelism is invalid: %s", readParallelism);
+
     try {
       this.schema = new LogSchema().getAvroSchema();
       this.fileMetaDataManager = fileMetaDataManager;
@@ -164,6 +184,10 @@ public class FileLogReader implements LogReader {
       List<Location> filesInRange = getFilesInRange(sortedFiles, fromTimeMs, toTimeMs);
       AvroFileReader avroFileReader = new AvroFileReader(schema);
       NamespaceId namespaceId = LoggingContextHelper.getNamespaceId(loggingContext);
+      if (readParallelism > 1 && filesInRange.size() > 1) {
+        readParallel(filesInRange, avroFileReader, logFilter, fromTimeMs, toTimeMs, callback, namespaceId);
+        return;
+      }
       for (Location file : filesInRange) {
         LOG.trace("Reading file {}", file);
         avroFileReader.readLog(file, logFilter, fromTimeMs, toTimeMs, Integer.MAX_VALUE, callback,
@@ -175,6 +199,39 @@ public class FileLogReader implements LogReader {
     }
   }
 
+  /**
+   * Reads the given files with up to {@link #readParallelism} files being read at the same time. Events are handed
+   * to the callback in the order of the files.
+   */
+  private void readParallel(List<Location> files, AvroFileReader avroFileReader, Filter logFilter,
+                            long fromTimeMs, long toTimeMs, Callback callback,
+                            NamespaceId namespaceId) throws Exception {
+    // The threads only live for this call, since the reader has no lifecycle to shut down a shared executor
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(readParallelism, files.size()),
+                                                            Threads.createDaemonThreadFactory("log-file-reader-%d"));
+    Deque<FileReadTask> tasks = new LinkedList<>();
+    Iterator<Location> fileIterator = files.iterator();
+    try {
+      while (tasks.size() < readParallelism && fileIterator.hasNext()) {
+        tasks.add(new FileReadTask(executor, fileIterator.next(), avroFileReader, logFilter, fromTimeMs, toTimeMs,
+                                   namespaceId));
+      }
+      while (!tasks.isEmpty()) {
+        tasks.poll().drainTo(callback);
+        if (fileIterator.hasNext()) {
+          tasks.add(new FileReadTask(executor, fileIterator.next(), avroFileReader, logFilter, fromTimeMs, toTimeMs,
+                                     namespaceId));
+        }
+      }
+    } finally {
+      // Stop all reads that are not completed, which can only happen on failure
+      for (FileReadTask task : tasks) {
+        task.cancel();
+      }
+      executor.shutdownNow();
+    }
+  }
+
   @VisibleForTesting
   static List<Location> getFilesInRange(NavigableMap<Long, Location> sortedFiles, long fromTimeMs, long toTimeMs) {
     // Get a list of files to read based on fromMillis and toMillis.
@@ -194,4 +251,92 @@ public class FileLogReader implements LogReader {
     }
     return ImmutableList.copyOf(sortedFiles.subMap(start, toTimeMs).values());
   }
+
+  /**
+   * Reads a log file in the read executor into a bounded buffer, which is drained by the caller thread.
+   */
+  private final class FileReadTask {
+    private final Location file;
+    private final BlockingQueue<LogEvent> buffer;
+    private final Future<?> future;
+
+    FileReadTask(ExecutorService executor, final Location file, final AvroFileReader avroFileReader,
+                 final Filter logFilter, final long fromTimeMs, final long toTimeMs, final NamespaceId namespaceId) {
+      this.file = file;
+      this.buffer = new ArrayBlockingQueue<>(READ_AHEAD_BUFFER_SIZE);
+      this.future = executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          LOG.trace("Reading file {}", file);
+          avroFileReader.readLog(file, logFilter, fromTimeMs, toTimeMs, Integer.MAX_VALUE,
+                                 new BufferingCallback(buffer), namespaceId, impersonator);
+        }
+      });
+    }
+
+    /**
+     * Hands all events of the file to the given callback, blocking until the file is completely read.
+     */
+    void drainTo(Callback callback) throws InterruptedException, ExecutionException {
+      while (true) {
+        LogEvent event = buffer.poll(100, TimeUnit.MILLISECONDS);
+        if (event != null) {
+          callback.handle(event);
+        } else if (future.isDone()) {
+          // Events could be added between the poll and the done check
+          event = buffer.poll();
+          while (event != null) {
+            callback.handle(event);
+            event = buffer.poll();
+          }
+          // Rethrow failure of the read, if any
+          future.get();
+          return;
+        }
+      }
+    }
+
+    void cancel() {
+      LOG.trace("Cancel reading file {}", file);
+      future.cancel(true);
+    }
+  }
+
+  /**
+   * A {@link Callback} that puts events into a {@link BlockingQueue}, blocking when the queue is full.
+   */
+  private static final class BufferingCallback implements Callback {
+    private final BlockingQueue<LogEvent> buffer;
+    private int count;
+
+    BufferingCallback(BlockingQueue<LogEvent> buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public void init() {
+      // No-op
+    }
+
+    @Override
+    public void handle(LogEvent event) {
+      try {
+        buffer.put(event);
+        count++;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw Throwables.propagate(e);
+      }
+    }
+
+    @Override
+    public int getCount() {
+      return count;
+    }
+
+    @Override
+    public void close() {
+      // No-op
+    }
+  }
 }
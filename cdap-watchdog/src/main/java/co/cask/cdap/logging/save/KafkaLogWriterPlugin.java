@@ -104,6 +104,11 @@ public class KafkaLogWriterPlugin extends AbstractKafkaLogProcessor {
     Preconditions.checkArgument(syncIntervalBytes > 0,
                                 "Log file sync interval is invalid: %s", syncIntervalBytes);
 
+    long indexIntervalBytes = cConf.getLong(LoggingConfiguration.LOG_FILE_INDEX_INTERVAL_BYTES,
+                                            LoggingConfiguration.DEFAULT_LOG_FILE_INDEX_INTERVAL_BYTES);
+    Preconditions.checkArgument(indexIntervalBytes > 0,
+                                "Log file index interval is invalid: %s", indexIntervalBytes);
+
     long checkpointIntervalMs = cConf.getLong(LoggingConfiguration.LOG_SAVER_CHECKPOINT_INTERVAL_MS,
                                                 LoggingConfiguration.DEFAULT_LOG_SAVER_CHECKPOINT_INTERVAL_MS);
     Preconditions.checkArgument(checkpointIntervalMs > 0,
@@ -138,7 +143,8 @@ public class KafkaLogWriterPlugin extends AbstractKafkaLogProcessor {
 
     AvroFileWriter avroFileWriter = new AvroFileWriter(fileMetaDataManager, namespacedLocationFactory, logBaseDir,
                                                        serializer.getAvroSchema(), maxLogFileSizeBytes,
-                                                       syncIntervalBytes, inactiveIntervalMs, impersonator);
+                                                       syncIntervalBytes, inactiveIntervalMs, indexIntervalBytes,
+                                                       impersonator);
 
     checkpointManager = checkpointManagerFactory.create(cConf.get(Constants.Logging.KAFKA_TOPIC),
                                                         CHECKPOINT_ROW_KEY_PREFIX);
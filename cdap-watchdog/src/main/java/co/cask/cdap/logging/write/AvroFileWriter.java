@@ -33,8 +33,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.io.DataOutputStream;
 import java.io.Flushable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Iterator;
@@ -46,6 +48,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 /**
  * Helper class that manages writing of KafkaLogEvent to Avro files. The events are written into appropriate files
  * based on the LoggingContext of the event. The files are also rotated based on size. This class is not thread-safe.
+ * <p/>
+ * When a file is closed, a {@link LogFileIndex} of the file is written next to it, which allows readers to seek by
+ * time and skip segments by log level without scanning the whole file.
  */
 public final class AvroFileWriter implements Closeable, Flushable {
   private static final Logger LOG = LoggerFactory.getLogger(AvroFileWriter.class);
@@ -58,6 +63,7 @@ public final class AvroFileWriter implements Closeable, Flushable {
   private final Map<String, AvroFile> fileMap;
   private final long maxFileSize;
   private final long inactiveIntervalMs;
+  private final long indexIntervalBytes;
   private final Impersonator impersonator;
 
   private final AtomicBoolean closed = new AtomicBoolean(false);
@@ -71,10 +77,11 @@ public final class AvroFileWriter implements Closeable, Flushable {
    * @param maxFileSize Avro files greater than maxFileSize will get rotated.
    * @param syncIntervalBytes the approximate number of uncompressed bytes to write in each block.
    * @param inactiveIntervalMs files that have no data written for more than inactiveIntervalMs will be closed.
+   * @param indexIntervalBytes the approximate number of bytes in each segment of the {@link LogFileIndex}.
    */
   public AvroFileWriter(FileMetaDataManager fileMetaDataManager, NamespacedLocationFactory namespacedLocationFactory,
                         String logBaseDir, Schema schema, long maxFileSize, int syncIntervalBytes,
-                        long inactiveIntervalMs, Impersonator impersonator) {
+                        long inactiveIntervalMs, long indexIntervalBytes, Impersonator impersonator) {
     this.fileMetaDataManager = fileMetaDataManager;
     this.namespacedLocationFactory = namespacedLocationFactory;
     this.logBaseDir = logBaseDir;
@@ -83,6 +90,7 @@ public final class AvroFileWriter implements Closeable, Flushable {
     this.fileMap = Maps.newHashMap();
     this.maxFileSize = maxFileSize;
     this.inactiveIntervalMs = inactiveIntervalMs;
+    this.indexIntervalBytes = indexIntervalBytes;
     this.impersonator = impersonator;
   }
 
@@ -237,7 +245,7 @@ public final class AvroFileWriter implements Closeable, Flushable {
   private void closeAndDelete(AvroFile avroFile) {
     try {
       try {
-        avroFile.close();
+        avroFile.closeOnError();
       } finally {
         if (avroFile.getLocation().exists()) {
           avroFile.getLocation().delete();
@@ -258,6 +266,8 @@ public final class AvroFileWriter implements Closeable, Flushable {
     private final Location location;
     private FSDataOutputStream outputStream;
     private DataFileWriter<GenericRecord> dataFileWriter;
+    private LogFileIndex.Builder indexBuilder;
+    private long segmentStartPos;
     private long lastModifiedTs;
     private boolean isOpen = false;
 
@@ -277,9 +287,11 @@ public final class AvroFileWriter implements Closeable, Flushable {
         this.dataFileWriter = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(schema));
         this.dataFileWriter.create(schema, this.outputStream);
         this.dataFileWriter.setSyncInterval(syncIntervalBytes);
+        this.segmentStartPos = dataFileWriter.sync();
+        this.indexBuilder = new LogFileIndex.Builder().startSegment(segmentStartPos);
         this.lastModifiedTs = System.currentTimeMillis();
       } catch (Exception e) {
-        close();
+        closeOnError();
         throw e;
       }
       this.isOpen = true;
@@ -295,10 +307,16 @@ public final class AvroFileWriter implements Closeable, Flushable {
 
     public void append(LogWriteEvent event) throws IOException {
       try {
+        // Start a new index segment at a sync point if the current one is large enough
+        if (outputStream.getPos() - segmentStartPos >= indexIntervalBytes && !indexBuilder.isSegmentEmpty()) {
+          segmentStartPos = dataFileWriter.sync();
+          indexBuilder.startSegment(segmentStartPos);
+        }
         dataFileWriter.append(event.getGenericRecord());
+        indexBuilder.add(event.getLogEvent());
         lastModifiedTs = System.currentTimeMillis();
       } catch (Exception e) {
-        close();
+        closeOnError();
         throw e;
       }
     }
@@ -307,7 +325,7 @@ public final class AvroFileWriter implements Closeable, Flushable {
       try {
         return outputStream.getPos();
       } catch (Exception e) {
-        close();
+        closeOnError();
         throw e;
       }
     }
@@ -321,7 +339,7 @@ public final class AvroFileWriter implements Closeable, Flushable {
         dataFileWriter.flush();
         outputStream.hflush();
       } catch (Exception e) {
-        close();
+        closeOnError();
         throw e;
       }
     }
@@ -331,7 +349,7 @@ public final class AvroFileWriter implements Closeable, Flushable {
         dataFileWriter.flush();
         outputStream.hsync();
       } catch (Exception e) {
-        close();
+        closeOnError();
         throw e;
       }
     }
@@ -354,6 +372,35 @@ public final class AvroFileWriter implements Closeable, Flushable {
           outputStream.close();
         }
       }
+
+      if (indexBuilder != null) {
+        writeIndex(indexBuilder.build());
+      }
+    }
+
+    /**
+     * Closes the file without writing the index, since the file may not be in a consistent state.
+     */
+    private void closeOnError() throws IOException {
+      indexBuilder = null;
+      close();
+    }
+
+    /**
+     * Writes the index file. Failure is only logged, as readers will fall back to scan the log file without index.
+     */
+    private void writeIndex(LogFileIndex index) {
+      try {
+        Location indexLocation = LogFileIndex.getIndexLocation(location);
+        try (OutputStream os = indexLocation.getOutputStream()) {
+          DataOutputStream output = new DataOutputStream(os);
+          index.write(output);
+          output.flush();
+        }
+        LOG.trace("Written index {} with {} entries", indexLocation, index.getEntries().size());
+      } catch (Exception e) {
+        LOG.warn("Failed to write index for log file {}", location, e);
+      }
     }
   }
 }
@@ -0,0 +1,277 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.write;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import co.cask.cdap.common.io.Locations;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import org.apache.twill.filesystem.Location;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A sparse index of a log file, which is written as a sidecar file next to the log file when the log file is closed.
+ * The log file is divided into segments, each starting at an Avro sync point. For each segment, the index records
+ * the sync position, the minimum and maximum event timestamps and the number of events of each log level.
+ * <p/>
+ * The index file format is:
+ * <pre>
+ * {@code
+ *
+ * index    = <version> <count> <entry>*
+ * version  = 4 bytes int
+ * count    = 4 bytes int, number of entries
+ * entry    = <position> <min timestamp> <max timestamp> <level count>{5}
+ * position = 8 bytes long, sync position of the segment in the log file
+ * timestamp = 8 bytes long
+ * level count = 4 bytes int, number of TRACE, DEBUG, INFO, WARN and ERROR events
+ * }
+ * </pre>
+ */
+public final class LogFileIndex {
+
+  private static final String INDEX_FILE_SUFFIX = ".idx";
+  private static final int VERSION = 1;
+  private static final Level[] LEVELS = { Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR };
+
+  private final List<Entry> entries;
+  // Maximum timestamp of all segments up to and including each segment, which is used for binary searching
+  private final long[] maxTimestamps;
+
+  /**
+   * Returns the {@link Location} of the index file for the given log file.
+   */
+  public static Location getIndexLocation(Location logFile) throws IOException {
+    Location parent = Locations.getParent(logFile);
+    Preconditions.checkArgument(parent != null, "Log file has no parent: %s", logFile);
+    return parent.append(logFile.getName() + INDEX_FILE_SUFFIX);
+  }
+
+  /**
+   * Reads a {@link LogFileIndex} from the given input.
+   *
+   * @throws IOException if failed to read or if the index is not in a known format
+   */
+  public static LogFileIndex read(DataInput input) throws IOException {
+    int version = input.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported log file index version " + version);
+    }
+    int count = input.readInt();
+    if (count < 0) {
+      throw new IOException("Invalid number of log file index entries " + count);
+    }
+    List<Entry> entries = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      long position = input.readLong();
+      long minTimestamp = input.readLong();
+      long maxTimestamp = input.readLong();
+      int[] levelCounts = new int[LEVELS.length];
+      for (int j = 0; j < levelCounts.length; j++) {
+        levelCounts[j] = input.readInt();
+      }
+      entries.add(new Entry(position, minTimestamp, maxTimestamp, levelCounts));
+    }
+    return new LogFileIndex(entries);
+  }
+
+  private LogFileIndex(List<Entry> entries) {
+    this.entries = ImmutableList.copyOf(entries);
+    this.maxTimestamps = new long[entries.size()];
+    long maxTimestamp = Long.MIN_VALUE;
+    for (int i = 0; i < maxTimestamps.length; i++) {
+      maxTimestamp = Math.max(maxTimestamp, entries.get(i).getMaxTimestamp());
+      maxTimestamps[i] = maxTimestamp;
+    }
+  }
+
+  /**
+   * Returns all entries in this index, in the order of the positions in the log file.
+   */
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * Returns the index of the first entry that may contain events with timestamp greater than or equal to the given
+   * timestamp. All events in the entries before it have smaller timestamps. If there is no such entry, the number of
+   * entries is returned.
+   */
+  public int findEntry(long timestamp) {
+    int low = 0;
+    int high = maxTimestamps.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (maxTimestamps[mid] < timestamp) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Writes this index to the given output.
+   */
+  public void write(DataOutput output) throws IOException {
+    output.writeInt(VERSION);
+    output.writeInt(entries.size());
+    for (Entry entry : entries) {
+      output.writeLong(entry.getPosition());
+      output.writeLong(entry.getMinTimestamp());
+      output.writeLong(entry.getMaxTimestamp());
+      for (int levelCount : entry.levelCounts) {
+        output.writeInt(levelCount);
+      }
+    }
+  }
+
+  /**
+   * Returns the position of the given level in the level counts, or {@code -1} if it is not a level of log events.
+   */
+  private static int getLevelIndex(Level level) {
+    for (int i = 0; i < LEVELS.length; i++) {
+      if (LEVELS[i].equals(level)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * An index entry for one segment of a log file.
+   */
+  public static final class Entry {
+    private final long position;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final int[] levelCounts;
+
+    private Entry(long position, long minTimestamp, long maxTimestamp, int[] levelCounts) {
+      this.position = position;
+      this.minTimestamp = minTimestamp;
+      this.maxTimestamp = maxTimestamp;
+      this.levelCounts = levelCounts;
+    }
+
+    /**
+     * Returns the sync position in the log file where this segment starts.
+     */
+    public long getPosition() {
+      return position;
+    }
+
+    public long getMinTimestamp() {
+      return minTimestamp;
+    }
+
+    public long getMaxTimestamp() {
+      return maxTimestamp;
+    }
+
+    /**
+     * Returns {@code true} if this segment may contain events with level greater than or equal to the given level.
+     * A {@code null} level matches any segment.
+     */
+    public boolean hasLevel(@Nullable Level level) {
+      if (level == null) {
+        return true;
+      }
+      for (int i = 0; i < LEVELS.length; i++) {
+        if (levelCounts[i] > 0 && LEVELS[i].isGreaterOrEqual(level)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Builder for {@link LogFileIndex} while a log file is being written.
+   */
+  public static final class Builder {
+    private final List<Entry> entries = new ArrayList<>();
+    private long position = -1L;
+    private long minTimestamp = Long.MAX_VALUE;
+    private long maxTimestamp = Long.MIN_VALUE;
+    private int[] levelCounts = new int[LEVELS.length];
+    // Number of events in current segment that cannot be accounted by level, such that the segment is never skipped
+    private int unknownLevelCount;
+
+    /**
+     * Starts a new segment at the given sync position. The current segment, if not empty, is added to the index.
+     */
+    public Builder startSegment(long position) {
+      finishSegment();
+      this.position = position;
+      return this;
+    }
+
+    /**
+     * Adds a log event to the current segment.
+     */
+    public Builder add(ILoggingEvent event) {
+      Preconditions.checkState(position >= 0, "No segment is started");
+      minTimestamp = Math.min(minTimestamp, event.getTimeStamp());
+      maxTimestamp = Math.max(maxTimestamp, event.getTimeStamp());
+      int levelIndex = getLevelIndex(event.getLevel());
+      if (levelIndex >= 0) {
+        levelCounts[levelIndex]++;
+      } else {
+        unknownLevelCount++;
+      }
+      return this;
+    }
+
+    /**
+     * Returns {@code true} if no event was added to the current segment.
+     */
+    public boolean isSegmentEmpty() {
+      return minTimestamp > maxTimestamp;
+    }
+
+    /**
+     * Builds the {@link LogFileIndex} with all segments, including the current one.
+     */
+    public LogFileIndex build() {
+      finishSegment();
+      return new LogFileIndex(entries);
+    }
+
+    private void finishSegment() {
+      if (position >= 0 && !isSegmentEmpty()) {
+        if (unknownLevelCount > 0) {
+          // Count them as the highest level so that level based skipping never skips the segment
+          levelCounts[LEVELS.length - 1] += unknownLevelCount;
+        }
+        entries.add(new Entry(position, minTimestamp, maxTimestamp, levelCounts));
+      }
+      minTimestamp = Long.MAX_VALUE;
+      maxTimestamp = Long.MIN_VALUE;
+      levelCounts = new int[LEVELS.length];
+      unknownLevelCount = 0;
+    }
+  }
+}
@@ -21,14 +21,18 @@ import co.cask.cdap.api.metrics.MetricValues;
 import co.cask.cdap.api.metrics.MetricsCollectionService;
 import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.conf.Constants;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
-import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.twill.common.Threads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,48 +40,81 @@ import org.slf4j.LoggerFactory;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * Base class for {@link MetricsCollectionService} which collect metrics through a set of cached
  * {@link AggregatedMetricsEmitter}.
+ * <p/>
+ * Emitters are grouped by tags, and the groups are spread over shards that are emitted in parallel. Metrics contexts
+ * and {@link MetricHandle}s resolve their emitters once, so that updating a metric doesn't look up its tags.
+ * An emitter that has not been updated for a minute, as counted by the number of emits at the publishing frequency,
+ * is removed, and a handle still referring to it resolves a new one on its next update.
  */
 public abstract class AggregatedMetricsCollectionService extends AbstractScheduledService
                                                          implements MetricsCollectionService {
 
   private static final Logger LOG = LoggerFactory.getLogger(AggregatedMetricsCollectionService.class);
   private static final long CACHE_EXPIRE_MINUTES = 1;
+  private static final int DEFAULT_EMITTER_SHARDS = Math.min(4, Runtime.getRuntime().availableProcessors());
 
   private final LoadingCache<Map<String, String>, MetricsContext> collectors;
-  private final LoadingCache<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>> emitters;
+  // tags -> emitters of the tags, spread over shards by tags
+  private final List<ConcurrentMap<Map<String, String>, EmitterGroup>> emitterShards;
+  // emits the shards in parallel, null if there is a single shard
+  @Nullable
+  private final ExecutorService emitExecutor;
+  private final long frequencyMillis;
+  // number of emits without update after which an emitter is retired
+  private final long maxIdleEmits;
 
   private ScheduledExecutorService executorService;
 
   public AggregatedMetricsCollectionService() {
+    this(DEFAULT_EMITTER_SHARDS);
+  }
+
+  /**
+   * Creates an instance of {@link AggregatedMetricsCollectionService}.
+   *
+   * @param emitterShards number of shards of emitters that are emitted in parallel
+   */
+  protected AggregatedMetricsCollectionService(int emitterShards) {
+    this(emitterShards, Constants.MetricsCollector.DEFAULT_FREQUENCY_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Creates an instance of {@link AggregatedMetricsCollectionService}.
+   *
+   * @param emitterShards number of shards of emitters that are emitted in parallel
+   * @param frequency how often the metrics are published. A subclass that overrides {@link #scheduler()}
+   *                  should pass the frequency of its schedule, as it determines when idle emitters are removed.
+   * @param unit unit of the frequency
+   */
+  protected AggregatedMetricsCollectionService(int emitterShards, long frequency, TimeUnit unit) {
+    Preconditions.checkArgument(frequency > 0, "Metrics publish frequency must be positive: %s", frequency);
+    this.frequencyMillis = Math.max(1L, unit.toMillis(frequency));
+    this.maxIdleEmits = Math.max(1L, TimeUnit.MINUTES.toMillis(CACHE_EXPIRE_MINUTES) / frequencyMillis);
     this.collectors = CacheBuilder.newBuilder()
       .expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
       .build(createCollectorLoader());
 
-    this.emitters = CacheBuilder.newBuilder()
-      // NOTE : we don't need to have removalListener to  emit metrics, as we have expireAfterAccess set for a minute,
-      // emitters.get() is used to increment/gauge and that would reset the access time,
-      // and since runOneIteration() emits all the metrics for the scheduled duration (every 1 second)
-      // there wont be any loss of emitter entries.
-      .expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
-      .build(new CacheLoader<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>>() {
-        @Override
-        public LoadingCache<String, AggregatedMetricsEmitter> load(Map<String, String> tags) throws Exception {
-          return CacheBuilder.newBuilder().expireAfterAccess(CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES).
-            build(new CacheLoader<String, AggregatedMetricsEmitter>() {
-              @Override
-              public AggregatedMetricsEmitter load(String metricName) throws Exception {
-                return new AggregatedMetricsEmitter(metricName);
-              }
-            });
-        }
-      });
+    int shards = Math.max(1, emitterShards);
+    ImmutableList.Builder<ConcurrentMap<Map<String, String>, EmitterGroup>> builder = ImmutableList.builder();
+    for (int i = 0; i < shards; i++) {
+      builder.add(Maps.<Map<String, String>, EmitterGroup>newConcurrentMap());
+    }
+    this.emitterShards = builder.build();
+    this.emitExecutor = shards == 1 ? null :
+      Executors.newFixedThreadPool(shards, Threads.createDaemonThreadFactory("metrics-emitter-%d"));
   }
 
   /**
@@ -105,11 +142,6 @@ public abstract class AggregatedMetricsCollectionService extends AbstractSchedul
     } catch (Throwable t) {
       LOG.error("Failed in publishing metrics for timestamp {}.", timestamp, t);
     }
-
-    // Consume the whole iterator if it is not yet consumed inside publish. This is to make sure metrics are reset.
-    while (metrics.hasNext()) {
-      metrics.next();
-    }
     LOG.trace("Completed log collection for timestamp {}", timestamp);
   }
 
@@ -122,9 +154,12 @@ public abstract class AggregatedMetricsCollectionService extends AbstractSchedul
 
   @Override
   protected Scheduler scheduler() {
-    return Scheduler.newFixedRateSchedule(Constants.MetricsCollector.DEFAULT_FREQUENCY_SECONDS,
-                                          Constants.MetricsCollector.DEFAULT_FREQUENCY_SECONDS,
-                                          TimeUnit.SECONDS);
+    return Scheduler.newFixedRateSchedule(frequencyMillis, frequencyMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @VisibleForTesting
+  long getMaxIdleEmits() {
+    return maxIdleEmits;
   }
 
   @Override
@@ -132,6 +167,14 @@ public abstract class AggregatedMetricsCollectionService extends AbstractSchedul
     return collectors.getUnchecked(tags);
   }
 
+  /**
+   * Returns a {@link MetricHandle} for updating a single metric of the given tags. Unlike
+   * {@link MetricsContext#increment(String, long)}, updates through the handle don't look up the metric.
+   */
+  public final MetricHandle getMetricHandle(Map<String, String> tags, String metricName) {
+    return new EmitterHandle(ImmutableMap.copyOf(tags), metricName);
+  }
+
   @Override
   protected void shutDown() throws Exception {
     // Flush the metrics when shutting down.
@@ -141,45 +184,109 @@ public abstract class AggregatedMetricsCollectionService extends AbstractSchedul
       if (executorService != null) {
         executorService.shutdownNow();
       }
+      if (emitExecutor != null) {
+        emitExecutor.shutdownNow();
+      }
     }
   }
 
   private Iterator<MetricValues> getMetrics(final long timestamp) {
-    // NOTE : emitters.asMap does not reset the access time in cache,
-    // so it's the preferred way to access the cache entries. as we access and emit metrics every second.
-    final Iterator<Map.Entry<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>>> iterator =
-      emitters.asMap().entrySet().iterator();
-    return new AbstractIterator<MetricValues>() {
-      @Override
-      protected MetricValues computeNext() {
-        while (iterator.hasNext()) {
-          Map.Entry<Map<String, String>, LoadingCache<String, AggregatedMetricsEmitter>> entry = iterator.next();
-          Map<String, AggregatedMetricsEmitter> metricEmitters = entry.getValue().asMap();
-          // +1 because we add extra metric about how many metric values did we emit in this context (see below)
-          List<MetricValue> metricValues = Lists.newArrayListWithCapacity(metricEmitters.size() + 1);
-          for (Map.Entry<String, AggregatedMetricsEmitter> emitterEntry : metricEmitters.entrySet()) {
-            MetricValue metricValue = emitterEntry.getValue().emit();
-            // skip increment by 0
-            if (metricValue.getType() == MetricType.COUNTER && metricValue.getValue() == 0) {
-              continue;
-            }
-            metricValues.add(metricValue);
-          }
-
-          if (metricValues.isEmpty()) {
-            // skip if there are no metric values to send
-            continue;
-          }
-
-          // number of emitted metrics
-          metricValues.add(new MetricValue("metrics.emitted.count", MetricType.COUNTER, metricValues.size() + 1));
-
-          LOG.trace("Emit metric {}", metricValues);
-          return new MetricValues(entry.getKey(), timestamp, metricValues);
+    if (emitExecutor == null) {
+      return emit(emitterShards.get(0), timestamp).iterator();
+    }
+
+    List<Future<List<MetricValues>>> futures = Lists.newArrayListWithCapacity(emitterShards.size());
+    for (final ConcurrentMap<Map<String, String>, EmitterGroup> shard : emitterShards) {
+      futures.add(emitExecutor.submit(new Callable<List<MetricValues>>() {
+        @Override
+        public List<MetricValues> call() {
+          return emit(shard, timestamp);
         }
-        return endOfData();
+      }));
+    }
+    List<MetricValues> metrics = Lists.newArrayList();
+    try {
+      for (Future<List<MetricValues>> future : futures) {
+        metrics.addAll(Uninterruptibles.getUninterruptibly(future));
       }
-    };
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+    return metrics.iterator();
+  }
+
+  private List<MetricValues> emit(ConcurrentMap<Map<String, String>, EmitterGroup> shard, long timestamp) {
+    List<MetricValues> result = Lists.newArrayList();
+    for (EmitterGroup group : shard.values()) {
+      Map<String, AggregatedMetricsEmitter> metricEmitters = group.emitters;
+      // +1 because we add extra metric about how many metric values did we emit in this context (see below)
+      List<MetricValue> metricValues = Lists.newArrayListWithCapacity(metricEmitters.size() + 1);
+      for (AggregatedMetricsEmitter emitter : metricEmitters.values()) {
+        MetricValue metricValue = emitter.emit();
+        if (emitter.getIdleEmits() >= maxIdleEmits) {
+          // emit once more after retiring, to include the increments that raced with retiring
+          retire(shard, group, metricValue.getName(), emitter);
+          metricValue = emitter.emit();
+        }
+        // skip increment by 0
+        if (metricValue.getType() == MetricType.COUNTER && metricValue.getValue() == 0) {
+          continue;
+        }
+        metricValues.add(metricValue);
+      }
+
+      if (metricValues.isEmpty()) {
+        // skip if there are no metric values to send
+        continue;
+      }
+
+      // number of emitted metrics
+      metricValues.add(new MetricValue("metrics.emitted.count", MetricType.COUNTER, metricValues.size() + 1));
+
+      LOG.trace("Emit metric {}", metricValues);
+      result.add(new MetricValues(group.tags, timestamp, metricValues));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the emitter that currently collects the given metric.
+   */
+  private AggregatedMetricsEmitter getEmitter(Map<String, String> tags, String metricName) {
+    ConcurrentMap<Map<String, String>, EmitterGroup> shard =
+      emitterShards.get((tags.hashCode() & Integer.MAX_VALUE) % emitterShards.size());
+    while (true) {
+      EmitterGroup group = shard.get(tags);
+      if (group == null) {
+        group = new EmitterGroup(tags);
+        EmitterGroup existing = shard.putIfAbsent(tags, group);
+        group = existing == null ? group : existing;
+      }
+      synchronized (group) {
+        if (group.removed) {
+          // removed by the emitting thread, retry with a new group
+          continue;
+        }
+        AggregatedMetricsEmitter emitter = group.emitters.get(metricName);
+        if (emitter == null) {
+          emitter = new AggregatedMetricsEmitter(metricName);
+          group.emitters.put(metricName, emitter);
+        }
+        return emitter;
+      }
+    }
+  }
+
+  private void retire(ConcurrentMap<Map<String, String>, EmitterGroup> shard, EmitterGroup group,
+                      String metricName, AggregatedMetricsEmitter emitter) {
+    synchronized (group) {
+      group.emitters.remove(metricName);
+      emitter.retire();
+      if (group.emitters.isEmpty()) {
+        group.removed = true;
+        shard.remove(group.tags, group);
+      }
+    }
   }
 
   private CacheLoader<Map<String, String>, MetricsContext> createCollectorLoader() {
@@ -191,22 +298,83 @@ public abstract class AggregatedMetricsCollectionService extends AbstractSchedul
     };
   }
 
+  /**
+   * Emitters of the metrics of a set of tags.
+   */
+  private static final class EmitterGroup {
+    private final Map<String, String> tags;
+    // modified only while holding the lock of the group, iterated by the emitting thread
+    private final ConcurrentMap<String, AggregatedMetricsEmitter> emitters;
+    // set when the group is removed from its shard, guarded by the lock of the group
+    private boolean removed;
+
+    private EmitterGroup(Map<String, String> tags) {
+      this.tags = tags;
+      this.emitters = Maps.newConcurrentMap();
+    }
+  }
+
+  /**
+   * {@link MetricHandle} that keeps the emitter of the metric until it is retired.
+   */
+  private final class EmitterHandle implements MetricHandle {
+    private final Map<String, String> tags;
+    private final String metricName;
+    private volatile AggregatedMetricsEmitter emitter;
+
+    private EmitterHandle(Map<String, String> tags, String metricName) {
+      this.tags = tags;
+      this.metricName = metricName;
+    }
+
+    @Override
+    public void increment(long value) {
+      getEmitter().increment(value);
+    }
+
+    @Override
+    public void gauge(long value) {
+      getEmitter().gauge(value);
+    }
+
+    private AggregatedMetricsEmitter getEmitter() {
+      AggregatedMetricsEmitter emitter = this.emitter;
+      if (emitter == null || emitter.isRetired()) {
+        emitter = AggregatedMetricsCollectionService.this.getEmitter(tags, metricName);
+        this.emitter = emitter;
+      }
+      return emitter;
+    }
+  }
+
   private final class MetricsContextImpl implements MetricsContext {
 
     private final Map<String, String> tags;
+    private final ConcurrentMap<String, MetricHandle> handles;
 
     private MetricsContextImpl(final Map<String, String> tags) {
       this.tags = ImmutableMap.copyOf(tags);
+      this.handles = Maps.newConcurrentMap();
     }
 
     @Override
     public void increment(String metricName, long value) {
-      emitters.getUnchecked(tags).getUnchecked(metricName).increment(value);
+      getHandle(metricName).increment(value);
     }
 
     @Override
     public void gauge(String metricName, long value) {
-      emitters.getUnchecked(tags).getUnchecked(metricName).gauge(value);
+      getHandle(metricName).gauge(value);
+    }
+
+    private MetricHandle getHandle(String metricName) {
+      MetricHandle handle = handles.get(metricName);
+      if (handle == null) {
+        handle = new EmitterHandle(tags, metricName);
+        MetricHandle existing = handles.putIfAbsent(metricName, handle);
+        handle = existing == null ? handle : existing;
+      }
+      return handle;
     }
 
     @Override
@@ -22,19 +22,34 @@ import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * {@link MetricsEmitter} that aggregates  values for a metric
  * during collection and emit the aggregated value when emit.
+ * <p/>
+ * Increments update a single value until two threads increment concurrently. From then on, increments are spread
+ * over a fixed number of cells picked by thread, so that threads incrementing the same metric don't contend on it.
  */
 final class AggregatedMetricsEmitter implements MetricsEmitter {
   private static final Logger LOG = LoggerFactory.getLogger(AggregatedMetricsEmitter.class);
 
+  // number of cells for contended increments, a power of two
+  private static final int CELLS = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) * 2;
+  // distance between two cells in the cells array, so that cells of different threads are on different cache lines
+  private static final int CELL_SPACING = 8;
+
   private final String name;
   // metric value
   private final AtomicLong value;
   // specifies if the metric type is gauge or counter
   private final AtomicBoolean gaugeUsed;
+  // created on the first contended increment
+  private volatile AtomicLongArray cells;
+  // set when the emitter is no longer emitted, see AggregatedMetricsCollectionService
+  private volatile boolean retired;
+  // number of consecutive emits without any update, only accessed by the emitting thread
+  private int idleEmits;
 
   public AggregatedMetricsEmitter(String name) {
     if (name == null || name.isEmpty()) {
@@ -47,20 +62,66 @@ final class AggregatedMetricsEmitter implements MetricsEmitter {
   }
 
   void increment(long value) {
-    this.value.addAndGet(value);
+    AtomicLongArray cells = this.cells;
+    if (cells == null) {
+      long current = this.value.get();
+      if (this.value.compareAndSet(current, current + value)) {
+        return;
+      }
+      cells = createCells();
+    }
+    cells.addAndGet((int) (Thread.currentThread().getId() & (CELLS - 1)) * CELL_SPACING, value);
   }
 
-
   @Override
   public MetricValue emit() {
     // todo CDAP-2195 - potential race condition , reseting value and type has to be done together
     long value = this.value.getAndSet(0);
+    AtomicLongArray cells = this.cells;
+    if (cells != null) {
+      for (int i = 0; i < CELLS; i++) {
+        value += cells.getAndSet(i * CELL_SPACING, 0);
+      }
+    }
     MetricType type = gaugeUsed.getAndSet(false) ? MetricType.GAUGE : MetricType.COUNTER;
+    idleEmits = (type == MetricType.COUNTER && value == 0) ? idleEmits + 1 : 0;
     return new MetricValue(name, type, value);
   }
 
   public void gauge(long value) {
+    // increments before the gauge are overridden by it
+    AtomicLongArray cells = this.cells;
+    if (cells != null) {
+      for (int i = 0; i < CELLS; i++) {
+        cells.set(i * CELL_SPACING, 0);
+      }
+    }
     this.value.set(value);
     this.gaugeUsed.set(true);
   }
+
+  /**
+   * Returns the number of consecutive {@link #emit()} calls that found no update of the metric.
+   */
+  int getIdleEmits() {
+    return idleEmits;
+  }
+
+  /**
+   * Marks this emitter as no longer emitted. Updates of the metric have to go to a new emitter from then on.
+   */
+  void retire() {
+    retired = true;
+  }
+
+  boolean isRetired() {
+    return retired;
+  }
+
+  private synchronized AtomicLongArray createCells() {
+    if (cells == null) {
+      cells = new AtomicLongArray(CELLS * CELL_SPACING);
+    }
+    return cells;
+  }
 }
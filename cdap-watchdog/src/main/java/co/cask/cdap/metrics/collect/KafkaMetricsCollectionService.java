@@ -16,10 +16,13 @@
 package co.cask.cdap.metrics.collect;
 
 import co.cask.cdap.api.metrics.MetricValues;
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.common.io.BinaryEncoder;
 import co.cask.cdap.common.io.Encoder;
 import co.cask.cdap.internal.io.DatumWriter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
@@ -33,37 +36,66 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A {@link AggregatedMetricsCollectionService} that publish {@link co.cask.cdap.api.metrics.MetricValues} to kafka.
  * The partition is determined by the metric context.
+ * <p>
+ * When batch encoding is enabled, all {@link MetricValues} that map to the same partition are encoded together
+ * with {@link MetricValuesBatchCodec}, up to {@link #MAX_BATCH_SIZE} records per kafka message.
+ * </p>
  */
 @Singleton
 public class KafkaMetricsCollectionService extends AggregatedMetricsCollectionService {
   private static final Logger LOG = LoggerFactory.getLogger(KafkaMetricsCollectionService.class);
 
+  // Maximum number of MetricValues to encode in one kafka message
+  private static final int MAX_BATCH_SIZE = 1000;
+
   private final KafkaClient kafkaClient;
   private final String topicPrefix;
   private final KafkaPublisher.Ack ack;
   private final DatumWriter<MetricValues> recordWriter;
+  private final boolean batchEncoding;
+  private final int partitionSize;
   private final ByteArrayOutputStream encoderOutputStream;
   private final Encoder encoder;
 
   private KafkaPublisher publisher;
 
   @Inject
-  public KafkaMetricsCollectionService(KafkaClient kafkaClient,
+  public KafkaMetricsCollectionService(CConfiguration cConf, KafkaClient kafkaClient,
                                        @Named(Constants.Metrics.KAFKA_TOPIC_PREFIX) String topicPrefix,
                                        DatumWriter<MetricValues> recordWriter) {
-    this(kafkaClient, topicPrefix, KafkaPublisher.Ack.FIRE_AND_FORGET, recordWriter);
+    this(kafkaClient, topicPrefix, KafkaPublisher.Ack.FIRE_AND_FORGET, recordWriter,
+         cConf.getBoolean(Constants.Metrics.KAFKA_BATCH_ENCODING_ENABLED,
+                          Constants.Metrics.DEFAULT_KAFKA_BATCH_ENCODING_ENABLED),
+         cConf.getInt(Constants.Metrics.KAFKA_PARTITION_SIZE, Constants.Metrics.DEFAULT_KAFKA_PARTITION_SIZE));
   }
 
   public KafkaMetricsCollectionService(KafkaClient kafkaClient, String topicPrefix,
                                        KafkaPublisher.Ack ack, DatumWriter<MetricValues> recordWriter) {
+    this(kafkaClient, topicPrefix, ack, recordWriter, false, Constants.Metrics.DEFAULT_KAFKA_PARTITION_SIZE);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param batchEncoding {@code true} to publish with {@link MetricValuesBatchCodec}
+   * @param partitionSize number of partitions of the metrics topic; used to group metrics of the same partition
+   *                      into one batch when batch encoding is enabled
+   */
+  public KafkaMetricsCollectionService(KafkaClient kafkaClient, String topicPrefix,
+                                       KafkaPublisher.Ack ack, DatumWriter<MetricValues> recordWriter,
+                                       boolean batchEncoding, int partitionSize) {
     this.kafkaClient = kafkaClient;
     this.topicPrefix = topicPrefix;
     this.ack = ack;
     this.recordWriter = recordWriter;
+    this.batchEncoding = batchEncoding;
+    this.partitionSize = Math.max(1, partitionSize);
 
     // Parent guarantees the publish method would not get called concurrently, hence safe to reuse the same instances.
     this.encoderOutputStream = new ByteArrayOutputStream(1024);
@@ -85,10 +117,14 @@ public class KafkaMetricsCollectionService extends AggregatedMetricsCollectionSe
     encoderOutputStream.reset();
 
     KafkaPublisher.Preparer preparer = publisher.prepare(topicPrefix);
-    while (metrics.hasNext()) {
-      // Encode each MetricRecord into bytes and make it an individual kafka message in a message set.
-      MetricValues value = metrics.next();
-      publishMetric(preparer, value);
+    if (batchEncoding) {
+      publishBatches(preparer, metrics);
+    } else {
+      while (metrics.hasNext()) {
+        // Encode each MetricRecord into bytes and make it an individual kafka message in a message set.
+        MetricValues value = metrics.next();
+        publishMetric(preparer, value);
+      }
     }
 
     preparer.send();
@@ -101,6 +137,37 @@ public class KafkaMetricsCollectionService extends AggregatedMetricsCollectionSe
     encoderOutputStream.reset();
   }
 
+  private void publishBatches(KafkaPublisher.Preparer preparer, Iterator<MetricValues> metrics) throws IOException {
+    // Group by partition so that metrics of the same context always go to the same partition as before.
+    Map<Integer, List<MetricValues>> batches = Maps.newHashMap();
+    while (metrics.hasNext()) {
+      MetricValues value = metrics.next();
+      Integer partition = Math.abs(getPartitionKey(value) % partitionSize);
+      List<MetricValues> batch = batches.get(partition);
+      if (batch == null) {
+        batch = Lists.newArrayList();
+        batches.put(partition, batch);
+      }
+      batch.add(value);
+      if (batch.size() >= MAX_BATCH_SIZE) {
+        publishBatch(preparer, partition, batch);
+        batch.clear();
+      }
+    }
+    for (Map.Entry<Integer, List<MetricValues>> entry : batches.entrySet()) {
+      if (!entry.getValue().isEmpty()) {
+        publishBatch(preparer, entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  private void publishBatch(KafkaPublisher.Preparer preparer,
+                            Integer partition, List<MetricValues> batch) throws IOException {
+    MetricValuesBatchCodec.encode(batch, encoderOutputStream);
+    preparer.add(ByteBuffer.wrap(encoderOutputStream.toByteArray()), partition);
+    encoderOutputStream.reset();
+  }
+
   private Integer getPartitionKey(MetricValues value) {
     // TODO: incredibly non-efficient: it is performed for each metrics data point,
     return value.getTags().hashCode();
@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.metrics.collect;
+
+import co.cask.cdap.api.metrics.MetricType;
+import co.cask.cdap.api.metrics.MetricValue;
+import co.cask.cdap.api.metrics.MetricValues;
+import co.cask.cdap.common.io.BinaryDecoder;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.io.Decoder;
+import co.cask.cdap.common.io.Encoder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Encodes and decodes a batch of {@link MetricValues} into a single compact payload.
+ * <p>
+ * The payload starts with a magic byte and a version byte, followed by a dictionary of all tag names, tag values
+ * and metric names in the batch. The records are then written column by column: delta-encoded timestamps, tags as
+ * dictionary indexes, and metrics as dictionary index, type and value. All numbers are zig-zag varints and a
+ * {@code null} string is written as index {@code -1}.
+ * </p>
+ * <p>
+ * A payload written by the {@link co.cask.cdap.internal.io.DatumWriter} of a single {@link MetricValues} always
+ * starts with a non-negative varint, whose first byte has the lowest bit cleared, so it can never be mistaken for
+ * a batch payload. Use {@link #isBatch(ByteBuffer)} to tell the two formats apart.
+ * </p>
+ */
+public final class MetricValuesBatchCodec {
+
+  private static final byte MAGIC = (byte) 0xff;
+  private static final int VERSION_1 = 1;
+  private static final MetricType[] METRIC_TYPES = MetricType.values();
+
+  private MetricValuesBatchCodec() {
+    // no-op
+  }
+
+  /**
+   * Returns {@code true} if the given payload is encoded by this codec. The buffer position is not changed.
+   */
+  public static boolean isBatch(ByteBuffer payload) {
+    return payload.remaining() > 0 && payload.get(payload.position()) == MAGIC;
+  }
+
+  /**
+   * Encodes the given {@link MetricValues} as one batch to the given {@link OutputStream}.
+   */
+  public static void encode(Collection<MetricValues> batch, OutputStream output) throws IOException {
+    // First pass collects the dictionary, so that each distinct string is written only once
+    Map<String, Integer> dictionary = Maps.newLinkedHashMap();
+    for (MetricValues values : batch) {
+      for (Map.Entry<String, String> tag : values.getTags().entrySet()) {
+        addToDictionary(dictionary, tag.getKey());
+        addToDictionary(dictionary, tag.getValue());
+      }
+      for (MetricValue metric : values.getMetrics()) {
+        addToDictionary(dictionary, metric.getName());
+      }
+    }
+
+    output.write(MAGIC);
+    output.write(VERSION_1);
+
+    Encoder encoder = new BinaryEncoder(output);
+    encoder.writeInt(dictionary.size());
+    for (String str : dictionary.keySet()) {
+      encoder.writeString(str);
+    }
+
+    encoder.writeInt(batch.size());
+    long previousTimestamp = 0L;
+    for (MetricValues values : batch) {
+      encoder.writeLong(values.getTimestamp() - previousTimestamp);
+      previousTimestamp = values.getTimestamp();
+    }
+    for (MetricValues values : batch) {
+      encoder.writeInt(values.getTags().size());
+      for (Map.Entry<String, String> tag : values.getTags().entrySet()) {
+        encoder.writeInt(indexOf(dictionary, tag.getKey()));
+        encoder.writeInt(indexOf(dictionary, tag.getValue()));
+      }
+    }
+    for (MetricValues values : batch) {
+      encoder.writeInt(values.getMetrics().size());
+      for (MetricValue metric : values.getMetrics()) {
+        encoder.writeInt(indexOf(dictionary, metric.getName()));
+        encoder.writeInt(metric.getType().ordinal());
+        encoder.writeLong(metric.getValue());
+      }
+    }
+  }
+
+  /**
+   * Decodes a batch payload written by {@link #encode(Collection, OutputStream)}.
+   *
+   * @param input the stream to read from
+   * @return a {@link List} of decoded {@link MetricValues}, in the same order as they were encoded
+   * @throws IOException if failed to read from the stream or the payload is not a supported batch payload
+   */
+  public static List<MetricValues> decode(InputStream input) throws IOException {
+    int magic = input.read();
+    if (magic != (MAGIC & 0xff)) {
+      throw new IOException("Payload is not a metrics batch, first byte is " + magic);
+    }
+    int version = input.read();
+    if (version != VERSION_1) {
+      throw new IOException("Unsupported metrics batch version " + version);
+    }
+
+    Decoder decoder = new BinaryDecoder(input);
+    String[] dictionary = new String[decoder.readInt()];
+    for (int i = 0; i < dictionary.length; i++) {
+      dictionary[i] = decoder.readString();
+    }
+
+    int size = decoder.readInt();
+    long[] timestamps = new long[size];
+    long previousTimestamp = 0L;
+    for (int i = 0; i < size; i++) {
+      previousTimestamp += decoder.readLong();
+      timestamps[i] = previousTimestamp;
+    }
+
+    List<Map<String, String>> tags = Lists.newArrayListWithCapacity(size);
+    for (int i = 0; i < size; i++) {
+      int tagCount = decoder.readInt();
+      Map<String, String> recordTags = Maps.newHashMapWithExpectedSize(tagCount);
+      for (int j = 0; j < tagCount; j++) {
+        recordTags.put(lookup(dictionary, decoder.readInt()), lookup(dictionary, decoder.readInt()));
+      }
+      tags.add(recordTags);
+    }
+
+    List<MetricValues> result = Lists.newArrayListWithCapacity(size);
+    for (int i = 0; i < size; i++) {
+      int metricCount = decoder.readInt();
+      List<MetricValue> metrics = Lists.newArrayListWithCapacity(metricCount);
+      for (int j = 0; j < metricCount; j++) {
+        String name = lookup(dictionary, decoder.readInt());
+        int type = decoder.readInt();
+        if (type < 0 || type >= METRIC_TYPES.length) {
+          throw new IOException("Unknown metric type " + type + " for metric " + name);
+        }
+        metrics.add(new MetricValue(name, METRIC_TYPES[type], decoder.readLong()));
+      }
+      result.add(new MetricValues(tags.get(i), timestamps[i], metrics));
+    }
+    return result;
+  }
+
+  private static void addToDictionary(Map<String, Integer> dictionary, @Nullable String str) {
+    if (str != null && !dictionary.containsKey(str)) {
+      dictionary.put(str, dictionary.size());
+    }
+  }
+
+  private static int indexOf(Map<String, Integer> dictionary, @Nullable String str) {
+    return str == null ? -1 : dictionary.get(str);
+  }
+
+  @Nullable
+  private static String lookup(String[] dictionary, int index) throws IOException {
+    if (index == -1) {
+      return null;
+    }
+    if (index < 0 || index >= dictionary.length) {
+      throw new IOException("Dictionary index " + index + " out of range [0, " + dictionary.length + ")");
+    }
+    return dictionary[index];
+  }
+}
@@ -23,6 +23,7 @@ import co.cask.cdap.api.metrics.MetricValues;
 import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.common.io.BinaryDecoder;
 import co.cask.cdap.internal.io.DatumReader;
+import co.cask.cdap.metrics.collect.MetricValuesBatchCodec;
 import co.cask.common.io.ByteBufferInputStream;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
@@ -32,6 +33,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -41,7 +44,8 @@ import javax.annotation.Nullable;
 
 /**
  * A {@link KafkaConsumer.MessageCallback} that decodes message into {@link co.cask.cdap.api.metrics.MetricValues}
- * and stores it in {@link MetricStore}.
+ * and stores it in {@link MetricStore}. Both single record messages and batch messages encoded by
+ * {@link MetricValuesBatchCodec} are supported.
  */
 public final class MetricsMessageCallback implements KafkaConsumer.MessageCallback {
 
@@ -73,8 +77,7 @@ public final class MetricsMessageCallback implements KafkaConsumer.MessageCallba
     while (messages.hasNext()) {
       FetchedMessage input = messages.next();
       try {
-        MetricValues metricValues = recordReader.read(new BinaryDecoder(is.reset(input.getPayload())), recordSchema);
-        records.add(metricValues);
+        decode(input.getPayload(), is, recordReader, recordSchema, records);
       } catch (IOException e) {
         LOG.info("Failed to decode message to MetricValue. Skipped. {}", e.getMessage());
       }
@@ -102,6 +105,19 @@ public final class MetricsMessageCallback implements KafkaConsumer.MessageCallba
     }
   }
 
+  /**
+   * Decodes a message payload, which is either a single record or a batch, and adds the result to the given
+   * collection.
+   */
+  static void decode(ByteBuffer payload, ByteBufferInputStream is, DatumReader<MetricValues> recordReader,
+                     Schema recordSchema, Collection<MetricValues> records) throws IOException {
+    if (MetricValuesBatchCodec.isBatch(payload)) {
+      records.addAll(MetricValuesBatchCodec.decode(is.reset(payload)));
+    } else {
+      records.add(recordReader.read(new BinaryDecoder(is.reset(payload)), recordSchema));
+    }
+  }
+
   private void addProcessingStats(List<MetricValues> records) {
     if (records.isEmpty()) {
       return;
@@ -33,6 +33,7 @@ import org.apache.twill.kafka.client.KafkaConsumer;
 /**
  * A {@link MessageCallbackFactory} that creates MessageCallback for processing
  * {@link co.cask.cdap.api.metrics.MetricValues} with offset persists to {@link KafkaConsumerMetaTable}.
+ * Unless the number of decode threads is zero, the MessageCallback is a {@link PipelinedMetricsMessageCallback}.
  */
 public final class MetricsMessageCallbackFactory implements MessageCallbackFactory {
 
@@ -40,17 +41,23 @@ public final class MetricsMessageCallbackFactory implements MessageCallbackFacto
   private final Schema recordSchema;
   private final MetricStore metricStore;
   private final int persistThreshold;
+  private final int decodeThreads;
+  private final int queueSize;
 
   @Inject
   public MetricsMessageCallbackFactory(SchemaGenerator schemaGenerator, DatumReaderFactory readerFactory,
                                        MetricStore metricStore,
                                        @Named(Constants.Metrics.KAFKA_CONSUMER_PERSIST_THRESHOLD)
-                                       int persistThreshold) {
+                                       int persistThreshold,
+                                       @Named(Constants.Metrics.PROCESSOR_DECODE_THREADS) int decodeThreads,
+                                       @Named(Constants.Metrics.PROCESSOR_QUEUE_SIZE) int queueSize) {
     try {
       this.recordSchema = schemaGenerator.generate(MetricValues.class);
       this.datumReader = readerFactory.create(TypeToken.of(MetricValues.class), recordSchema);
       this.metricStore = metricStore;
       this.persistThreshold = persistThreshold;
+      this.decodeThreads = decodeThreads;
+      this.queueSize = queueSize;
 
     } catch (UnsupportedTypeException e) {
       throw Throwables.propagate(e);
@@ -60,6 +67,10 @@ public final class MetricsMessageCallbackFactory implements MessageCallbackFacto
   @Override
   public KafkaConsumer.MessageCallback create(KafkaConsumerMetaTable metaTable, MetricsContext metricsContext) {
     metricStore.setMetricsContext(metricsContext);
+    if (decodeThreads > 0) {
+      return new PipelinedMetricsMessageCallback(datumReader, recordSchema, metricStore, metaTable, persistThreshold,
+                                                 metricsContext, decodeThreads, Math.max(1, queueSize));
+    }
     return new PersistedMessageCallback(
       new MetricsMessageCallback(datumReader, recordSchema, metricStore, metricsContext), metaTable, persistThreshold);
   }
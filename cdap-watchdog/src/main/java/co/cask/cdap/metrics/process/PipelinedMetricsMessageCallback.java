@@ -0,0 +1,471 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.metrics.process;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.metrics.MetricStore;
+import co.cask.cdap.api.metrics.MetricType;
+import co.cask.cdap.api.metrics.MetricValue;
+import co.cask.cdap.api.metrics.MetricValues;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.internal.io.DatumReader;
+import co.cask.common.io.ByteBufferInputStream;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.twill.common.Threads;
+import org.apache.twill.kafka.client.FetchedMessage;
+import org.apache.twill.kafka.client.KafkaConsumer;
+import org.apache.twill.kafka.client.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link KafkaConsumer.MessageCallback} that processes {@link MetricValues} in a pipeline of three stages, so that
+ * consuming from kafka does not wait for the metrics to be written:
+ * <ol>
+ *   <li>decode: messages are decoded by a pool of threads, possibly many batches of messages concurrently;</li>
+ *   <li>aggregate: decoded records are pre-aggregated by tags, timestamp and metric name, in the order the messages
+ *     were received, for as long as the write stage is busy;</li>
+ *   <li>write: each pre-aggregated batch is added to the {@link MetricStore} with a single call, after which the
+ *     offsets of the messages in it are persisted to the {@link KafkaConsumerMetaTable}.</li>
+ * </ol>
+ * The stages are connected with bounded queues, so that a slow write stage eventually blocks the kafka consumer.
+ * Besides the processing delay and count, the depth of each queue and the number of records that went through each
+ * stage are written as metrics of the metrics processor.
+ */
+public final class PipelinedMetricsMessageCallback implements KafkaConsumer.MessageCallback {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PipelinedMetricsMessageCallback.class);
+
+  // Maximum number of distinct (tags, timestamp) in a pre-aggregated batch
+  private static final int MAX_AGGREGATED_SIZE = 10000;
+  private static final long AGGREGATE_POLL_MILLIS = 100L;
+  private static final long WRITE_RETRY_MILLIS = 1000L;
+
+  private static final Future<DecodedBatch> END_OF_DECODED = Futures.<DecodedBatch>immediateFuture(null);
+  private static final AggregatedBatch END_OF_AGGREGATED = new AggregatedBatch();
+
+  private final DatumReader<MetricValues> recordReader;
+  private final Schema recordSchema;
+  private final MetricStore metricStore;
+  private final KafkaConsumerMetaTable metaTable;
+  private final int persistThreshold;
+  private final Map<String, String> metricsContext;
+
+  private final ExecutorService decodeExecutor;
+  private final BlockingQueue<Future<DecodedBatch>> decodedQueue;
+  private final BlockingQueue<AggregatedBatch> aggregatedQueue;
+  private final Thread aggregateThread;
+  private final Thread writeThread;
+
+  // Number of records that went through each stage, reset whenever the stats are written
+  private final AtomicLong decodedCount;
+  private final AtomicLong aggregatedCount;
+
+  // Offsets to continue from after the last batch that was written, only updated by the write stage
+  private final Map<TopicPartition, Long> offsets;
+  private int unpersistedMessages;
+  private long recordProcessed;
+  // Set once a batch fails to be written, after which the offsets are no longer advanced
+  private boolean offsetsFrozen;
+  private volatile boolean finishing;
+
+  /**
+   * Creates an instance and starts the threads of the pipeline. The threads are stopped by {@link #finished()}.
+   *
+   * @param decodeThreads number of threads for decoding messages
+   * @param queueSize maximum number of received batches of messages that are waiting to be aggregated
+   */
+  public PipelinedMetricsMessageCallback(DatumReader<MetricValues> recordReader, Schema recordSchema,
+                                         MetricStore metricStore, KafkaConsumerMetaTable metaTable,
+                                         int persistThreshold, @Nullable MetricsContext metricsContext,
+                                         int decodeThreads, int queueSize) {
+    this.recordReader = recordReader;
+    this.recordSchema = recordSchema;
+    this.metricStore = metricStore;
+    this.metaTable = metaTable;
+    this.persistThreshold = persistThreshold;
+    this.metricsContext = metricsContext == null ? Collections.<String, String>emptyMap() : metricsContext.getTags();
+
+    this.decodeExecutor = new ThreadPoolExecutor(decodeThreads, decodeThreads, 0L, TimeUnit.MILLISECONDS,
+                                                 new LinkedBlockingQueue<Runnable>(),
+                                                 Threads.createDaemonThreadFactory("metrics-decode-%d"));
+    this.decodedQueue = new ArrayBlockingQueue<>(queueSize);
+    // Holds at most one batch, so that records keep being aggregated while a batch is written
+    this.aggregatedQueue = new ArrayBlockingQueue<>(1);
+    this.decodedCount = new AtomicLong();
+    this.aggregatedCount = new AtomicLong();
+    this.offsets = Maps.newHashMap();
+
+    this.aggregateThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        aggregate();
+      }
+    }, "metrics-aggregate");
+    this.writeThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        write();
+      }
+    }, "metrics-write");
+    aggregateThread.setDaemon(true);
+    writeThread.setDaemon(true);
+    aggregateThread.start();
+    writeThread.start();
+  }
+
+  @Override
+  public void onReceived(Iterator<FetchedMessage> messages) {
+    List<ByteBuffer> payloads = Lists.newArrayList();
+    Map<TopicPartition, Long> nextOffsets = Maps.newHashMap();
+    while (messages.hasNext()) {
+      FetchedMessage message = messages.next();
+      // Copy the payload, since it is decoded after this method returns
+      ByteBuffer payload = message.getPayload();
+      ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+      copy.put(payload.duplicate()).flip();
+      payloads.add(copy);
+      nextOffsets.put(message.getTopicPartition(), message.getNextOffset());
+    }
+    if (payloads.isEmpty()) {
+      return;
+    }
+    Future<DecodedBatch> decoded = decodeExecutor.submit(new DecodeTask(payloads, nextOffsets));
+    // Blocks the kafka consumer if the pipeline is full
+    Uninterruptibles.putUninterruptibly(decodedQueue, decoded);
+  }
+
+  @Override
+  public void finished() {
+    // Let the pipeline drain everything that was received
+    finishing = true;
+    Uninterruptibles.putUninterruptibly(decodedQueue, END_OF_DECODED);
+    Uninterruptibles.joinUninterruptibly(aggregateThread);
+    Uninterruptibles.joinUninterruptibly(writeThread);
+    decodeExecutor.shutdownNow();
+    // Even if a batch failed, the batches written before it don't need to be processed again
+    persistOffsets();
+    LOG.info("Metrics MessageCallback completed.");
+  }
+
+  /**
+   * Runs the aggregate stage until the end of the decoded queue is reached.
+   */
+  private void aggregate() {
+    AggregatedBatch batch = new AggregatedBatch();
+    while (true) {
+      Future<DecodedBatch> future = decodedQueue.poll();
+      if (future == null) {
+        // Nothing is waiting to be aggregated, hand over the batch if the write stage is ready for it
+        if (!batch.isEmpty() && aggregatedQueue.offer(batch)) {
+          batch = new AggregatedBatch();
+          continue;
+        }
+        try {
+          future = decodedQueue.poll(AGGREGATE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          // Only stops on the end of the queue, so that nothing received is lost
+          continue;
+        }
+        if (future == null) {
+          continue;
+        }
+      }
+
+      if (future == END_OF_DECODED) {
+        if (!batch.isEmpty()) {
+          Uninterruptibles.putUninterruptibly(aggregatedQueue, batch);
+        }
+        Uninterruptibles.putUninterruptibly(aggregatedQueue, END_OF_AGGREGATED);
+        return;
+      }
+
+      try {
+        batch.add(Uninterruptibles.getUninterruptibly(future));
+      } catch (ExecutionException e) {
+        // Should not happen since decode failures are handled per message
+        LOG.error("Failed to decode metrics messages. Skipped.", e.getCause());
+      }
+      if (batch.size() >= MAX_AGGREGATED_SIZE) {
+        Uninterruptibles.putUninterruptibly(aggregatedQueue, batch);
+        batch = new AggregatedBatch();
+      }
+    }
+  }
+
+  /**
+   * Runs the write stage until the end of the aggregated queue is reached.
+   */
+  private void write() {
+    while (true) {
+      AggregatedBatch batch = Uninterruptibles.takeUninterruptibly(aggregatedQueue);
+      if (batch == END_OF_AGGREGATED) {
+        return;
+      }
+      List<MetricValues> records = batch.getRecords();
+      aggregatedCount.addAndGet(records.size());
+      if (!records.isEmpty()) {
+        addProcessingStats(batch, records);
+        if (writeRecords(records)) {
+          long previousProcessed = recordProcessed;
+          recordProcessed += batch.getReceivedCount();
+          if (recordProcessed / 1000 != previousProcessed / 1000) {
+            LOG.info("{} metrics records processed", recordProcessed);
+            LOG.info("Last record time: {}", batch.getLastTimestamp());
+          }
+        } else {
+          // Stop advancing the offsets, so that this batch and the ones after it are processed again on restart
+          offsetsFrozen = true;
+        }
+      }
+      if (offsetsFrozen) {
+        continue;
+      }
+      offsets.putAll(batch.getOffsets());
+      unpersistedMessages += batch.getMessageCount();
+      if (unpersistedMessages >= persistThreshold) {
+        unpersistedMessages = 0;
+        persistOffsets();
+      }
+    }
+  }
+
+  /**
+   * Writes the given records to the metric store, retrying until it succeeds or the pipeline is finishing.
+   *
+   * @return {@code true} if the records were written
+   */
+  private boolean writeRecords(List<MetricValues> records) {
+    while (true) {
+      try {
+        metricStore.add(records);
+        return true;
+      } catch (Exception e) {
+        if (finishing) {
+          LOG.error("Failed to add metrics data to a store. Giving up since processing is stopping.", e);
+          return false;
+        }
+        LOG.error("Failed to add metrics data to a store. Will retry in {} ms.", WRITE_RETRY_MILLIS, e);
+        Uninterruptibles.sleepUninterruptibly(WRITE_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  private void addProcessingStats(AggregatedBatch batch, List<MetricValues> records) {
+    long now = System.currentTimeMillis();
+    long delay = now - TimeUnit.SECONDS.toMillis(batch.getLastTimestamp());
+    // capture the size before the stats record is appended, so that it only counts the aggregated records
+    int writtenCount = records.size();
+    records.add(
+      new MetricValues(metricsContext, TimeUnit.MILLISECONDS.toSeconds(now),
+                       ImmutableList.of(
+                         new MetricValue("metrics.process.count", MetricType.COUNTER, batch.getReceivedCount()),
+                         new MetricValue("metrics.process.delay.ms", MetricType.GAUGE, delay),
+                         new MetricValue("metrics.process.decode.queue.size", MetricType.GAUGE, decodedQueue.size()),
+                         new MetricValue("metrics.process.write.queue.size", MetricType.GAUGE,
+                                         aggregatedQueue.size()),
+                         new MetricValue("metrics.process.decoded.count", MetricType.COUNTER,
+                                         decodedCount.getAndSet(0)),
+                         new MetricValue("metrics.process.aggregated.count", MetricType.COUNTER,
+                                         aggregatedCount.getAndSet(0)),
+                         new MetricValue("metrics.process.written.count", MetricType.COUNTER, writtenCount))));
+  }
+
+  private void persistOffsets() {
+    if (offsets.isEmpty()) {
+      return;
+    }
+    try {
+      metaTable.save(ImmutableMap.copyOf(offsets));
+    } catch (Exception e) {
+      // Simple log and ignore the error.
+      LOG.error("Failed to persist consumed message offset. {}", e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Decodes a batch of message payloads, skipping the ones that fail to decode.
+   */
+  private final class DecodeTask implements Callable<DecodedBatch> {
+
+    private final List<ByteBuffer> payloads;
+    private final Map<TopicPartition, Long> offsets;
+
+    DecodeTask(List<ByteBuffer> payloads, Map<TopicPartition, Long> offsets) {
+      this.payloads = payloads;
+      this.offsets = offsets;
+    }
+
+    @Override
+    public DecodedBatch call() {
+      ByteBufferInputStream is = new ByteBufferInputStream(null);
+      List<MetricValues> records = Lists.newArrayListWithCapacity(payloads.size());
+      for (ByteBuffer payload : payloads) {
+        try {
+          MetricsMessageCallback.decode(payload, is, recordReader, recordSchema, records);
+        } catch (IOException e) {
+          LOG.info("Failed to decode message to MetricValue. Skipped. {}", e.getMessage());
+        }
+      }
+      decodedCount.addAndGet(records.size());
+      return new DecodedBatch(records, offsets, payloads.size());
+    }
+  }
+
+  /**
+   * Records decoded from one batch of messages, together with the offsets to continue from after them.
+   */
+  private static final class DecodedBatch {
+
+    private final List<MetricValues> records;
+    private final Map<TopicPartition, Long> offsets;
+    private final int messageCount;
+
+    DecodedBatch(List<MetricValues> records, Map<TopicPartition, Long> offsets, int messageCount) {
+      this.records = records;
+      this.offsets = offsets;
+      this.messageCount = messageCount;
+    }
+  }
+
+  /**
+   * Records of many {@link DecodedBatch} aggregated by tags, timestamp and metric name. Counters are summed, while a
+   * gauge replaces the previous value, and a counter following a gauge is added to it, just like when they are
+   * written to the store one after another.
+   */
+  private static final class AggregatedBatch {
+
+    private final Map<TagsAndTimestamp, Map<String, MetricValue>> metrics = Maps.newLinkedHashMap();
+    private final Map<TopicPartition, Long> offsets = Maps.newHashMap();
+    private int messageCount;
+    private int receivedCount;
+    private long lastTimestamp;
+
+    void add(DecodedBatch decoded) {
+      for (MetricValues values : decoded.records) {
+        TagsAndTimestamp key = new TagsAndTimestamp(values.getTags(), values.getTimestamp());
+        Map<String, MetricValue> aggregated = metrics.get(key);
+        if (aggregated == null) {
+          aggregated = Maps.newLinkedHashMap();
+          metrics.put(key, aggregated);
+        }
+        for (MetricValue value : values.getMetrics()) {
+          aggregated.put(value.getName(), merge(aggregated.get(value.getName()), value));
+        }
+        lastTimestamp = values.getTimestamp();
+      }
+      receivedCount += decoded.records.size();
+      messageCount += decoded.messageCount;
+      offsets.putAll(decoded.offsets);
+    }
+
+    boolean isEmpty() {
+      return messageCount == 0;
+    }
+
+    int size() {
+      return metrics.size();
+    }
+
+    int getMessageCount() {
+      return messageCount;
+    }
+
+    int getReceivedCount() {
+      return receivedCount;
+    }
+
+    long getLastTimestamp() {
+      return lastTimestamp;
+    }
+
+    Map<TopicPartition, Long> getOffsets() {
+      return offsets;
+    }
+
+    List<MetricValues> getRecords() {
+      List<MetricValues> records = Lists.newArrayListWithCapacity(metrics.size() + 1);
+      for (Map.Entry<TagsAndTimestamp, Map<String, MetricValue>> entry : metrics.entrySet()) {
+        records.add(new MetricValues(entry.getKey().tags, entry.getKey().timestamp, entry.getValue().values()));
+      }
+      return records;
+    }
+
+    private MetricValue merge(@Nullable MetricValue previous, MetricValue value) {
+      if (previous == null || value.getType() == MetricType.GAUGE) {
+        return value;
+      }
+      return new MetricValue(value.getName(), previous.getType(), previous.getValue() + value.getValue());
+    }
+  }
+
+  /**
+   * Key for aggregating records with the same tags and timestamp.
+   */
+  private static final class TagsAndTimestamp {
+
+    private final Map<String, String> tags;
+    private final long timestamp;
+
+    TagsAndTimestamp(Map<String, String> tags, long timestamp) {
+      this.tags = tags;
+      this.timestamp = timestamp;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      TagsAndTimestamp other = (TagsAndTimestamp) o;
+      return timestamp == other.timestamp && tags.equals(other.tags);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(tags, timestamp);
+    }
+  }
+}
@@ -166,6 +166,22 @@ public final class MetricsProcessorTwillRunnable extends AbstractMasterTwillRunn
                           Constants.Metrics.DEFAULT_KAFKA_CONSUMER_PERSIST_THRESHOLD);
     }
 
+    @SuppressWarnings("unused")
+    @Provides
+    @Named(Constants.Metrics.PROCESSOR_DECODE_THREADS)
+    public int providesProcessorDecodeThreads(CConfiguration cConf) {
+      return cConf.getInt(Constants.Metrics.PROCESSOR_DECODE_THREADS,
+                          Constants.Metrics.DEFAULT_PROCESSOR_DECODE_THREADS);
+    }
+
+    @SuppressWarnings("unused")
+    @Provides
+    @Named(Constants.Metrics.PROCESSOR_QUEUE_SIZE)
+    public int providesProcessorQueueSize(CConfiguration cConf) {
+      return cConf.getInt(Constants.Metrics.PROCESSOR_QUEUE_SIZE,
+                          Constants.Metrics.DEFAULT_PROCESSOR_QUEUE_SIZE);
+    }
+
     @SuppressWarnings("unused")
     @Provides
     @Named(Constants.Metrics.KAFKA_TOPIC_PREFIX)
@@ -35,6 +35,7 @@ import co.cask.cdap.api.metrics.MetricValue;
 import co.cask.cdap.api.metrics.MetricValues;
 import co.cask.cdap.api.metrics.MetricsContext;
 import co.cask.cdap.api.metrics.TagValue;
+import co.cask.cdap.common.conf.CConfiguration;
 import co.cask.cdap.common.conf.Constants;
 import co.cask.cdap.data2.dataset2.lib.cube.Aggregation;
 import co.cask.cdap.data2.dataset2.lib.cube.AggregationAlias;
@@ -198,13 +199,19 @@ public class DefaultMetricStore implements MetricStore {
   }
 
   @Inject
-  public DefaultMetricStore(final MetricDatasetFactory dsFactory) {
+  public DefaultMetricStore(final MetricDatasetFactory dsFactory, CConfiguration cConf) {
     // 1 sec, 1 min, 1 hour and "all time totals"
-    this(dsFactory, new int[] {1, 60, 3600, TOTALS_RESOLUTION});
+    this(dsFactory, new int[] {1, 60, 3600, TOTALS_RESOLUTION},
+         cConf.getInt(Constants.Metrics.QUERY_PARALLELISM, Constants.Metrics.DEFAULT_QUERY_PARALLELISM));
   }
 
   // NOTE: should never be used apart from data migration during cdap upgrade
   public DefaultMetricStore(final MetricDatasetFactory dsFactory, final int resolutions[]) {
+    this(dsFactory, resolutions, 1);
+  }
+
+  private DefaultMetricStore(final MetricDatasetFactory dsFactory, final int resolutions[],
+                             final int queryParallelism) {
     this.resolutions = resolutions;
     final FactTableSupplier factTableSupplier = new FactTableSupplier() {
       @Override
@@ -216,7 +223,8 @@ public class DefaultMetricStore implements MetricStore {
     this.cube = Suppliers.memoize(new Supplier<Cube>() {
       @Override
       public Cube get() {
-        DefaultCube cube = new DefaultCube(resolutions, factTableSupplier, AGGREGATIONS, AGGREGATIONS_ALIAS_DIMENSIONS);
+        DefaultCube cube = new DefaultCube(resolutions, factTableSupplier, AGGREGATIONS, AGGREGATIONS_ALIAS_DIMENSIONS,
+                                           queryParallelism);
         cube.setMetricsCollector(metricsContext);
         return cube;
       }
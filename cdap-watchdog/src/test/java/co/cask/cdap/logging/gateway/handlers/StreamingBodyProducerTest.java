@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.gateway.handlers;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests for {@link StreamingBodyProducer}.
+ */
+public class StreamingBodyProducerTest {
+
+  @Test
+  public void testFlowControl() throws Exception {
+    final StreamingBodyProducer producer = new StreamingBodyProducer(10, false);
+    final CountDownLatch completed = new CountDownLatch(1);
+
+    // Write 5 chunks of 4 bytes, which blocks after writing two chunks until chunks are pulled
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          for (int i = 0; i < 5; i++) {
+            producer.sendChunk(ChannelBuffers.copiedBuffer("abc" + i, Charsets.UTF_8));
+          }
+          producer.close();
+          completed.countDown();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    writer.start();
+    Assert.assertFalse(completed.await(200, TimeUnit.MILLISECONDS));
+
+    StringBuilder content = new StringBuilder();
+    ChannelBuffer chunk = producer.nextChunk();
+    while (chunk.readable()) {
+      content.append(chunk.toString(Charsets.UTF_8));
+      chunk = producer.nextChunk();
+    }
+    Assert.assertTrue(completed.await(10, TimeUnit.SECONDS));
+    Assert.assertEquals("abc0abc1abc2abc3abc4", content.toString());
+  }
+
+  @Test
+  public void testGzip() throws Exception {
+    StreamingBodyProducer producer = new StreamingBodyProducer(1024 * 1024, true);
+    Assert.assertTrue(producer.isCompressed());
+
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      String line = "Log line " + i + "\n";
+      expected.append(line);
+      producer.sendChunk(ChannelBuffers.copiedBuffer(line, Charsets.UTF_8));
+    }
+    producer.close();
+
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    ChannelBuffer chunk = producer.nextChunk();
+    while (chunk.readable()) {
+      chunk.readBytes(compressed, chunk.readableBytes());
+      chunk = producer.nextChunk();
+    }
+    byte[] content = ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())));
+    Assert.assertEquals(expected.toString(), new String(content, Charsets.UTF_8));
+  }
+
+  @Test(expected = IOException.class)
+  public void testError() throws Exception {
+    StreamingBodyProducer producer = new StreamingBodyProducer(10, false);
+    producer.handleError(new IOException("Connection closed"));
+    producer.sendChunk(ChannelBuffers.copiedBuffer("abc", Charsets.UTF_8));
+  }
+}
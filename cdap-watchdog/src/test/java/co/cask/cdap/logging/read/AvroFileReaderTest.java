@@ -0,0 +1,321 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.read;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import co.cask.cdap.common.conf.CConfiguration;
+import co.cask.cdap.common.conf.Constants;
+import co.cask.cdap.common.guice.ConfigModule;
+import co.cask.cdap.common.guice.NonCustomLocationUnitTestModule;
+import co.cask.cdap.common.logging.LoggingContext;
+import co.cask.cdap.common.namespace.NamespaceQueryAdmin;
+import co.cask.cdap.common.namespace.NamespacedLocationFactory;
+import co.cask.cdap.common.namespace.SimpleNamespaceQueryAdmin;
+import co.cask.cdap.data.runtime.DataSetsModules;
+import co.cask.cdap.data.runtime.SystemDatasetRuntimeModule;
+import co.cask.cdap.data.runtime.TransactionExecutorModule;
+import co.cask.cdap.data2.security.Impersonator;
+import co.cask.cdap.data2.security.UGIProvider;
+import co.cask.cdap.data2.security.UnsupportedUGIProvider;
+import co.cask.cdap.logging.LoggingConfiguration;
+import co.cask.cdap.logging.appender.LoggingTester;
+import co.cask.cdap.logging.context.FlowletLoggingContext;
+import co.cask.cdap.logging.context.LoggingContextHelper;
+import co.cask.cdap.logging.filter.AndFilter;
+import co.cask.cdap.logging.filter.Filter;
+import co.cask.cdap.logging.filter.LogLevelExpression;
+import co.cask.cdap.logging.filter.MdcExpression;
+import co.cask.cdap.logging.filter.OrFilter;
+import co.cask.cdap.logging.serialize.LogSchema;
+import co.cask.cdap.logging.serialize.LoggingEvent;
+import co.cask.cdap.logging.write.AvroFileWriter;
+import co.cask.cdap.logging.write.FileMetaDataManager;
+import co.cask.cdap.logging.write.LogFileIndex;
+import co.cask.cdap.logging.write.LogWriteEvent;
+import co.cask.cdap.proto.id.NamespaceId;
+import co.cask.tephra.TransactionManager;
+import co.cask.tephra.runtime.TransactionModules;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.twill.filesystem.Location;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that reading log files through {@link AvroFileReader} and {@link FileLogReader} returns the same events with
+ * and without the {@link LogFileIndex} of the files.
+ */
+public class AvroFileReaderTest {
+
+  @ClassRule
+  public static final TemporaryFolder TEMP_FOLDER = new TemporaryFolder();
+
+  private static final int FILES = 4;
+  private static final int EVENTS_PER_FILE = 300;
+  private static final long TIMESTAMP_BASE = 1000L;
+  private static final long TIMESTAMP_STEP = 10L;
+
+  private static final LoggingContext LOGGING_CONTEXT =
+    new FlowletLoggingContext("ns", "app", "flw", "flwt", "run", "instance");
+  private static final NamespaceId NAMESPACE_ID = LoggingContextHelper.getNamespaceId(LOGGING_CONTEXT);
+
+  private static Injector injector;
+  private static TransactionManager txManager;
+  private static String logBaseDir;
+  private static Impersonator impersonator;
+
+  @BeforeClass
+  public static void init() throws Exception {
+    Configuration hConf = HBaseConfiguration.create();
+    CConfiguration cConf = CConfiguration.create();
+    cConf.set(Constants.CFG_LOCAL_DATA_DIR, TEMP_FOLDER.newFolder().getAbsolutePath());
+    cConf.setInt(LoggingConfiguration.LOG_FILE_READ_PARALLELISM, 3);
+    logBaseDir = cConf.get(LoggingConfiguration.LOG_BASE_DIR);
+    injector = Guice.createInjector(
+      new ConfigModule(cConf, hConf),
+      new NonCustomLocationUnitTestModule().getModule(),
+      new TransactionModules().getInMemoryModules(),
+      new TransactionExecutorModule(),
+      new DataSetsModules().getInMemoryModules(),
+      new SystemDatasetRuntimeModule().getInMemoryModules(),
+      new AbstractModule() {
+        @Override
+        protected void configure() {
+          bind(UGIProvider.class).to(UnsupportedUGIProvider.class);
+          bind(NamespaceQueryAdmin.class).to(SimpleNamespaceQueryAdmin.class);
+        }
+      }
+    );
+
+    txManager = injector.getInstance(TransactionManager.class);
+    txManager.startAndWait();
+    impersonator = injector.getInstance(Impersonator.class);
+  }
+
+  @AfterClass
+  public static void finish() {
+    txManager.stopAndWait();
+  }
+
+  @Test
+  public void testReadWithAndWithoutIndex() throws Exception {
+    List<ILoggingEvent> events = writeLogFiles();
+    FileMetaDataManager fileMetaDataManager = injector.getInstance(FileMetaDataManager.class);
+    List<Location> files = new ArrayList<>(fileMetaDataManager.listFiles(LOGGING_CONTEXT).values());
+    Assert.assertEquals(FILES, files.size());
+
+    // Every file is indexed with many segments, some of which have no WARN event
+    for (Location file : files) {
+      Location indexLocation = LogFileIndex.getIndexLocation(file);
+      Assert.assertTrue(indexLocation.exists());
+      try (DataInputStream input = new DataInputStream(indexLocation.getInputStream())) {
+        List<LogFileIndex.Entry> entries = LogFileIndex.read(input).getEntries();
+        Assert.assertTrue(entries.size() > 1);
+        boolean hasSegmentWithoutWarn = false;
+        for (LogFileIndex.Entry entry : entries) {
+          hasSegmentWithoutWarn |= !entry.hasLevel(Level.WARN);
+        }
+        Assert.assertTrue(hasSegmentWithoutWarn);
+      }
+    }
+
+    List<List<String>> expected = readExpected(events, files);
+    Assert.assertEquals(expected, read(files));
+
+    // Without the index, the files are scanned
+    for (Location file : files) {
+      Assert.assertTrue(LogFileIndex.getIndexLocation(file).delete());
+    }
+    Assert.assertEquals(expected, read(files));
+  }
+
+  /**
+   * Writes {@link #FILES} log files with {@link #EVENTS_PER_FILE} events each through {@link AvroFileWriter}, with
+   * small index segments. Every 50th event is a WARN event, others are alternately INFO and DEBUG events.
+   *
+   * @return the events written, in the order of their timestamps
+   */
+  private List<ILoggingEvent> writeLogFiles() throws Exception {
+    Schema schema = new LogSchema().getAvroSchema();
+    AvroFileWriter writer = new AvroFileWriter(injector.getInstance(FileMetaDataManager.class),
+                                               injector.getInstance(NamespacedLocationFactory.class),
+                                               logBaseDir, schema, 10 * 1024, 512, TimeUnit.HOURS.toMillis(1),
+                                               2048, impersonator);
+    List<ILoggingEvent> events = new ArrayList<>();
+    try {
+      for (int i = 0; i < FILES; i++) {
+        List<LogWriteEvent> writeEvents = new ArrayList<>();
+        for (int j = 0; j < EVENTS_PER_FILE; j++) {
+          int id = i * EVENTS_PER_FILE + j;
+          Level level = id % 50 == 0 ? Level.WARN : (id % 2 == 0 ? Level.INFO : Level.DEBUG);
+          ch.qos.logback.classic.spi.LoggingEvent event = new ch.qos.logback.classic.spi.LoggingEvent();
+          event.setLevel(level);
+          event.setLoggerName("loggerName");
+          event.setMessage("Test log message " + id + " with some text to make the event larger");
+          event.setTimeStamp(getTimestamp(id));
+          GenericRecord datum = LoggingEvent.encode(schema, event, LOGGING_CONTEXT);
+          writeEvents.add(new LogWriteEvent(datum, event, LOGGING_CONTEXT));
+          // Keep the decoded event, which has the tags of the logging context in its MDC
+          events.add(LoggingEvent.decode(datum));
+        }
+        // Each call is larger than the maximum file size, hence goes into a new file, which is named by the time
+        TimeUnit.MILLISECONDS.sleep(10);
+        writer.append(writeEvents);
+      }
+    } finally {
+      writer.close();
+    }
+    return events;
+  }
+
+  /**
+   * Reads the files with different filters and time ranges, both with {@link AvroFileReader#readLog},
+   * {@link AvroFileReader#readLogPrev} and {@link FileLogReader#getLog}.
+   */
+  private List<List<String>> read(List<Location> files) throws Exception {
+    AvroFileReader avroFileReader = new AvroFileReader(new LogSchema().getAvroSchema());
+    FileLogReader fileLogReader = injector.getInstance(FileLogReader.class);
+    List<List<String>> results = new ArrayList<>();
+    for (Filter filter : getFilters()) {
+      for (int i = 0; i < files.size(); i++) {
+        Location file = files.get(i);
+        int firstId = i * EVENTS_PER_FILE;
+        // Whole file, and a range that starts and ends within segments
+        for (long[] range : getFileRanges(firstId)) {
+          LoggingTester.LogCallback callback = new LoggingTester.LogCallback();
+          callback.init();
+          avroFileReader.readLog(file, filter, range[0], range[1], Integer.MAX_VALUE, callback,
+                                 NAMESPACE_ID, impersonator);
+          results.add(toStrings(callback.getEvents()));
+        }
+        // Limited number of events
+        LoggingTester.LogCallback callback = new LoggingTester.LogCallback();
+        callback.init();
+        avroFileReader.readLog(file, filter, getTimestamp(firstId + 37), Long.MAX_VALUE, 25, callback,
+                               NAMESPACE_ID, impersonator);
+        results.add(toStrings(callback.getEvents()));
+
+        // Reading backward from the end and from within a segment
+        results.add(toStrings(avroFileReader.readLogPrev(file, filter, Long.MAX_VALUE, Integer.MAX_VALUE,
+                                                         NAMESPACE_ID, impersonator)));
+        results.add(toStrings(avroFileReader.readLogPrev(file, filter, getTimestamp(firstId + 251), 30,
+                                                         NAMESPACE_ID, impersonator)));
+      }
+
+      // Files are read ahead in parallel, but events must be delivered in order
+      for (long[] range : getRanges()) {
+        LoggingTester.LogCallback callback = new LoggingTester.LogCallback();
+        fileLogReader.getLog(LOGGING_CONTEXT, range[0], range[1], filter, callback);
+        results.add(toStrings(callback.getEvents()));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Computes the results that {@link #read(List)} should return from the events written.
+   */
+  private List<List<String>> readExpected(List<ILoggingEvent> events, List<Location> files) {
+    List<List<String>> results = new ArrayList<>();
+    for (Filter filter : getFilters()) {
+      for (int i = 0; i < files.size(); i++) {
+        int firstId = i * EVENTS_PER_FILE;
+        List<ILoggingEvent> fileEvents = events.subList(firstId, firstId + EVENTS_PER_FILE);
+        for (long[] range : getFileRanges(firstId)) {
+          results.add(toStrings(filter(fileEvents, filter, range[0], range[1])));
+        }
+        List<String> limited = toStrings(filter(fileEvents, filter, getTimestamp(firstId + 37), Long.MAX_VALUE));
+        results.add(limited.subList(0, Math.min(25, limited.size())));
+
+        results.add(toStrings(filter(fileEvents, filter, 0L, Long.MAX_VALUE)));
+        List<String> prev = toStrings(filter(fileEvents, filter, 0L, getTimestamp(firstId + 251) + 1));
+        results.add(prev.subList(Math.max(0, prev.size() - 30), prev.size()));
+      }
+      for (long[] range : getRanges()) {
+        results.add(toStrings(filter(events, filter, range[0], range[1])));
+      }
+    }
+    return results;
+  }
+
+  private List<Filter> getFilters() {
+    return ImmutableList.of(
+      Filter.EMPTY_FILTER,
+      new LogLevelExpression("INFO"),
+      // segments without WARN events are skipped
+      new AndFilter(ImmutableList.of(LoggingContextHelper.createFilter(LOGGING_CONTEXT),
+                                     new LogLevelExpression("WARN"))),
+      new OrFilter(ImmutableList.of(new LogLevelExpression("WARN"), new LogLevelExpression("ERROR"))),
+      // no segment can be skipped, since the MDC expression doesn't restrict the level
+      new OrFilter(ImmutableList.of(new LogLevelExpression("WARN"), new MdcExpression("nosuchkey", "value")))
+    );
+  }
+
+  private List<long[]> getFileRanges(int firstId) {
+    return ImmutableList.of(new long[] { 0L, Long.MAX_VALUE },
+                            new long[] { getTimestamp(firstId + 37), getTimestamp(firstId + 251) + 5 });
+  }
+
+  private List<long[]> getRanges() {
+    return ImmutableList.of(new long[] { 0L, Long.MAX_VALUE },
+                            new long[] { getTimestamp(EVENTS_PER_FILE / 2) - 5,
+                                         getTimestamp((FILES - 1) * EVENTS_PER_FILE + 123) + 5 });
+  }
+
+  private static long getTimestamp(int id) {
+    return TIMESTAMP_BASE + id * TIMESTAMP_STEP;
+  }
+
+  private List<ILoggingEvent> filter(List<ILoggingEvent> events, Filter filter, long fromTimeMs, long toTimeMs) {
+    List<ILoggingEvent> result = new ArrayList<>();
+    for (ILoggingEvent event : events) {
+      if (event.getTimeStamp() >= fromTimeMs && event.getTimeStamp() < toTimeMs && filter.match(event)) {
+        result.add(event);
+      }
+    }
+    return result;
+  }
+
+  private List<String> toStrings(Collection<?> events) {
+    List<String> result = Lists.newArrayList();
+    for (Object event : events) {
+      ILoggingEvent loggingEvent = event instanceof LogEvent ? ((LogEvent) event).getLoggingEvent()
+                                                             : (ILoggingEvent) event;
+      result.add(loggingEvent.getTimeStamp() + " " + loggingEvent.getLevel() + " "
+                   + loggingEvent.getFormattedMessage());
+    }
+    return result;
+  }
+}
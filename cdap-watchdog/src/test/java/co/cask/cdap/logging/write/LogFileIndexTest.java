@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package co.cask.cdap.logging.write;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Test for {@link LogFileIndex}.
+ */
+public class LogFileIndexTest {
+
+  @Test
+  public void testIndex() throws IOException {
+    LogFileIndex.Builder builder = new LogFileIndex.Builder();
+    builder.startSegment(100L).add(createEvent(10, Level.INFO)).add(createEvent(12, Level.DEBUG));
+    // Empty segment is not indexed
+    builder.startSegment(200L);
+    builder.startSegment(300L).add(createEvent(11, Level.INFO)).add(createEvent(20, Level.ERROR));
+    builder.startSegment(400L).add(createEvent(40, Level.TRACE));
+
+    // Encode and decode the index
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    builder.build().write(new DataOutputStream(bos));
+    LogFileIndex index = LogFileIndex.read(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+
+    List<LogFileIndex.Entry> entries = index.getEntries();
+    Assert.assertEquals(3, entries.size());
+    Assert.assertEquals(100L, entries.get(0).getPosition());
+    Assert.assertEquals(10L, entries.get(0).getMinTimestamp());
+    Assert.assertEquals(12L, entries.get(0).getMaxTimestamp());
+    Assert.assertEquals(300L, entries.get(1).getPosition());
+    Assert.assertEquals(400L, entries.get(2).getPosition());
+
+    // Level
+    Assert.assertFalse(entries.get(0).hasLevel(Level.WARN));
+    Assert.assertTrue(entries.get(0).hasLevel(Level.INFO));
+    Assert.assertTrue(entries.get(1).hasLevel(Level.ERROR));
+    Assert.assertFalse(entries.get(2).hasLevel(Level.DEBUG));
+    Assert.assertTrue(entries.get(2).hasLevel(null));
+
+    // Seek by time. Timestamps in the segments are not strictly increasing
+    Assert.assertEquals(0, index.findEntry(0L));
+    Assert.assertEquals(0, index.findEntry(12L));
+    Assert.assertEquals(1, index.findEntry(13L));
+    Assert.assertEquals(2, index.findEntry(21L));
+    Assert.assertEquals(2, index.findEntry(40L));
+    Assert.assertEquals(3, index.findEntry(41L));
+  }
+
+  private ILoggingEvent createEvent(long timestamp, Level level) {
+    LoggingEvent event = new LoggingEvent();
+    event.setTimeStamp(timestamp);
+    event.setLevel(level);
+    return event;
+  }
+}
@@ -26,11 +26,18 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -155,6 +162,73 @@ public class AggregatedMetricsCollectionServiceTest {
     }
   }
 
+  @Test
+  public void testConcurrentUpdates() throws Exception {
+    final BlockingQueue<MetricValues> published = new LinkedBlockingQueue<>();
+
+    // metrics are only published when the service stops
+    final AggregatedMetricsCollectionService service = new AggregatedMetricsCollectionService(4, 1, TimeUnit.HOURS) {
+      @Override
+      protected void publish(Iterator<MetricValues> metrics) {
+        Iterators.addAll(published, metrics);
+      }
+    };
+    service.startAndWait();
+
+    // threads update the same metrics of a few contexts, through handles and through the contexts
+    final int threads = 16;
+    final int contexts = 4;
+    final int increments = 10000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final CyclicBarrier barrier = new CyclicBarrier(threads);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        final Map<String, String> tags = ImmutableMap.of(Constants.Metrics.Tag.FLOWLET, FLOWLET + (i % contexts));
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            MetricHandle handle = service.getMetricHandle(tags, METRIC);
+            MetricsContext context = service.getContext(tags);
+            barrier.await();
+            for (int j = 0; j < increments; j++) {
+              handle.increment(1);
+              context.increment(METRIC, 1);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+      service.stopAndWait();
+    }
+
+    Map<Map<String, String>, Long> totals = new HashMap<>();
+    for (MetricValues metricValues : published) {
+      Long total = totals.get(metricValues.getTags());
+      totals.put(metricValues.getTags(),
+                 (total == null ? 0L : total) + getMetricValue(metricValues.getMetrics(), METRIC));
+    }
+    Assert.assertEquals(contexts, totals.size());
+    for (long total : totals.values()) {
+      Assert.assertEquals(2L * increments * threads / contexts, total);
+    }
+  }
+
+  @Test
+  public void testMaxIdleEmits() {
+    // emitters are retired after being idle for a minute of emits at the publishing frequency
+    Assert.assertEquals(60L, new NoopPublishService(1, TimeUnit.SECONDS).getMaxIdleEmits());
+    Assert.assertEquals(2L, new NoopPublishService(30, TimeUnit.SECONDS).getMaxIdleEmits());
+    Assert.assertEquals(600L, new NoopPublishService(100, TimeUnit.MILLISECONDS).getMaxIdleEmits());
+    // but never before the first idle emit
+    Assert.assertEquals(1L, new NoopPublishService(1, TimeUnit.HOURS).getMaxIdleEmits());
+  }
+
   private void verifyCounterMetricsValue(MetricValues metricValues) {
     Assert.assertNotNull(metricValues);
     Map<String, String> tags = metricValues.getTags();
@@ -187,4 +261,19 @@ public class AggregatedMetricsCollectionServiceTest {
     Assert.assertNotNull(metricValues);
     Assert.assertEquals(expected, getMetricValue(metricValues.getMetrics(), METRIC));
   }
+
+  /**
+   * An {@link AggregatedMetricsCollectionService} that discards published metrics.
+   */
+  private static final class NoopPublishService extends AggregatedMetricsCollectionService {
+
+    NoopPublishService(long frequency, TimeUnit unit) {
+      super(1, frequency, unit);
+    }
+
+    @Override
+    protected void publish(Iterator<MetricValues> metrics) {
+      // no-op
+    }
+  }
 }
@@ -30,6 +30,7 @@ import co.cask.cdap.test.SlowTests;
 import co.cask.common.io.ByteBufferInputStream;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Table;
@@ -56,6 +57,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Semaphore;
@@ -119,6 +121,47 @@ public class KafkaMetricsCollectionServiceTest {
     assertMetricsFromKafka(kafkaClient, schema, metricValueType, expected);
   }
 
+  @Test
+  public void testKafkaPublishBatch() throws UnsupportedTypeException, InterruptedException, IOException {
+    Properties kafkaConfig = generateKafkaConfig(tmpFolder1);
+    kafkaServer = new EmbeddedKafkaServer(kafkaConfig);
+    kafkaServer.startAndWait();
+
+    ZKClientService zkClient = ZKClientService.Builder.of(zkServer.getConnectionStr()).build();
+    zkClient.startAndWait();
+
+    KafkaClientService kafkaClient = new ZKKafkaClientService(zkClient);
+    kafkaClient.startAndWait();
+
+    final TypeToken<MetricValues> metricValueType = TypeToken.of(MetricValues.class);
+    final Schema schema = new ReflectionSchemaGenerator().generate(metricValueType.getType());
+    DatumWriter<MetricValues> metricRecordDatumWriter = new ASMDatumWriterFactory(new ASMFieldAccessorFactory())
+      .create(metricValueType, schema);
+
+    MetricsCollectionService collectionService = new KafkaMetricsCollectionService(kafkaClient, "metrics",
+                                                                                   KafkaPublisher.Ack.FIRE_AND_FORGET,
+                                                                                   metricRecordDatumWriter, true, 1);
+    collectionService.startAndWait();
+
+    // publish metrics for different context, which should all end up in the same batch message
+    for (int i = 1; i <= 3; i++) {
+      collectionService.getContext(ImmutableMap.of("tag", "" + i)).increment("processed", i);
+    }
+
+    // Sleep to make sure metrics get published
+    TimeUnit.SECONDS.sleep(2);
+
+    collectionService.stopAndWait();
+
+    // <Context, metricName, value>
+    Table<String, String, Long> expected = HashBasedTable.create();
+    expected.put("tag.1", "processed", 1L);
+    expected.put("tag.2", "processed", 2L);
+    expected.put("tag.3", "processed", 3L);
+
+    assertMetricsFromKafka(kafkaClient, schema, metricValueType, expected);
+  }
+
   @Test
   public void testRecoverFromStoppedKafkaServerAtStartUp() throws InterruptedException, UnsupportedTypeException,
     IOException {
@@ -178,20 +221,28 @@ public class KafkaMetricsCollectionServiceTest {
         try {
           while (messages.hasNext()) {
             ByteBuffer payload = messages.next().getPayload();
-            MetricValues metricsRecord = reader.read(new BinaryDecoder(new ByteBufferInputStream(payload)), schema);
-            StringBuilder flattenContext = new StringBuilder();
-            // for verifying expected results, sorting tags
-            Map<String, String> tags = Maps.newTreeMap();
-            tags.putAll(metricsRecord.getTags());
-            for (Map.Entry<String, String> tag : tags.entrySet()) {
-              flattenContext.append(tag.getKey()).append(".").append(tag.getValue()).append(".");
+            List<MetricValues> metricsRecords;
+            if (MetricValuesBatchCodec.isBatch(payload)) {
+              metricsRecords = MetricValuesBatchCodec.decode(new ByteBufferInputStream(payload));
+            } else {
+              metricsRecords = ImmutableList.of(
+                reader.read(new BinaryDecoder(new ByteBufferInputStream(payload)), schema));
             }
-            // removing trailing "."
-            if (flattenContext.length() > 0) {
-              flattenContext.deleteCharAt(flattenContext.length() - 1);
+            for (MetricValues metricsRecord : metricsRecords) {
+              StringBuilder flattenContext = new StringBuilder();
+              // for verifying expected results, sorting tags
+              Map<String, String> tags = Maps.newTreeMap();
+              tags.putAll(metricsRecord.getTags());
+              for (Map.Entry<String, String> tag : tags.entrySet()) {
+                flattenContext.append(tag.getKey()).append(".").append(tag.getValue()).append(".");
+              }
+              // removing trailing "."
+              if (flattenContext.length() > 0) {
+                flattenContext.deleteCharAt(flattenContext.length() - 1);
+              }
+              metrics.put(flattenContext.toString(), metricsRecord);
+              semaphore.release();
             }
-            metrics.put(flattenContext.toString(), metricsRecord);
-            semaphore.release();
           }
         } catch (Exception e) {
           LOG.error("Error in consume", e);
@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.metrics.collect;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.metrics.MetricType;
+import co.cask.cdap.api.metrics.MetricValue;
+import co.cask.cdap.api.metrics.MetricValues;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.internal.io.ASMDatumWriterFactory;
+import co.cask.cdap.internal.io.ASMFieldAccessorFactory;
+import co.cask.cdap.internal.io.DatumWriter;
+import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.reflect.TypeToken;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link MetricValuesBatchCodec}.
+ */
+public class MetricValuesBatchCodecTest {
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Map<String, String> tags1 = ImmutableMap.of("ns", "default", "app", "purchase", "flow", "collector");
+    Map<String, String> tags2 = Maps.newHashMap();
+    tags2.put("ns", "default");
+    tags2.put("app", null);
+    List<MetricValues> batch = ImmutableList.of(
+      new MetricValues(tags1, 1451606400L, ImmutableList.of(new MetricValue("processed", MetricType.COUNTER, 10L),
+                                                            new MetricValue("queue.size", MetricType.GAUGE, -5L))),
+      // timestamps are not required to be increasing
+      new MetricValues(tags2, "processed", 1451606399L, Long.MAX_VALUE, MetricType.COUNTER),
+      new MetricValues(tags1, "processed", 1451606401L, Long.MIN_VALUE, MetricType.GAUGE),
+      new MetricValues(Collections.<String, String>emptyMap(), 0L, Collections.<MetricValue>emptyList())
+    );
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    MetricValuesBatchCodec.encode(batch, os);
+    byte[] bytes = os.toByteArray();
+    Assert.assertTrue(MetricValuesBatchCodec.isBatch(ByteBuffer.wrap(bytes)));
+
+    List<MetricValues> decoded = MetricValuesBatchCodec.decode(new ByteArrayInputStream(bytes));
+    Assert.assertEquals(batch.size(), decoded.size());
+    for (int i = 0; i < batch.size(); i++) {
+      assertEquals(batch.get(i), decoded.get(i));
+    }
+  }
+
+  @Test
+  public void testSmallerThanRecordEncoding() throws Exception {
+    TypeToken<MetricValues> type = TypeToken.of(MetricValues.class);
+    Schema schema = new ReflectionSchemaGenerator().generate(type.getType());
+    DatumWriter<MetricValues> writer = new ASMDatumWriterFactory(new ASMFieldAccessorFactory()).create(type, schema);
+    ByteArrayOutputStream recordOutput = new ByteArrayOutputStream();
+    BinaryEncoder encoder = new BinaryEncoder(recordOutput);
+
+    List<MetricValues> batch = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      Map<String, String> tags = ImmutableMap.of("namespace", "default", "app", "app" + (i % 5), "run", "run");
+      List<MetricValue> metrics = ImmutableList.of(new MetricValue("system.process.events", MetricType.COUNTER, i),
+                                                   new MetricValue("system.queue.pending", MetricType.GAUGE, i));
+      MetricValues values = new MetricValues(tags, 1451606400L + i, metrics);
+      batch.add(values);
+      writer.encode(values, encoder);
+      // the per record encoding must never be detected as a batch
+      Assert.assertFalse(MetricValuesBatchCodec.isBatch(ByteBuffer.wrap(recordOutput.toByteArray())));
+    }
+
+    ByteArrayOutputStream batchOutput = new ByteArrayOutputStream();
+    MetricValuesBatchCodec.encode(batch, batchOutput);
+    Assert.assertTrue(batchOutput.size() * 2 < recordOutput.size());
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnsupportedVersion() throws IOException {
+    MetricValuesBatchCodec.decode(new ByteArrayInputStream(new byte[] {(byte) 0xff, 100, 0, 0}));
+  }
+
+  private void assertEquals(MetricValues expected, MetricValues actual) {
+    Assert.assertEquals(expected.getTags(), actual.getTags());
+    Assert.assertEquals(expected.getTimestamp(), actual.getTimestamp());
+    Assert.assertEquals(expected.getMetrics().size(), actual.getMetrics().size());
+    Iterator<MetricValue> actualMetrics = actual.getMetrics().iterator();
+    for (MetricValue metric : expected.getMetrics()) {
+      MetricValue actualMetric = actualMetrics.next();
+      Assert.assertEquals(metric.getName(), actualMetric.getName());
+      Assert.assertEquals(metric.getType(), actualMetric.getType());
+      Assert.assertEquals(metric.getValue(), actualMetric.getValue());
+    }
+  }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright © 2016 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package co.cask.cdap.metrics.process;
+
+import co.cask.cdap.api.data.schema.Schema;
+import co.cask.cdap.api.metrics.MetricDataQuery;
+import co.cask.cdap.api.metrics.MetricDeleteQuery;
+import co.cask.cdap.api.metrics.MetricSearchQuery;
+import co.cask.cdap.api.metrics.MetricStore;
+import co.cask.cdap.api.metrics.MetricTimeSeries;
+import co.cask.cdap.api.metrics.MetricType;
+import co.cask.cdap.api.metrics.MetricValue;
+import co.cask.cdap.api.metrics.MetricValues;
+import co.cask.cdap.api.metrics.MetricsContext;
+import co.cask.cdap.api.metrics.TagValue;
+import co.cask.cdap.common.io.BinaryEncoder;
+import co.cask.cdap.common.utils.Tasks;
+import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryMetricsTable;
+import co.cask.cdap.data2.dataset2.lib.table.inmemory.InMemoryTableService;
+import co.cask.cdap.internal.io.DatumReader;
+import co.cask.cdap.internal.io.ReflectionDatumReader;
+import co.cask.cdap.internal.io.ReflectionDatumWriter;
+import co.cask.cdap.internal.io.ReflectionSchemaGenerator;
+import co.cask.cdap.metrics.collect.MetricValuesBatchCodec;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.reflect.TypeToken;
+import org.apache.twill.kafka.client.FetchedMessage;
+import org.apache.twill.kafka.client.TopicPartition;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link PipelinedMetricsMessageCallback}.
+ */
+public class PipelinedMetricsMessageCallbackTest {
+
+  private static final TypeToken<MetricValues> METRIC_VALUES_TYPE = TypeToken.of(MetricValues.class);
+  private static final Map<String, String> TAGS1 = ImmutableMap.of("ns", "ns1", "app", "app1");
+  private static final Map<String, String> TAGS2 = ImmutableMap.of("ns", "ns1", "app", "app2");
+
+  @Test
+  public void testAggregateAndWrite() throws Exception {
+    RecordingMetricStore store = new RecordingMetricStore(0);
+    KafkaConsumerMetaTable metaTable = createMetaTable("testAggregateAndWrite");
+    PipelinedMetricsMessageCallback callback = createCallback(store, metaTable);
+
+    TopicPartition partition0 = new TopicPartition("metrics", 0);
+    TopicPartition partition1 = new TopicPartition("metrics", 1);
+    long offset = 0;
+    for (int i = 0; i < 100; i++) {
+      List<FetchedMessage> messages = Lists.newArrayList();
+      // one record per message, and a batch of two records in one message
+      messages.add(new SimpleFetchedMessage(partition0, ++offset, encodeRecord(
+        new MetricValues(TAGS1, 10L + i % 2, ImmutableList.of(new MetricValue("count", MetricType.COUNTER, 1L),
+                                                               new MetricValue("size", MetricType.GAUGE, i))))));
+      messages.add(new SimpleFetchedMessage(partition1, offset, encodeBatch(
+        new MetricValues(TAGS2, "count", 10L, 2L, MetricType.COUNTER),
+        new MetricValues(TAGS1, "count", 10L, 3L, MetricType.COUNTER))));
+      callback.onReceived(messages.iterator());
+    }
+    callback.finished();
+
+    Assert.assertEquals(50 * 1 + 100 * 3, store.getValue(TAGS1, 10L, "count"));
+    Assert.assertEquals(50L, store.getValue(TAGS1, 11L, "count"));
+    Assert.assertEquals(200L, store.getValue(TAGS2, 10L, "count"));
+    Assert.assertEquals(98L, store.getValue(TAGS1, 10L, "size"));
+    Assert.assertEquals(99L, store.getValue(TAGS1, 11L, "size"));
+    Assert.assertEquals(100L, metaTable.get(partition0));
+    Assert.assertEquals(100L, metaTable.get(partition1));
+
+    // the written count excludes the processing stats record added to each batch
+    Map<String, String> statsTags = ImmutableMap.of();
+    Assert.assertEquals(store.getRecordCount() - store.getRecordCount(statsTags),
+                        store.getTotal(statsTags, "metrics.process.written.count"));
+  }
+
+  @Test
+  public void testWriteRetry() throws Exception {
+    final RecordingMetricStore store = new RecordingMetricStore(2);
+    KafkaConsumerMetaTable metaTable = createMetaTable("testWriteRetry");
+    PipelinedMetricsMessageCallback callback = createCallback(store, metaTable);
+
+    TopicPartition partition = new TopicPartition("metrics", 0);
+    for (int i = 1; i <= 10; i++) {
+      FetchedMessage message = new SimpleFetchedMessage(partition, i, encodeBatch(
+        new MetricValues(TAGS1, "count", 10L, i, MetricType.COUNTER)));
+      callback.onReceived(ImmutableList.of(message).iterator());
+    }
+    // the write stage retries until the store accepts the records
+    Tasks.waitFor(55L, new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return store.getValue(TAGS1, 10L, "count");
+      }
+    }, 10, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS);
+    callback.finished();
+    Assert.assertEquals(10L, metaTable.get(partition));
+  }
+
+  @Test
+  public void testFailureOnFinish() throws Exception {
+    RecordingMetricStore store = new RecordingMetricStore(Integer.MAX_VALUE);
+    KafkaConsumerMetaTable metaTable = createMetaTable("testFailureOnFinish");
+    PipelinedMetricsMessageCallback callback = createCallback(store, metaTable);
+
+    TopicPartition partition = new TopicPartition("metrics", 0);
+    for (int i = 1; i <= 10; i++) {
+      FetchedMessage message = new SimpleFetchedMessage(partition, i, encodeBatch(
+        new MetricValues(TAGS1, "count", 10L, i, MetricType.COUNTER)));
+      callback.onReceived(ImmutableList.of(message).iterator());
+    }
+    // gives up writing when finished, without persisting offsets of records that were not written
+    callback.finished();
+    Assert.assertEquals(0L, store.getValue(TAGS1, 10L, "count"));
+    Assert.assertEquals(-1L, metaTable.get(partition));
+
+    // offsets of the batches written before a failure are persisted when finished, even if below the threshold
+    final RecordingMetricStore failingStore = new RecordingMetricStore(0);
+    metaTable = createMetaTable("testFailureOnFinishAfterWrites");
+    callback = createCallback(failingStore, metaTable, 100);
+    for (int i = 1; i <= 5; i++) {
+      FetchedMessage message = new SimpleFetchedMessage(partition, i, encodeBatch(
+        new MetricValues(TAGS1, "count", 10L, i, MetricType.COUNTER)));
+      callback.onReceived(ImmutableList.of(message).iterator());
+    }
+    Tasks.waitFor(15L, new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        return failingStore.getValue(TAGS1, 10L, "count");
+      }
+    }, 10, TimeUnit.SECONDS, 100, TimeUnit.MILLISECONDS);
+    failingStore.setFailures(Integer.MAX_VALUE);
+    for (int i = 6; i <= 10; i++) {
+      FetchedMessage message = new SimpleFetchedMessage(partition, i, encodeBatch(
+        new MetricValues(TAGS1, "count", 10L, i, MetricType.COUNTER)));
+      callback.onReceived(ImmutableList.of(message).iterator());
+    }
+    callback.finished();
+    Assert.assertEquals(15L, failingStore.getValue(TAGS1, 10L, "count"));
+    Assert.assertEquals(5L, metaTable.get(partition));
+  }
+
+  private PipelinedMetricsMessageCallback createCallback(MetricStore store,
+                                                         KafkaConsumerMetaTable metaTable) throws Exception {
+    return createCallback(store, metaTable, 1);
+  }
+
+  private PipelinedMetricsMessageCallback createCallback(MetricStore store, KafkaConsumerMetaTable metaTable,
+                                                         int persistThreshold) throws Exception {
+    Schema schema = new ReflectionSchemaGenerator().generate(METRIC_VALUES_TYPE.getType());
+    DatumReader<MetricValues> reader = new ReflectionDatumReader<>(schema, METRIC_VALUES_TYPE);
+    return new PipelinedMetricsMessageCallback(reader, schema, store, metaTable, persistThreshold, null, 2, 4);
+  }
+
+  private KafkaConsumerMetaTable createMetaTable(String name) {
+    InMemoryTableService.create(name);
+    return new KafkaConsumerMetaTable(new InMemoryMetricsTable(name));
+  }
+
+  private ByteBuffer encodeRecord(MetricValues values) throws Exception {
+    Schema schema = new ReflectionSchemaGenerator().generate(METRIC_VALUES_TYPE.getType());
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    new ReflectionDatumWriter<MetricValues>(schema).encode(values, new BinaryEncoder(os));
+    return ByteBuffer.wrap(os.toByteArray());
+  }
+
+  private ByteBuffer encodeBatch(MetricValues...values) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    MetricValuesBatchCodec.encode(ImmutableList.copyOf(values), os);
+    return ByteBuffer.wrap(os.toByteArray());
+  }
+
+  /**
+   * A {@link FetchedMessage} with a given payload.
+   */
+  private static final class SimpleFetchedMessage implements FetchedMessage {
+
+    private final TopicPartition topicPartition;
+    private final long nextOffset;
+    private final ByteBuffer payload;
+
+    SimpleFetchedMessage(TopicPartition topicPartition, long nextOffset, ByteBuffer payload) {
+      this.topicPartition = topicPartition;
+      this.nextOffset = nextOffset;
+      this.payload = payload;
+    }
+
+    @Override
+    public TopicPartition getTopicPartition() {
+      return topicPartition;
+    }
+
+    @Override
+    public ByteBuffer getPayload() {
+      return payload;
+    }
+
+    @Override
+    public long getNextOffset() {
+      return nextOffset;
+    }
+  }
+
+  /**
+   * A {@link MetricStore} that applies added metrics to a map, and fails a given number of times first.
+   */
+  private static final class RecordingMetricStore implements MetricStore {
+
+    private final Map<List<Object>, Long> values = Maps.newHashMap();
+    private final Map<Map<String, String>, Integer> recordCounts = Maps.newHashMap();
+    private final AtomicInteger failures;
+
+    RecordingMetricStore(int failures) {
+      this.failures = new AtomicInteger(failures);
+    }
+
+    void setFailures(int failures) {
+      this.failures.set(failures);
+    }
+
+    synchronized long getValue(Map<String, String> tags, long timestamp, String name) {
+      Long value = values.get(ImmutableList.<Object>of(tags, timestamp, name));
+      return value == null ? 0L : value;
+    }
+
+    synchronized long getTotal(Map<String, String> tags, String name) {
+      long total = 0L;
+      for (Map.Entry<List<Object>, Long> entry : values.entrySet()) {
+        if (entry.getKey().get(0).equals(tags) && entry.getKey().get(2).equals(name)) {
+          total += entry.getValue();
+        }
+      }
+      return total;
+    }
+
+    synchronized int getRecordCount() {
+      int total = 0;
+      for (int count : recordCounts.values()) {
+        total += count;
+      }
+      return total;
+    }
+
+    synchronized int getRecordCount(Map<String, String> tags) {
+      Integer count = recordCounts.get(tags);
+      return count == null ? 0 : count;
+    }
+
+    @Override
+    public void setMetricsContext(MetricsContext metricsContext) {
+      // no-op
+    }
+
+    @Override
+    public void add(MetricValues metricValues) throws Exception {
+      add(ImmutableList.of(metricValues));
+    }
+
+    @Override
+    public synchronized void add(Collection<? extends MetricValues> metricValues) throws Exception {
+      if (failures.getAndDecrement() > 0) {
+        throw new IOException("Failure for testing");
+      }
+      for (MetricValues record : metricValues) {
+        Integer count = recordCounts.get(record.getTags());
+        recordCounts.put(record.getTags(), count == null ? 1 : count + 1);
+        for (MetricValue metric : record.getMetrics()) {
+          List<Object> key = ImmutableList.<Object>of(record.getTags(), record.getTimestamp(), metric.getName());
+          Long previous = values.get(key);
+          if (metric.getType() == MetricType.COUNTER && previous != null) {
+            values.put(key, previous + metric.getValue());
+          } else {
+            values.put(key, metric.getValue());
+          }
+        }
+      }
+    }
+
+    @Override
+    public Collection<MetricTimeSeries> query(MetricDataQuery query) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteBefore(long timestamp) throws Exception {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(MetricDeleteQuery query) throws Exception {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteAll() throws Exception {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<TagValue> findNextAvailableTags(MetricSearchQuery query) throws Exception {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<String> findMetricNames(MetricSearchQuery query) throws Exception {
+      throw new UnsupportedOperationException();
+    }
+  }
+}